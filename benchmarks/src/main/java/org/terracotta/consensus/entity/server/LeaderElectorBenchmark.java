@@ -0,0 +1,130 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Platform Benchmarks.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.consensus.entity.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terracotta.consensus.entity.Nomination;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of the {@link LeaderElector} operations:
+ * <ul>
+ *   <li>a full election on a key of its own: enlist, accept and delist</li>
+ *   <li>a handover on a key of its own, where the leader delists and its follower is elected</li>
+ *   <li>followers enlisting and delisting on a single key shared by several threads, contending on
+ *   the election of that key</li>
+ * </ul>
+ * Nominations are accepted as soon as they are made.
+ * <p>
+ * Run with {@code java -jar benchmarks/target/benchmarks.jar LeaderElectorBenchmark}.
+ *
+ * @author Alex Snaps
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LeaderElectorBenchmark {
+  private static final String SHARED_KEY = "shared";
+
+  private LeaderElector<String, Long> leaderElector;
+  private AtomicLong ids;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    ids = new AtomicLong();
+    leaderElector = new LeaderElector<String, Long>(new PermitFactory<Long>() {
+      public Nomination createPermit(Long value) {
+        return new Nomination(ids.incrementAndGet());
+      }
+    });
+    leaderElector.setListener(new DelistListener<String, Long>() {
+      public void onDelist(String key, Long value, Nomination permit) {
+        leaderElector.accept(key, permit);
+      }
+    });
+    // the shared key keeps its leader, so that its election is never removed
+    leaderElector.accept(SHARED_KEY, leaderElector.enlist(SHARED_KEY, 0L));
+  }
+
+  /**
+   * A candidate, with keys of its own.
+   */
+  @State(Scope.Thread)
+  public static class Candidate {
+    private String electionKey;
+    private String handoverKey;
+    private long value;
+    private long leader;
+    private long follower;
+
+    @Setup(Level.Trial)
+    public void setup(LeaderElectorBenchmark benchmark) {
+      long id = benchmark.ids.incrementAndGet();
+      electionKey = "election-" + id;
+      handoverKey = "handover-" + id;
+      value = id;
+      leader = id;
+      follower = -id;
+      LeaderElector<String, Long> leaderElector = benchmark.leaderElector;
+      leaderElector.accept(handoverKey, leaderElector.enlist(handoverKey, leader));
+      leaderElector.enlist(handoverKey, follower);
+    }
+  }
+
+  @Benchmark
+  public Nomination election(Candidate candidate) {
+    Nomination permit = leaderElector.enlist(candidate.electionKey, candidate.value);
+    leaderElector.accept(candidate.electionKey, permit);
+    leaderElector.delist(candidate.electionKey, candidate.value);
+    return permit;
+  }
+
+  @Benchmark
+  public void handover(Candidate candidate) {
+    long leader = candidate.leader;
+    leaderElector.delist(candidate.handoverKey, leader);
+    leaderElector.enlist(candidate.handoverKey, leader);
+    candidate.leader = candidate.follower;
+    candidate.follower = leader;
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Nomination contendedFollowers(Candidate candidate) {
+    Nomination permit = leaderElector.enlist(SHARED_KEY, candidate.value);
+    leaderElector.delist(SHARED_KEY, candidate.value);
+    return permit;
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Platform Benchmarks.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Throughput of producers inserting into a multi partition ring buffer while a single collector thread
+ * continuously drains it, for 1 to 10 producers (one partition per producer).
+ * <p>
+ * This is the access pattern of the management message pipeline, where each managed entity
+ * thread owns a partition and the collector drains all partitions. It is mainly sensitive to
+ * cache line contention between producers and the collector, and for the off heap buffers, to the
+ * serialization of the messages.
+ * <p>
+ * Subclasses create the buffer measured, in a trial level setup.
+ *
+ * @author RKAV
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public abstract class AbstractRingBufferThroughputBenchmark {
+  static final int MAX_PARTITIONS = 10;
+  static final int BUFFER_SIZE = 1 << 13;
+  private static final int DRAIN_BATCH_SIZE = 1 << 10;
+  // distinct messages inserted by each producer, each its own key when conflated
+  private static final int MESSAGES_PER_PRODUCER = 1 << 6;
+
+  PartitionedRingBuffer<Object> buffer;
+
+  /**
+   * Each producer thread owns a partition of the buffer.
+   */
+  @State(Scope.Thread)
+  public static class ProducerState {
+    // serializable, for the off heap buffers
+    private final Object[] messages = new Object[MESSAGES_PER_PRODUCER];
+    private int partitionNo;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup(ThreadParams threadParams) {
+      // JMH may replace a worker thread between iterations, its replacement keeps the same index
+      partitionNo = threadParams.getSubgroupThreadIndex();
+      for (int i = 0; i < messages.length; i++) {
+        messages[i] = Long.valueOf((long)partitionNo * MESSAGES_PER_PRODUCER + i);
+      }
+    }
+
+    private Object nextMessage() {
+      return messages[next++ & (MESSAGES_PER_PRODUCER - 1)];
+    }
+  }
+
+  /**
+   * The collector thread, counting the drained items.
+   */
+  @State(Scope.Thread)
+  @AuxCounters
+  public static class CollectorState {
+    public long drainedItems;
+    private Consumer<Object> sink;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+      drainedItems = 0;
+      sink = (item) -> drainedItems++;
+    }
+  }
+
+  @Benchmark
+  @Group("oneProducer")
+  @GroupThreads(1)
+  public void produceOne(ProducerState producer) {
+    buffer.insert(producer.partitionNo, producer.nextMessage());
+  }
+
+  @Benchmark
+  @Group("oneProducer")
+  @GroupThreads(1)
+  public int collectOne(CollectorState collector) {
+    return buffer.drainTo(collector.sink, DRAIN_BATCH_SIZE);
+  }
+
+  @Benchmark
+  @Group("twoProducers")
+  @GroupThreads(2)
+  public void produceTwo(ProducerState producer) {
+    buffer.insert(producer.partitionNo, producer.nextMessage());
+  }
+
+  @Benchmark
+  @Group("twoProducers")
+  @GroupThreads(1)
+  public int collectTwo(CollectorState collector) {
+    return buffer.drainTo(collector.sink, DRAIN_BATCH_SIZE);
+  }
+
+  @Benchmark
+  @Group("fourProducers")
+  @GroupThreads(4)
+  public void produceFour(ProducerState producer) {
+    buffer.insert(producer.partitionNo, producer.nextMessage());
+  }
+
+  @Benchmark
+  @Group("fourProducers")
+  @GroupThreads(1)
+  public int collectFour(CollectorState collector) {
+    return buffer.drainTo(collector.sink, DRAIN_BATCH_SIZE);
+  }
+
+  @Benchmark
+  @Group("tenProducers")
+  @GroupThreads(10)
+  public void produceTen(ProducerState producer) {
+    buffer.insert(producer.partitionNo, producer.nextMessage());
+  }
+
+  @Benchmark
+  @Group("tenProducers")
+  @GroupThreads(1)
+  public int collectTen(CollectorState collector) {
+    return buffer.drainTo(collector.sink, DRAIN_BATCH_SIZE);
+  }
+}
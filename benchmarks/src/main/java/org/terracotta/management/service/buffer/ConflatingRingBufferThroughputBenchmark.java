@@ -0,0 +1,43 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Platform Benchmarks.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.terracotta.management.service.buffer.impl.ConflatingRingBuffer;
+
+import static org.terracotta.management.service.impl.Constants.BUFFER_BUDGET;
+import static org.terracotta.management.service.impl.Constants.CONFLATING_BUFFER_MAX_KEYS;
+
+/**
+ * Throughput of the conflating ring buffer, with messages conflated by key, see
+ * {@link AbstractRingBufferThroughputBenchmark}. Each producer keeps inserting the same few keys.
+ * <p>
+ * Run with {@code java -jar benchmarks/target/benchmarks.jar ConflatingRingBufferThroughputBenchmark}.
+ *
+ * @author RKAV
+ */
+public class ConflatingRingBufferThroughputBenchmark extends AbstractRingBufferThroughputBenchmark {
+
+  @Setup(Level.Trial)
+  public void setup() {
+    buffer = new ConflatingRingBuffer<>(MAX_PARTITIONS, CONFLATING_BUFFER_MAX_KEYS, (message) -> message,
+        new BufferBudget(BUFFER_BUDGET).newAccount("benchmark"));
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Platform Benchmarks.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.terracotta.management.service.buffer.impl.PriorityLaneRingBuffer;
+
+import static org.terracotta.management.service.impl.Constants.BUFFER_BUDGET;
+import static org.terracotta.management.service.impl.Constants.HIGH_PRIORITY_BUFFER_CACHE_SIZE;
+import static org.terracotta.management.service.impl.Constants.HIGH_PRIORITY_OVERWRITE_POLICY;
+import static org.terracotta.management.service.impl.Constants.INITIAL_BUFFER_CACHE_SIZE;
+import static org.terracotta.management.service.impl.Constants.NORMAL_PRIORITY_OVERWRITE_POLICY;
+
+/**
+ * Throughput of the multi partition ring buffers, see {@link AbstractRingBufferThroughputBenchmark}.
+ * <p>
+ * Each {@link PartitionedRingBufferType} is measured in every {@link Topology}, from its plain fixed size
+ * partitions to the priority lanes of growable partitions the message pipeline buffers messages in. The
+ * conflating buffer, which does not depend on the type of partitions, is measured by
+ * {@link ConflatingRingBufferThroughputBenchmark}.
+ * <p>
+ * Run with {@code java -jar benchmarks/target/benchmarks.jar RingBufferThroughputBenchmark}.
+ *
+ * @author RKAV
+ */
+public class RingBufferThroughputBenchmark extends AbstractRingBufferThroughputBenchmark {
+
+  @Param({"LOCK_FREE", "POOLED", "SAFE", "OFF_HEAP"})
+  public PartitionedRingBufferType bufferType;
+
+  @Param({"FIXED", "GROWABLE", "PRIORITY_LANES"})
+  public Topology topology;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    buffer = topology.createBuffer(bufferType, new BufferBudget(BUFFER_BUDGET).newAccount("benchmark"));
+  }
+
+  /**
+   * How the partitions of the buffer are arranged.
+   */
+  public enum Topology {
+    /**
+     * Partitions of their maximum size from the start.
+     */
+    FIXED {
+      @Override
+      PartitionedRingBuffer<Object> createBuffer(PartitionedRingBufferType bufferType, BufferBudget.Account account) {
+        return bufferType.createBuffer(MAX_PARTITIONS, BUFFER_SIZE);
+      }
+    },
+
+    /**
+     * Partitions growing with the load, as long as the budget allows.
+     */
+    GROWABLE {
+      @Override
+      PartitionedRingBuffer<Object> createBuffer(PartitionedRingBufferType bufferType, BufferBudget.Account account) {
+        return bufferType.createBuffer(MAX_PARTITIONS, INITIAL_BUFFER_CACHE_SIZE, BUFFER_SIZE, account);
+      }
+    },
+
+    /**
+     * The lanes the message pipeline buffers messages in: a fixed size high priority lane, and a growable
+     * normal priority lane the producers insert into.
+     */
+    PRIORITY_LANES {
+      @Override
+      PartitionedRingBuffer<Object> createBuffer(PartitionedRingBufferType bufferType, BufferBudget.Account account) {
+        int highPrioritySize = Math.min(HIGH_PRIORITY_BUFFER_CACHE_SIZE, BUFFER_SIZE);
+        return new PriorityLaneRingBuffer<>(
+            new PriorityLaneRingBuffer.Lane<>(bufferType.createBuffer(MAX_PARTITIONS, highPrioritySize,
+                highPrioritySize, account), HIGH_PRIORITY_OVERWRITE_POLICY),
+            new PriorityLaneRingBuffer.Lane<>(bufferType.createBuffer(MAX_PARTITIONS, INITIAL_BUFFER_CACHE_SIZE,
+                BUFFER_SIZE, account), NORMAL_PRIORITY_OVERWRITE_POLICY));
+      }
+    };
+
+    abstract PartitionedRingBuffer<Object> createBuffer(PartitionedRingBufferType bufferType,
+                                                        BufferBudget.Account account);
+  }
+}
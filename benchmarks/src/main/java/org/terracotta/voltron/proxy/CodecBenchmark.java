@@ -0,0 +1,97 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Platform Benchmarks.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.voltron.proxy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@link SerializationCodec} encoding and decoding a single value, i.e. a response, and
+ * the arguments of a call, i.e. a request, for small and large payloads.
+ * <p>
+ * Run with {@code java -jar benchmarks/target/benchmarks.jar CodecBenchmark}.
+ *
+ * @author Alex Snaps
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+  private static final Class<?>[] ARGUMENT_TYPES = {String.class, long.class};
+
+  @Param({"16", "1024"})
+  public int payloadSize;
+
+  private Codec codec;
+  private String value;
+  private Object[] arguments;
+  private byte[] encodedValue;
+  private byte[] encodedArguments;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    codec = new SerializationCodec();
+    value = payload(payloadSize);
+    arguments = new Object[] {value, 42L};
+    encodedValue = codec.encode(String.class, value);
+    encodedArguments = codec.encode(ARGUMENT_TYPES, arguments);
+  }
+
+  @Benchmark
+  public byte[] encodeValue() {
+    return codec.encode(String.class, value);
+  }
+
+  @Benchmark
+  public Object decodeValue() {
+    return codec.decode(encodedValue, String.class);
+  }
+
+  @Benchmark
+  public byte[] encodeArguments() {
+    return codec.encode(ARGUMENT_TYPES, arguments);
+  }
+
+  @Benchmark
+  public Object[] decodeArguments() {
+    return codec.decode(encodedArguments, ARGUMENT_TYPES);
+  }
+
+  static String payload(int size) {
+    char[] chars = new char[size];
+    Arrays.fill(chars, 'x');
+    return new String(chars);
+  }
+}
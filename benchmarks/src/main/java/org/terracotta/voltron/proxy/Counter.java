@@ -0,0 +1,49 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Platform Benchmarks.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.voltron.proxy;
+
+/**
+ * The proxied interface of the proxy benchmarks, with a call carrying primitives only and a call
+ * carrying a payload of a configurable size.
+ *
+ * @author Alex Snaps
+ */
+public interface Counter {
+
+  long add(long delta);
+
+  String echo(String value);
+
+  /**
+   * The server side of the benchmarks.
+   */
+  class Impl implements Counter {
+    private long value;
+
+    @Override
+    public synchronized long add(long delta) {
+      return value += delta;
+    }
+
+    @Override
+    public String echo(String value) {
+      return value;
+    }
+  }
+}
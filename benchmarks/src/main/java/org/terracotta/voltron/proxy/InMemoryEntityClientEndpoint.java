@@ -0,0 +1,122 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Platform Benchmarks.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.voltron.proxy;
+
+import org.terracotta.entity.ClientDescriptor;
+import org.terracotta.entity.EndpointDelegate;
+import org.terracotta.entity.EntityClientEndpoint;
+import org.terracotta.entity.InvocationBuilder;
+import org.terracotta.entity.InvokeFuture;
+import org.terracotta.entity.MessageCodec;
+import org.terracotta.voltron.proxy.server.ProxyInvoker;
+import org.terracotta.voltron.proxy.server.messages.ProxyEntityMessage;
+import org.terracotta.voltron.proxy.server.messages.ProxyEntityResponse;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link EntityClientEndpoint} invoking a {@link ProxyInvoker} in the calling thread, so that calls go
+ * through the full client and server side of the proxies, without any transport.
+ *
+ * @author Alex Snaps
+ */
+public class InMemoryEntityClientEndpoint implements EntityClientEndpoint {
+
+  private final ProxyInvoker<?> proxyInvoker;
+  private final ClientDescriptor clientDescriptor = new ClientDescriptor() {};
+
+  public InMemoryEntityClientEndpoint(ProxyInvoker<?> proxyInvoker) {
+    this.proxyInvoker = proxyInvoker;
+  }
+
+  public byte[] getEntityConfiguration() {
+    return new byte[0];
+  }
+
+  public void setDelegate(EndpointDelegate endpointDelegate) {
+  }
+
+  public InvocationBuilder beginInvoke() {
+    return new Invocation();
+  }
+
+  public byte[] getExtendedReconnectData() {
+    return new byte[0];
+  }
+
+  public void close() {
+  }
+
+  public void didCloseUnexpectedly() {
+  }
+
+  private final class Invocation implements InvocationBuilder {
+    private byte[] payload;
+
+    public InvocationBuilder ackReceived() {
+      return this;
+    }
+
+    public InvocationBuilder ackCompleted() {
+      return this;
+    }
+
+    public InvocationBuilder ackSent() {
+      return this;
+    }
+
+    public InvocationBuilder replicate(boolean replicate) {
+      return this;
+    }
+
+    public InvocationBuilder payload(byte[] payload) {
+      this.payload = payload;
+      return this;
+    }
+
+    public InvokeFuture<byte[]> invoke() {
+      MessageCodec<ProxyEntityMessage, ProxyEntityResponse> messageCodec = proxyInvoker.getMessageCodec();
+      return new CompletedFuture(messageCodec.serialize(proxyInvoker.invoke(clientDescriptor,
+          messageCodec.deserialize(payload))));
+    }
+  }
+
+  private static final class CompletedFuture implements InvokeFuture<byte[]> {
+    private final byte[] response;
+
+    private CompletedFuture(byte[] response) {
+      this.response = response;
+    }
+
+    public boolean isDone() {
+      return true;
+    }
+
+    public byte[] get() {
+      return response;
+    }
+
+    public byte[] getWithTimeout(long timeout, TimeUnit unit) {
+      return response;
+    }
+
+    public void interrupt() {
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Platform Benchmarks.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.voltron.proxy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terracotta.voltron.proxy.client.ClientProxyFactory;
+import org.terracotta.voltron.proxy.metrics.RecordingProxyMetrics;
+import org.terracotta.voltron.proxy.server.ProxyInvoker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a call from a client proxy to the server side {@link ProxyInvoker}, through an
+ * {@link InMemoryEntityClientEndpoint}: encoding and decoding on both ends, plus the reflective invocation.
+ * Each end records its own {@link ProxyMetrics} when metrics are recorded.
+ * <p>
+ * Run with {@code java -jar benchmarks/target/benchmarks.jar ProxyInvokeBenchmark}.
+ *
+ * @author Alex Snaps
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProxyInvokeBenchmark {
+
+  @Param({"16", "1024"})
+  public int payloadSize;
+
+  @Param({"false", "true"})
+  public boolean recordMetrics;
+
+  private Counter proxy;
+  private String value;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Codec codec = new SerializationCodec();
+    ProxyMetrics serverMetrics = recordMetrics ? new RecordingProxyMetrics() : ProxyMetrics.NONE;
+    ProxyMetrics clientMetrics = recordMetrics ? new RecordingProxyMetrics() : ProxyMetrics.NONE;
+    ProxyInvoker<Counter> proxyInvoker = new ProxyInvoker<Counter>(Counter.class, new Counter.Impl(), codec,
+        serverMetrics, null);
+    proxy = ClientProxyFactory.createProxy(Counter.class, Counter.class,
+        new InMemoryEntityClientEndpoint(proxyInvoker), codec, clientMetrics);
+    value = CodecBenchmark.payload(payloadSize);
+  }
+
+  @Benchmark
+  public long add() {
+    return proxy.add(1L);
+  }
+
+  @Benchmark
+  public String echo() {
+    return proxy.echo(value);
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Platform Benchmarks.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.voltron.proxy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terracotta.voltron.proxy.metrics.RecordingProxyMetrics;
+import org.terracotta.voltron.proxy.server.messages.ProxyEntityMessage;
+import org.terracotta.voltron.proxy.server.messages.ProxyEntityResponse;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@link ProxyMessageCodec} decoding requests and encoding responses on the server side,
+ * with and without {@link ProxyMetrics}, for small and large payloads.
+ * <p>
+ * Run with {@code java -jar benchmarks/target/benchmarks.jar ProxyMessageCodecBenchmark}.
+ *
+ * @author Alex Snaps
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProxyMessageCodecBenchmark {
+
+  @Param({"16", "1024"})
+  public int payloadSize;
+
+  @Param({"false", "true"})
+  public boolean recordMetrics;
+
+  private ProxyMessageCodec messageCodec;
+  private byte[] request;
+  private ProxyEntityResponse response;
+
+  @Setup(Level.Trial)
+  public void setup() throws NoSuchMethodException {
+    Codec codec = new SerializationCodec();
+    messageCodec = new ProxyMessageCodec(codec, recordMetrics ? new RecordingProxyMetrics() : ProxyMetrics.NONE,
+        Counter.class);
+    Method echo = Counter.class.getMethod("echo", String.class);
+    String value = CodecBenchmark.payload(payloadSize);
+    request = request(codec, echo, value);
+    response = ProxyEntityResponse.response(echo, String.class, value);
+  }
+
+  @Benchmark
+  public ProxyEntityMessage deserializeRequest() {
+    return messageCodec.deserialize(request);
+  }
+
+  @Benchmark
+  public byte[] serializeResponse() {
+    return messageCodec.serialize(response);
+  }
+
+  /**
+   * Encode a request the way the client proxies do: the identifier of the method followed by its arguments.
+   */
+  private static byte[] request(Codec codec, Method method, Object... arguments) {
+    byte methodIdentifier = 0;
+    for (Method m : CommonProxyFactory.getSortedMethods(Counter.class)) {
+      if (m.equals(method)) {
+        break;
+      }
+      methodIdentifier++;
+    }
+    byte[] encodedArguments = codec.encode(method.getParameterTypes(), arguments);
+    byte[] request = new byte[encodedArguments.length + 1];
+    request[0] = methodIdentifier;
+    System.arraycopy(encodedArguments, 0, request, 1, encodedArguments.length);
+    return request;
+  }
+}
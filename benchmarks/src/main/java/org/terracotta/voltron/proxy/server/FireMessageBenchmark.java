@@ -0,0 +1,114 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Platform Benchmarks.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.voltron.proxy.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terracotta.entity.ClientCommunicator;
+import org.terracotta.entity.ClientDescriptor;
+import org.terracotta.voltron.proxy.Counter;
+import org.terracotta.voltron.proxy.ProxyMetrics;
+import org.terracotta.voltron.proxy.SerializationCodec;
+import org.terracotta.voltron.proxy.metrics.RecordingProxyMetrics;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@link ProxyInvoker} firing a message to its clients, which encodes the message once per
+ * client, for a growing number of clients. The clients acknowledge the messages immediately, so this
+ * excludes the transport.
+ * <p>
+ * Run with {@code java -jar benchmarks/target/benchmarks.jar FireMessageBenchmark}.
+ *
+ * @author Alex Snaps
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FireMessageBenchmark {
+  private static final String MESSAGE = "message";
+
+  @Param({"1", "8", "64"})
+  public int clientCount;
+
+  @Param({"false", "true"})
+  public boolean recordMetrics;
+
+  private ProxyInvoker<Counter> proxyInvoker;
+  private ClientDescriptor[] clients;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    ProxyMetrics metrics = recordMetrics ? new RecordingProxyMetrics() : ProxyMetrics.NONE;
+    proxyInvoker = new ProxyInvoker<Counter>(Counter.class, new Counter.Impl(), new SerializationCodec(), metrics,
+        new AcknowledgingCommunicator(), String.class);
+    clients = new ClientDescriptor[clientCount];
+    for (int i = 0; i < clientCount; i++) {
+      clients[i] = new ClientDescriptor() {};
+      proxyInvoker.addClient(clients[i]);
+    }
+  }
+
+  @Benchmark
+  public void fireMessage() {
+    proxyInvoker.fireMessage(MESSAGE);
+  }
+
+  @Benchmark
+  public void fireAndForgetMessage() {
+    proxyInvoker.fireAndForgetMessage(MESSAGE, clients);
+  }
+
+  /**
+   * Acknowledges every message as soon as it is sent.
+   */
+  private static final class AcknowledgingCommunicator implements ClientCommunicator {
+    private final FutureTask<Void> acknowledged;
+
+    private AcknowledgingCommunicator() {
+      acknowledged = new FutureTask<Void>(new Runnable() {
+        public void run() {
+        }
+      }, null);
+      acknowledged.run();
+    }
+
+    public void sendNoResponse(ClientDescriptor clientDescriptor, byte[] payload) {
+    }
+
+    public Future<Void> send(ClientDescriptor clientDescriptor, byte[] payload) {
+      return acknowledged;
+    }
+  }
+}
@@ -27,6 +27,8 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.terracotta.consensus.entity.Nomination;
+import org.terracotta.voltron.proxy.metrics.LogLinearHistogram;
+import org.terracotta.voltron.proxy.metrics.StripedCounter;
 
 /**
  * @author Alex Snaps
@@ -36,6 +38,7 @@ public class LeaderElector<K, V> {
   private final PermitFactory<V> factory;
   private final ConcurrentMap<K, ElectionQueue<K, V>> leaderQueues = new ConcurrentHashMap<K, ElectionQueue<K, V>>();
   private DelistListener<K, V> listener;
+  private final ElectionMetrics metrics = new ElectionMetrics();
 
   public LeaderElector(PermitFactory<V> factory) {
     this.factory = factory;
@@ -43,7 +46,7 @@ public class LeaderElector<K, V> {
 
   public Nomination enlist(K key, V value) {
     leaderQueues.putIfAbsent(key, new ElectionQueue<K, V>(key, factory,
-        listener));
+        listener, metrics));
     return leaderQueues.get(key).runElectionOrAdd(value);
   }
 
@@ -75,6 +78,51 @@ public class LeaderElector<K, V> {
     }
   }
 
+  /**
+   * @return number of elections started, including the ones run when a leader delists
+   */
+  public long getElectionsStarted() {
+    return metrics.started.sum();
+  }
+
+  /**
+   * @return number of elections whose nominee accepted the leadership
+   */
+  public long getElectionsCompleted() {
+    return metrics.completed.sum();
+  }
+
+  /**
+   * @return time in nanoseconds from the start of the completed elections to their acceptance
+   */
+  public LogLinearHistogram getElectionDuration() {
+    return metrics.duration;
+  }
+
+  /**
+   * @return number of keys with enlisted values
+   */
+  public int getElectionCount() {
+    return leaderQueues.size();
+  }
+
+  /**
+   * @return number of values enlisted across all keys, including the leaders
+   */
+  public int getEnlistedCount() {
+    int count = 0;
+    for (ElectionQueue<K, V> queue : leaderQueues.values()) {
+      count += queue.leaderQueue.size();
+    }
+    return count;
+  }
+
+  private static final class ElectionMetrics {
+    private final StripedCounter started = new StripedCounter();
+    private final StripedCounter completed = new StripedCounter();
+    private final LogLinearHistogram duration = new LogLinearHistogram();
+  }
+
   private enum ElectionState {
     RUNNING, ELECTED, NOT_ELECTED;
   }
@@ -86,16 +134,25 @@ public class LeaderElector<K, V> {
     private ElectionState state = ElectionState.NOT_ELECTED;
     private final DelistListener listener;
     private final ReentrantLock lock = new ReentrantLock();
+    private final ElectionMetrics metrics;
     private Nomination currentPermit;
+    private long electionStart;
 
     public ElectionQueue(K key, PermitFactory<V> factory,
-        DelistListener listener) {
+        DelistListener listener, ElectionMetrics metrics) {
       if (listener == null) {
         throw new IllegalArgumentException("Listener cannot be null.");
       }
       this.key = key;
       this.listener = listener;
       this.factory = factory;
+      this.metrics = metrics;
+    }
+
+    private Nomination startElection(V value) {
+      metrics.started.increment();
+      electionStart = System.nanoTime();
+      return currentPermit = factory.createPermit(value);
     }
 
     private Nomination runElectionOrAdd(V value) {
@@ -112,7 +169,7 @@ public class LeaderElector<K, V> {
           leaderQueue.offer(value);
           if (leaderQueue.peek().equals(value)) {
             state = ElectionState.RUNNING;
-            return currentPermit = factory.createPermit(value);
+            return startElection(value);
           }
           // this should not happen
           return null;
@@ -146,6 +203,8 @@ public class LeaderElector<K, V> {
         }
         if (state == ElectionState.RUNNING) {
           state = ElectionState.ELECTED;
+          metrics.completed.increment();
+          metrics.duration.record(System.nanoTime() - electionStart);
         } else {
           throw new AssertionError("Illegal Election state");
         }
@@ -163,8 +222,7 @@ public class LeaderElector<K, V> {
           V val = leaderQueue.peek();
           if (val != null) {
             state = ElectionState.RUNNING;
-            listener.onDelist(key, val,
-                currentPermit = factory.createPermit(val));
+            listener.onDelist(key, val, startElection(val));
           }
         } else {
           leaderQueue.remove(value);
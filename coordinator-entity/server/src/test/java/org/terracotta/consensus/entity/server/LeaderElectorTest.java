@@ -150,6 +150,29 @@ public class LeaderElectorTest {
     verify(listener, times(2));
   }
   
+  @Test
+  public void testElectionMetrics() {
+
+    Nomination permit1 = leaderElector.enlist("e1", "c1");
+    leaderElector.enlist("e1", "c2");
+    leaderElector.enlist("e2", "c1");
+
+    assertThat(leaderElector.getElectionsStarted(), is(2L));
+    assertThat(leaderElector.getElectionsCompleted(), is(0L));
+    assertThat(leaderElector.getElectionCount(), is(2));
+    assertThat(leaderElector.getEnlistedCount(), is(3));
+
+    leaderElector.accept("e1", permit1);
+
+    assertThat(leaderElector.getElectionsCompleted(), is(1L));
+    assertThat(leaderElector.getElectionDuration().getCount(), is(1L));
+
+    leaderElector.delist("e1", "c1");
+
+    assertThat(leaderElector.getElectionsStarted(), is(3L));
+    assertThat(leaderElector.getEnlistedCount(), is(2));
+  }
+
   @After
   public void tearDown() {
     leaderElector = null;
@@ -21,9 +21,17 @@ package org.terracotta.voltron.management;
 import org.terracotta.voltron.management.consumer.MessageConsumerListener;
 import org.terracotta.voltron.management.producer.MessageProducer;
 
+import java.util.function.Function;
+
 /**
  * The message delivery infrastructure. Handles creation of producers and consumers for
  * one or more type(s) of messages.
+ * <p>
+ * Delivery can optionally be flow controlled through credits. The consumer grants credits through
+ * {@link org.terracotta.voltron.management.consumer.MessageConsumer#grantCredits(int)} as and when it
+ * is ready to accept more messages (e.g. on acknowledgement of previously posted messages). Producers
+ * query {@link MessageProducer#getRemainingCapacity()} to throttle themselves accordingly. Both sides
+ * expose their backlog of undelivered messages.
  *
  * @author RKAV
  */
@@ -41,9 +49,27 @@ public interface MessageDeliveryInfrastructureService {
    *                    anything else for that matter.
    *
    * @return a message producer
+   * @throws IllegalStateException if producers of messages of this type were already created with conflation
    */
   <M> MessageProducer<M> createMessageProducer(Class<M> messageType);
 
+  /**
+   * Create the message producer for a given type of state messages, where only the latest message per key
+   * matters (e.g. a gauge of a given entity). Messages of the same key pushed since the last collection are
+   * conflated, so that only the latest one of them is delivered.
+   * <p>
+   * Whether the messages of a type are conflated, and by which key function, is decided by the first producer
+   * created for that type. All further producers of that type must be created through this method as well, and
+   * their messages are conflated by the key function of the first producer, theirs is ignored.
+   *
+   * @param messageType the type of messages that will be produced
+   * @param keyFunction extracts the key of a message, which must not be null
+   *
+   * @return a message producer
+   * @throws IllegalStateException if producers of messages of this type were already created without conflation
+   */
+  <M> MessageProducer<M> createConflatingMessageProducer(Class<M> messageType, Function<? super M, ?> keyFunction);
+
   /**
    * Allows consumers (typically management entities) to get a message consumer
    * for consuming messages (such as statistics) that are coming from managed
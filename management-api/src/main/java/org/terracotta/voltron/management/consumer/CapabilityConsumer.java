@@ -45,4 +45,25 @@ public interface CapabilityConsumer {
    * @return a map of capabilities, where the key is the {@code entityName}.
    */
   Map<String, Collection<Capability>> getCapabilities();
+
+  /**
+   * Get the current version of the registry. The version changes whenever capabilities or contexts
+   * are added or removed.
+   *
+   * @return the current version.
+   */
+  long getVersion();
+
+  /**
+   * Get the capabilities and contexts added or removed since the given version of the registry.
+   * <p>
+   * Consumers polling the registry should use this, rather than {@link #getContexts()} and
+   * {@link #getCapabilities()}, so that only the changes are transferred. If the changes since
+   * {@code version} are no longer known (or the version is unknown, e.g. -1 on the first poll),
+   * the whole registry is returned as a full snapshot.
+   *
+   * @param version the version of the registry the consumer last saw
+   * @return the changes since {@code version}, along with the current version.
+   */
+  RegistryDelta getChangesSince(long version);
 }
@@ -0,0 +1,56 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management API.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.voltron.management.consumer;
+
+import java.util.function.Consumer;
+
+/**
+ * A pluggable stage that rolls up the buffered messages before they are posted to
+ * the {@link MessageListener}.
+ * <p>
+ * Messages collected from the managed entities are passed to the aggregator as they are collected.
+ * At the end of each window, the aggregator is flushed and only the messages it emits (typically
+ * compact summaries of the window) are posted to the listener.
+ * <p>
+ * Aggregators are only invoked from a single thread at a time.
+ *
+ * @author RKAV
+ */
+public interface MessageAggregator<M> {
+  /**
+   * Get the length of the aggregation window.
+   *
+   * @return the window length in milliseconds
+   */
+  long getWindowMillis();
+
+  /**
+   * Add a collected message to the current window.
+   *
+   * @param message the collected message
+   */
+  void accept(M message);
+
+  /**
+   * Emit the aggregated messages of the current window and start a new window.
+   *
+   * @param sink the consumer of the aggregated messages
+   */
+  void flush(Consumer<? super M> sink);
+}
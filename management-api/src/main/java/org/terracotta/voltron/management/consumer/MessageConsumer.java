@@ -20,6 +20,11 @@ package org.terracotta.voltron.management.consumer;
 
 /**
  * Interface provided for a management message consumer.
+ * <p>
+ * Messages are posted to the callback set up through
+ * {@link #setupPeriodicManagementMessageCollector(MessageListener)}. Further consumers of the same messages
+ * (e.g. a local metrics exporter alongside the management entity) {@link #subscribe(MessageListener) subscribe}
+ * to them, without the messages being copied for each of them.
  *
  * @author RKAV
  */
@@ -32,4 +37,61 @@ public interface MessageConsumer<M> {
    * @param callback The callback interface that will be issued when stats/events arrives
    */
   void setupPeriodicManagementMessageCollector(MessageListener<M> callback);
+
+  /**
+   * Setup a callback interface, that receives the messages rolled up by the given aggregator instead
+   * of the raw messages.
+   *
+   * @param callback The callback interface that will be issued with the aggregated messages
+   * @param aggregator The aggregator rolling up the messages of each window
+   */
+  void setupPeriodicManagementMessageCollector(MessageListener<M> callback, MessageAggregator<M> aggregator);
+
+  /**
+   * Subscribe an additional callback, receiving all messages buffered from now on.
+   * <p>
+   * Each subscription reads the messages at its own pace. A subscription falling too far behind loses its
+   * oldest messages, without holding back the other consumers.
+   *
+   * @param callback The callback interface that will be issued when stats/events arrives
+   * @return the subscription, to be closed once the messages are no longer needed
+   */
+  MessageSubscription<M> subscribe(MessageListener<M> callback);
+
+  /**
+   * Subscribe an additional callback, receiving the messages rolled up by the given aggregator.
+   *
+   * @param callback The callback interface that will be issued with the aggregated messages
+   * @param aggregator The aggregator rolling up the messages of each window, not shared with other consumers
+   * @return the subscription, to be closed once the messages are no longer needed
+   * @see #subscribe(MessageListener)
+   */
+  MessageSubscription<M> subscribe(MessageListener<M> callback, MessageAggregator<M> aggregator);
+
+  /**
+   * Grant credits for the delivery of more messages.
+   * <p>
+   * Each message posted to the callback consumes one credit. Until credits are granted for
+   * the first time, messages are delivered without flow control. Once granted, messages are only
+   * posted while credits are available and delivery resumes as soon as further credits are granted,
+   * instead of the consumer having to reject posts through {@link PreviousMessageAckPendingException}.
+   *
+   * @param credits number of additional messages the consumer is ready to accept, must be positive
+   */
+  void grantCredits(int credits);
+
+  /**
+   * Get the credits that are not consumed yet.
+   *
+   * @return the number of messages that can still be posted, {@link Integer#MAX_VALUE} if
+   *         no credits were ever granted
+   */
+  int getAvailableCredits();
+
+  /**
+   * Get the number of messages that are buffered and are waiting to be posted to the callback.
+   *
+   * @return the backlog of messages
+   */
+  int getBacklog();
 }
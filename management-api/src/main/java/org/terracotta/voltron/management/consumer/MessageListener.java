@@ -44,10 +44,39 @@ public interface MessageListener<M> {
    * <p>
    * On return from this method, the management messages are cleared in the
    * unless an exception was thrown by the consumer for this method.
+   * <p>
+   * The passed in collection is reused by the management service across invocations and is
+   * only valid for the duration of this call. Consumers that need to retain the messages beyond
+   * this call must copy them.
    *
    * @param bufferedMessages the messages that were buffered.
    * @throws PreviousMessageAckPendingException if the message was not send out as the previous
    *         post is still not send out.
    */
   void postMessages(Collection<M> bufferedMessages) throws PreviousMessageAckPendingException;
+
+  /**
+   * Same as {@link #postMessages(Collection)}, along with the sequence numbers of the posted messages.
+   * <p>
+   * Messages are numbered consecutively in the order they are posted, skipping one number for every
+   * message that was lost (i.e. overwritten or discarded before it could be posted), so that the
+   * sequence numbers of the posted messages have a gap wherever messages were lost.
+   * <p>
+   * If this method throws, the same messages are posted again later, with the same {@code firstSequence}
+   * and {@code lostMessages}, possibly followed by further messages.
+   * <p>
+   * Listeners interested in gaps override this method, by default it delegates to
+   * {@link #postMessages(Collection)}.
+   *
+   * @param bufferedMessages the messages that were buffered.
+   * @param firstSequence the sequence number of the first of the messages.
+   * @param lostMessages the number of messages lost since the previously posted messages, i.e. the gap
+   *                     in sequence numbers right before {@code firstSequence}.
+   * @throws PreviousMessageAckPendingException if the message was not send out as the previous
+   *         post is still not send out.
+   */
+  default void postMessages(Collection<M> bufferedMessages, long firstSequence, long lostMessages)
+      throws PreviousMessageAckPendingException {
+    postMessages(bufferedMessages);
+  }
 }
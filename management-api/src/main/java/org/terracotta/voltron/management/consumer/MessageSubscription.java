@@ -0,0 +1,65 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management API.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.voltron.management.consumer;
+
+/**
+ * An additional consumer of the messages of a message type, see
+ * {@link MessageConsumer#subscribe(MessageListener, MessageAggregator)}.
+ * <p>
+ * Each subscription reads the messages at its own pace and is flow controlled by its own credits.
+ *
+ * @author RKAV
+ */
+public interface MessageSubscription<M> extends AutoCloseable {
+  /**
+   * Grant credits for the delivery of more messages to this subscription.
+   *
+   * @param credits number of additional messages the subscriber is ready to accept, must be positive
+   * @see MessageConsumer#grantCredits(int)
+   */
+  void grantCredits(int credits);
+
+  /**
+   * Get the credits of this subscription that are not consumed yet.
+   *
+   * @return the number of messages that can still be posted, {@link Integer#MAX_VALUE} if
+   *         no credits were ever granted
+   */
+  int getAvailableCredits();
+
+  /**
+   * Get the number of messages that are waiting to be posted to this subscription.
+   *
+   * @return the backlog of messages
+   */
+  int getBacklog();
+
+  /**
+   * Get the number of messages this subscription lost as it fell too far behind.
+   *
+   * @return the number of lost messages
+   */
+  long getLostMessages();
+
+  /**
+   * Stop posting messages to this subscription.
+   */
+  @Override
+  void close();
+}
@@ -0,0 +1,110 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management API.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.voltron.management.consumer;
+
+import org.terracotta.management.capabilities.Capability;
+import org.terracotta.management.context.ContextContainer;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * The changes to the capabilities and contexts of the registry between two versions of the registry.
+ * <p>
+ * Consumers polling the registry apply the removals and then the additions of the delta to their
+ * copy of the registry and keep the {@link #getVersion() version} of the delta for the next poll.
+ * If the delta is a {@link #isFullSnapshot() full snapshot}, the consumer must first discard its copy,
+ * as the changes since its version are no longer known.
+ *
+ * @author RKAV
+ */
+public final class RegistryDelta {
+  private final long version;
+  private final boolean fullSnapshot;
+  private final Collection<ContextContainer> addedContexts;
+  private final Collection<ContextContainer> removedContexts;
+  private final Map<String, Collection<Capability>> addedCapabilities;
+  private final Map<String, Collection<Capability>> removedCapabilities;
+
+  /**
+   * Create a delta.
+   *
+   * @param version the version of the registry after the changes
+   * @param fullSnapshot true if the additions are the whole registry
+   * @param addedContexts contexts added since the previous version
+   * @param removedContexts contexts removed since the previous version
+   * @param addedCapabilities capabilities added since the previous version, by entity name
+   * @param removedCapabilities capabilities removed since the previous version, by entity name
+   */
+  public RegistryDelta(long version, boolean fullSnapshot,
+                       Collection<ContextContainer> addedContexts, Collection<ContextContainer> removedContexts,
+                       Map<String, Collection<Capability>> addedCapabilities,
+                       Map<String, Collection<Capability>> removedCapabilities) {
+    this.version = version;
+    this.fullSnapshot = fullSnapshot;
+    this.addedContexts = addedContexts;
+    this.removedContexts = removedContexts;
+    this.addedCapabilities = addedCapabilities;
+    this.removedCapabilities = removedCapabilities;
+  }
+
+  /**
+   * @return the version of the registry after the changes
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * @return true if the additions are the whole registry, rather than the changes since the requested version
+   */
+  public boolean isFullSnapshot() {
+    return fullSnapshot;
+  }
+
+  /**
+   * @return true if nothing changed
+   */
+  public boolean isEmpty() {
+    return addedContexts.isEmpty() && removedContexts.isEmpty() && addedCapabilities.isEmpty()
+           && removedCapabilities.isEmpty();
+  }
+
+  public Collection<ContextContainer> getAddedContexts() {
+    return addedContexts;
+  }
+
+  public Collection<ContextContainer> getRemovedContexts() {
+    return removedContexts;
+  }
+
+  /**
+   * @return the capabilities added, where the key is the {@code entityName}
+   */
+  public Map<String, Collection<Capability>> getAddedCapabilities() {
+    return addedCapabilities;
+  }
+
+  /**
+   * @return the capabilities removed, where the key is the {@code entityName}
+   */
+  public Map<String, Collection<Capability>> getRemovedCapabilities() {
+    return removedCapabilities;
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management API.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.voltron.management.producer;
+
+/**
+ * Priority of a management message.
+ * <p>
+ * Messages of each priority are buffered in a separate lane, so that a flood of messages of a lower
+ * priority (e.g. statistics samples) cannot overwrite messages of a higher priority (e.g. alerts or
+ * state changes). Higher priority messages are delivered first.
+ *
+ * @author RKAV
+ */
+public enum MessagePriority {
+  /**
+   * Rare but important messages such as alerts and state changes.
+   */
+  HIGH,
+
+  /**
+   * Regular messages such as periodic statistics.
+   */
+  NORMAL
+}
@@ -35,4 +35,32 @@ public interface MessageProducer<M> {
    * @param message A management message that is periodically pushed.
    */
   void pushManagementMessage(M message);
+
+  /**
+   * Push a message with the given priority.
+   * <p>
+   * Messages pushed through {@link #pushManagementMessage(Object)} are of {@link MessagePriority#NORMAL} priority.
+   *
+   * @param message A management message.
+   * @param priority the priority of the message
+   */
+  void pushManagementMessage(M message, MessagePriority priority);
+
+  /**
+   * Get the number of messages this producer can push before either unread messages get
+   * overwritten or the credits granted by the consumer are exhausted.
+   * <p>
+   * Producers that push messages periodically (e.g statistics) can use this to adapt their
+   * rate of sampling, instead of losing messages.
+   *
+   * @return the remaining capacity, 0 if messages pushed now will not be delivered in time
+   */
+  int getRemainingCapacity();
+
+  /**
+   * Get the number of messages pushed by this producer that are not yet collected by the consumer.
+   *
+   * @return the backlog of messages
+   */
+  int getBacklog();
 }
@@ -19,6 +19,7 @@
 package org.terracotta.voltron.management.producer.registry;
 
 import org.terracotta.management.capabilities.Capability;
+import org.terracotta.management.context.Context;
 import org.terracotta.management.context.ContextContainer;
 import org.terracotta.voltron.management.common.providers.ManagementProvider;
 
@@ -60,6 +61,15 @@ public interface ManagedObjectRegistry<O> {
    */
   void register(O managedObject);
 
+  /**
+   * Register a managed object instance in the management registry, along with the context attributes
+   * that identify it (e.g. the name of a cache) within its managed entity.
+   *
+   * @param managedObject the managed object.
+   * @param context the context attributes of the managed object.
+   */
+  void register(O managedObject, Context context);
+
   /**
    * Unregister an object from the management registry.
    *
@@ -67,6 +77,14 @@ public interface ManagedObjectRegistry<O> {
    */
   void unregister(O managedObject);
 
+  /**
+   * Find the registered managed objects whose context has all the attributes of the given context.
+   *
+   * @param context the context to match, an empty context matches all managed objects.
+   * @return the matching managed objects.
+   */
+  Collection<O> findManagedObjects(Context context);
+
   /**
    * Get the management capabilities of the registered objects.
    *
@@ -0,0 +1,67 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.entity.statistics;
+
+import org.terracotta.consensus.entity.server.LeaderElector;
+import org.terracotta.management.context.Context;
+import org.terracotta.management.service.statistics.StatisticsCollection;
+import org.terracotta.management.service.statistics.StatisticsSampler;
+
+import static org.terracotta.management.service.statistics.IntervalStatistics.intervalMean;
+import static org.terracotta.management.service.statistics.IntervalStatistics.rate;
+
+/**
+ * Bridges the counters of the {@link LeaderElector} of a coordinator entity into a {@link StatisticsCollection},
+ * so that elections are sampled by the {@link StatisticsSampler} like any other statistics:
+ * <ul>
+ *   <li>{@code elections.started} and {@code elections.completed}: number of elections started and won</li>
+ *   <li>{@code elections.rate}: elections started per second</li>
+ *   <li>{@code elections.duration}: mean duration of the elections completed during the interval</li>
+ *   <li>{@code elections.keys}: number of keys elections were held for</li>
+ *   <li>{@code elections.enlisted}: number of candidates queued across all keys</li>
+ * </ul>
+ *
+ * @author RKAV
+ */
+public final class LeaderElectorStatistics {
+  private LeaderElectorStatistics() {
+  }
+
+  /**
+   * Create the collection of the statistics of a leader elector.
+   *
+   * @param context the context of the statistics, usually identifying the coordinator entity
+   * @param leaderElector the leader elector
+   * @param sampleIntervalMillis interval between two samples, in milliseconds
+   * @param batchSize number of samples published together
+   * @return the collection, to be started on a {@link StatisticsSampler}
+   */
+  public static StatisticsCollection newCollection(Context context, LeaderElector<?, ?> leaderElector,
+                                                   long sampleIntervalMillis, int batchSize) {
+    return new StatisticsCollection(context, sampleIntervalMillis, batchSize)
+        .addLongStatistic("elections.started", "count", leaderElector::getElectionsStarted)
+        .addLongStatistic("elections.completed", "count", leaderElector::getElectionsCompleted)
+        .addDoubleStatistic("elections.rate", "per second", rate(leaderElector::getElectionsStarted))
+        .addDoubleStatistic("elections.duration", "nanoseconds",
+            intervalMean(() -> leaderElector.getElectionDuration().getTotal(),
+                () -> leaderElector.getElectionDuration().getCount()))
+        .addLongStatistic("elections.keys", "count", leaderElector::getElectionCount)
+        .addLongStatistic("elections.enlisted", "count", leaderElector::getEnlistedCount);
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.entity.statistics;
+
+import org.terracotta.management.context.Context;
+import org.terracotta.management.service.statistics.StatisticsCollection;
+import org.terracotta.management.service.statistics.StatisticsSampler;
+import org.terracotta.voltron.proxy.CommonProxyFactory;
+import org.terracotta.voltron.proxy.metrics.LogLinearHistogram;
+import org.terracotta.voltron.proxy.metrics.MessageMetrics;
+import org.terracotta.voltron.proxy.metrics.MethodMetrics;
+import org.terracotta.voltron.proxy.metrics.RecordingProxyMetrics;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+import static org.terracotta.management.service.statistics.IntervalStatistics.intervalMean;
+import static org.terracotta.management.service.statistics.IntervalStatistics.rate;
+
+/**
+ * Bridges the {@link RecordingProxyMetrics} of an entity proxy into a {@link StatisticsCollection}, so that
+ * the calls made through the proxy are sampled by the {@link StatisticsSampler} like any other statistics.
+ * <p>
+ * For each proxied method, named after the method (or its signature, when overloaded), the collection holds:
+ * <ul>
+ *   <li>{@code <method>.calls}: number of completed calls</li>
+ *   <li>{@code <method>.rate}: completed calls per second</li>
+ *   <li>{@code <method>.latency}: mean latency of the calls completed during the interval</li>
+ *   <li>{@code <method>.inFlight}: number of asynchronous calls in flight</li>
+ *   <li>{@code <method>.requestSize} and {@code <method>.responseSize}: mean encoded sizes during the interval</li>
+ * </ul>
+ * For each type of message fired to the clients, named after the simple name of the type:
+ * <ul>
+ *   <li>{@code <type>.fired}: number of fired messages</li>
+ *   <li>{@code <type>.rate}: fired messages per second</li>
+ *   <li>{@code <type>.fanOutLatency}: mean time taken to deliver a message to all its recipients during the interval</li>
+ *   <li>{@code <type>.recipients}: mean number of recipients of the messages fired during the interval</li>
+ * </ul>
+ * The metrics of a method or a message type only exist once it is used, until then its statistics are 0.
+ *
+ * @author RKAV
+ */
+public final class ProxyStatistics {
+  private ProxyStatistics() {
+  }
+
+  /**
+   * Create the collection of the statistics of an entity proxy.
+   *
+   * @param context the context of the statistics, usually identifying the entity
+   * @param metrics the metrics recorded by the proxy
+   * @param sampleIntervalMillis interval between two samples, in milliseconds
+   * @param batchSize number of samples published together
+   * @param proxyType the proxied interface
+   * @param messageTypes the types of the messages fired by the entity to its clients
+   * @return the collection, to be started on a {@link StatisticsSampler}
+   */
+  public static StatisticsCollection newCollection(Context context, RecordingProxyMetrics metrics,
+                                                   long sampleIntervalMillis, int batchSize,
+                                                   Class<?> proxyType, Class<?>... messageTypes) {
+    StatisticsCollection collection = new StatisticsCollection(context, sampleIntervalMillis, batchSize);
+    SortedSet<Method> methods = CommonProxyFactory.getSortedMethods(proxyType);
+    Set<String> overloaded = overloadedNames(methods);
+    for (Method method : methods) {
+      String name = overloaded.contains(method.getName()) ? signatureOf(method) : method.getName();
+      Function<RecordingProxyMetrics, MethodMetrics> lookup = m -> m.getMethodMetrics(method);
+      collection
+          .addLongStatistic(name + ".calls", "count", of(metrics, lookup, MethodMetrics::getCalls))
+          .addDoubleStatistic(name + ".rate", "per second", rate(of(metrics, lookup, MethodMetrics::getCalls)))
+          .addDoubleStatistic(name + ".latency", "nanoseconds",
+              meanOf(metrics, lookup, MethodMetrics::getLatency))
+          .addLongStatistic(name + ".inFlight", "count", of(metrics, lookup, MethodMetrics::getInFlight))
+          .addDoubleStatistic(name + ".requestSize", "bytes", meanOf(metrics, lookup, MethodMetrics::getRequestSize))
+          .addDoubleStatistic(name + ".responseSize", "bytes",
+              meanOf(metrics, lookup, MethodMetrics::getResponseSize));
+    }
+    for (Class<?> messageType : messageTypes) {
+      String name = messageType.getSimpleName();
+      Function<RecordingProxyMetrics, MessageMetrics> lookup = m -> m.getMessageMetrics(messageType);
+      collection
+          .addLongStatistic(name + ".fired", "count", of(metrics, lookup, MessageMetrics::getFired))
+          .addDoubleStatistic(name + ".rate", "per second", rate(of(metrics, lookup, MessageMetrics::getFired)))
+          .addDoubleStatistic(name + ".fanOutLatency", "nanoseconds",
+              meanOf(metrics, lookup, MessageMetrics::getFanOutLatency))
+          .addDoubleStatistic(name + ".recipients", "count",
+              intervalMean(of(metrics, lookup, MessageMetrics::getSent), of(metrics, lookup, MessageMetrics::getFired)));
+    }
+    return collection;
+  }
+
+  private static <M> LongSupplier of(RecordingProxyMetrics metrics, Function<RecordingProxyMetrics, M> lookup,
+                                     ToLongFunction<M> value) {
+    return () -> {
+      M m = lookup.apply(metrics);
+      return m == null ? 0L : value.applyAsLong(m);
+    };
+  }
+
+  private static <M> DoubleSupplier meanOf(RecordingProxyMetrics metrics, Function<RecordingProxyMetrics, M> lookup,
+                                           Function<M, LogLinearHistogram> histogram) {
+    return intervalMean(of(metrics, lookup, m -> histogram.apply(m).getTotal()),
+        of(metrics, lookup, m -> histogram.apply(m).getCount()));
+  }
+
+  private static Set<String> overloadedNames(Set<Method> methods) {
+    Set<String> names = new HashSet<>();
+    Set<String> overloaded = new HashSet<>();
+    for (Method method : methods) {
+      if (!names.add(method.getName())) {
+        overloaded.add(method.getName());
+      }
+    }
+    return overloaded;
+  }
+
+  private static String signatureOf(Method method) {
+    StringBuilder signature = new StringBuilder(method.getName()).append('(');
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    for (int i = 0; i < parameterTypes.length; i++) {
+      if (i > 0) {
+        signature.append(',');
+      }
+      signature.append(parameterTypes[i].getSimpleName());
+    }
+    return signature.append(')').toString();
+  }
+}
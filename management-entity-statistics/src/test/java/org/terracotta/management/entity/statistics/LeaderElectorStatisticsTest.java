@@ -0,0 +1,74 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.entity.statistics;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terracotta.consensus.entity.Nomination;
+import org.terracotta.consensus.entity.server.DelistListener;
+import org.terracotta.consensus.entity.server.LeaderElector;
+import org.terracotta.consensus.entity.server.PermitFactory;
+import org.terracotta.management.context.Context;
+import org.terracotta.management.service.statistics.SampleSeries;
+import org.terracotta.management.service.statistics.StatisticsCollection;
+import org.terracotta.management.service.statistics.StatisticsCollectionAccess;
+import org.terracotta.management.stats.ContextualStatistics;
+
+/**
+ * Test sampling the counters of a leader elector.
+ *
+ * @author RKAV
+ */
+public class LeaderElectorStatisticsTest {
+  private static final Context CONTEXT = Context.create("entityName", "coordinator1");
+
+  @Test
+  public void testElectionStatistics() {
+    LeaderElector<String, String> leaderElector = new LeaderElector<>(new PermitFactory<String>() {
+      @Override
+      public Nomination createPermit(String candidate) {
+        return new Nomination(1L);
+      }
+    });
+    leaderElector.setListener(new DelistListener<String, String>() {
+      @Override
+      public void onDelist(String key, String value, Nomination permit) {
+      }
+    });
+    StatisticsCollection collection = LeaderElectorStatistics.newCollection(CONTEXT, leaderElector, 10, 4);
+
+    StatisticsCollectionAccess.sample(collection, 100);
+    Nomination permit = leaderElector.enlist("key1", "client1");
+    leaderElector.enlist("key1", "client2");
+    leaderElector.accept("key1", permit);
+    StatisticsCollectionAccess.sample(collection, 101);
+
+    ContextualStatistics batch = StatisticsCollectionAccess.drain(collection);
+    Assert.assertEquals(0, series(batch, "elections.started").getLongValue(0));
+    Assert.assertEquals(1, series(batch, "elections.started").getLongValue(1));
+    Assert.assertEquals(1, series(batch, "elections.completed").getLongValue(1));
+    Assert.assertEquals(1, series(batch, "elections.keys").getLongValue(1));
+    Assert.assertEquals(2, series(batch, "elections.enlisted").getLongValue(1));
+    Assert.assertTrue(series(batch, "elections.duration").getDoubleValue(1) >= 0.0);
+  }
+
+  private static SampleSeries series(ContextualStatistics batch, String name) {
+    return (SampleSeries)batch.getStatistics().get(name).getValue();
+  }
+}
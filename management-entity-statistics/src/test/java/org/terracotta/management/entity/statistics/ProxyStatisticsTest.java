@@ -0,0 +1,98 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.entity.statistics;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terracotta.management.context.Context;
+import org.terracotta.management.service.statistics.SampleSeries;
+import org.terracotta.management.service.statistics.StatisticsCollection;
+import org.terracotta.management.service.statistics.StatisticsCollectionAccess;
+import org.terracotta.management.stats.ContextualStatistics;
+import org.terracotta.voltron.proxy.metrics.RecordingProxyMetrics;
+
+import java.lang.reflect.Method;
+
+/**
+ * Test sampling the metrics of entity proxies.
+ *
+ * @author RKAV
+ */
+public class ProxyStatisticsTest {
+  private static final Context CONTEXT = Context.create("entityName", "counter1");
+
+  @Test
+  public void testMethodStatistics() throws Exception {
+    RecordingProxyMetrics metrics = new RecordingProxyMetrics();
+    StatisticsCollection collection = ProxyStatistics.newCollection(CONTEXT, metrics, 10, 4, Counter.class);
+    Method increment = Counter.class.getMethod("increment");
+
+    StatisticsCollectionAccess.sample(collection, 100);
+    metrics.invoked(increment, 100);
+    metrics.invoked(increment, 300);
+    metrics.requestEncoded(increment, 16, 10);
+    StatisticsCollectionAccess.sample(collection, 101);
+    StatisticsCollectionAccess.sample(collection, 102);
+
+    ContextualStatistics batch = StatisticsCollectionAccess.drain(collection);
+    SampleSeries calls = series(batch, "increment.calls");
+    SampleSeries latency = series(batch, "increment.latency");
+    Assert.assertEquals(0, calls.getLongValue(0));
+    Assert.assertEquals(2, calls.getLongValue(1));
+    Assert.assertEquals(2, calls.getLongValue(2));
+    Assert.assertEquals(200.0, latency.getDoubleValue(1), 0.0);
+    Assert.assertEquals(0.0, latency.getDoubleValue(2), 0.0);
+    Assert.assertEquals(16.0, series(batch, "increment.requestSize").getDoubleValue(1), 0.0);
+    Assert.assertEquals(0, series(batch, "reset.calls").getLongValue(1));
+    Assert.assertEquals(0, series(batch, "add(int).calls").getLongValue(1));
+    Assert.assertEquals(0, series(batch, "add(long).calls").getLongValue(1));
+  }
+
+  @Test
+  public void testMessageStatistics() {
+    RecordingProxyMetrics metrics = new RecordingProxyMetrics();
+    StatisticsCollection collection = ProxyStatistics.newCollection(CONTEXT, metrics, 10, 4, Counter.class,
+        String.class);
+
+    StatisticsCollectionAccess.sample(collection, 100);
+    metrics.messageFired(String.class, 3, 1000);
+    metrics.messageFired(String.class, 1, 3000);
+    StatisticsCollectionAccess.sample(collection, 101);
+
+    ContextualStatistics batch = StatisticsCollectionAccess.drain(collection);
+    Assert.assertEquals(0, series(batch, "String.fired").getLongValue(0));
+    Assert.assertEquals(2, series(batch, "String.fired").getLongValue(1));
+    Assert.assertEquals(2000.0, series(batch, "String.fanOutLatency").getDoubleValue(1), 0.0);
+    Assert.assertEquals(2.0, series(batch, "String.recipients").getDoubleValue(1), 0.0);
+  }
+
+  private static SampleSeries series(ContextualStatistics batch, String name) {
+    return (SampleSeries)batch.getStatistics().get(name).getValue();
+  }
+
+  public interface Counter {
+    long increment();
+
+    void add(int delta);
+
+    void add(long delta);
+
+    void reset();
+  }
+}
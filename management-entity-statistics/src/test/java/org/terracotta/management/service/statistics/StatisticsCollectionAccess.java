@@ -0,0 +1,40 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.statistics;
+
+import org.terracotta.management.stats.ContextualStatistics;
+
+/**
+ * Takes and drains the samples of a {@link StatisticsCollection} without a {@link StatisticsSampler}, for the
+ * tests of the bridges living outside of the management service.
+ *
+ * @author RKAV
+ */
+public final class StatisticsCollectionAccess {
+  private StatisticsCollectionAccess() {
+  }
+
+  public static boolean sample(StatisticsCollection collection, long now) {
+    return collection.sample(now);
+  }
+
+  public static ContextualStatistics drain(StatisticsCollection collection) {
+    return collection.drain();
+  }
+}
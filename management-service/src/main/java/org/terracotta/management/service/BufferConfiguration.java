@@ -0,0 +1,102 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service;
+
+import org.terracotta.management.service.buffer.PartitionedRingBufferType;
+
+import static org.terracotta.management.service.impl.Constants.BUFFER_CACHE_SIZE;
+import static org.terracotta.management.service.impl.Constants.COLLECTION_INTERVAL;
+import static org.terracotta.management.service.impl.Constants.DEFAULT_RING_BUFFER_TYPE;
+import static org.terracotta.management.service.impl.Constants.MAX_PARALLEL_PRODUCERS;
+import static org.terracotta.management.service.impl.Constants.OVERSPILL_SIZE;
+
+/**
+ * Configuration of the buffering of the management messages of a message type, or of all message
+ * types that are not configured on their own.
+ *
+ * @author RKAV
+ */
+public class BufferConfiguration {
+  private final PartitionedRingBufferType ringBufferType;
+  private final int bufferSize;
+  private final int partitions;
+  private final int overspillSize;
+  private final long collectionIntervalMillis;
+
+  public BufferConfiguration() {
+    this(DEFAULT_RING_BUFFER_TYPE);
+  }
+
+  public BufferConfiguration(PartitionedRingBufferType ringBufferType) {
+    this(ringBufferType, BUFFER_CACHE_SIZE, MAX_PARALLEL_PRODUCERS, OVERSPILL_SIZE, COLLECTION_INTERVAL);
+  }
+
+  /**
+   * Create the buffer configuration.
+   *
+   * @param ringBufferType the ring buffer implementation buffering the messages
+   * @param bufferSize maximum number of messages of each partition, a power of 2
+   * @param partitions number of partitions, i.e. parallel producers
+   * @param overspillSize number of messages kept aside, before discarding, while the management entity is down
+   * @param collectionIntervalMillis interval at which the buffered messages are collected
+   */
+  public BufferConfiguration(PartitionedRingBufferType ringBufferType, int bufferSize, int partitions,
+                             int overspillSize, long collectionIntervalMillis) {
+    if (ringBufferType == null) {
+      throw new IllegalArgumentException("No ring buffer type specified.");
+    }
+    if (bufferSize <= 0 || Integer.bitCount(bufferSize) != 1) {
+      throw new IllegalArgumentException("Invalid buffer size " + bufferSize + " specified. Must be a power of 2.");
+    }
+    if (partitions <= 0) {
+      throw new IllegalArgumentException("Invalid number of partitions " + partitions + " specified.");
+    }
+    if (overspillSize < 0) {
+      throw new IllegalArgumentException("Invalid overspill size " + overspillSize + " specified.");
+    }
+    if (collectionIntervalMillis <= 0) {
+      throw new IllegalArgumentException("Invalid collection interval " + collectionIntervalMillis + " specified.");
+    }
+    this.ringBufferType = ringBufferType;
+    this.bufferSize = bufferSize;
+    this.partitions = partitions;
+    this.overspillSize = overspillSize;
+    this.collectionIntervalMillis = collectionIntervalMillis;
+  }
+
+  public PartitionedRingBufferType getRingBufferType() {
+    return ringBufferType;
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  public int getPartitions() {
+    return partitions;
+  }
+
+  public int getOverspillSize() {
+    return overspillSize;
+  }
+
+  public long getCollectionIntervalMillis() {
+    return collectionIntervalMillis;
+  }
+}
@@ -34,16 +34,30 @@ import java.util.Collections;
  * @author RKAV
  */
 public class ManagementServiceProvider implements ServiceProvider {
-  private final ManagementService mgmtService = new DefaultManagementService();
+  private volatile DefaultManagementService mgmtService;
 
   @Override
-  public boolean initialize(ServiceProviderConfiguration serviceProviderConfiguration) {
+  public synchronized boolean initialize(ServiceProviderConfiguration serviceProviderConfiguration) {
+    if (mgmtService != null) {
+      return true;
+    }
+    if (serviceProviderConfiguration instanceof ManagementServiceProviderConfiguration) {
+      ManagementServiceProviderConfiguration config = (ManagementServiceProviderConfiguration)serviceProviderConfiguration;
+      mgmtService = new DefaultManagementService(config.getCollectorPoolSize(), config.getOverflowConfiguration(),
+          config.getBufferConfiguration(), config.getMessageTypeBufferConfigurations());
+    } else {
+      mgmtService = new DefaultManagementService();
+    }
     return true;
   }
 
   @Override
   public <T> T getService(long entityID, ServiceConfiguration<T> serviceConfiguration) {
-    return serviceConfiguration.getServiceType().cast(mgmtService);
+    DefaultManagementService service = mgmtService;
+    if (service == null) {
+      throw new IllegalStateException("Management service is not available, the provider is not initialized or already closed.");
+    }
+    return serviceConfiguration.getServiceType().cast(service);
   }
 
   @Override
@@ -52,6 +66,10 @@ public class ManagementServiceProvider implements ServiceProvider {
   }
 
   @Override
-  public void close() throws IOException {
+  public synchronized void close() throws IOException {
+    if (mgmtService != null) {
+      mgmtService.close();
+      mgmtService = null;
+    }
   }
 }
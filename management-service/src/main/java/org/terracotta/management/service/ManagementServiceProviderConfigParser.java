@@ -19,15 +19,23 @@
 package org.terracotta.management.service;
 
 import org.terracotta.config.service.ServiceConfigParser;
+import org.terracotta.management.service.buffer.PartitionedRingBufferType;
 import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 
+import static org.terracotta.management.service.impl.Constants.DEFAULT_COLLECTOR_POOL_SIZE;
+
 /**
  * Configuration parser.
  *
@@ -36,6 +44,19 @@ import javax.xml.transform.stream.StreamSource;
 public class ManagementServiceProviderConfigParser implements ServiceConfigParser {
   private static final URI NAMESPACE = URI.create("http://www.terracotta.org/config/active-management-service");
   private static final URL XML_SCHEMA = ServiceConfigParser.class.getResource("/active-management-service.xsd");
+  private static final String COLLECTOR_POOL_SIZE_ATTRIBUTE = "collector-pool-size";
+  private static final String OVERFLOW_ELEMENT = "overflow";
+  private static final String DIRECTORY_ATTRIBUTE = "directory";
+  private static final String SEGMENT_SIZE_ATTRIBUTE = "segment-size";
+  private static final String MAX_SIZE_ATTRIBUTE = "max-size";
+  private static final String RETENTION_ATTRIBUTE = "retention-seconds";
+  private static final String BUFFER_ELEMENT = "buffer";
+  private static final String MESSAGE_TYPE_ATTRIBUTE = "message-type";
+  private static final String TYPE_ATTRIBUTE = "type";
+  private static final String SIZE_ATTRIBUTE = "size";
+  private static final String PARTITIONS_ATTRIBUTE = "partitions";
+  private static final String OVERSPILL_SIZE_ATTRIBUTE = "overspill-size";
+  private static final String COLLECTION_INTERVAL_ATTRIBUTE = "collection-interval";
 
   @Override
   public Source getXmlSchema() throws IOException {
@@ -49,6 +70,55 @@ public class ManagementServiceProviderConfigParser implements ServiceConfigParse
 
   @Override
   public ManagementServiceProviderConfiguration parse(Element fragment, String source) {
-    return new ManagementServiceProviderConfiguration();
+    int collectorPoolSize = parseInt(fragment, COLLECTOR_POOL_SIZE_ATTRIBUTE, DEFAULT_COLLECTOR_POOL_SIZE);
+    OverflowConfiguration overflowConfiguration = null;
+    NodeList overflowElements = fragment.getElementsByTagNameNS(NAMESPACE.toString(), OVERFLOW_ELEMENT);
+    if (overflowElements.getLength() > 0) {
+      Element overflow = (Element)overflowElements.item(0);
+      overflowConfiguration = new OverflowConfiguration(new File(overflow.getAttribute(DIRECTORY_ATTRIBUTE)),
+          parseLong(overflow, SEGMENT_SIZE_ATTRIBUTE, OverflowConfiguration.DEFAULT_SEGMENT_SIZE),
+          parseLong(overflow, MAX_SIZE_ATTRIBUTE, OverflowConfiguration.DEFAULT_MAX_SIZE),
+          parseLong(overflow, RETENTION_ATTRIBUTE, OverflowConfiguration.DEFAULT_RETENTION_SECONDS));
+    }
+    // buffers without a message type are the defaults of all message types, whichever order they appear in
+    BufferConfiguration bufferConfiguration = new BufferConfiguration();
+    NodeList bufferElements = fragment.getElementsByTagNameNS(NAMESPACE.toString(), BUFFER_ELEMENT);
+    for (int i = 0; i < bufferElements.getLength(); i++) {
+      Element buffer = (Element)bufferElements.item(i);
+      if (buffer.getAttribute(MESSAGE_TYPE_ATTRIBUTE).isEmpty()) {
+        bufferConfiguration = parseBuffer(buffer, bufferConfiguration);
+      }
+    }
+    Map<String, BufferConfiguration> messageTypeBufferConfigurations = new HashMap<>();
+    for (int i = 0; i < bufferElements.getLength(); i++) {
+      Element buffer = (Element)bufferElements.item(i);
+      String messageType = buffer.getAttribute(MESSAGE_TYPE_ATTRIBUTE);
+      if (!messageType.isEmpty()) {
+        messageTypeBufferConfigurations.put(messageType, parseBuffer(buffer, bufferConfiguration));
+      }
+    }
+    return new ManagementServiceProviderConfiguration(collectorPoolSize, overflowConfiguration, bufferConfiguration,
+        messageTypeBufferConfigurations);
+  }
+
+  private static BufferConfiguration parseBuffer(Element buffer, BufferConfiguration defaults) {
+    String type = buffer.getAttribute(TYPE_ATTRIBUTE);
+    PartitionedRingBufferType ringBufferType = type.isEmpty() ? defaults.getRingBufferType() :
+        PartitionedRingBufferType.valueOf(type.toUpperCase(Locale.ENGLISH).replace('-', '_'));
+    return new BufferConfiguration(ringBufferType,
+        parseInt(buffer, SIZE_ATTRIBUTE, defaults.getBufferSize()),
+        parseInt(buffer, PARTITIONS_ATTRIBUTE, defaults.getPartitions()),
+        parseInt(buffer, OVERSPILL_SIZE_ATTRIBUTE, defaults.getOverspillSize()),
+        parseLong(buffer, COLLECTION_INTERVAL_ATTRIBUTE, defaults.getCollectionIntervalMillis()));
+  }
+
+  private static int parseInt(Element element, String attributeName, int defaultValue) {
+    String value = element.getAttribute(attributeName);
+    return value.isEmpty() ? defaultValue : Integer.parseInt(value);
+  }
+
+  private static long parseLong(Element element, String attributeName, long defaultValue) {
+    String value = element.getAttribute(attributeName);
+    return value.isEmpty() ? defaultValue : Long.parseLong(value);
   }
 }
@@ -21,12 +21,89 @@ package org.terracotta.management.service;
 import org.terracotta.entity.ServiceProvider;
 import org.terracotta.entity.ServiceProviderConfiguration;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.terracotta.management.service.impl.Constants.DEFAULT_COLLECTOR_POOL_SIZE;
+
 /**
  * Configuration read from the XSD for the management service.
  *
  * @author RKAV
  */
 public class ManagementServiceProviderConfiguration implements ServiceProviderConfiguration {
+  private final int collectorPoolSize;
+  private final OverflowConfiguration overflowConfiguration;
+  private final BufferConfiguration bufferConfiguration;
+  private final Map<String, BufferConfiguration> messageTypeBufferConfigurations;
+
+  public ManagementServiceProviderConfiguration() {
+    this(DEFAULT_COLLECTOR_POOL_SIZE, null);
+  }
+
+  public ManagementServiceProviderConfiguration(int collectorPoolSize, OverflowConfiguration overflowConfiguration) {
+    this(collectorPoolSize, overflowConfiguration, new BufferConfiguration(),
+        Collections.<String, BufferConfiguration>emptyMap());
+  }
+
+  /**
+   * Create the management service configuration.
+   *
+   * @param collectorPoolSize number of threads collecting messages across all message types
+   * @param overflowConfiguration spill to disk configuration, null if undelivered messages are not spilled
+   * @param bufferConfiguration buffering of the message types that are not configured on their own
+   * @param messageTypeBufferConfigurations buffering of individual message types, keyed by message class name
+   */
+  public ManagementServiceProviderConfiguration(int collectorPoolSize, OverflowConfiguration overflowConfiguration,
+                                                BufferConfiguration bufferConfiguration,
+                                                Map<String, BufferConfiguration> messageTypeBufferConfigurations) {
+    if (collectorPoolSize <= 0) {
+      throw new IllegalArgumentException("Invalid collector pool size " + collectorPoolSize + " specified.");
+    }
+    this.collectorPoolSize = collectorPoolSize;
+    this.overflowConfiguration = overflowConfiguration;
+    this.bufferConfiguration = bufferConfiguration;
+    this.messageTypeBufferConfigurations = Collections.unmodifiableMap(new HashMap<>(messageTypeBufferConfigurations));
+  }
+
+  /**
+   * @return number of threads collecting management messages across all message types
+   */
+  public int getCollectorPoolSize() {
+    return collectorPoolSize;
+  }
+
+  /**
+   * @return spill to disk configuration, null if disabled
+   */
+  public OverflowConfiguration getOverflowConfiguration() {
+    return overflowConfiguration;
+  }
+
+  /**
+   * @return buffering of the message types that are not configured on their own
+   */
+  public BufferConfiguration getBufferConfiguration() {
+    return bufferConfiguration;
+  }
+
+  /**
+   * @param messageType class name of the message type
+   * @return buffering of the given message type
+   */
+  public BufferConfiguration getBufferConfiguration(String messageType) {
+    BufferConfiguration configuration = messageTypeBufferConfigurations.get(messageType);
+    return configuration == null ? bufferConfiguration : configuration;
+  }
+
+  /**
+   * @return buffering of individual message types, keyed by message class name
+   */
+  public Map<String, BufferConfiguration> getMessageTypeBufferConfigurations() {
+    return messageTypeBufferConfigurations;
+  }
+
   @Override
   public Class<? extends ServiceProvider> getServiceProviderType() {
     return ManagementServiceProvider.class;
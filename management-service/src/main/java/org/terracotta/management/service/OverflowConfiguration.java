@@ -0,0 +1,80 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of the optional spill to disk tier for management messages that could not
+ * be delivered to the management entity.
+ *
+ * @author RKAV
+ */
+public class OverflowConfiguration {
+  public static final long DEFAULT_SEGMENT_SIZE = 1L << 20;
+  public static final long DEFAULT_MAX_SIZE = 64L << 20;
+  public static final long DEFAULT_RETENTION_SECONDS = TimeUnit.HOURS.toSeconds(1);
+
+  private final File directory;
+  private final long segmentSize;
+  private final long maxSize;
+  private final long retentionSeconds;
+
+  public OverflowConfiguration(File directory) {
+    this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SIZE, DEFAULT_RETENTION_SECONDS);
+  }
+
+  /**
+   * Create the overflow configuration.
+   *
+   * @param directory directory holding the overflow logs, one sub directory per message type
+   * @param segmentSize size in bytes of each segment file of an overflow log
+   * @param maxSize maximum size in bytes of the overflow log of each message type
+   * @param retentionSeconds time after which undelivered messages are discarded
+   */
+  public OverflowConfiguration(File directory, long segmentSize, long maxSize, long retentionSeconds) {
+    if (segmentSize <= 0 || maxSize < segmentSize) {
+      throw new IllegalArgumentException("Invalid overflow sizes " + segmentSize + "/" + maxSize + " specified.");
+    }
+    if (retentionSeconds <= 0) {
+      throw new IllegalArgumentException("Invalid overflow retention " + retentionSeconds + " specified.");
+    }
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.maxSize = maxSize;
+    this.retentionSeconds = retentionSeconds;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  public long getSegmentSize() {
+    return segmentSize;
+  }
+
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  public long getRetentionSeconds() {
+    return retentionSeconds;
+  }
+}
@@ -0,0 +1,262 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.action;
+
+import org.terracotta.management.call.Parameter;
+
+import java.io.Closeable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes management actions on managed objects asynchronously, on a bounded pool of threads.
+ * <p>
+ * An action is a public instance method of the managed object type, identified by its name and the class
+ * names of its parameters. Each action is resolved once into a {@link MethodHandle} that is cached and
+ * reused for all later invocations of the action on any managed object of that type.
+ * <p>
+ * An action can be invoked on many managed objects at once (e.g. clearing all caches of a server), in
+ * which case the action is resolved and its arguments are prepared only once for the whole batch. Each
+ * invocation completes its own future. Invocations that do not fit in the queue of the executor fail
+ * with a {@link RejectedExecutionException}, and those still queued when the executor is closed are cancelled.
+ *
+ * @author RKAV
+ */
+public class ActionExecutor implements Closeable {
+  private static final Map<String, Class<?>> PRIMITIVE_TYPES = new HashMap<>();
+
+  static {
+    for (Class<?> primitive : Arrays.asList(boolean.class, byte.class, char.class, short.class, int.class,
+        long.class, float.class, double.class)) {
+      PRIMITIVE_TYPES.put(primitive.getName(), primitive);
+    }
+  }
+
+  private final ThreadPoolExecutor executor;
+  private final ConcurrentMap<ActionKey, MethodHandle> actions;
+
+  /**
+   * Create an action executor.
+   *
+   * @param poolSize maximum number of threads executing actions
+   * @param queueSize maximum number of actions waiting to be executed
+   */
+  public ActionExecutor(int poolSize, int queueSize) {
+    if (poolSize <= 0 || queueSize <= 0) {
+      throw new IllegalArgumentException("Invalid action executor size " + poolSize + "/" + queueSize + " specified.");
+    }
+    final AtomicInteger threadNumber = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueSize), (r) -> {
+      Thread t = new Thread(r, "management-action-executor-" + threadNumber.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    this.executor.allowCoreThreadTimeOut(true);
+    this.actions = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Invoke an action on a managed object.
+   *
+   * @param managedObject the managed object
+   * @param managedType the type declaring the action
+   * @param methodName name of the action
+   * @param returnType expected return type of the action, {@code Void.class} if none
+   * @param parameters the parameters of the action
+   * @param <O> managed object type
+   * @param <R> return type
+   * @return a future completed with the result of the action
+   * @throws IllegalArgumentException if the action does not exist
+   */
+  public <O, R> CompletableFuture<R> invoke(O managedObject, Class<O> managedType, String methodName,
+                                            Class<R> returnType, Parameter... parameters) {
+    return invokeAll(Collections.singletonList(managedObject), managedType, methodName, returnType, parameters).get(0);
+  }
+
+  /**
+   * Invoke an action on each of the given managed objects.
+   *
+   * @param managedObjects the managed objects
+   * @param managedType the type declaring the action
+   * @param methodName name of the action
+   * @param returnType expected return type of the action, {@code Void.class} if none
+   * @param parameters the parameters of the action
+   * @param <O> managed object type
+   * @param <R> return type
+   * @return a future per managed object, in the iteration order of {@code managedObjects}, completed with
+   *         the result of the action on that managed object
+   * @throws IllegalArgumentException if the action does not exist
+   */
+  public <O, R> List<CompletableFuture<R>> invokeAll(Collection<? extends O> managedObjects, Class<O> managedType,
+                                                     String methodName, Class<R> returnType, Parameter... parameters) {
+    MethodHandle action = resolve(managedType, methodName, parameters);
+    // the spread arguments are only read, so they can be shared across invocations
+    Object[] arguments = new Object[parameters.length];
+    for (int i = 0; i < parameters.length; i++) {
+      arguments[i] = parameters[i].getValue();
+    }
+    Class<?> resultType = returnType.isPrimitive() ? wrap(returnType) : returnType;
+    List<CompletableFuture<R>> results = new ArrayList<>(managedObjects.size());
+    for (O managedObject : managedObjects) {
+      ActionTask<R> task = new ActionTask<>(action, managedObject, arguments, resultType);
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        task.result.completeExceptionally(e);
+      }
+      results.add(task.result);
+    }
+    return results;
+  }
+
+  /**
+   * Stop executing actions. Actions that are not executed yet are cancelled, and running actions are
+   * interrupted.
+   */
+  @Override
+  public void close() {
+    for (Runnable task : executor.shutdownNow()) {
+      ((ActionTask<?>)task).result.cancel(false);
+    }
+  }
+
+  private MethodHandle resolve(Class<?> managedType, String methodName, Parameter[] parameters) {
+    String[] parameterClassNames = new String[parameters.length];
+    for (int i = 0; i < parameters.length; i++) {
+      parameterClassNames[i] = parameters[i].getClassName();
+    }
+    return actions.computeIfAbsent(new ActionKey(managedType, methodName, parameterClassNames),
+        ActionExecutor::createHandle);
+  }
+
+  /**
+   * Create a handle of type {@code (Object, Object[])Object} for the action, which takes the managed object
+   * and the spread arguments of the action.
+   */
+  private static MethodHandle createHandle(ActionKey key) {
+    try {
+      Class<?>[] parameterTypes = new Class<?>[key.parameterClassNames.length];
+      for (int i = 0; i < parameterTypes.length; i++) {
+        parameterTypes[i] = loadClass(key.parameterClassNames[i], key.managedType.getClassLoader());
+      }
+      Method method = key.managedType.getMethod(key.methodName, parameterTypes);
+      if (Modifier.isStatic(method.getModifiers())) {
+        throw new IllegalArgumentException("Action " + key + " is static");
+      }
+      // public methods of non public managed types
+      method.setAccessible(true);
+      MethodHandle handle = MethodHandles.lookup().unreflect(method);
+      return handle.asType(handle.type().generic()).asSpreader(Object[].class, parameterTypes.length);
+    } catch (ReflectiveOperationException | SecurityException e) {
+      throw new IllegalArgumentException("Unknown action " + key, e);
+    }
+  }
+
+  private static Class<?> loadClass(String className, ClassLoader classLoader) throws ClassNotFoundException {
+    Class<?> primitive = PRIMITIVE_TYPES.get(className);
+    return (primitive != null) ? primitive : Class.forName(className, false, classLoader);
+  }
+
+  private static Class<?> wrap(Class<?> primitive) {
+    return MethodType.methodType(primitive).wrap().returnType();
+  }
+
+  /**
+   * An invocation of an action on a managed object, along with the future of its result.
+   */
+  private static final class ActionTask<R> implements Runnable {
+    private final MethodHandle action;
+    private final Object managedObject;
+    private final Object[] arguments;
+    private final Class<?> resultType;
+    private final CompletableFuture<R> result = new CompletableFuture<>();
+
+    private ActionTask(MethodHandle action, Object managedObject, Object[] arguments, Class<?> resultType) {
+      this.action = action;
+      this.managedObject = managedObject;
+      this.arguments = arguments;
+      this.resultType = resultType;
+    }
+
+    @Override
+    public void run() {
+      try {
+        Object value = (Object)action.invokeExact(managedObject, arguments);
+        @SuppressWarnings("unchecked")
+        R typedValue = (R)resultType.cast(value);
+        result.complete(typedValue);
+      } catch (Throwable t) {
+        result.completeExceptionally(t);
+      }
+    }
+  }
+
+  private static final class ActionKey {
+    private final Class<?> managedType;
+    private final String methodName;
+    private final String[] parameterClassNames;
+    private final int hash;
+
+    private ActionKey(Class<?> managedType, String methodName, String[] parameterClassNames) {
+      this.managedType = managedType;
+      this.methodName = methodName;
+      this.parameterClassNames = parameterClassNames;
+      this.hash = 31 * (31 * managedType.hashCode() + methodName.hashCode()) + Arrays.hashCode(parameterClassNames);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ActionKey)) {
+        return false;
+      }
+      ActionKey other = (ActionKey)o;
+      return managedType.equals(other.managedType) && methodName.equals(other.methodName)
+             && Arrays.equals(parameterClassNames, other.parameterClassNames);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public String toString() {
+      return managedType.getName() + "." + methodName + Arrays.toString(parameterClassNames);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.aggregation;
+
+import org.terracotta.management.context.Context;
+import org.terracotta.management.stats.ContextualStatistics;
+import org.terracotta.management.stats.Statistic;
+import org.terracotta.voltron.management.consumer.MessageAggregator;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Rolls up {@link ContextualStatistics} samples per context and statistic name.
+ * <p>
+ * For each context that pushed statistics within a window, a single {@link ContextualStatistics} is emitted
+ * at the end of the window. Each numeric statistic is replaced by a {@link SummaryStatistic} holding the count,
+ * minimum, maximum, mean and percentiles of its samples, while non numeric statistics are passed on with their
+ * latest value.
+ * <p>
+ * The state of a context, including the reservoirs of its statistics, is kept from one window to the next and
+ * reset at the end of each window. Only contexts, and statistics, that did not report within a window are
+ * dropped.
+ *
+ * @author RKAV
+ */
+public class ContextualStatisticsAggregator implements MessageAggregator<ContextualStatistics> {
+  public static final int DEFAULT_RESERVOIR_SIZE = 1 << 10;
+
+  private final long windowMillis;
+  private final int reservoirSize;
+  private final Map<Context, ContextWindow> windows;
+
+  public ContextualStatisticsAggregator(long windowMillis) {
+    this(windowMillis, DEFAULT_RESERVOIR_SIZE);
+  }
+
+  /**
+   * Create the aggregator.
+   *
+   * @param windowMillis length of the aggregation window in milliseconds
+   * @param reservoirSize number of samples per statistic and window kept for computing percentiles
+   */
+  public ContextualStatisticsAggregator(long windowMillis, int reservoirSize) {
+    if (windowMillis <= 0) {
+      throw new IllegalArgumentException("Invalid window " + windowMillis + " specified.");
+    }
+    this.windowMillis = windowMillis;
+    this.reservoirSize = reservoirSize;
+    this.windows = new LinkedHashMap<>();
+  }
+
+  @Override
+  public long getWindowMillis() {
+    return windowMillis;
+  }
+
+  @Override
+  public void accept(ContextualStatistics message) {
+    ContextWindow window = windows.computeIfAbsent(message.getContext(), (c) -> new ContextWindow());
+    for (Map.Entry<String, Statistic<?, ?>> entry : message.getStatistics().entrySet()) {
+      Statistic<?, ?> statistic = entry.getValue();
+      Object value = statistic.getValue();
+      if (value instanceof Number) {
+        window.accumulators.computeIfAbsent(entry.getKey(), (n) -> new SampleAccumulator(reservoirSize))
+            .add(((Number)value).doubleValue());
+        window.units.put(entry.getKey(), String.valueOf(statistic.getUnit()));
+      } else {
+        window.latest.put(entry.getKey(), statistic);
+      }
+    }
+    window.reported = true;
+  }
+
+  @Override
+  public void flush(Consumer<? super ContextualStatistics> sink) {
+    for (Iterator<Map.Entry<Context, ContextWindow>> iterator = windows.entrySet().iterator(); iterator.hasNext(); ) {
+      Map.Entry<Context, ContextWindow> entry = iterator.next();
+      ContextWindow window = entry.getValue();
+      if (!window.reported) {
+        // the context stopped reporting
+        iterator.remove();
+        continue;
+      }
+      Map<String, Statistic<?, ?>> statistics = new HashMap<>(window.latest);
+      for (Iterator<Map.Entry<String, SampleAccumulator>> accumulators = window.accumulators.entrySet().iterator();
+           accumulators.hasNext(); ) {
+        Map.Entry<String, SampleAccumulator> accumulator = accumulators.next();
+        String name = accumulator.getKey();
+        SampleSummary summary = accumulator.getValue().summarizeAndReset();
+        if (summary == null) {
+          // the statistic stopped reporting
+          accumulators.remove();
+          window.units.remove(name);
+        } else {
+          statistics.put(name, new SummaryStatistic(name, summary, window.units.get(name)));
+        }
+      }
+      window.latest.clear();
+      window.reported = false;
+      sink.accept(new ContextualStatistics(entry.getKey(), statistics));
+    }
+  }
+
+  /**
+   * Statistics of one context within the current window, reused for the next windows.
+   */
+  private static final class ContextWindow {
+    private boolean reported;
+    private final Map<String, SampleAccumulator> accumulators = new LinkedHashMap<>();
+    private final Map<String, String> units = new HashMap<>();
+    private final Map<String, Statistic<?, ?>> latest = new HashMap<>();
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.aggregation;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Accumulates the numeric samples of a statistic within an aggregation window.
+ * <p>
+ * Count, minimum, maximum and mean are exact. Percentiles are computed from a fixed size uniform
+ * sample (reservoir) of the values, so they are exact only as long as the number of samples does not
+ * exceed the reservoir size. This keeps the memory used per statistic bounded, irrespective of the
+ * number of samples in a window. An accumulator is meant to be reused for the next windows, as it is reset by
+ * {@link #summarizeAndReset()}.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author RKAV
+ */
+public final class SampleAccumulator {
+  private final double[] reservoir;
+  private long count;
+  private double min;
+  private double max;
+  private double sum;
+
+  public SampleAccumulator(int reservoirSize) {
+    if (reservoirSize <= 0) {
+      throw new IllegalArgumentException("Invalid reservoir size " + reservoirSize + " specified.");
+    }
+    this.reservoir = new double[reservoirSize];
+    reset();
+  }
+
+  public void add(double value) {
+    if (count < reservoir.length) {
+      reservoir[(int)count] = value;
+    } else {
+      // keep each of the samples seen so far with equal probability
+      long slot = (long)(ThreadLocalRandom.current().nextDouble() * (count + 1));
+      if (slot < reservoir.length) {
+        reservoir[(int)slot] = value;
+      }
+    }
+    count++;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+    sum += value;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Summarize the samples accumulated so far and start afresh.
+   *
+   * @return the summary, null if there were no samples
+   */
+  public SampleSummary summarizeAndReset() {
+    if (count == 0) {
+      return null;
+    }
+    int n = (int)Math.min(count, reservoir.length);
+    Arrays.sort(reservoir, 0, n);
+    SampleSummary summary = new SampleSummary(count, min, max, sum / count,
+        percentile(n, 0.5), percentile(n, 0.9), percentile(n, 0.99));
+    reset();
+    return summary;
+  }
+
+  private double percentile(int n, double quantile) {
+    // nearest rank
+    int rank = (int)Math.ceil(quantile * n);
+    return reservoir[Math.max(rank, 1) - 1];
+  }
+
+  private void reset() {
+    count = 0;
+    min = Double.POSITIVE_INFINITY;
+    max = Double.NEGATIVE_INFINITY;
+    sum = 0;
+  }
+}
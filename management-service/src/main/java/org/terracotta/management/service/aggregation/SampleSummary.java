@@ -0,0 +1,83 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.aggregation;
+
+import java.io.Serializable;
+
+/**
+ * Roll up of the numeric samples of a statistic over an aggregation window.
+ *
+ * @author RKAV
+ */
+public final class SampleSummary implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final long count;
+  private final double min;
+  private final double max;
+  private final double mean;
+  private final double median;
+  private final double percentile90;
+  private final double percentile99;
+
+  public SampleSummary(long count, double min, double max, double mean,
+                       double median, double percentile90, double percentile99) {
+    this.count = count;
+    this.min = min;
+    this.max = max;
+    this.mean = mean;
+    this.median = median;
+    this.percentile90 = percentile90;
+    this.percentile99 = percentile99;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public double getMin() {
+    return min;
+  }
+
+  public double getMax() {
+    return max;
+  }
+
+  public double getMean() {
+    return mean;
+  }
+
+  public double getMedian() {
+    return median;
+  }
+
+  public double getPercentile90() {
+    return percentile90;
+  }
+
+  public double getPercentile99() {
+    return percentile99;
+  }
+
+  @Override
+  public String toString() {
+    return "SampleSummary{count=" + count + ", min=" + min + ", max=" + max + ", mean=" + mean +
+        ", median=" + median + ", p90=" + percentile90 + ", p99=" + percentile99 + "}";
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.aggregation;
+
+import org.terracotta.management.stats.Statistic;
+
+/**
+ * A statistic whose value is the {@link SampleSummary} of the samples of a statistic within an
+ * aggregation window.
+ *
+ * @author RKAV
+ */
+public final class SummaryStatistic implements Statistic<SampleSummary, String> {
+  private static final long serialVersionUID = 1L;
+
+  private final String name;
+  private final SampleSummary value;
+  private final String unit;
+
+  /**
+   * Create a summary statistic.
+   *
+   * @param name name of the summarized statistic
+   * @param value the summary
+   * @param unit the unit of the summarized statistic, as a string
+   */
+  public SummaryStatistic(String name, SampleSummary value, String unit) {
+    this.name = name;
+    this.value = value;
+    this.unit = unit;
+  }
+
+  @Override
+  public SampleSummary getValue() {
+    return value;
+  }
+
+  @Override
+  public String getUnit() {
+    return unit;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String toString() {
+    return name + "=" + value + " " + unit;
+  }
+}
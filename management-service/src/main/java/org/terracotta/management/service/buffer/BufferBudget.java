@@ -0,0 +1,205 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer;
+
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A limit on the number of slots allocated by ring buffers, across all the buffers charged to the budget.
+ * <p>
+ * Each slot holds (or keeps a reference to) at most one buffered item, so the budget bounds both the buffers
+ * themselves and the items they retain. Buffers charge their slots to an {@link Account}, typically one per
+ * message type, and must only allocate slots they could reserve. The limit is therefore never exceeded.
+ * <p>
+ * When a reservation fails, the budget is shared fairly among the accounts holding slots: if the account
+ * asking for slots is below its fair share, the accounts above their fair share are asked to reclaim slots
+ * (see {@link Account#isReclaimRequested()}). An account above its fair share does not get any more slots
+ * and its buffers overflow as if at their maximum size.
+ *
+ * @author RKAV
+ */
+public final class BufferBudget {
+  private static final BufferBudget UNLIMITED = new BufferBudget(Long.MAX_VALUE);
+  private static final Account UNLIMITED_ACCOUNT = UNLIMITED.newAccount("unlimited");
+
+  private final long limit;
+  private final AtomicLong reserved;
+  // accounts holding slots
+  private final AtomicInteger activeAccounts;
+  private final Collection<Account> accounts;
+
+  /**
+   * Create a budget.
+   *
+   * @param limit maximum number of slots allocated across all accounts
+   */
+  public BufferBudget(long limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Invalid buffer budget " + limit + " specified.");
+    }
+    this.limit = limit;
+    this.reserved = new AtomicLong();
+    this.activeAccounts = new AtomicInteger();
+    this.accounts = new CopyOnWriteArrayList<>();
+  }
+
+  /**
+   * @return a budget that never refuses a reservation
+   */
+  public static BufferBudget unlimited() {
+    return UNLIMITED;
+  }
+
+  /**
+   * @return an account of the unlimited budget, for buffers that are not charged to any budget
+   */
+  public static Account unlimitedAccount() {
+    return UNLIMITED_ACCOUNT;
+  }
+
+  /**
+   * Open an account charged to this budget.
+   *
+   * @param name name of the account, e.g. the message type
+   * @return the account
+   */
+  public Account newAccount(String name) {
+    Account account = new Account(name);
+    if (isLimited()) {
+      // accounts of the unlimited budget are never asked to reclaim, no need to keep track of them
+      accounts.add(account);
+    }
+    return account;
+  }
+
+  public long getLimit() {
+    return limit;
+  }
+
+  /**
+   * @return number of slots currently reserved across all accounts
+   */
+  public long getReserved() {
+    return reserved.get();
+  }
+
+  public boolean isLimited() {
+    return limit != Long.MAX_VALUE;
+  }
+
+  private long fairShare(Account requester) {
+    int active = activeAccounts.get() + ((requester.reserved.get() == 0) ? 1 : 0);
+    return limit / Math.max(1, active);
+  }
+
+  private void exhausted(Account requester, int slots) {
+    long fairShare = fairShare(requester);
+    if (requester.reserved.get() + slots > fairShare) {
+      // the requester already holds its share
+      return;
+    }
+    for (Account account : accounts) {
+      if (account != requester && account.reserved.get() > fairShare) {
+        account.reclaimRequested = true;
+      }
+    }
+  }
+
+  /**
+   * Slots reserved by the buffers of one owner, e.g. a message type.
+   */
+  public final class Account {
+    private final String name;
+    private final AtomicLong reserved;
+    private volatile boolean reclaimRequested;
+
+    private Account(String name) {
+      this.name = name;
+      this.reserved = new AtomicLong();
+    }
+
+    /**
+     * @return false if this account is charged to the unlimited budget
+     */
+    public boolean isLimited() {
+      return BufferBudget.this.isLimited();
+    }
+
+    /**
+     * Reserve slots before allocating them.
+     *
+     * @param slots number of slots to allocate
+     * @return true if the slots can be allocated, false if that would exceed the budget
+     */
+    public boolean tryReserve(int slots) {
+      long current;
+      do {
+        current = BufferBudget.this.reserved.get();
+        if (current + slots > limit) {
+          exhausted(this, slots);
+          return false;
+        }
+      } while (!BufferBudget.this.reserved.compareAndSet(current, current + slots));
+      if (reserved.getAndAdd(slots) == 0) {
+        activeAccounts.incrementAndGet();
+      }
+      return true;
+    }
+
+    /**
+     * Release slots that are no longer allocated.
+     *
+     * @param slots number of slots released
+     */
+    public void release(int slots) {
+      long remaining = reserved.addAndGet(-slots);
+      if (remaining == 0) {
+        activeAccounts.decrementAndGet();
+      }
+      BufferBudget.this.reserved.addAndGet(-slots);
+      if (reclaimRequested && remaining <= limit / Math.max(1, activeAccounts.get())) {
+        reclaimRequested = false;
+      }
+    }
+
+    /**
+     * Whether the buffers of this account should give up slots (e.g. by dropping their unused segments),
+     * as this account is above its fair share of an exhausted budget.
+     *
+     * @return true if slots should be reclaimed
+     */
+    public boolean isReclaimRequested() {
+      return reclaimRequested;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return number of slots currently reserved by this account
+     */
+    public long getReserved() {
+      return reserved.get();
+    }
+  }
+}
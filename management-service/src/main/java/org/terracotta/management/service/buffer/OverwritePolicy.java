@@ -0,0 +1,36 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer;
+
+/**
+ * What happens to a message inserted into a full partition of a ring buffer.
+ *
+ * @author RKAV
+ */
+public enum OverwritePolicy {
+  /**
+   * The oldest unread message is overwritten, retaining the most recent messages.
+   */
+  OVERWRITE_OLDEST,
+
+  /**
+   * The inserted message is discarded, retaining the oldest messages.
+   */
+  DISCARD_NEWEST
+}
@@ -19,6 +19,7 @@
 package org.terracotta.management.service.buffer;
 
 import java.util.Collection;
+import java.util.function.Consumer;
 
 /**
  * The Partitioned Ring buffer interface used by management service to pass messages
@@ -65,6 +66,45 @@ public interface PartitionedRingBuffer<E> {
    */
   E[] toArray(Class<E[]> type);
 
+  /**
+   * Consume up to {@code maxItems} 'pending' items, handing each one of them to the given {@code sink}.
+   * <p>
+   * Retrieves/Consumes from all partitions. Unlike {@link #removeAll()} and {@link #toArray(Class)}, no
+   * intermediate collection or array is created for the consumed items.
+   *
+   * @param sink the consumer to which each consumed item is passed.
+   * @param maxItems the maximum number of items to consume in this call.
+   * @return the number of items consumed, 0 if no 'pending' items.
+   */
+  int drainTo(Consumer<? super E> sink, int maxItems);
+
+  /**
+   * Consume up to {@code maxItems} 'pending' items into the given array, starting from index 0.
+   * <p>
+   * Retrieves/Consumes from all partitions. The array is typically reused by the caller across calls
+   * and at most {@code target.length} items are consumed, irrespective of {@code maxItems}.
+   *
+   * @param target the array into which consumed items are copied.
+   * @param maxItems the maximum number of items to consume in this call.
+   * @return the number of items copied into {@code target}, 0 if no 'pending' items.
+   */
+  default int drainTo(E[] target, int maxItems) {
+    return drainTo(target, 0, maxItems);
+  }
+
+  /**
+   * Consume up to {@code maxItems} 'pending' items into the given array, starting from index {@code offset}.
+   * <p>
+   * Retrieves/Consumes from all partitions. At most {@code target.length - offset} items are consumed,
+   * irrespective of {@code maxItems}. Implementations copy the items directly and do not allocate.
+   *
+   * @param target the array into which consumed items are copied.
+   * @param offset the index of {@code target} at which the first consumed item is copied.
+   * @param maxItems the maximum number of items to consume in this call.
+   * @return the number of items copied into {@code target}, 0 if no 'pending' items.
+   */
+  int drainTo(E[] target, int offset, int maxItems);
+
   /**
    * Return the total capacity of the partitioned buffer.
    *
@@ -92,4 +132,17 @@ public interface PartitionedRingBuffer<E> {
    * @return true, if any of the buffer has crossed the threshold.
    */
   boolean hasOverSpillThresholdReached();
+
+  /**
+   * Return the number of items that were overwritten or discarded before they could be consumed, across
+   * all partitions, since the buffer was created.
+   * <p>
+   * Consumers compare this count across drains to detect the gaps in the consumed items. The count may
+   * lag behind concurrent inserts.
+   *
+   * @return number of lost items, 0 if the buffer never loses items
+   */
+  default long getLostItems() {
+    return 0L;
+  }
 }
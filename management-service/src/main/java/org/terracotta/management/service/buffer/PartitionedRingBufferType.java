@@ -0,0 +1,136 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer;
+
+import org.terracotta.management.service.buffer.impl.MultiPartitionLockFreeRingBuffer;
+import org.terracotta.management.service.buffer.impl.MultiPartitionOffHeapRingBuffer;
+import org.terracotta.management.service.buffer.impl.MultiPartitionPooledRingBuffer;
+import org.terracotta.management.service.buffer.impl.MultiPartitionSafeRingBuffer;
+
+/**
+ * The {@link PartitionedRingBuffer} implementations that can be selected for buffering the
+ * management messages of a message type.
+ *
+ * @author RKAV
+ */
+public enum PartitionedRingBufferType {
+  /**
+   * Lock free partitions, allocating a holder per inserted message.
+   */
+  LOCK_FREE {
+    @Override
+    public <E> PartitionedRingBuffer<E> createBuffer(int maxPartitions, int perPartitionSize) {
+      return new MultiPartitionLockFreeRingBuffer<>(maxPartitions, perPartitionSize);
+    }
+
+    @Override
+    public <E> PartitionedRingBuffer<E> createBuffer(int maxPartitions, int initialPerPartitionSize,
+                                                     int perPartitionSize, BufferBudget.Account account) {
+      return new MultiPartitionLockFreeRingBuffer<>(maxPartitions, initialPerPartitionSize, perPartitionSize, account);
+    }
+  },
+
+  /**
+   * Lock free partitions, recycling a pool of pre-allocated message holders.
+   */
+  POOLED {
+    @Override
+    public <E> PartitionedRingBuffer<E> createBuffer(int maxPartitions, int perPartitionSize) {
+      return new MultiPartitionPooledRingBuffer<>(maxPartitions, perPartitionSize);
+    }
+
+    @Override
+    public <E> PartitionedRingBuffer<E> createBuffer(int maxPartitions, int initialPerPartitionSize,
+                                                     int perPartitionSize, BufferBudget.Account account) {
+      return new MultiPartitionPooledRingBuffer<>(maxPartitions, initialPerPartitionSize, perPartitionSize, account);
+    }
+  },
+
+  /**
+   * Lock based partitions, for platforms where the lock free partitions do not behave.
+   */
+  SAFE {
+    @Override
+    public <E> PartitionedRingBuffer<E> createBuffer(int maxPartitions, int perPartitionSize) {
+      return new MultiPartitionSafeRingBuffer<>(maxPartitions, perPartitionSize);
+    }
+
+    @Override
+    public <E> PartitionedRingBuffer<E> createBuffer(int maxPartitions, int initialPerPartitionSize,
+                                                     int perPartitionSize, BufferBudget.Account account) {
+      return new MultiPartitionSafeRingBuffer<>(maxPartitions, initialPerPartitionSize, perPartitionSize, account);
+    }
+  },
+
+  /**
+   * Partitions kept outside the java heap, holding the messages in their serialized form.
+   */
+  OFF_HEAP {
+    @Override
+    public <E> PartitionedRingBuffer<E> createBuffer(int maxPartitions, int perPartitionSize) {
+      return new MultiPartitionOffHeapRingBuffer<>(maxPartitions, perPartitionSize);
+    }
+
+    @Override
+    public <E> PartitionedRingBuffer<E> createBuffer(int maxPartitions, int initialPerPartitionSize,
+                                                     int perPartitionSize, BufferBudget.Account account) {
+      return new MultiPartitionOffHeapRingBuffer<>(maxPartitions, initialPerPartitionSize, perPartitionSize, account);
+    }
+  };
+
+  /**
+   * Create a ring buffer of this type.
+   *
+   * @param maxPartitions maximum number of partitions (i.e parallel producers)
+   * @param perPartitionSize size of each partition
+   * @param <E> type of buffered items
+   * @return the created ring buffer
+   */
+  public abstract <E> PartitionedRingBuffer<E> createBuffer(int maxPartitions, int perPartitionSize);
+
+  /**
+   * Create a ring buffer of this type, whose partitions are created on first use and start small, growing
+   * up to {@code perPartitionSize} as needed.
+   *
+   * @param maxPartitions maximum number of partitions (i.e parallel producers)
+   * @param initialPerPartitionSize initial size of each partition
+   * @param perPartitionSize maximum size of each partition
+   * @param <E> type of buffered items
+   * @return the created ring buffer
+   */
+  public <E> PartitionedRingBuffer<E> createBuffer(int maxPartitions, int initialPerPartitionSize,
+                                                   int perPartitionSize) {
+    return createBuffer(maxPartitions, initialPerPartitionSize, perPartitionSize,
+        BufferBudget.unlimitedAccount());
+  }
+
+  /**
+   * Create a ring buffer of this type, whose partitions are created on first use and start small, growing
+   * up to {@code perPartitionSize} as long as the given budget account allows.
+   *
+   * @param maxPartitions maximum number of partitions (i.e parallel producers)
+   * @param initialPerPartitionSize initial size of each partition
+   * @param perPartitionSize maximum size of each partition
+   * @param account the account the partitions are charged to
+   * @param <E> type of buffered items
+   * @return the created ring buffer
+   */
+  public abstract <E> PartitionedRingBuffer<E> createBuffer(int maxPartitions, int initialPerPartitionSize,
+                                                            int perPartitionSize, BufferBudget.Account account);
+}
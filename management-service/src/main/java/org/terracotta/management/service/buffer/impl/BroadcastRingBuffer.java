@@ -0,0 +1,136 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A single producer, multiple consumer ring buffer where each consumer reads all items through its own
+ * {@link Cursor}, at its own pace.
+ * <p>
+ * Reading is not destructive, items stay in the ring until overwritten. The producer never waits for the
+ * consumers: a consumer lagging behind by more than the capacity skips the overwritten items, which are
+ * counted as lost for that consumer only.
+ * <p>
+ * A consumer reads an item and then checks that the producer has not started overwriting its slot in the
+ * meantime (in the style of a sequence lock), so one slot of the ring is never readable.
+ *
+ * @author RKAV
+ */
+public class BroadcastRingBuffer<E> {
+  private final AtomicReferenceArray<E> items;
+  private final int mask;
+  // sequence of the last published item, only written by the producer
+  private final AtomicLong published;
+
+  public BroadcastRingBuffer(int size) {
+    if (size < 2 || Integer.bitCount(size) != 1) {
+      throw new IllegalArgumentException("Invalid buffer size " + size + " specified.");
+    }
+    this.items = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+    this.published = new AtomicLong(-1L);
+  }
+
+  public int capacity() {
+    return mask;
+  }
+
+  /**
+   * Publish an item to all cursors.
+   * <p>
+   * Assumes a single producer.
+   *
+   * @param item the item to publish
+   */
+  public void publish(E item) {
+    long next = published.get() + 1;
+    // the slot of next is only written once next - 1 is published, see Cursor#drainTo
+    items.lazySet((int)(next & mask), item);
+    published.lazySet(next);
+  }
+
+  /**
+   * Create a cursor that reads the items published from now on.
+   *
+   * @return the cursor
+   */
+  public Cursor newCursor() {
+    return new Cursor(published.get() + 1);
+  }
+
+  /**
+   * The read position of a single consumer.
+   */
+  public final class Cursor {
+    // sequence of the next item to read, only accessed by the consumer
+    private long next;
+    private long lost;
+
+    private Cursor(long next) {
+      this.next = next;
+      this.lost = 0;
+    }
+
+    /**
+     * Reads up to {@code maxItems} items, passing each of them to the {@code sink}.
+     * <p>
+     * Assumes a single consumer per cursor.
+     *
+     * @param sink the consumer of read items
+     * @param maxItems maximum number of items to read
+     * @return number of items read
+     */
+    public int drainTo(Consumer<? super E> sink, int maxItems) {
+      long end = published.get();
+      int j = 0;
+      while (j < maxItems && next <= end) {
+        E item = items.get((int)(next & mask));
+        // the slot is overwritten once the item capacity() ahead of next is about to be published
+        long last = published.get();
+        if (last - next >= mask) {
+          long oldest = last - mask + 1;
+          lost += oldest - next;
+          next = oldest;
+          continue;
+        }
+        sink.accept(item);
+        next++;
+        j++;
+      }
+      return j;
+    }
+
+    /**
+     * @return number of published items not read yet, including the overwritten ones
+     */
+    public int size() {
+      return (int)Math.min(published.get() + 1 - next, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return number of items overwritten before they could be read through this cursor
+     */
+    public long getLost() {
+      return lost;
+    }
+  }
+}
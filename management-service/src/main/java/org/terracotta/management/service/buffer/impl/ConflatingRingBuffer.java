@@ -0,0 +1,231 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import org.terracotta.management.service.buffer.BufferBudget;
+import org.terracotta.management.service.buffer.PartitionedRingBuffer;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A multiple producer, single consumer buffer that only keeps the latest item per key.
+ * <p>
+ * Meant for state messages (e.g. gauges) where an item supersedes all previous items of the same key. Each
+ * key has a slot holding its latest item not drained yet. The first producer to fill an empty slot queues the
+ * slot for the consumer, while later items just replace the pending item. The consumer therefore drains at
+ * most one item per key, in the order in which keys were updated since the last drain.
+ * <p>
+ * Inserting an item of a known key is lock free: a map lookup, an atomic swap and, for the first item since
+ * the last drain, a lock free enqueue. Slots are created on the first item of a key, and never removed, up to
+ * a maximum number of keys. Items of further keys are discarded. Each slot is charged to the given
+ * {@link BufferBudget.Account}, and items of new keys are discarded as well once the budget is exhausted.
+ * <p>
+ * Keys are shared by all partitions, so that items of the same key pushed by different producers are conflated
+ * as well. The size of any partition is the number of keys with a pending item.
+ *
+ * @author RKAV
+ */
+public class ConflatingRingBuffer<K, E> implements PartitionedRingBuffer<E> {
+  private final Function<? super E, ? extends K> keyFunction;
+  private final BufferBudget.Account account;
+  private final int maxPartitions;
+  private final int maxKeys;
+  private final int overSpillThreshold;
+  private final ConcurrentMap<K, AtomicReference<E>> slots;
+  private final AtomicInteger keyCount;
+  // slots with a pending item, each queued once until drained
+  private final Queue<AtomicReference<E>> pendingSlots;
+  private final AtomicInteger pendingCount;
+  private final LongAdder discarded;
+
+  public ConflatingRingBuffer(int maxPartitions, int maxKeys, Function<? super E, ? extends K> keyFunction) {
+    this(maxPartitions, maxKeys, keyFunction, BufferBudget.unlimitedAccount());
+  }
+
+  /**
+   * Create a conflating buffer.
+   *
+   * @param maxPartitions number of partitions (i.e. parallel producers)
+   * @param maxKeys maximum number of distinct keys
+   * @param keyFunction extracts the key of an item, which must not be null
+   * @param account the account the slots of the keys are charged to
+   */
+  public ConflatingRingBuffer(int maxPartitions, int maxKeys, Function<? super E, ? extends K> keyFunction,
+                              BufferBudget.Account account) {
+    if (maxKeys <= 0) {
+      throw new IllegalArgumentException("Invalid maximum number of keys " + maxKeys + " specified.");
+    }
+    this.keyFunction = keyFunction;
+    this.account = account;
+    this.maxPartitions = maxPartitions;
+    this.maxKeys = maxKeys;
+    this.overSpillThreshold = Math.round(0.95f * (float)maxKeys);
+    this.slots = new ConcurrentHashMap<>();
+    this.keyCount = new AtomicInteger();
+    this.pendingSlots = new ConcurrentLinkedQueue<>();
+    this.pendingCount = new AtomicInteger();
+    this.discarded = new LongAdder();
+  }
+
+  @Override
+  public void insert(int partitionNo, E item) {
+    if (partitionNo >= maxPartitions || partitionNo < 0) {
+      throw new IllegalArgumentException("Invalid Partition Number " + partitionNo + " specified.");
+    }
+    K key = keyFunction.apply(item);
+    AtomicReference<E> slot = slots.get(key);
+    if (slot == null) {
+      slot = newSlot(key);
+      if (slot == null) {
+        // out of keys
+        discarded.increment();
+        return;
+      }
+    }
+    if (slot.getAndSet(item) == null) {
+      // the consumer took the previous item (if any), queue the slot again
+      pendingCount.incrementAndGet();
+      pendingSlots.offer(slot);
+    }
+  }
+
+  private AtomicReference<E> newSlot(K key) {
+    if (keyCount.incrementAndGet() > maxKeys) {
+      keyCount.decrementAndGet();
+      return slots.get(key);
+    }
+    if (!account.tryReserve(1)) {
+      keyCount.decrementAndGet();
+      return slots.get(key);
+    }
+    AtomicReference<E> slot = new AtomicReference<>();
+    AtomicReference<E> existing = slots.putIfAbsent(key, slot);
+    if (existing != null) {
+      // created by another producer in the meantime
+      keyCount.decrementAndGet();
+      account.release(1);
+      return existing;
+    }
+    return slot;
+  }
+
+  @Override
+  public int capacity(int partitionNo) {
+    if (partitionNo >= maxPartitions) {
+      throw new IllegalArgumentException("Invalid Partition Number " + partitionNo + " specified.");
+    }
+    return maxKeys;
+  }
+
+  @Override
+  public int size(int partitionNo) {
+    if (partitionNo >= maxPartitions) {
+      throw new IllegalArgumentException("Invalid Partition Number " + partitionNo + " specified.");
+    }
+    return pendingCount.get();
+  }
+
+  @Override
+  public boolean hasOverSpillThresholdReached() {
+    return pendingCount.get() >= overSpillThreshold;
+  }
+
+  /**
+   * @return number of distinct keys seen so far
+   */
+  public int keys() {
+    return keyCount.get();
+  }
+
+  /**
+   * Items superseded by a later item of the same key are not lost, only the items of keys that could not be
+   * added are.
+   *
+   * @return number of items discarded for lack of keys or budget
+   */
+  @Override
+  public long getLostItems() {
+    return discarded.sum();
+  }
+
+  /**
+   * Removes the latest item of up to {@code maxItems} keys, passing each of them to the {@code sink}.
+   * <p>
+   * Assumes a single consumer.
+   *
+   * @param sink the consumer of removed items
+   * @param maxItems maximum number of items to remove
+   * @return number of items removed
+   */
+  @Override
+  public int drainTo(Consumer<? super E> sink, int maxItems) {
+    int drained = 0;
+    AtomicReference<E> slot;
+    while (drained < maxItems && (slot = pendingSlots.poll()) != null) {
+      pendingCount.decrementAndGet();
+      // only the consumer empties a slot, so a queued slot always has an item
+      sink.accept(slot.getAndSet(null));
+      drained++;
+    }
+    return drained;
+  }
+
+  @Override
+  public int drainTo(E[] target, int offset, int maxItems) {
+    int limit = Math.min(maxItems, target.length - offset);
+    int drained = 0;
+    AtomicReference<E> slot;
+    while (drained < limit && (slot = pendingSlots.poll()) != null) {
+      pendingCount.decrementAndGet();
+      target[offset + drained] = slot.getAndSet(null);
+      drained++;
+    }
+    return drained;
+  }
+
+  @Override
+  public Collection<E> removeAll() {
+    int sz = pendingCount.get();
+    if (sz <= 0) {
+      return Collections.emptyList();
+    }
+    Collection<E> items = new ArrayList<>(sz);
+    drainTo(items::add, Integer.MAX_VALUE);
+    return items;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public E[] toArray(Class<E[]> type) {
+    Collection<E> items = removeAll();
+    return items.toArray((E[])Array.newInstance(type.getComponentType(), items.size()));
+  }
+}
@@ -0,0 +1,323 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import org.terracotta.management.service.buffer.BufferBudget;
+import org.terracotta.management.service.buffer.PartitionedRingBuffer;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * A single producer single consumer ring buffer that starts small and grows up to a maximum size.
+ * <p>
+ * Items are kept in single partition ring buffers (segments) created by a factory. Whenever the producer
+ * finds the current segment at least three quarters full, it moves on to a new segment of twice the size,
+ * until the maximum size is reached. The consumer drains the older segments before the newer ones, so that
+ * items are still consumed in the order they were inserted, and drops the older segments once drained.
+ * As the producer checks the current segment every quarter of its capacity, a segment never overflows
+ * before the maximum size is reached. From then on, the buffer overflows like the underlying segments do.
+ * <p>
+ * Segments are charged to a {@link BufferBudget.Account} and only allocated once reserved. If the first
+ * segment cannot be reserved, inserted items are discarded. If a larger segment cannot be reserved, the
+ * buffer overflows as if at its maximum size.
+ * <p>
+ * The consumer gives up the current segment once nothing was inserted into it for a while, or as soon as
+ * the account is asked to reclaim slots. The producer then starts over with a segment of the initial size on its next
+ * insert. As the producer may still be inserting into the retired segment, the consumer releases its slots once
+ * drained, but keeps draining it until the producer acknowledges the retirement, which it does on its next insert.
+ * A late insert into a retired segment is therefore delivered, not lost.
+ * <p>
+ * Inserting costs a single volatile read on top of the insert into the current segment.
+ *
+ * @author RKAV
+ */
+public class GrowableRingBuffer<E> implements PartitionedRingBuffer<E> {
+  // time after which an empty segment is retired
+  private static final long IDLE_NANOS = SECONDS.toNanos(60);
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<GrowableRingBuffer, Segment> CURRENT_UPDATER =
+      AtomicReferenceFieldUpdater.newUpdater(GrowableRingBuffer.class, Segment.class, "current");
+
+  private static final class Segment<E> {
+    private final PartitionedRingBuffer<E> buffer;
+    private final int capacity;
+    // set by the producer once it no longer inserts into this segment
+    private volatile boolean superseded;
+    // only accessed by the consumer: whether the consumer retired this segment, released its slots and
+    // when it last drained an item from it
+    private boolean retired;
+    private boolean released;
+    private long idleSince;
+
+    private Segment(PartitionedRingBuffer<E> buffer) {
+      this.buffer = buffer;
+      this.capacity = buffer.capacity(0);
+      this.idleSince = System.nanoTime();
+    }
+  }
+
+  private final IntFunction<PartitionedRingBuffer<E>> segmentFactory;
+  private final BufferBudget.Account account;
+  private final int initialSize;
+  private final int maxSize;
+  // segment the producer inserts into, null until the first insert and once retired by the consumer
+  private volatile Segment<E> current;
+  // segments not dropped yet, oldest first. Only appended to by the producer and only removed from by
+  // the consumer
+  private final Queue<Segment<E>> segments;
+  // only accessed by the producer: the segment inserted into, until the producer finds it retired
+  private Segment<E> insertingInto;
+  private int checkInterval;
+  private int insertsSinceCheck;
+  // items discarded for lack of budget. Only written by the producer
+  private volatile long discarded;
+  // items lost by the segments dropped so far. Only written by the consumer
+  private volatile long lostByDropped;
+
+  /**
+   * Create a growable buffer that is not charged to any budget.
+   *
+   * @param segmentFactory creates a single partition buffer of the given size, a power of 2
+   * @param initialSize size of the first segment, a power of 2
+   * @param maxSize maximum size of a segment, a power of 2 not less than {@code initialSize}
+   */
+  public GrowableRingBuffer(IntFunction<PartitionedRingBuffer<E>> segmentFactory, int initialSize, int maxSize) {
+    this(segmentFactory, initialSize, maxSize, BufferBudget.unlimitedAccount());
+  }
+
+  /**
+   * Create a growable buffer.
+   *
+   * @param segmentFactory creates a single partition buffer of the given size, a power of 2
+   * @param initialSize size of the first segment, a power of 2
+   * @param maxSize maximum size of a segment, a power of 2 not less than {@code initialSize}
+   * @param account the account segments are charged to
+   */
+  public GrowableRingBuffer(IntFunction<PartitionedRingBuffer<E>> segmentFactory, int initialSize, int maxSize,
+                            BufferBudget.Account account) {
+    if (initialSize <= 0 || maxSize < initialSize) {
+      throw new IllegalArgumentException("Invalid buffer sizes " + initialSize + "/" + maxSize + " specified.");
+    }
+    this.segmentFactory = segmentFactory;
+    this.account = account;
+    this.initialSize = initialSize;
+    this.maxSize = maxSize;
+    this.segments = new ConcurrentLinkedQueue<>();
+    this.current = null;
+    this.insertingInto = null;
+    this.checkInterval = 1;
+    this.insertsSinceCheck = 0;
+  }
+
+  /**
+   * @return the capacity currently allocated for inserts, which grows up to {@link #capacity(int)}
+   */
+  public int allocatedCapacity() {
+    Segment<E> segment = current;
+    return (segment == null) ? 0 : segment.capacity;
+  }
+
+  @Override
+  public int capacity(int partitionNo) {
+    if (partitionNo > 0) {
+      throw new IllegalArgumentException("Invalid Partition Number " + partitionNo + " specified.");
+    }
+    return maxSize;
+  }
+
+  @Override
+  public int size(int partitionNo) {
+    if (partitionNo > 0) {
+      throw new IllegalArgumentException("Invalid Partition Number " + partitionNo + " specified.");
+    }
+    int size = 0;
+    for (Segment<E> segment : segments) {
+      size += segment.buffer.size(0);
+    }
+    return size;
+  }
+
+  @Override
+  public boolean hasOverSpillThresholdReached() {
+    Segment<E> segment = current;
+    return segment != null && segment.capacity >= maxSize && segment.buffer.hasOverSpillThresholdReached();
+  }
+
+  @Override
+  public long getLostItems() {
+    long lost = discarded + lostByDropped;
+    for (Segment<E> segment : segments) {
+      lost += segment.buffer.getLostItems();
+    }
+    return lost;
+  }
+
+  @Override
+  public void insert(int partitionNo, E item) {
+    if (partitionNo != 0) {
+      // this implementation does not support multi-partition
+      throw new IllegalArgumentException("Invalid Partition Number " + partitionNo + " specified.");
+    }
+    Segment<E> segment = current;
+    if (insertingInto != null && segment != insertingInto) {
+      // retired by the consumer, acknowledge that it is no longer inserted into
+      insertingInto.superseded = true;
+      insertingInto = null;
+    }
+    if (segment == null) {
+      segment = allocate(null, initialSize);
+      if (segment == null) {
+        // out of budget
+        discarded++;
+        return;
+      }
+    }
+    segment.buffer.insert(0, item);
+    if (++insertsSinceCheck >= checkInterval) {
+      insertsSinceCheck = 0;
+      int capacity = segment.capacity;
+      if (capacity < maxSize && segment.buffer.size(0) >= capacity - checkInterval) {
+        allocate(segment, Math.min(capacity << 1, maxSize));
+      }
+    }
+  }
+
+  /**
+   * Allocate a new segment to insert into, if the budget allows.
+   *
+   * @param previous the segment inserted into so far, null if none
+   * @param size size of the new segment
+   * @return the new segment, null if it could not be allocated
+   */
+  @SuppressWarnings("unchecked")
+  private Segment<E> allocate(Segment<E> previous, int size) {
+    if (!account.tryReserve(size)) {
+      return null;
+    }
+    Segment<E> segment = new Segment<>(segmentFactory.apply(size));
+    segments.add(segment);
+    if (!CURRENT_UPDATER.compareAndSet(this, previous, segment)) {
+      // the previous segment was retired by the consumer in the meantime, start over on the next insert
+      segment.superseded = true;
+      return null;
+    }
+    if (previous != null) {
+      previous.superseded = true;
+    }
+    insertingInto = segment;
+    checkInterval = Math.max(1, size >> 2);
+    insertsSinceCheck = 0;
+    return segment;
+  }
+
+  @Override
+  public int drainTo(Consumer<? super E> sink, int maxItems) {
+    return drain(sink, null, 0, maxItems);
+  }
+
+  /**
+   * Removes up to {@code maxItems} items, passing them to the {@code sink} or, if there is no sink, copying
+   * them into {@code target}.
+   */
+  private int drain(Consumer<? super E> sink, E[] target, int offset, int maxItems) {
+    long now = System.nanoTime();
+    int drained = 0;
+    Iterator<Segment<E>> it = segments.iterator();
+    while (drained < maxItems && it.hasNext()) {
+      Segment<E> segment = it.next();
+      // once superseded, the producer no longer inserts, so the segment can be dropped once drained
+      boolean done = segment.superseded;
+      int fromSegment = sink != null
+          ? segment.buffer.drainTo(sink, maxItems - drained)
+          : segment.buffer.drainTo(target, offset + drained, maxItems - drained);
+      drained += fromSegment;
+      if (segment.buffer.size(0) > 0) {
+        // do not consume newer items before all items of this segment
+        if (!segment.retired && segment.capacity > initialSize && account.isReclaimRequested()) {
+          retire(segment);
+        }
+        break;
+      }
+      if (done) {
+        it.remove();
+        lostByDropped += segment.buffer.getLostItems();
+        release(segment);
+      } else if (segment.retired) {
+        // drained, but kept until the producer acknowledges that it no longer inserts into it
+        release(segment);
+      } else {
+        // the segment inserted into, retire it if unused
+        if (fromSegment > 0) {
+          segment.idleSince = now;
+        }
+        if ((account.isReclaimRequested() || now - segment.idleSince >= IDLE_NANOS) && retire(segment)) {
+          // drained already
+          release(segment);
+        }
+        break;
+      }
+    }
+    return drained;
+  }
+
+  private boolean retire(Segment<E> segment) {
+    if (CURRENT_UPDATER.compareAndSet(this, segment, null)) {
+      segment.retired = true;
+    }
+    return segment.retired;
+  }
+
+  private void release(Segment<E> segment) {
+    if (!segment.released) {
+      segment.released = true;
+      account.release(segment.capacity);
+    }
+  }
+
+  @Override
+  public int drainTo(E[] target, int offset, int maxItems) {
+    return drain(null, target, offset, Math.min(maxItems, target.length - offset));
+  }
+
+  @Override
+  public Collection<E> removeAll() {
+    // always drain, even if empty, so that retired segments are dropped
+    Collection<E> items = new ArrayList<>(size(0));
+    drainTo(items::add, Integer.MAX_VALUE);
+    return items.isEmpty() ? Collections.emptyList() : items;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public E[] toArray(Class<E[]> type) {
+    Collection<E> items = removeAll();
+    return items.toArray((E[])Array.newInstance(type.getComponentType(), items.size()));
+  }
+}
@@ -19,12 +19,16 @@
 package org.terracotta.management.service.buffer.impl;
 
 
+import org.terracotta.management.service.buffer.BufferBudget;
 import org.terracotta.management.service.buffer.PartitionedRingBuffer;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 
 /**
  * Multiple producer, multi consumer implementation of the ring buffer.
@@ -33,31 +37,100 @@ import java.util.Collection;
  * each producer can write to its own buffer. This ensure support of multiple producer,
  * multiple consumer model for the {@link PartitionedRingBuffer}, as long as there is
  * no ordering requirement across the partitions.
+ * <p>
+ * Partitions are only created on the first insert by their producer, so that unused partitions take
+ * no memory. Partitions may also start small and grow up to their size, see {@link GrowableRingBuffer}.
  *
  * @author RKAV
  */
 public class MultiPartitionLockFreeRingBuffer<E> implements PartitionedRingBuffer<E> {
-  private final PartitionedRingBuffer<E>[] ringBuffers;
+  // partitions, created on first insert
+  private final AtomicReferenceArray<PartitionedRingBuffer<E>> ringBuffers;
+  private final IntFunction<PartitionedRingBuffer<E>> partitionFactory;
   private final int perBufferSize;
   private final int maxPartitions;
+  // partition from which the next batch limited drain starts. Rotated so that a small batch limit
+  // does not starve the higher numbered partitions. Only accessed by the (single) consumer.
+  private int nextDrainPartition;
 
   public MultiPartitionLockFreeRingBuffer(int maxPartitions, int perBufferSize) {
-    @SuppressWarnings("unchecked")
-    PartitionedRingBuffer<E>[] buffers = new PartitionedRingBuffer[maxPartitions];
-    for (int i = 0; i < maxPartitions; i++) {
-      buffers[i] = new SinglePartitionLockFreeRingBuffer<>(perBufferSize);
-    }
+    this(maxPartitions, perBufferSize, SinglePartitionLockFreeRingBuffer::new);
+  }
+
+  /**
+   * Create a multi partition buffer whose partitions grow from {@code initialPerBufferSize} up to
+   * {@code perBufferSize}.
+   *
+   * @param maxPartitions number of partitions
+   * @param initialPerBufferSize initial size of each partition
+   * @param perBufferSize maximum size of each partition
+   */
+  public MultiPartitionLockFreeRingBuffer(int maxPartitions, int initialPerBufferSize, int perBufferSize) {
+    this(maxPartitions, initialPerBufferSize, perBufferSize, BufferBudget.unlimitedAccount());
+  }
+
+  /**
+   * Create a multi partition buffer whose partitions grow from {@code initialPerBufferSize} up to
+   * {@code perBufferSize}, as long as the given budget account allows.
+   *
+   * @param maxPartitions number of partitions
+   * @param initialPerBufferSize initial size of each partition
+   * @param perBufferSize maximum size of each partition
+   * @param account the account the partitions are charged to
+   */
+  public MultiPartitionLockFreeRingBuffer(int maxPartitions, int initialPerBufferSize, int perBufferSize,
+                                          BufferBudget.Account account) {
+    this(maxPartitions, perBufferSize,
+        growable(initialPerBufferSize, account, SinglePartitionLockFreeRingBuffer::new));
+  }
+
+  /**
+   * Create a multi partition buffer out of single producer partitions created by the given factory.
+   *
+   * @param maxPartitions number of partitions
+   * @param perBufferSize size of each partition
+   * @param partitionFactory creates a single partition buffer of the given size
+   */
+  protected MultiPartitionLockFreeRingBuffer(int maxPartitions, int perBufferSize,
+                                             IntFunction<PartitionedRingBuffer<E>> partitionFactory) {
     this.perBufferSize = perBufferSize;
-    this.ringBuffers = buffers;
+    this.partitionFactory = partitionFactory;
+    this.ringBuffers = new AtomicReferenceArray<>(maxPartitions);
     this.maxPartitions = maxPartitions;
   }
 
+  /**
+   * Wrap a partition factory so that it creates partitions growing from the given initial size. Partitions
+   * charged to a limited budget are always growable, so that their slots are reserved and reclaimed.
+   *
+   * @param initialSize initial size of each partition
+   * @param account the account the partitions are charged to
+   * @param segmentFactory creates the fixed size segments of a growable partition
+   * @param <E> type of buffered items
+   * @return a factory of growable partitions of the given maximum size
+   */
+  protected static <E> IntFunction<PartitionedRingBuffer<E>> growable(int initialSize, BufferBudget.Account account,
+                                                                    IntFunction<PartitionedRingBuffer<E>> segmentFactory) {
+    boolean limited = account.isLimited();
+    return (size) -> (initialSize < size || limited) ? new GrowableRingBuffer<>(segmentFactory, initialSize, size, account)
+        : segmentFactory.apply(size);
+  }
+
+  private PartitionedRingBuffer<E> partition(int partitionNo) {
+    PartitionedRingBuffer<E> buffer = ringBuffers.get(partitionNo);
+    if (buffer == null) {
+      PartitionedRingBuffer<E> created = partitionFactory.apply(perBufferSize);
+      buffer = ringBuffers.compareAndSet(partitionNo, null, created) ? created : ringBuffers.get(partitionNo);
+    }
+    return buffer;
+  }
+
   @Override
   public void insert(int partitionNo, E item) {
     if (partitionNo >= maxPartitions || partitionNo < 0) {
       throw new IllegalArgumentException("Invalid Partition Number " + partitionNo + " specified.");
     }
-    ringBuffers[partitionNo].insert(0, item);
+    partition(partitionNo).insert(0, item);
   }
 
   @Override
@@ -75,11 +148,13 @@ public class MultiPartitionLockFreeRingBuffer<E> implements PartitionedRingBuffe
     }
     int size = 0;
     if (partitionNo < 0) {
-      for (PartitionedRingBuffer<E> buffer : ringBuffers) {
-        size += buffer.size(0);
+      for (int i = 0; i < maxPartitions; i++) {
+        PartitionedRingBuffer<E> buffer = ringBuffers.get(i);
+        size += (buffer == null) ? 0 : buffer.size(0);
       }
     } else {
-      size = ringBuffers[partitionNo].size(0);
+      PartitionedRingBuffer<E> buffer = ringBuffers.get(partitionNo);
+      size = (buffer == null) ? 0 : buffer.size(0);
     }
     return size;
   }
@@ -87,8 +162,9 @@ public class MultiPartitionLockFreeRingBuffer<E> implements PartitionedRingBuffe
   @Override
   public boolean hasOverSpillThresholdReached() {
     boolean nearOverSpill = false;
-    for (PartitionedRingBuffer<E> buffer : ringBuffers) {
-      if (buffer.hasOverSpillThresholdReached()) {
+    for (int i = 0; i < maxPartitions; i++) {
+      PartitionedRingBuffer<E> buffer = ringBuffers.get(i);
+      if (buffer != null && buffer.hasOverSpillThresholdReached()) {
         nearOverSpill = true;
         break;
       }
@@ -96,22 +172,68 @@ public class MultiPartitionLockFreeRingBuffer<E> implements PartitionedRingBuffe
     return nearOverSpill;
   }
 
+  @Override
+  public long getLostItems() {
+    long lost = 0L;
+    for (int i = 0; i < maxPartitions; i++) {
+      PartitionedRingBuffer<E> buffer = ringBuffers.get(i);
+      lost += (buffer == null) ? 0L : buffer.getLostItems();
+    }
+    return lost;
+  }
+
   @Override
   public Collection<E> removeAll() {
     Collection<E> items = new ArrayList<>();
-    for (PartitionedRingBuffer<E> buffer : ringBuffers) {
-      items.addAll(buffer.removeAll());
+    for (int i = 0; i < maxPartitions; i++) {
+      PartitionedRingBuffer<E> buffer = ringBuffers.get(i);
+      if (buffer != null) {
+        items.addAll(buffer.removeAll());
+      }
     }
     return items;
   }
 
+  @Override
+  public int drainTo(Consumer<? super E> sink, int maxItems) {
+    int drained = 0;
+    int startPartition = nextDrainPartition;
+    for (int i = 0; i < maxPartitions && drained < maxItems; i++) {
+      PartitionedRingBuffer<E> buffer = ringBuffers.get((startPartition + i) % maxPartitions);
+      if (buffer != null) {
+        drained += buffer.drainTo(sink, maxItems - drained);
+      }
+    }
+    nextDrainPartition = (startPartition + 1) % maxPartitions;
+    return drained;
+  }
+
+  @Override
+  public int drainTo(E[] target, int offset, int maxItems) {
+    int limit = Math.min(maxItems, target.length - offset);
+    int drained = 0;
+    int startPartition = nextDrainPartition;
+    for (int i = 0; i < maxPartitions && drained < limit; i++) {
+      PartitionedRingBuffer<E> buffer = ringBuffers.get((startPartition + i) % maxPartitions);
+      if (buffer != null) {
+        drained += buffer.drainTo(target, offset + drained, limit - drained);
+      }
+    }
+    nextDrainPartition = (startPartition + 1) % maxPartitions;
+    return drained;
+  }
+
   @SuppressWarnings("unchecked")
   @Override
   public E[] toArray(Class<E[]> type) {
-    E[][] objs = (E[][])new Object[ringBuffers.length][];
+    E[][] objs = (E[][])new Object[maxPartitions][];
     int i = 0;
     int totalLength = 0;
-    for (PartitionedRingBuffer<E> buffer : ringBuffers) {
+    for (int j = 0; j < maxPartitions; j++) {
+      PartitionedRingBuffer<E> buffer = ringBuffers.get(j);
+      if (buffer == null) {
+        continue;
+      }
       E[] items = buffer.toArray(type);
       if (items.length > 0) {
         objs[i++] = items;
@@ -0,0 +1,335 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import org.terracotta.management.service.buffer.BufferBudget;
+import org.terracotta.management.service.buffer.PartitionedRingBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Multiple producer, multi consumer ring buffer of messages kept outside the java heap.
+ * <p>
+ * A pool of {@link SinglePartitionOffHeapRingBuffer}s, one per message producer. See
+ * {@link MultiPartitionLockFreeRingBuffer} for the partitioning. Messages are java serialized on insert and
+ * deserialized on consumption, which trades some CPU on both ends for a heap that does not grow with the
+ * buffered messages. Messages are written without a stream header by a stream reused for all messages of a
+ * partition, and read straight from the off heap storage. Messages that are not serializable, or larger than a partition, are discarded and
+ * counted as lost, as are messages that cannot be read back. Classes are resolved with the class loader of the
+ * messages inserted, rather than the one of the consuming thread.
+ *
+ * @author RKAV
+ */
+public class MultiPartitionOffHeapRingBuffer<E> extends MultiPartitionLockFreeRingBuffer<E> {
+  // bytes reserved per message in each partition, messages larger than this take the space of several messages
+  public static final int DEFAULT_RECORD_SIZE = 1 << 9;
+
+  public MultiPartitionOffHeapRingBuffer(int maxPartitions, int perBufferSize) {
+    this(maxPartitions, perBufferSize, DEFAULT_RECORD_SIZE);
+  }
+
+  /**
+   * Create an off heap multi partition buffer, whose partitions hold {@code perBufferSize} messages of
+   * {@code recordSize} bytes in their serialized form.
+   *
+   * @param maxPartitions number of partitions
+   * @param perBufferSize maximum number of messages of each partition
+   * @param recordSize bytes reserved per serialized message
+   */
+  public MultiPartitionOffHeapRingBuffer(int maxPartitions, int perBufferSize, int recordSize) {
+    super(maxPartitions, perBufferSize, serializing(recordSize));
+  }
+
+  /**
+   * Create an off heap multi partition buffer whose partitions grow from {@code initialPerBufferSize} up to
+   * {@code perBufferSize}, as long as the given budget account allows.
+   *
+   * @param maxPartitions number of partitions
+   * @param initialPerBufferSize initial number of messages of each partition
+   * @param perBufferSize maximum number of messages of each partition
+   * @param account the account the partitions are charged to
+   */
+  public MultiPartitionOffHeapRingBuffer(int maxPartitions, int initialPerBufferSize, int perBufferSize,
+                                         BufferBudget.Account account) {
+    super(maxPartitions, perBufferSize, growable(initialPerBufferSize, account, serializing(DEFAULT_RECORD_SIZE)));
+  }
+
+  private static <E> IntFunction<PartitionedRingBuffer<E>> serializing(int recordSize) {
+    return (size) -> new SerializingPartition<>(new SinglePartitionOffHeapRingBuffer(size, size * recordSize));
+  }
+
+  /**
+   * Serializes messages into a single off heap partition.
+   */
+  private static final class SerializingPartition<E> implements PartitionedRingBuffer<E> {
+    private static final Object DISCARDED = new Object();
+
+    private final SinglePartitionOffHeapRingBuffer records;
+    // only accessed by the (single) producer of the partition
+    private final ExposedByteArrayOutputStream bytes;
+    private ObjectOutputStream out;
+    // state of the drain in progress, guarded by the lock of the records, which drainRecordsTo() holds too
+    private final ByteBufferInputStream in;
+    private final Consumer<ByteBuffer> recordReader;
+    private Consumer<? super E> drainSink;
+    private E[] drainTarget;
+    private int drainIndex;
+    private int drained;
+    private final LongAdder discarded;
+    // class loader of the last message inserted, messages of a partition come from a single producer
+    private volatile ClassLoader classLoader;
+
+    private SerializingPartition(SinglePartitionOffHeapRingBuffer records) {
+      this.records = records;
+      this.bytes = new ExposedByteArrayOutputStream();
+      this.in = new ByteBufferInputStream();
+      this.recordReader = this::readRecord;
+      this.discarded = new LongAdder();
+    }
+
+    @Override
+    public void insert(int partitionNo, E item) {
+      bytes.reset();
+      try {
+        if (out == null) {
+          out = new RecordOutputStream(bytes);
+        }
+        // each record must be readable on its own
+        out.reset();
+        out.writeObject(item);
+        out.flush();
+      } catch (IOException e) {
+        // not serializable, the stream may hold a partially written message
+        out = null;
+        discarded.increment();
+        return;
+      }
+      ClassLoader loader = (item == null) ? null : item.getClass().getClassLoader();
+      if (loader != null && loader != classLoader) {
+        classLoader = loader;
+      }
+      try {
+        records.insert(partitionNo, bytes.asByteBuffer());
+      } catch (IllegalArgumentException e) {
+        // larger than the partition
+        discarded.increment();
+      }
+    }
+
+    @Override
+    public int drainTo(Consumer<? super E> sink, int maxItems) {
+      synchronized (records) {
+        drainSink = sink;
+        try {
+          return drainRecords(maxItems);
+        } finally {
+          drainSink = null;
+        }
+      }
+    }
+
+    @Override
+    public int drainTo(E[] target, int offset, int maxItems) {
+      int limit = Math.min(maxItems, target.length - offset);
+      synchronized (records) {
+        drainTarget = target;
+        drainIndex = offset;
+        try {
+          return drainRecords(limit);
+        } finally {
+          drainTarget = null;
+        }
+      }
+    }
+
+    private int drainRecords(int maxItems) {
+      drained = 0;
+      // unreadable records are consumed too, drain until enough messages are read
+      while (drained < maxItems && records.drainRecordsTo(recordReader, maxItems - drained) > 0) {
+        // read by readRecord
+      }
+      return drained;
+    }
+
+    private void readRecord(ByteBuffer record) {
+      Object item = deserialize(record);
+      if (item == DISCARDED) {
+        return;
+      }
+      if (drainTarget != null) {
+        drainTarget[drainIndex++] = cast(item);
+      } else {
+        drainSink.accept(cast(item));
+      }
+      drained++;
+    }
+
+    @Override
+    public Collection<E> removeAll() {
+      Collection<E> items = new ArrayList<>(records.size(0));
+      drainTo(items::add, Integer.MAX_VALUE);
+      return items;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public E[] toArray(Class<E[]> type) {
+      Collection<E> items = removeAll();
+      return items.toArray((E[])Array.newInstance(type.getComponentType(), items.size()));
+    }
+
+    @Override
+    public int capacity(int partitionNo) {
+      return records.capacity(partitionNo);
+    }
+
+    @Override
+    public int size(int partitionNo) {
+      return records.size(partitionNo);
+    }
+
+    @Override
+    public boolean hasOverSpillThresholdReached() {
+      return records.hasOverSpillThresholdReached();
+    }
+
+    @Override
+    public long getLostItems() {
+      return records.getLostItems() + discarded.sum();
+    }
+
+    /**
+     * Read back a record, or discard it when it cannot be read.
+     *
+     * @param record view of the record in the off heap storage
+     * @return the message, {@link #DISCARDED} when discarded
+     */
+    private Object deserialize(ByteBuffer record) {
+      in.buffer = record;
+      try (ObjectInputStream objectIn = new RecordInputStream(in, classLoader)) {
+        return objectIn.readObject();
+      } catch (IOException | ClassNotFoundException | RuntimeException e) {
+        // already consumed, the rest of the records are still readable
+        discarded.increment();
+        return DISCARDED;
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> E cast(Object item) {
+      return (E)item;
+    }
+  }
+
+  /**
+   * Serializes a message without a stream header, so that the stream is reused for all messages.
+   */
+  private static final class RecordOutputStream extends ObjectOutputStream {
+    private RecordOutputStream(OutputStream out) throws IOException {
+      super(out);
+    }
+
+    @Override
+    protected void writeStreamHeader() {
+      // records are read by a RecordInputStream
+    }
+  }
+
+  /**
+   * Deserializes a single record written by a {@link RecordOutputStream}, resolving classes with the given class
+   * loader first.
+   */
+  private static final class RecordInputStream extends ObjectInputStream {
+    private final ClassLoader classLoader;
+
+    private RecordInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+      super(in);
+      this.classLoader = classLoader;
+    }
+
+    @Override
+    protected void readStreamHeader() {
+      // see RecordOutputStream
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+      if (classLoader != null) {
+        try {
+          return Class.forName(desc.getName(), false, classLoader);
+        } catch (ClassNotFoundException e) {
+          // primitive types, or classes only known to the default loader
+        }
+      }
+      return super.resolveClass(desc);
+    }
+  }
+
+  /**
+   * Reads a record where it is stored, instead of copying it on heap first.
+   */
+  private static final class ByteBufferInputStream extends InputStream {
+    private ByteBuffer buffer;
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int read = Math.min(len, buffer.remaining());
+      buffer.get(b, off, read);
+      return read;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+
+  /**
+   * Lets a serialized message be inserted without copying it out of the stream.
+   */
+  private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+    private ByteBuffer asByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+  }
+}
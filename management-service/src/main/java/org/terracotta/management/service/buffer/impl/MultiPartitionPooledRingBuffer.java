@@ -0,0 +1,63 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import org.terracotta.management.service.buffer.BufferBudget;
+import org.terracotta.management.service.buffer.PartitionedRingBuffer;
+
+/**
+ * Multiple producer, multi consumer implementation of the allocation free ring buffer.
+ * <p>
+ * A pool of {@link SinglePartitionPooledRingBuffer}s, one per message producer. See
+ * {@link MultiPartitionLockFreeRingBuffer} for the partitioning and {@link SinglePartitionPooledRingBuffer}
+ * for the recycling of message holders.
+ *
+ * @author RKAV
+ */
+public class MultiPartitionPooledRingBuffer<E> extends MultiPartitionLockFreeRingBuffer<E> {
+  public MultiPartitionPooledRingBuffer(int maxPartitions, int perBufferSize) {
+    super(maxPartitions, perBufferSize, SinglePartitionPooledRingBuffer::new);
+  }
+
+  /**
+   * Create a pooled multi partition buffer whose partitions grow from {@code initialPerBufferSize} up to
+   * {@code perBufferSize}, so that the pools of message holders are allocated as they are needed.
+   *
+   * @param maxPartitions number of partitions
+   * @param initialPerBufferSize initial size of each partition
+   * @param perBufferSize maximum size of each partition
+   */
+  public MultiPartitionPooledRingBuffer(int maxPartitions, int initialPerBufferSize, int perBufferSize) {
+    this(maxPartitions, initialPerBufferSize, perBufferSize, BufferBudget.unlimitedAccount());
+  }
+
+  /**
+   * Create a pooled multi partition buffer whose partitions grow from {@code initialPerBufferSize} up to
+   * {@code perBufferSize}, as long as the given budget account allows.
+   *
+   * @param maxPartitions number of partitions
+   * @param initialPerBufferSize initial size of each partition
+   * @param perBufferSize maximum size of each partition
+   * @param account the account the partitions are charged to
+   */
+  public MultiPartitionPooledRingBuffer(int maxPartitions, int initialPerBufferSize, int perBufferSize,
+                                        BufferBudget.Account account) {
+    super(maxPartitions, perBufferSize, growable(initialPerBufferSize, account, SinglePartitionPooledRingBuffer::new));
+  }
+}
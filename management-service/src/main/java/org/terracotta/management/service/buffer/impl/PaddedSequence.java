@@ -0,0 +1,98 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Left hand side padding of the {@link PaddedSequence}.
+ */
+abstract class SequenceLhsPadding {
+  protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+/**
+ * The actual sequence value, sandwiched between the paddings.
+ */
+abstract class SequenceValue extends SequenceLhsPadding {
+  protected volatile long value;
+  protected long cachedPeerValue;
+}
+
+/**
+ * Right hand side padding of the {@link PaddedSequence}.
+ */
+abstract class SequenceRhsPadding extends SequenceValue {
+  protected long p9, p10, p11, p12, p13, p14, p15;
+}
+
+/**
+ * A sequence counter that occupies a cache line of its own.
+ * <p>
+ * The read and write sequences of a ring buffer are updated by different threads (consumer and
+ * producer respectively). If they share a cache line with each other, or with the sequences of
+ * another ring buffer partition, every update by one thread invalidates the cache line of the other
+ * threads (false sharing). The padding on either side of the value prevents that, as field layout
+ * follows the class hierarchy.
+ * <p>
+ * Alongside the value, the thread that owns (writes) this sequence can keep a plain cached copy of
+ * the peer sequence (e.g. the producer keeps a copy of the read sequence next to the write sequence).
+ * This lets the owner skip reading the peer's cache line until the cached copy is exhausted.
+ *
+ * @author RKAV
+ */
+final class PaddedSequence extends SequenceRhsPadding {
+  private static final AtomicLongFieldUpdater<SequenceValue> VALUE_UPDATER =
+      AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+
+  PaddedSequence(long initialValue, long initialPeerValue) {
+    this.cachedPeerValue = initialPeerValue;
+    VALUE_UPDATER.set(this, initialValue);
+  }
+
+  long get() {
+    return value;
+  }
+
+  void lazySet(long newValue) {
+    VALUE_UPDATER.lazySet(this, newValue);
+  }
+
+  boolean compareAndSet(long expectedValue, long newValue) {
+    return VALUE_UPDATER.compareAndSet(this, expectedValue, newValue);
+  }
+
+  /**
+   * Get the cached copy of the peer sequence. Must only be called by the thread owning this sequence.
+   *
+   * @return last cached value of the peer sequence
+   */
+  long getCachedPeer() {
+    return cachedPeerValue;
+  }
+
+  /**
+   * Cache a copy of the peer sequence. Must only be called by the thread owning this sequence.
+   *
+   * @param peerValue the current value of the peer sequence
+   */
+  void setCachedPeer(long peerValue) {
+    this.cachedPeerValue = peerValue;
+  }
+}
@@ -0,0 +1,259 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import org.terracotta.management.service.buffer.OverwritePolicy;
+import org.terracotta.management.service.buffer.PartitionedRingBuffer;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A ring buffer made up of prioritized lanes, each of which is a separate {@link PartitionedRingBuffer}
+ * with its own capacity and {@link OverwritePolicy}.
+ * <p>
+ * Lanes are numbered in the order of priority, lane 0 being the highest priority lane. Items are always
+ * consumed from higher priority lanes first, so that items of a lower priority lane are never consumed
+ * while a higher priority lane has pending items. As each lane is bounded separately, a flood of items in one
+ * lane cannot overwrite items in another lane.
+ * <p>
+ * The {@link PartitionedRingBuffer} methods that do not take a lane insert into the last (i.e lowest priority)
+ * lane and report the sizes and capacities summed up across all lanes. The overspill threshold is reported
+ * per lane, see {@link #hasOverSpillThresholdReached()}.
+ * <p>
+ * This implementation is as thread safe as the lanes it is made of.
+ *
+ * @author RKAV
+ */
+public class PriorityLaneRingBuffer<E> implements PartitionedRingBuffer<E> {
+  private final List<Lane<E>> lanes;
+  private final int defaultLane;
+  // bit mask of the lanes that items were taken from by the last drain that took any items
+  private volatile int drainedLanes;
+
+  /**
+   * Create a laned ring buffer.
+   *
+   * @param lanes the lanes, in the order of priority
+   */
+  @SafeVarargs
+  public PriorityLaneRingBuffer(Lane<E>... lanes) {
+    if (lanes.length == 0 || lanes.length > Integer.SIZE) {
+      throw new IllegalArgumentException("Invalid number of lanes " + lanes.length + " specified.");
+    }
+    this.lanes = new ArrayList<>(lanes.length);
+    for (Lane<E> lane : lanes) {
+      this.lanes.add(lane);
+    }
+    this.defaultLane = lanes.length - 1;
+    this.drainedLanes = 0;
+  }
+
+  /**
+   * Insert an item into the given lane.
+   *
+   * @param laneNo the lane, 0 being the highest priority
+   * @param partitionNo the partition within the lane
+   * @param item the item to insert
+   * @return true if inserted, false if discarded as per the overwrite policy of the lane
+   */
+  public boolean insert(int laneNo, int partitionNo, E item) {
+    return getLane(laneNo).insert(partitionNo, item);
+  }
+
+  /**
+   * @return number of lanes
+   */
+  public int lanes() {
+    return lanes.size();
+  }
+
+  /**
+   * Number of items discarded so far by the given lane, due to its {@link OverwritePolicy#DISCARD_NEWEST} policy.
+   *
+   * @param laneNo the lane
+   * @return discarded items
+   */
+  public long discarded(int laneNo) {
+    return getLane(laneNo).discarded.sum();
+  }
+
+  @Override
+  public void insert(int partitionNo, E item) {
+    lanes.get(defaultLane).insert(partitionNo, item);
+  }
+
+  @Override
+  public Collection<E> removeAll() {
+    List<E> items = new ArrayList<>();
+    for (Lane<E> lane : lanes) {
+      items.addAll(lane.buffer.removeAll());
+    }
+    return items;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public E[] toArray(Class<E[]> type) {
+    Collection<E> items = removeAll();
+    return items.toArray((E[])Array.newInstance(type.getComponentType(), items.size()));
+  }
+
+  @Override
+  public int drainTo(Consumer<? super E> sink, int maxItems) {
+    int drained = 0;
+    int drainedFrom = 0;
+    for (int i = 0; i < lanes.size() && drained < maxItems; i++) {
+      int n = lanes.get(i).buffer.drainTo(sink, maxItems - drained);
+      if (n > 0) {
+        drained += n;
+        drainedFrom |= 1 << i;
+      }
+    }
+    if (drainedFrom != 0) {
+      drainedLanes = drainedFrom;
+    }
+    return drained;
+  }
+
+  @Override
+  public int drainTo(E[] target, int offset, int maxItems) {
+    int limit = Math.min(maxItems, target.length - offset);
+    int drained = 0;
+    int drainedFrom = 0;
+    for (int i = 0; i < lanes.size() && drained < limit; i++) {
+      int n = lanes.get(i).buffer.drainTo(target, offset + drained, limit - drained);
+      if (n > 0) {
+        drained += n;
+        drainedFrom |= 1 << i;
+      }
+    }
+    if (drainedFrom != 0) {
+      drainedLanes = drainedFrom;
+    }
+    return drained;
+  }
+
+  @Override
+  public int capacity(int partitionNo) {
+    int capacity = 0;
+    for (Lane<E> lane : lanes) {
+      capacity += lane.buffer.capacity(partitionNo);
+    }
+    return capacity;
+  }
+
+  @Override
+  public int size(int partitionNo) {
+    int size = 0;
+    for (Lane<E> lane : lanes) {
+      size += lane.buffer.size(partitionNo);
+    }
+    return size;
+  }
+
+  /**
+   * Returns true if any of the lanes that items were taken from by the last drain is about to overspill.
+   * <p>
+   * A consumer holding on to drained items must only give them up to make room in their own lanes, as
+   * giving them up does not make any room in the other lanes. A (small) high priority lane reaching its
+   * threshold must not cause drained items of a lower priority lane to be dropped, or vice versa.
+   *
+   * @return true, if any of the lanes drained last has crossed the threshold
+   */
+  @Override
+  public boolean hasOverSpillThresholdReached() {
+    int drainedFrom = drainedLanes;
+    for (int i = 0; i < lanes.size(); i++) {
+      if ((drainedFrom & (1 << i)) != 0 && lanes.get(i).buffer.hasOverSpillThresholdReached()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if any of the partitions of the given lane are about to overspill.
+   *
+   * @param laneNo the lane
+   * @return true, if the lane has crossed the threshold
+   */
+  public boolean hasOverSpillThresholdReached(int laneNo) {
+    return getLane(laneNo).buffer.hasOverSpillThresholdReached();
+  }
+
+  /**
+   * Items lost across all lanes, whether overwritten within a lane or discarded as per its {@link OverwritePolicy}.
+   *
+   * @return number of lost items
+   */
+  @Override
+  public long getLostItems() {
+    long lost = 0L;
+    for (Lane<E> lane : lanes) {
+      lost += lane.buffer.getLostItems() + lane.discarded.sum();
+    }
+    return lost;
+  }
+
+  private Lane<E> getLane(int laneNo) {
+    if (laneNo < 0 || laneNo >= lanes.size()) {
+      throw new IllegalArgumentException("Invalid Lane Number " + laneNo + " specified.");
+    }
+    return lanes.get(laneNo);
+  }
+
+  /**
+   * A lane of a {@link PriorityLaneRingBuffer}.
+   *
+   * @param <E> type of items
+   */
+  public static final class Lane<E> {
+    private final PartitionedRingBuffer<E> buffer;
+    private final OverwritePolicy overwritePolicy;
+    private final LongAdder discarded;
+
+    /**
+     * Create a lane.
+     *
+     * @param buffer the buffer holding the items of this lane
+     * @param overwritePolicy what happens on inserting into a full partition of the buffer
+     */
+    public Lane(PartitionedRingBuffer<E> buffer, OverwritePolicy overwritePolicy) {
+      this.buffer = buffer;
+      this.overwritePolicy = overwritePolicy;
+      this.discarded = new LongAdder();
+    }
+
+    private boolean insert(int partitionNo, E item) {
+      // as long as there is a single producer per partition, the size can only shrink concurrently
+      if (overwritePolicy == OverwritePolicy.DISCARD_NEWEST
+          && buffer.size(partitionNo) >= buffer.capacity(partitionNo)) {
+        discarded.increment();
+        return false;
+      }
+      buffer.insert(partitionNo, item);
+      return true;
+    }
+  }
+}
@@ -0,0 +1,401 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A bounded, append only log of serialized management messages, kept on local disk as a sequence
+ * of segment files.
+ * <p>
+ * This is the overflow tier of the message buffers. Messages that could not be delivered to the
+ * management entity are appended to the log and replayed later in the same order they were appended.
+ * Replaying is done in two steps: {@link #read(Consumer, int)} reads the oldest records without removing
+ * them and {@link #commit()} removes them once they have been delivered successfully, so that a failed
+ * delivery is simply retried.
+ * <p>
+ * Records are 4 byte length prefixed. A new segment is started whenever the current segment exceeds the
+ * segment size. Whole segments are discarded, oldest first, whenever the log exceeds its maximum size or
+ * when a segment is older than the retention period.
+ * <p>
+ * A segment that could not be written or read is sealed at its last intact record, so that further records
+ * go to a new segment and the records behind it are not replayed. All records that are discarded, for
+ * whatever reason, are accounted for in {@link #droppedRecords()}.
+ * <p>
+ * Segments are not meant to survive a restart. Any segments left behind in the directory are removed
+ * when the log is created and all segments are removed when the log is closed.
+ * <p>
+ * This implementation is thread safe.
+ *
+ * @author RKAV
+ */
+public class SegmentedOverflowLog implements Closeable {
+  // size of the length prefix of each record
+  private static final int HEADER_SIZE = 4;
+  private static final String SEGMENT_PREFIX = "overflow-";
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  private final Path directory;
+  private final long segmentSize;
+  private final long maxSize;
+  private final long retentionMillis;
+  private final Deque<Segment> segments;
+  private final ByteBuffer header;
+  private long nextSegmentId;
+  private long totalSize;
+  private long droppedRecords;
+  // records that were read but are not committed yet: the number of fully read segments, followed
+  // by the read position and number of records read from the next segment (if any)
+  private int pendingSegments;
+  private long pendingReadOffset;
+  private int pendingReadRecords;
+  private boolean closed;
+
+  /**
+   * Create an overflow log in the given directory.
+   *
+   * @param directory directory holding the segment files, created if it does not exist
+   * @param segmentSize size in bytes after which a new segment is started
+   * @param maxSize maximum size in bytes of all segments, must not be less than the segment size
+   * @param retentionMillis time after which a segment is discarded, even if it was not replayed
+   * @throws IOException if the directory cannot be created or cleaned up
+   */
+  public SegmentedOverflowLog(Path directory, long segmentSize, long maxSize, long retentionMillis) throws IOException {
+    if (segmentSize <= 0 || maxSize < segmentSize) {
+      throw new IllegalArgumentException("Invalid overflow log sizes " + segmentSize + "/" + maxSize + " specified.");
+    }
+    if (retentionMillis <= 0) {
+      throw new IllegalArgumentException("Invalid overflow log retention " + retentionMillis + " specified.");
+    }
+    this.directory = Files.createDirectories(directory);
+    this.segmentSize = segmentSize;
+    this.maxSize = maxSize;
+    this.retentionMillis = retentionMillis;
+    this.segments = new ArrayDeque<>();
+    this.header = ByteBuffer.allocate(HEADER_SIZE);
+    this.nextSegmentId = 0;
+    this.totalSize = 0;
+    this.droppedRecords = 0;
+    this.closed = false;
+    resetPendingRead();
+    removeStaleSegments();
+  }
+
+  /**
+   * Append records at the end of the log.
+   *
+   * @param records records to append
+   * @throws IOException if the records cannot be written, in which case the records that were not
+   *         appended are counted as dropped
+   */
+  public synchronized void append(Iterable<byte[]> records) throws IOException {
+    ensureOpen();
+    long now = System.currentTimeMillis();
+    expire(now);
+    Iterator<byte[]> iterator = records.iterator();
+    while (iterator.hasNext()) {
+      byte[] record = iterator.next();
+      Segment segment = segments.peekLast();
+      long written = 0;
+      try {
+        if (segment == null || segment.sealed || segment.writeOffset >= segmentSize) {
+          segment = null;
+          Segment next = new Segment(directory.resolve(SEGMENT_PREFIX + nextSegmentId++ + SEGMENT_SUFFIX), now);
+          segments.addLast(next);
+          segment = next;
+        }
+        header.clear();
+        header.putInt(record.length).flip();
+        ByteBuffer body = ByteBuffer.wrap(record);
+        while (header.hasRemaining() || body.hasRemaining()) {
+          written += segment.channel.write(new ByteBuffer[] {header, body});
+        }
+      } catch (IOException e) {
+        if (segment != null) {
+          // a partially written record must not be followed by further records
+          segment.sealed = true;
+        }
+        droppedRecords++;
+        while (iterator.hasNext()) {
+          iterator.next();
+          droppedRecords++;
+        }
+        throw e;
+      }
+      segment.writeOffset += written;
+      segment.numRecords++;
+      totalSize += written;
+      while (totalSize > maxSize && segments.size() > 1) {
+        evictOldestSegment();
+      }
+    }
+  }
+
+  /**
+   * Read up to {@code maxRecords} of the oldest records, without removing them from the log.
+   * <p>
+   * Repeated reads without a {@link #commit()} return the same records.
+   *
+   * @param sink the consumer of the records read
+   * @param maxRecords maximum number of records to read
+   * @return number of records read
+   * @throws IOException if the records cannot be read, in which case the segment is sealed at the last
+   *         record that could be read and the records behind it are counted as dropped. A retry reads up
+   *         to that record
+   */
+  public synchronized int read(Consumer<byte[]> sink, int maxRecords) throws IOException {
+    ensureOpen();
+    expire(System.currentTimeMillis());
+    resetPendingRead();
+    int count = 0;
+    for (Segment segment : segments) {
+      long offset = segment.readOffset;
+      int segmentCount = 0;
+      while (count < maxRecords && offset < segment.writeOffset) {
+        byte[] record;
+        try {
+          header.clear();
+          readFully(segment.channel, header, offset);
+          int length = header.getInt(0);
+          if (length < 0 || length > segment.writeOffset - offset - HEADER_SIZE) {
+            throw new IOException("Corrupt record of length " + length + " in overflow segment " + segment.path);
+          }
+          record = new byte[length];
+          readFully(segment.channel, ByteBuffer.wrap(record), offset + HEADER_SIZE);
+        } catch (IOException e) {
+          seal(segment, offset, segment.readRecords + segmentCount);
+          resetPendingRead();
+          throw e;
+        }
+        offset += HEADER_SIZE + record.length;
+        sink.accept(record);
+        segmentCount++;
+        count++;
+      }
+      // the last segment may still be appended to before the commit
+      if (offset < segment.writeOffset || count >= maxRecords || segment == segments.peekLast()) {
+        pendingReadOffset = offset;
+        pendingReadRecords = segmentCount;
+        break;
+      }
+      // segment fully read
+      pendingSegments++;
+    }
+    return count;
+  }
+
+  /**
+   * Remove the records returned by the last {@link #read(Consumer, int)} from the log.
+   * <p>
+   * The records are removed even if this fails, so that they are never replayed twice.
+   *
+   * @throws IOException if a fully replayed segment file cannot be removed
+   */
+  public synchronized void commit() throws IOException {
+    IOException failure = null;
+    for (; pendingSegments > 0; pendingSegments--) {
+      Segment replayed = segments.peekFirst();
+      replayed.readRecords = replayed.numRecords;
+      failure = removeOldestSegment(failure);
+    }
+    Segment segment = segments.peekFirst();
+    if (pendingReadOffset >= 0 && segment != null) {
+      segment.readOffset = pendingReadOffset;
+      segment.readRecords += pendingReadRecords;
+      if (segment.readOffset >= segment.writeOffset) {
+        // fully replayed, any further records go to a new segment
+        failure = removeOldestSegment(failure);
+      }
+    }
+    resetPendingRead();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * @return true if there are no records to replay
+   */
+  public synchronized boolean isEmpty() {
+    for (Segment segment : segments) {
+      if (segment.readOffset < segment.writeOffset) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return current size in bytes of all segments
+   */
+  public synchronized long size() {
+    return totalSize;
+  }
+
+  /**
+   * @return number of records discarded so far, due to size or retention limits
+   */
+  public synchronized long droppedRecords() {
+    return droppedRecords;
+  }
+
+  /**
+   * Close the log, removing all segments.
+   *
+   * @throws IOException if a segment cannot be removed
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    IOException failure = null;
+    while (!segments.isEmpty()) {
+      failure = removeOldestSegment(failure);
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new IllegalStateException("Overflow log is closed");
+    }
+  }
+
+  private void expire(long now) throws IOException {
+    while (!segments.isEmpty() && now - segments.peekFirst().creationTime > retentionMillis) {
+      evictOldestSegment();
+    }
+  }
+
+  private void resetPendingRead() {
+    pendingSegments = 0;
+    pendingReadOffset = -1;
+    pendingReadRecords = 0;
+  }
+
+  private void evictOldestSegment() throws IOException {
+    // records read but not committed yet may be gone, so a commit must not skip any records
+    resetPendingRead();
+    removeOldestSegment();
+  }
+
+  private void removeOldestSegment() throws IOException {
+    IOException failure = removeOldestSegment(null);
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Remove the oldest segment from the log, then close and delete its file.
+   *
+   * @param failure failure of a previous removal, if any
+   * @return the first failure to close or delete a segment file, null if none
+   */
+  private IOException removeOldestSegment(IOException failure) {
+    Segment segment = segments.removeFirst();
+    totalSize -= segment.writeOffset;
+    droppedRecords += segment.unreadRecords();
+    try {
+      segment.channel.close();
+    } catch (IOException e) {
+      failure = (failure == null) ? e : failure;
+    }
+    try {
+      Files.deleteIfExists(segment.path);
+    } catch (IOException e) {
+      failure = (failure == null) ? e : failure;
+    }
+    return failure;
+  }
+
+  /**
+   * Seal a segment that could not be read at the given offset, dropping the records behind it.
+   */
+  private void seal(Segment segment, long offset, int intactRecords) {
+    droppedRecords += segment.numRecords - intactRecords;
+    totalSize -= segment.writeOffset - offset;
+    segment.numRecords = intactRecords;
+    segment.writeOffset = offset;
+    segment.sealed = true;
+  }
+
+  private void removeStaleSegments() throws IOException {
+    try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path path : stale) {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+    while (target.hasRemaining()) {
+      int n = channel.read(target, position);
+      if (n < 0) {
+        throw new IOException("Unexpected end of overflow segment");
+      }
+      position += n;
+    }
+  }
+
+  private static final class Segment {
+    private final Path path;
+    private final FileChannel channel;
+    private final long creationTime;
+    private long writeOffset;
+    private long readOffset;
+    private int numRecords;
+    private int readRecords;
+    // no further records are appended once sealed
+    private boolean sealed;
+
+    private Segment(Path path, long creationTime) throws IOException {
+      this.path = path;
+      this.channel = FileChannel.open(path, CREATE_NEW, READ, WRITE);
+      this.creationTime = creationTime;
+      this.writeOffset = 0;
+      this.readOffset = 0;
+      this.numRecords = 0;
+      this.readRecords = 0;
+      this.sealed = false;
+    }
+
+    private int unreadRecords() {
+      return numRecords - readRecords;
+    }
+  }
+}
@@ -24,9 +24,8 @@ import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReferenceArray;
-import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.IntConsumer;
 
 /**
@@ -40,6 +39,11 @@ import java.util.function.IntConsumer;
  * <p>
  * This implementation is safe to use only in a single producer, single consumer scenario. Please
  * see {@link MultiPartitionLockFreeRingBuffer} for safe usage across multiple producers.
+ * <p>
+ * The read and write sequences are kept in separate cache lines, each along with a cached copy of the
+ * other sequence owned by the same thread. The producer only looks at the read sequence when its cached
+ * copy indicates a possible overflow and the consumer only looks at the write sequence when its cached
+ * copy does not have enough items for the current drain.
  *
  * @author RKAV
  */
@@ -54,16 +58,27 @@ public class SinglePartitionLockFreeRingBuffer<E> implements PartitionedRingBuff
     }
   }
 
-  private final AtomicLong writeSequence;
-  private final AtomicLong readSequence;
+  /**
+   * Adds a consumed item at the given position of the caller's target. Avoids boxing the position.
+   */
+  private interface ItemAdder<E> {
+    void add(int position, E item);
+  }
+
+  // written by the producer, carries the producer's cached copy of the read sequence
+  private final PaddedSequence writeSequence;
+  // written by the consumer, carries the consumer's cached copy of the write sequence
+  private final PaddedSequence readSequence;
   private final AtomicReferenceArray<Item<E>> buffer;
   private final int mask;
   private final int overSpillThreshold;
+  // number of items consumed so far. Only written by the consumer, before moving the read sequence
+  private volatile long consumed;
 
   public SinglePartitionLockFreeRingBuffer(int size) {
     this.buffer = new AtomicReferenceArray<>(size);
-    this.writeSequence = new AtomicLong(-1L);
-    this.readSequence = new AtomicLong(-1L);
+    this.writeSequence = new PaddedSequence(-1L, -1L);
+    this.readSequence = new PaddedSequence(-1L, -1L);
     this.mask = size - 1;
     for (int i = 0; i < size; i++) {
       this.buffer.set(i, new Item<>(-1, null));
@@ -93,6 +108,18 @@ public class SinglePartitionLockFreeRingBuffer<E> implements PartitionedRingBuff
     return size(0) >= overSpillThreshold;
   }
 
+  /**
+   * Every item up to the read sequence was either consumed or overwritten, whether the read sequence was
+   * moved by the consumer or by the producer on an overflow.
+   *
+   * @return number of items overwritten before they could be consumed
+   */
+  @Override
+  public long getLostItems() {
+    long lost = readSequence.get() + 1 - consumed;
+    return (lost > 0) ? lost : 0L;
+  }
+
   /**
    * Insert a list of items into the ring buffer.
    * <p>
@@ -115,13 +142,19 @@ public class SinglePartitionLockFreeRingBuffer<E> implements PartitionedRingBuff
       // use the better performing lazy set as this implementation follows the single writer priciple.
       buffer.lazySet(((int)(mask & next)), new Item<>(next, item));
     } finally {
-      long lastRead = readSequence.get();
-      while (next - lastRead > mask + 1) {
-        // attempt to adjust read sequence as there is an overflow
-        if (readSequence.compareAndSet(lastRead, next - mask - 1)) {
-          break;
+      // the cached copy can only lag behind the actual read sequence, so if the cached copy
+      // does not indicate an overflow, there is none.
+      if (next - writeSequence.getCachedPeer() > mask + 1) {
+        long lastRead = readSequence.get();
+        while (next - lastRead > mask + 1) {
+          // attempt to adjust read sequence as there is an overflow
+          if (readSequence.compareAndSet(lastRead, next - mask - 1)) {
+            lastRead = next - mask - 1;
+            break;
+          }
+          lastRead = readSequence.get();
         }
-        lastRead = readSequence.get();
+        writeSequence.setCachedPeer(lastRead);
       }
       writeSequence.lazySet(next);
     }
@@ -137,7 +170,7 @@ public class SinglePartitionLockFreeRingBuffer<E> implements PartitionedRingBuff
   public Collection<E> removeAll() {
     @SuppressWarnings("unchecked")
     final Collection<E>[] ret = (Collection<E>[])new Collection[1];
-    removeAllItems((sz) -> ret[0] = (sz > 0) ? new ArrayList<>(sz) : Collections.emptyList(),
+    removeItems(Integer.MAX_VALUE, (sz) -> ret[0] = (sz > 0) ? new ArrayList<>(sz) : Collections.emptyList(),
         (j, item) -> ret[0].add(item));
     return ret[0];
   }
@@ -153,42 +186,114 @@ public class SinglePartitionLockFreeRingBuffer<E> implements PartitionedRingBuff
   @Override
   public E[] toArray(Class<E[]> type) {
     final Object[] ret = new Object[1];
-    removeAllItems((sz) -> ret[0] = Array.newInstance(type.getComponentType(), sz > 0 ? sz : 0),
+    removeItems(Integer.MAX_VALUE, (sz) -> ret[0] = Array.newInstance(type.getComponentType(), sz > 0 ? sz : 0),
         (j, item) -> ((E[])ret[0])[j] = item);
     return (E[])ret[0];
   }
 
   /**
-   * Remove all items from the ring buffer.
+   * Removes up to {@code maxItems} items from the ring buffer, passing each of them to the {@code sink}.
+   * <p>
+   * Assumes a single consumer.
+   *
+   * @param sink the consumer of removed items
+   * @param maxItems maximum number of items to remove
+   * @return number of items removed
+   */
+  @Override
+  public int drainTo(Consumer<? super E> sink, int maxItems) {
+    return removeItems(maxItems, null, (j, item) -> sink.accept(item));
+  }
+
+  /**
+   * Removes up to {@code maxItems} items from the ring buffer into the given array.
+   * <p>
+   * Assumes a single consumer.
+   *
+   * @param target the array to fill
+   * @param offset index of {@code target} at which the first removed item is copied
+   * @param maxItems maximum number of items to remove
+   * @return number of items removed
+   */
+  @Override
+  public int drainTo(E[] target, int offset, int maxItems) {
+    long start = readSequence.get();
+    int sz = available(start, Math.min(maxItems, target.length - offset));
+    int startIdx = (int)(start + 1 & mask);
+    int j = 0;
+    while (j < sz) {
+      Item<E> item = buffer.get(startIdx);
+      if (item.writeSequence <= start) {
+        break;
+      }
+      target[offset + j] = item.item;
+      j++;
+      startIdx = (startIdx + 1) & mask;
+    }
+    return advanceRead(start, j);
+  }
+
+  /**
+   * Remove up to {@code maxItems} items from the ring buffer.
    * <p>
    * Use the consumers to create and add the appropriate collection.
    *
-   * @param creator The consumer that creates a collection based on type and size
+   * @param maxItems maximum number of items to remove
+   * @param creator The consumer that creates a collection based on type and size, null if not required
    * @param adder The consumer that adds to the collection.
+   * @return number of items removed
    */
-  private void removeAllItems(IntConsumer creator, BiConsumer<Integer, E> adder) {
-    long end = writeSequence.get();
+  private int removeItems(int maxItems, IntConsumer creator, ItemAdder<E> adder) {
     long start = readSequence.get();
-    int sz = (int)(end - start);
-    creator.accept(sz);
+    int sz = available(start, maxItems);
+    if (creator != null) {
+      creator.accept(sz);
+    }
     if (sz <= 0) {
-      return;
+      return 0;
     }
     int startIdx = (int)(start + 1 & mask);
-    int endIdx = (int)(end + 1 & mask);
     int j = 0;
     do {
       Item<E> item = buffer.get(startIdx);
       if (item.writeSequence > start) {
-        adder.accept(j, item.item);
+        adder.add(j, item.item);
         j++;
       } else {
         break;
       }
       startIdx = (startIdx + 1) & mask;
-    } while (startIdx != endIdx);
-    if (j > 0) {
-      readSequence.lazySet(start + j);
+    } while (j < sz);
+    return advanceRead(start, j);
+  }
+
+  /**
+   * @param start the current read sequence
+   * @param maxItems maximum number of items to remove
+   * @return number of items that can be removed, possibly negative if none
+   */
+  private int available(long start, int maxItems) {
+    long end = readSequence.getCachedPeer();
+    if (end - start < maxItems) {
+      // cached copy of the write sequence may not have all the available items, refresh it
+      end = writeSequence.get();
+      readSequence.setCachedPeer(end);
+    }
+    return (int)Math.min(Math.min(end - start, buffer.length()), maxItems);
+  }
+
+  /**
+   * Move the read sequence past the removed items.
+   *
+   * @param start the read sequence before removing the items
+   * @param removed number of removed items
+   * @return number of removed items
+   */
+  private int advanceRead(long start, int removed) {
+    if (removed > 0) {
+      consumed += removed;
+      readSequence.lazySet(start + removed);
     }
+    return removed;
   }
 }
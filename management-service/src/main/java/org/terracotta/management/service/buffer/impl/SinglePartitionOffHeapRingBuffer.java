@@ -0,0 +1,311 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import org.terracotta.management.service.buffer.PartitionedRingBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.function.Consumer;
+
+/**
+ * A thread safe, no wait, un partitioned ring buffer of serialized messages, kept outside the java heap.
+ * <p>
+ * Messages are stored as length prefixed records in a direct {@link ByteBuffer} (or any other buffer passed
+ * in by the caller, such as a {@link java.nio.MappedByteBuffer}), so that buffering large volumes of
+ * management messages does not inflate the heap or GC pauses when the management entity is slow or down.
+ * <p>
+ * Similar to the other implementations, the producer does not wait for the consumer when the buffer is
+ * full. Instead the oldest records are overwritten, whenever either the byte capacity or the maximum number
+ * of records is exceeded. This implementation guarantees a FIFO ordering.
+ * <p>
+ * In addition to the {@code byte[]} based methods of {@link PartitionedRingBuffer}, records can be inserted from
+ * and drained into a {@link ByteBuffer} through {@link #insert(int, ByteBuffer)} and
+ * {@link #drainRecordsTo(Consumer, int)}, the latter without copying the record out of the buffer.
+ * <p>
+ * This implementation supports multiple producer, multiple consumer thread safe concurrent access of
+ * the ring buffer and is thread safe.
+ *
+ * @author RKAV
+ */
+public class SinglePartitionOffHeapRingBuffer implements PartitionedRingBuffer<byte[]> {
+  // size of the length prefix of each record
+  private static final int HEADER_SIZE = 4;
+  // length prefix that marks the unused tail end of the storage, before wrapping to the start
+  private static final int WRAP_MARKER = -1;
+
+  private final ByteBuffer storage;
+  private final ByteBuffer readView;
+  private final int storageCapacity;
+  private final int maxRecords;
+  private final int overSpillThreshold;
+  private final int overSpillBytesThreshold;
+  private int head;
+  private int tail;
+  private int usedBytes;
+  private int numRecords;
+  private long overwrittenRecords;
+
+  /**
+   * Create a ring buffer backed by a newly allocated direct byte buffer.
+   *
+   * @param maxRecords maximum number of records held by this buffer
+   * @param capacityInBytes size of the direct byte buffer, including a 4 byte header per record
+   */
+  public SinglePartitionOffHeapRingBuffer(int maxRecords, int capacityInBytes) {
+    this(maxRecords, ByteBuffer.allocateDirect(capacityInBytes));
+  }
+
+  /**
+   * Create a ring buffer backed by the given byte buffer (e.g. a memory mapped region).
+   * <p>
+   * The buffer is owned by the ring buffer from now on and must not be accessed by the caller.
+   *
+   * @param maxRecords maximum number of records held by this buffer
+   * @param storage the backing storage
+   */
+  public SinglePartitionOffHeapRingBuffer(int maxRecords, ByteBuffer storage) {
+    // keep records 4 byte aligned, so that a wrap marker always fits at the end
+    this.storageCapacity = storage.capacity() & ~(HEADER_SIZE - 1);
+    if (storageCapacity < HEADER_SIZE || maxRecords <= 0) {
+      throw new IllegalArgumentException("Invalid off heap buffer capacity specified.");
+    }
+    this.storage = storage.duplicate();
+    this.readView = storage.asReadOnlyBuffer();
+    this.maxRecords = maxRecords;
+    this.head = 0;
+    this.tail = 0;
+    this.usedBytes = 0;
+    this.numRecords = 0;
+    this.overSpillThreshold = Math.round(0.95f * (float)maxRecords);
+    this.overSpillBytesThreshold = Math.round(0.95f * (float)storageCapacity);
+  }
+
+  @Override
+  public int capacity(int partitionNo) {
+    if (partitionNo > 0) {
+      throw new IllegalArgumentException("Invalid Partition Number " + partitionNo + " specified.");
+    }
+    return maxRecords;
+  }
+
+  @Override
+  public synchronized int size(int partitionNo) {
+    if (partitionNo > 0) {
+      throw new IllegalArgumentException("Invalid Partition Number " + partitionNo + " specified.");
+    }
+    return numRecords;
+  }
+
+  /**
+   * Number of bytes of the backing storage currently in use.
+   *
+   * @return used bytes, including record headers
+   */
+  public synchronized int usedBytes() {
+    return usedBytes;
+  }
+
+  @Override
+  public synchronized boolean hasOverSpillThresholdReached() {
+    return numRecords >= overSpillThreshold || usedBytes >= overSpillBytesThreshold;
+  }
+
+  @Override
+  public synchronized long getLostItems() {
+    return overwrittenRecords;
+  }
+
+  @Override
+  public synchronized void insert(int partitionNo, byte[] item) {
+    storage.position(reserve(partitionNo, item.length));
+    storage.put(item);
+  }
+
+  /**
+   * Insert the remaining bytes of the given buffer as a single record, overwriting the oldest
+   * records if required. The position of {@code record} is not changed.
+   *
+   * @param partitionNo the partition number..only valid value is 0 for this implementation.
+   * @param record the serialized message
+   */
+  public synchronized void insert(int partitionNo, ByteBuffer record) {
+    int position = record.position();
+    storage.position(reserve(partitionNo, record.remaining()));
+    storage.put(record);
+    record.position(position);
+  }
+
+  /**
+   * Reserve space for a record of the given length at the tail of the buffer, overwriting the
+   * oldest records if required, and write the record header.
+   *
+   * @param partitionNo the partition number..only valid value is 0 for this implementation.
+   * @param length length of the record
+   * @return offset at which the record contents must be written
+   */
+  private int reserve(int partitionNo, int length) {
+    if (partitionNo != 0) {
+      throw new IllegalArgumentException("Invalid Partition Number " + partitionNo + " specified.");
+    }
+    int recordSize = recordSize(length);
+    if (recordSize > storageCapacity) {
+      throw new IllegalArgumentException("Record of size " + length + " does not fit into the buffer.");
+    }
+    int wrapPadding = (tail + recordSize > storageCapacity) ? storageCapacity - tail : 0;
+    while (numRecords > 0 &&
+           (numRecords >= maxRecords || storageCapacity - usedBytes < wrapPadding + recordSize)) {
+      // reader is not fast enough, overwrite the oldest record
+      skipRecord();
+      overwrittenRecords++;
+      if (numRecords == 0) {
+        wrapPadding = 0;
+      }
+    }
+    if (wrapPadding > 0) {
+      storage.putInt(tail, WRAP_MARKER);
+      usedBytes += wrapPadding;
+      tail = 0;
+    }
+    int start = tail;
+    storage.putInt(start, length);
+    tail = advance(start, recordSize);
+    usedBytes += recordSize;
+    numRecords++;
+    return start + HEADER_SIZE;
+  }
+
+  @Override
+  public synchronized Collection<byte[]> removeAll() {
+    if (numRecords == 0) {
+      return Collections.emptyList();
+    }
+    Collection<byte[]> itemCollection = new ArrayList<>(numRecords);
+    drainTo(itemCollection::add, numRecords);
+    return itemCollection;
+  }
+
+  @Override
+  public synchronized byte[][] toArray(Class<byte[][]> type) {
+    byte[][] items = new byte[numRecords][];
+    drainTo(items, numRecords);
+    return items;
+  }
+
+  @Override
+  public synchronized int drainTo(Consumer<? super byte[]> sink, int maxItems) {
+    return drainRecordsTo((record) -> {
+      byte[] item = new byte[record.remaining()];
+      record.get(item);
+      sink.accept(item);
+    }, maxItems);
+  }
+
+  @Override
+  public synchronized int drainTo(byte[][] target, int offset, int maxItems) {
+    int sz = Math.min(numRecords, Math.min(maxItems, target.length - offset));
+    for (int i = 0; i < sz; i++) {
+      target[offset + i] = copyOf(nextRecord());
+    }
+    return Math.max(sz, 0);
+  }
+
+  private static byte[] copyOf(ByteBuffer record) {
+    byte[] item = new byte[record.remaining()];
+    record.get(item);
+    return item;
+  }
+
+  /**
+   * Consume up to {@code maxItems} records, passing each record to the {@code sink} without copying it.
+   * <p>
+   * The buffer passed to the sink is a read only view of the backing storage, positioned at the start of
+   * the record with its limit set at the end of the record. It is only valid for the duration of the
+   * {@code accept} call and must not be retained.
+   *
+   * @param sink the consumer to which each record is passed.
+   * @param maxItems the maximum number of records to consume in this call.
+   * @return the number of records consumed.
+   */
+  public synchronized int drainRecordsTo(Consumer<? super ByteBuffer> sink, int maxItems) {
+    int sz = Math.min(numRecords, maxItems);
+    for (int i = 0; i < sz; i++) {
+      sink.accept(nextRecord());
+    }
+    return sz > 0 ? sz : 0;
+  }
+
+  /**
+   * Removes the oldest record and returns the read view positioned on it.
+   *
+   * @return the read view, positioned and limited on the removed record
+   */
+  private ByteBuffer nextRecord() {
+    int start = recordStart();
+    int length = storage.getInt(start);
+    readView.limit(start + HEADER_SIZE + length);
+    readView.position(start + HEADER_SIZE);
+    removeRecordAt(start, length);
+    return readView;
+  }
+
+  /**
+   * Removes the oldest record without reading it.
+   */
+  private void skipRecord() {
+    int start = recordStart();
+    removeRecordAt(start, storage.getInt(start));
+  }
+
+  /**
+   * Skips any wrap marker at the head and returns the start of the oldest record.
+   *
+   * @return offset of the oldest record
+   */
+  private int recordStart() {
+    if (storage.getInt(head) == WRAP_MARKER) {
+      usedBytes -= storageCapacity - head;
+      head = 0;
+    }
+    return head;
+  }
+
+  private void removeRecordAt(int start, int length) {
+    int recordSize = recordSize(length);
+    head = advance(start, recordSize);
+    usedBytes -= recordSize;
+    if (--numRecords == 0) {
+      // start afresh, so that the next record never needs to wrap
+      head = 0;
+      tail = 0;
+      usedBytes = 0;
+    }
+  }
+
+  private int advance(int offset, int recordSize) {
+    int next = offset + recordSize;
+    return (next == storageCapacity) ? 0 : next;
+  }
+
+  private static int recordSize(int length) {
+    return HEADER_SIZE + ((length + HEADER_SIZE - 1) & ~(HEADER_SIZE - 1));
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import org.terracotta.management.service.buffer.PartitionedRingBuffer;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
+
+/**
+ * A single producer single consumer <i>lock free</i>, <i>wait free</i> and <i>allocation free</i> ring
+ * buffer implementation.
+ * <p>
+ * Unlike {@link SinglePartitionLockFreeRingBuffer}, which allocates a new immutable holder for every
+ * inserted item, this implementation allocates a pool of mutable message holders (slots) upfront and
+ * recycles them on every lap around the ring. Producing and draining (through
+ * {@link #drainTo(Consumer, int)}) therefore do not allocate at all in steady state.
+ * <p>
+ * As a slot may be overwritten by the producer while the consumer is reading it, each slot carries the
+ * sequence of the item it holds and the consumer validates that sequence before and after reading the
+ * item (in the style of a sequence lock). Items overwritten while being read are skipped.
+ * <p>
+ * The same assumptions as {@link SinglePartitionLockFreeRingBuffer} apply. Please see
+ * {@link MultiPartitionPooledRingBuffer} for safe usage across multiple producers.
+ *
+ * @author RKAV
+ */
+public class SinglePartitionPooledRingBuffer<E> implements PartitionedRingBuffer<E> {
+  // slot sequence while the producer is (over)writing the slot
+  private static final long IN_PROGRESS = Long.MIN_VALUE;
+
+  private final static class Slot<E> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<Slot> SEQUENCE_UPDATER =
+        AtomicLongFieldUpdater.newUpdater(Slot.class, "sequence");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Slot, Object> ITEM_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(Slot.class, Object.class, "item");
+
+    private volatile long sequence = -1L;
+    private volatile E item;
+
+    private void publish(long newSequence, E newItem) {
+      // ordered stores: consumers either see the old or the new sequence around a consistent item
+      SEQUENCE_UPDATER.lazySet(this, IN_PROGRESS);
+      ITEM_UPDATER.lazySet(this, newItem);
+      SEQUENCE_UPDATER.lazySet(this, newSequence);
+    }
+  }
+
+  // written by the producer, carries the producer's cached copy of the read sequence
+  private final PaddedSequence writeSequence;
+  // written by the consumer, carries the consumer's cached copy of the write sequence
+  private final PaddedSequence readSequence;
+  private final Slot<E>[] slots;
+  private final int mask;
+  private final int overSpillThreshold;
+  // number of items consumed so far. Only written by the consumer, before moving the read sequence
+  private volatile long consumed;
+
+  public SinglePartitionPooledRingBuffer(int size) {
+    @SuppressWarnings("unchecked")
+    Slot<E>[] pool = (Slot<E>[])new Slot[size];
+    for (int i = 0; i < size; i++) {
+      pool[i] = new Slot<>();
+    }
+    this.slots = pool;
+    this.writeSequence = new PaddedSequence(-1L, -1L);
+    this.readSequence = new PaddedSequence(-1L, -1L);
+    this.mask = size - 1;
+    this.overSpillThreshold = Math.round(0.95f * (float)size);
+  }
+
+  @Override
+  public int capacity(int partitionNo) {
+    if (partitionNo > 0) {
+      throw new IllegalArgumentException("Invalid Partition Number " + partitionNo + " specified.");
+    }
+    return slots.length;
+  }
+
+  @Override
+  public int size(int partitionNo) {
+    if (partitionNo > 0) {
+      throw new IllegalArgumentException("Invalid Partition Number " + partitionNo + " specified.");
+    }
+    int sz = (int)(writeSequence.get() - readSequence.get());
+    return (sz > slots.length) ? slots.length : sz;
+  }
+
+  @Override
+  public boolean hasOverSpillThresholdReached() {
+    return size(0) >= overSpillThreshold;
+  }
+
+  /**
+   * Every item up to the read sequence was either consumed or overwritten, whether the read sequence was
+   * moved by the consumer or by the producer on an overflow.
+   *
+   * @return number of items overwritten before they could be consumed
+   */
+  @Override
+  public long getLostItems() {
+    long lost = readSequence.get() + 1 - consumed;
+    return (lost > 0) ? lost : 0L;
+  }
+
+  /**
+   * Insert an item into the ring buffer, recycling the slot of the item inserted one lap earlier.
+   * <p>
+   * Assumptions:
+   *   1. Only a single producer thread.
+   *   2. Overflow between consumer and producer(s) is possible if the consumer is too slow.
+   *      That is handled by simply overwriting unread contents with new contents.
+   *
+   * @param partitionNo the partition number..only valid value is 0 for this implementation.
+   * @param item the item that needs to be inserted
+   */
+  @Override
+  public void insert(int partitionNo, E item) {
+    if (partitionNo != 0) {
+      // this implementation does not support multi-partition
+      throw new IllegalArgumentException("Invalid Partition Number " + partitionNo + " specified.");
+    }
+    long next = writeSequence.get() + 1;
+    slots[(int)(next & mask)].publish(next, item);
+    // the cached copy can only lag behind the actual read sequence, so if the cached copy
+    // does not indicate an overflow, there is none.
+    if (next - writeSequence.getCachedPeer() > mask + 1) {
+      long lastRead = readSequence.get();
+      while (next - lastRead > mask + 1) {
+        // attempt to adjust read sequence as there is an overflow
+        if (readSequence.compareAndSet(lastRead, next - mask - 1)) {
+          lastRead = next - mask - 1;
+          break;
+        }
+        lastRead = readSequence.get();
+      }
+      writeSequence.setCachedPeer(lastRead);
+    }
+    writeSequence.lazySet(next);
+  }
+
+  @Override
+  public Collection<E> removeAll() {
+    int sz = size(0);
+    if (sz <= 0) {
+      return Collections.emptyList();
+    }
+    Collection<E> items = new ArrayList<>(sz);
+    drainTo(items::add, Integer.MAX_VALUE);
+    return items;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public E[] toArray(Class<E[]> type) {
+    Collection<E> items = removeAll();
+    return items.toArray((E[])Array.newInstance(type.getComponentType(), items.size()));
+  }
+
+
+  /**
+   * Removes up to {@code maxItems} items from the ring buffer, passing each of them to the {@code sink}.
+   * <p>
+   * Assumes a single consumer.
+   *
+   * @param sink the consumer of removed items
+   * @param maxItems maximum number of items to remove
+   * @return number of items removed
+   */
+  @Override
+  public int drainTo(Consumer<? super E> sink, int maxItems) {
+    return drain(sink, null, 0, maxItems);
+  }
+
+  /**
+   * Removes up to {@code maxItems} items from the ring buffer into the given array.
+   * <p>
+   * Assumes a single consumer.
+   *
+   * @param target the array to fill
+   * @param offset index of {@code target} at which the first removed item is copied
+   * @param maxItems maximum number of items to remove
+   * @return number of items removed
+   */
+  @Override
+  public int drainTo(E[] target, int offset, int maxItems) {
+    return drain(null, target, offset, Math.min(maxItems, target.length - offset));
+  }
+
+  /**
+   * Removes up to {@code maxItems} items, passing them to the {@code sink} or, if there is no sink, copying
+   * them into {@code target}.
+   */
+  private int drain(Consumer<? super E> sink, E[] target, int offset, int maxItems) {
+    long start = readSequence.get();
+    long end = readSequence.getCachedPeer();
+    if (end - start < maxItems) {
+      // cached copy of the write sequence may not have all the available items, refresh it
+      end = writeSequence.get();
+      readSequence.setCachedPeer(end);
+    }
+    long next = start + 1;
+    int j = 0;
+    while (j < maxItems && next <= end) {
+      Slot<E> slot = slots[(int)(next & mask)];
+      long sequence = slot.sequence;
+      E item = slot.item;
+      if (sequence == next && slot.sequence == next) {
+        if (sink != null) {
+          sink.accept(item);
+        } else {
+          target[offset + j] = item;
+        }
+        j++;
+        next++;
+      } else if (sequence != IN_PROGRESS && sequence < next) {
+        // not yet visible
+        break;
+      } else {
+        // overwritten by the producer, skip to the oldest item that is still available
+        long oldest = writeSequence.get() + 1 - mask;
+        if (oldest <= next) {
+          break;
+        }
+        next = oldest;
+      }
+    }
+    if (j > 0) {
+      consumed += j;
+    }
+    // the producer may have moved the read sequence ahead on an overflow, never move it back
+    long lastRead = start;
+    while (lastRead < next - 1 && !readSequence.compareAndSet(lastRead, next - 1)) {
+      lastRead = readSequence.get();
+    }
+    return j;
+  }
+}
@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.function.Consumer;
 
 /**
  * A thread safe no wait simple un partitioned ring buffer.
@@ -43,13 +44,15 @@ public class SinglePartitionSafeRingBuffer<E> implements PartitionedRingBuffer<E
   private final int overSpillThreshold;
   private int head;
   private int tail;
+  private long overwritten;
 
   @SuppressWarnings("unchecked")
   public SinglePartitionSafeRingBuffer(int size) {
     this.buffer = (E[]) new Object[size];
-    this.head = -1;
-    this.tail = -1;
     this.mask = size - 1;
+    // i.e. -1, kept within the bounds of the buffer so that the first overflow is detected as well
+    this.head = mask;
+    this.tail = mask;
     overSpillThreshold = Math.round(0.95f * (float)size);
   }
 
@@ -74,6 +77,11 @@ public class SinglePartitionSafeRingBuffer<E> implements PartitionedRingBuffer<E
     return size(0) >= overSpillThreshold;
   }
 
+  @Override
+  public synchronized long getLostItems() {
+    return overwritten;
+  }
+
   @Override
   public synchronized void insert(int partitionNo, E item) {
     if (partitionNo != 0) {
@@ -83,6 +91,7 @@ public class SinglePartitionSafeRingBuffer<E> implements PartitionedRingBuffer<E
     if (tail == head) {
       // reader is not fast enough, move the head
       head = (head + 1) & mask;
+      overwritten++;
     }
     buffer[tail] = item;
   }
@@ -126,4 +135,24 @@ public class SinglePartitionSafeRingBuffer<E> implements PartitionedRingBuffer<E
       return copy;
     }
   }
+
+  @Override
+  public synchronized int drainTo(Consumer<? super E> sink, int maxItems) {
+    int sz = Math.min(size(0), maxItems);
+    for (int i = 0; i < sz; i++) {
+      head = (head + 1) & mask;
+      sink.accept(buffer[head]);
+    }
+    return sz > 0 ? sz : 0;
+  }
+
+  @Override
+  public synchronized int drainTo(E[] target, int offset, int maxItems) {
+    int sz = Math.min(size(0), Math.min(maxItems, target.length - offset));
+    for (int i = 0; i < sz; i++) {
+      head = (head + 1) & mask;
+      target[offset + i] = buffer[head];
+    }
+    return sz > 0 ? sz : 0;
+  }
 }
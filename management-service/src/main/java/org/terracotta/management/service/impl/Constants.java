@@ -18,6 +18,9 @@
  */
 package org.terracotta.management.service.impl;
 
+import org.terracotta.management.service.buffer.OverwritePolicy;
+import org.terracotta.management.service.buffer.PartitionedRingBufferType;
+
 import java.util.concurrent.TimeUnit;
 
 import static java.util.concurrent.TimeUnit.*;
@@ -33,12 +36,40 @@ import static java.util.concurrent.TimeUnit.*;
 public class Constants {
   // size of each partition buffer
   public static final int BUFFER_CACHE_SIZE = 1 << 13;
+  // initial size of each partition buffer, grown up to its size when needed
+  public static final int INITIAL_BUFFER_CACHE_SIZE = 1 << 7;
+  // maximum number of buffer slots allocated across all message types. Each slot holds at most one message
+  public static final int BUFFER_BUDGET = 1 << 18;
+  // size of each partition buffer of the high priority lane
+  public static final int HIGH_PRIORITY_BUFFER_CACHE_SIZE = 1 << 10;
+  // size of the buffer shared by all consumers of a message type, once there are subscriptions
+  public static final int BROADCAST_BUFFER_SIZE = 1 << 14;
+  // maximum number of distinct keys of conflated state messages, per message type
+  public static final int CONFLATING_BUFFER_MAX_KEYS = 1 << 13;
+  // keep the first of a burst of high priority messages (e.g. alerts), they are usually the most relevant
+  public static final OverwritePolicy HIGH_PRIORITY_OVERWRITE_POLICY = OverwritePolicy.DISCARD_NEWEST;
+  // keep the latest of normal messages (e.g. statistics samples)
+  public static final OverwritePolicy NORMAL_PRIORITY_OVERWRITE_POLICY = OverwritePolicy.OVERWRITE_OLDEST;
   // how much overspill to store before discarding in case the management entity is down
   public static final int OVERSPILL_SIZE = 1 << 10;
+  // maximum number of messages drained from the buffer and posted to the consumer in one go
+  public static final int MAX_COLLECTION_BATCH_SIZE = 1 << 13;
   // default interval for consuming incoming messages
   public static final int COLLECTION_INTERVAL = 1000;
+  // interval for consuming incoming messages is backed off up to this limit, when there are no messages
+  public static final int MAX_COLLECTION_INTERVAL = 8 * COLLECTION_INTERVAL;
+  // number of messages buffered in a producer's partition at which the producer requests an early collection
+  public static final int COLLECTION_TRIGGER_THRESHOLD = BUFFER_CACHE_SIZE / 4;
   public static final TimeUnit DEFAULT_TIME_UNIT = MILLISECONDS;
+  // number of threads collecting messages, shared across all message types
+  public static final int DEFAULT_COLLECTOR_POOL_SIZE = 1;
+  // number of threads executing management actions
+  public static final int ACTION_EXECUTOR_POOL_SIZE = 2;
+  // number of management actions waiting to be executed, before further actions are rejected
+  public static final int ACTION_EXECUTOR_QUEUE_SIZE = 1 << 12;
 
   // number of parallel producers that 'pushes' messages to management service
   public static final int MAX_PARALLEL_PRODUCERS = 10;
+  // ring buffer implementation used to buffer messages of each message type
+  public static final PartitionedRingBufferType DEFAULT_RING_BUFFER_TYPE = PartitionedRingBufferType.POOLED;
 }
@@ -18,23 +18,101 @@
  */
 package org.terracotta.management.service.impl;
 
+import org.terracotta.management.service.BufferConfiguration;
+import org.terracotta.management.service.OverflowConfiguration;
+import org.terracotta.management.service.action.ActionExecutor;
+import org.terracotta.management.service.buffer.BufferBudget;
+import org.terracotta.management.service.buffer.PartitionedRingBufferType;
+import org.terracotta.management.service.registry.DefaultRegistryService;
+import org.terracotta.management.service.statistics.StatisticsSampler;
+import org.terracotta.management.service.timeseries.TimeSeriesStore;
+import org.terracotta.management.stats.ContextualStatistics;
 import org.terracotta.voltron.management.ManagementService;
 import org.terracotta.voltron.management.MessageDeliveryInfrastructureService;
 import org.terracotta.voltron.management.RegistryService;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.terracotta.management.service.impl.Constants.ACTION_EXECUTOR_POOL_SIZE;
+import static org.terracotta.management.service.impl.Constants.ACTION_EXECUTOR_QUEUE_SIZE;
+import static org.terracotta.management.service.impl.Constants.BUFFER_BUDGET;
+import static org.terracotta.management.service.impl.Constants.DEFAULT_COLLECTOR_POOL_SIZE;
+import static org.terracotta.management.service.impl.Constants.DEFAULT_RING_BUFFER_TYPE;
+
 /**
  * Default management service implementation.
  * <p>
- * TODO: Implement full functionality. Currently only the shell necessary for the PoC
- * (i.e message delivery) is implemented.
+ * Owns the scheduler that collects management messages of all message types, which is
+ * released on {@link #close()}.
+ * <p>
+ * Managed entities register their providers with the {@link DefaultRegistryService}, which management
+ * entities use to discover them.
+ * <p>
+ * Statistics of all managed entities are sampled by a single {@link StatisticsSampler} and management actions
+ * are executed by a single {@link ActionExecutor}, both created on first use. The history of the statistics
+ * is retained by a {@link TimeSeriesStore}, also created on first use.
  *
  * @author RKAV
  */
 public class DefaultManagementService implements ManagementService {
-  private final MessageDeliveryInfrastructureService messagingInfrastructure;
+  private final ScheduledExecutorService collectorScheduler;
+  private final DefaultMessageDeliveryInfrastructure messagingInfrastructure;
+  private final DefaultRegistryService registryService;
+  private StatisticsSampler statisticsSampler;
+  private ActionExecutor actionExecutor;
+  private TimeSeriesStore timeSeriesStore;
 
   public DefaultManagementService() {
-    messagingInfrastructure = new DefaultMessageDeliveryInfrastructure();
+    this(DEFAULT_RING_BUFFER_TYPE);
+  }
+
+  public DefaultManagementService(PartitionedRingBufferType ringBufferType) {
+    this(ringBufferType, DEFAULT_COLLECTOR_POOL_SIZE);
+  }
+
+  /**
+   * Create the management service.
+   *
+   * @param ringBufferType the ring buffer implementation used to buffer messages
+   * @param collectorPoolSize number of threads collecting messages across all message types
+   */
+  public DefaultManagementService(PartitionedRingBufferType ringBufferType, int collectorPoolSize) {
+    this(ringBufferType, collectorPoolSize, null);
+  }
+
+  /**
+   * Create the management service.
+   *
+   * @param ringBufferType the ring buffer implementation used to buffer messages
+   * @param collectorPoolSize number of threads collecting messages across all message types
+   * @param overflowConfiguration spill to disk configuration for undelivered messages, null if disabled
+   */
+  public DefaultManagementService(PartitionedRingBufferType ringBufferType, int collectorPoolSize,
+                                  OverflowConfiguration overflowConfiguration) {
+    this(collectorPoolSize, overflowConfiguration, new BufferConfiguration(ringBufferType),
+        Collections.<String, BufferConfiguration>emptyMap());
+  }
+
+  /**
+   * Create the management service.
+   *
+   * @param collectorPoolSize number of threads collecting messages across all message types
+   * @param overflowConfiguration spill to disk configuration for undelivered messages, null if disabled
+   * @param bufferConfiguration buffering of the message types that are not configured on their own
+   * @param messageTypeBufferConfigurations buffering of individual message types, keyed by message class name
+   */
+  public DefaultManagementService(int collectorPoolSize, OverflowConfiguration overflowConfiguration,
+                                  BufferConfiguration bufferConfiguration,
+                                  Map<String, BufferConfiguration> messageTypeBufferConfigurations) {
+    if (collectorPoolSize <= 0) {
+      throw new IllegalArgumentException("Invalid collector pool size " + collectorPoolSize + " specified.");
+    }
+    collectorScheduler = DefaultMessageConsumer.createCollectorScheduler(collectorPoolSize);
+    messagingInfrastructure = new DefaultMessageDeliveryInfrastructure(bufferConfiguration,
+        messageTypeBufferConfigurations, collectorScheduler, overflowConfiguration, new BufferBudget(BUFFER_BUDGET));
+    registryService = new DefaultRegistryService();
   }
 
   @Override
@@ -44,6 +122,64 @@ public class DefaultManagementService implements ManagementService {
 
   @Override
   public RegistryService getRegistryService() {
-    throw new UnsupportedOperationException("Management Registry Not yet implemented");
+    return registryService;
+  }
+
+  /**
+   * Get the sampler of the statistics of managed entities, which pushes the samples as
+   * {@link ContextualStatistics} messages.
+   *
+   * @return the statistics sampler
+   */
+  public synchronized StatisticsSampler getStatisticsSampler() {
+    if (statisticsSampler == null) {
+      statisticsSampler = new StatisticsSampler(messagingInfrastructure.createMessageProducer(ContextualStatistics.class));
+    }
+    return statisticsSampler;
+  }
+
+  /**
+   * Get the executor of management actions on managed objects.
+   *
+   * @return the action executor
+   */
+  public synchronized ActionExecutor getActionExecutor() {
+    if (actionExecutor == null) {
+      actionExecutor = new ActionExecutor(ACTION_EXECUTOR_POOL_SIZE, ACTION_EXECUTOR_QUEUE_SIZE);
+    }
+    return actionExecutor;
+  }
+
+  /**
+   * Get the store retaining the history of the {@link ContextualStatistics} messages, which management
+   * clients query for the history of statistics.
+   *
+   * @return the time series store
+   */
+  public synchronized TimeSeriesStore getTimeSeriesStore() {
+    if (timeSeriesStore == null) {
+      timeSeriesStore = new TimeSeriesStore();
+      messagingInfrastructure.registerMessageConsumerListener(ContextualStatistics.class, timeSeriesStore);
+    }
+    return timeSeriesStore;
+  }
+
+  /**
+   * Stop sampling statistics, executing actions and collecting messages and release all threads.
+   */
+  public void close() {
+    synchronized (this) {
+      if (statisticsSampler != null) {
+        statisticsSampler.close();
+      }
+      if (actionExecutor != null) {
+        actionExecutor.close();
+      }
+      if (timeSeriesStore != null) {
+        timeSeriesStore.close();
+      }
+    }
+    messagingInfrastructure.shutdown();
+    collectorScheduler.shutdownNow();
   }
 }
@@ -18,14 +18,36 @@
  */
 package org.terracotta.management.service.impl;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terracotta.management.service.buffer.BufferBudget;
 import org.terracotta.management.service.buffer.PartitionedRingBuffer;
+import org.terracotta.management.service.buffer.impl.BroadcastRingBuffer;
+import org.terracotta.management.service.buffer.impl.SegmentedOverflowLog;
+import org.terracotta.voltron.management.consumer.MessageAggregator;
 import org.terracotta.voltron.management.consumer.MessageListener;
 import org.terracotta.voltron.management.consumer.MessageConsumer;
+import org.terracotta.voltron.management.consumer.MessageSubscription;
 import org.terracotta.voltron.management.consumer.PreviousMessageAckPendingException;
 
-import java.util.Collection;
-import java.util.concurrent.Executors;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import static org.terracotta.management.service.impl.Constants.*;
 import static org.terracotta.management.service.impl.Constants.COLLECTION_INTERVAL;
@@ -34,96 +56,906 @@ import static org.terracotta.management.service.impl.Constants.DEFAULT_TIME_UNIT
 /**
  * The management service consumer implementation.
  * <p>
+ * Messages are collected adaptively rather than at a fixed rate. The collection interval backs off
+ * up to 8 times the collection interval while no messages are flowing, and producers request
+ * an early collection (see {@link #requestCollection()}) once they have buffered enough messages. The
+ * scheduler is typically shared across all message types.
+ * <p>
+ * Optionally, messages that could not be delivered are spilled to a {@link SegmentedOverflowLog} and
+ * replayed in order once the listener catches up, instead of being dropped. Spilled messages are java
+ * serialized. Messages that cannot be spilled or replayed are logged and reported as lost.
+ * <p>
+ * Delivery is flow controlled, once the consumer grants credits through {@link #grantCredits(int)}. The
+ * collector then posts no more messages than the available credits and collects again as soon as further
+ * credits are granted.
+ * <p>
+ * Optionally, collected messages are rolled up by a {@link MessageAggregator} and only the aggregated
+ * messages are posted, at the end of each aggregation window.
+ * <p>
+ * Further consumers {@link #subscribe(MessageListener, MessageAggregator) subscribe} to the same messages.
+ * As the partitions of the message cache are drained by a single consumer, messages are copied out of them
+ * into a single {@link BroadcastRingBuffer} once there is a subscription. Every consumer (including the
+ * callback set up through {@link #setupPeriodicManagementMessageCollector(MessageListener, MessageAggregator)})
+ * reads the broadcast buffer through its own cursor, at its own pace and with its own credits. Only the latter
+ * spills to the overflow log. The broadcast buffer is charged to the budget account of the consumer. Once the
+ * last subscription is closed, messages are no longer copied, and the broadcast buffer is dropped and its
+ * budget released as soon as the callback has read the messages left in it.
+ * <p>
+ * Posted messages are sequence numbered per consumer (see
+ * {@link MessageListener#postMessages(java.util.Collection, long, long)}), with a gap for every message that
+ * was overwritten in the buffers or dropped by the collector. With an aggregator, the aggregated messages are
+ * numbered, while the gaps count the collected messages that were lost.
+ * <p>
  * TODO: As of now only the shell for message pushing is created mainly to
  * test statistics pushing.
  *
  * @author RKAV
  */
 public class DefaultMessageConsumer<M> implements MessageConsumer<M> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(DefaultMessageConsumer.class);
+
+  // credits value until credits are granted for the first time
+  private static final long NO_FLOW_CONTROL = -1L;
+
   private final PartitionedRingBuffer<M> messageCache;
   private final ScheduledExecutorService messageCollectorScheduler;
-  private volatile MessageCollector messageCollector;
+  private final boolean ownsScheduler;
+  private final SegmentedOverflowLog overflowLog;
+  private final AtomicLong credits;
+  private final BufferBudget.Account budgetAccount;
+  private final long collectionInterval;
+  private final int overspillSize;
+  private volatile MessageCollector<M> messageCollector;
+  private final List<Subscription> subscriptions;
+  // guards the draining of the message cache, which may happen from the collectors of all consumers
+  private final Object drainLock;
+  // messages drained from the message cache for all consumers, null until the first subscription.
+  // Only published to under the drain lock
+  private volatile BroadcastRingBuffer<M> broadcast;
+  private Consumer<M> publishingSink;
+  // set once the last subscription is closed, until the callback has read the messages left in the broadcast
+  // buffer. Only written under the drain lock
+  private volatile boolean broadcastRetiring;
 
   public DefaultMessageConsumer(PartitionedRingBuffer<M> messageCache) {
+    this(messageCache, createCollectorScheduler(1), true, null, BufferBudget.unlimitedAccount(), COLLECTION_INTERVAL,
+        OVERSPILL_SIZE);
+  }
+
+  /**
+   * Create a consumer that collects messages on the given (shared) scheduler.
+   *
+   * @param messageCache the buffer to collect messages from
+   * @param messageCollectorScheduler the scheduler, which is not shutdown by this consumer
+   */
+  public DefaultMessageConsumer(PartitionedRingBuffer<M> messageCache, ScheduledExecutorService messageCollectorScheduler) {
+    this(messageCache, messageCollectorScheduler, false, null, BufferBudget.unlimitedAccount(), COLLECTION_INTERVAL,
+        OVERSPILL_SIZE);
+  }
+
+  /**
+   * Create a consumer that collects messages on the given (shared) scheduler and spills messages
+   * that could not be delivered to the given overflow log.
+   *
+   * @param messageCache the buffer to collect messages from
+   * @param messageCollectorScheduler the scheduler, which is not shutdown by this consumer
+   * @param overflowLog the overflow log, closed when this consumer is shutdown. Null if messages must not be spilled
+   */
+  public DefaultMessageConsumer(PartitionedRingBuffer<M> messageCache,
+                                ScheduledExecutorService messageCollectorScheduler,
+                                SegmentedOverflowLog overflowLog) {
+    this(messageCache, messageCollectorScheduler, false, overflowLog, BufferBudget.unlimitedAccount(),
+        COLLECTION_INTERVAL, OVERSPILL_SIZE);
+  }
+
+  /**
+   * Create a consumer that collects messages on the given (shared) scheduler and spills messages
+   * that could not be delivered to the given overflow log.
+   *
+   * @param messageCache the buffer to collect messages from
+   * @param messageCollectorScheduler the scheduler, which is not shutdown by this consumer
+   * @param overflowLog the overflow log, closed when this consumer is shutdown. Null if messages must not be spilled
+   * @param budgetAccount the account the buffer shared with subscriptions is charged to
+   */
+  public DefaultMessageConsumer(PartitionedRingBuffer<M> messageCache,
+                                ScheduledExecutorService messageCollectorScheduler,
+                                SegmentedOverflowLog overflowLog,
+                                BufferBudget.Account budgetAccount) {
+    this(messageCache, messageCollectorScheduler, false, overflowLog, budgetAccount, COLLECTION_INTERVAL,
+        OVERSPILL_SIZE);
+  }
+
+  /**
+   * Create a consumer that collects messages on the given (shared) scheduler at the given interval and spills
+   * messages that could not be delivered to the given overflow log.
+   *
+   * @param messageCache the buffer to collect messages from
+   * @param messageCollectorScheduler the scheduler, which is not shutdown by this consumer
+   * @param overflowLog the overflow log, closed when this consumer is shutdown. Null if messages must not be spilled
+   * @param budgetAccount the account the buffer shared with subscriptions is charged to
+   * @param collectionInterval interval in milliseconds at which messages are collected, while they are flowing
+   * @param overspillSize number of undelivered messages kept aside before they are spilled or dropped
+   */
+  public DefaultMessageConsumer(PartitionedRingBuffer<M> messageCache,
+                                ScheduledExecutorService messageCollectorScheduler,
+                                SegmentedOverflowLog overflowLog,
+                                BufferBudget.Account budgetAccount,
+                                long collectionInterval,
+                                int overspillSize) {
+    this(messageCache, messageCollectorScheduler, false, overflowLog, budgetAccount, collectionInterval,
+        overspillSize);
+  }
+
+  private DefaultMessageConsumer(PartitionedRingBuffer<M> messageCache,
+                                 ScheduledExecutorService messageCollectorScheduler,
+                                 boolean ownsScheduler,
+                                 SegmentedOverflowLog overflowLog,
+                                 BufferBudget.Account budgetAccount,
+                                 long collectionInterval,
+                                 int overspillSize) {
     this.messageCache = messageCache;
-    // This thread pool MUST have one and only one thread..it is a design assumption
-    this.messageCollectorScheduler = Executors.newScheduledThreadPool(1);
+    this.messageCollectorScheduler = messageCollectorScheduler;
+    this.ownsScheduler = ownsScheduler;
+    this.overflowLog = overflowLog;
+    this.credits = new AtomicLong(NO_FLOW_CONTROL);
+    this.budgetAccount = budgetAccount;
+    this.collectionInterval = collectionInterval;
+    this.overspillSize = overspillSize;
     this.messageCollector = null;
+    this.subscriptions = new CopyOnWriteArrayList<>();
+    this.drainLock = new Object();
+    this.broadcast = null;
+  }
+
+  /**
+   * Create a scheduler suitable for running message collectors.
+   *
+   * @param poolSize number of collector threads
+   * @return the scheduler
+   */
+  static ScheduledExecutorService createCollectorScheduler(int poolSize) {
+    AtomicInteger threadCount = new AtomicInteger(0);
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(poolSize, (r) -> {
+      Thread t = new Thread(r, "management-message-collector-" + threadCount.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    // collections are frequently rescheduled, do not let the cancelled ones pile up
+    scheduler.setRemoveOnCancelPolicy(true);
+    return scheduler;
   }
 
   @Override
   public void setupPeriodicManagementMessageCollector(MessageListener<M> messageCallback) {
+    setupPeriodicManagementMessageCollector(messageCallback, null);
+  }
+
+  @Override
+  public synchronized void setupPeriodicManagementMessageCollector(MessageListener<M> messageCallback,
+                                                                   MessageAggregator<M> aggregator) {
     if (messageCollectorScheduler.isShutdown()) {
       throw new IllegalStateException("Scheduler is shutdown");
     }
     if (messageCollector == null) {
-      messageCollector = new MessageCollector<>(messageCallback, messageCache);
-      messageCollectorScheduler.scheduleAtFixedRate(messageCollector, COLLECTION_INTERVAL, COLLECTION_INTERVAL, DEFAULT_TIME_UNIT);
+      MessageSource<M> source = (broadcast == null) ? new DirectSource(0L)
+          : new CursorSource(broadcast.newCursor(), messageCache.getLostItems());
+      messageCollector = new MessageCollector<>(messageCallback, aggregator, source, messageCollectorScheduler,
+          overflowLog, credits, collectionInterval, overspillSize);
+      messageCollector.reschedule(collectionInterval);
     }
     // TODO: allow for changing the listener etc..
   }
 
-  public void shutdown() {
-    messageCollectorScheduler.shutdown();
+  @Override
+  public MessageSubscription<M> subscribe(MessageListener<M> callback) {
+    return subscribe(callback, null);
+  }
+
+  @Override
+  public synchronized MessageSubscription<M> subscribe(MessageListener<M> callback, MessageAggregator<M> aggregator) {
+    if (messageCollectorScheduler.isShutdown()) {
+      throw new IllegalStateException("Scheduler is shutdown");
+    }
+    AtomicLong subscriptionCredits = new AtomicLong(NO_FLOW_CONTROL);
+    CursorSource source;
+    synchronized (drainLock) {
+      if (broadcast == null) {
+        if (!budgetAccount.tryReserve(BROADCAST_BUFFER_SIZE)) {
+          throw new IllegalStateException("Management buffer budget exhausted");
+        }
+        broadcast = new BroadcastRingBuffer<>(BROADCAST_BUFFER_SIZE);
+        publishingSink = broadcast::publish;
+        if (messageCollector != null) {
+          // messages buffered so far are still collected by the callback, all other messages are broadcast.
+          // The callback keeps counting the messages lost from where it is
+          messageCollector.source = new CursorSource(broadcast.newCursor(),
+              messageCache.getLostItems() - messageCollector.source.getLost());
+        }
+      } else {
+        // the callback may still be reading the messages left in the broadcast buffer, which is kept
+        broadcastRetiring = false;
+      }
+      source = new CursorSource(broadcast.newCursor(), messageCache.getLostItems());
+    }
+    MessageCollector<M> collector = new MessageCollector<>(callback, aggregator, source, messageCollectorScheduler,
+        null, subscriptionCredits, collectionInterval, overspillSize);
+    Subscription subscription = new Subscription(collector, source, subscriptionCredits);
+    subscriptions.add(subscription);
+    collector.reschedule(collectionInterval);
+    return subscription;
+  }
+
+  @Override
+  public void grantCredits(int newCredits) {
+    grantCredits(credits, newCredits);
+    // do not keep the buffered messages waiting for the next collection interval
+    requestCollection();
+  }
+
+  private static void grantCredits(AtomicLong credits, int newCredits) {
+    if (newCredits <= 0) {
+      throw new IllegalArgumentException("Invalid credits " + newCredits + " specified.");
+    }
+    long current;
+    long next;
+    do {
+      current = credits.get();
+      next = (current == NO_FLOW_CONTROL) ? newCredits : Math.min(current + newCredits, Integer.MAX_VALUE);
+    } while (!credits.compareAndSet(current, next));
+  }
+
+  @Override
+  public int getAvailableCredits() {
+    return availableCredits(credits);
+  }
+
+  private static int availableCredits(AtomicLong credits) {
+    long current = credits.get();
+    return (current == NO_FLOW_CONTROL) ? Integer.MAX_VALUE : (int)current;
+  }
+
+  @Override
+  public int getBacklog() {
+    MessageCollector<M> collector = messageCollector;
+    return (collector == null) ? messageCache.size(-1) : collector.source.size();
+  }
+
+  /**
+   * Request the messages to be collected as early as possible, instead of waiting for the
+   * current collection interval to elapse.
+   * <p>
+   * Called by producers once a sufficient number of messages are buffered.
+   */
+  public void requestCollection() {
+    MessageCollector<M> collector = messageCollector;
+    if (collector != null) {
+      collector.requestCollection();
+    }
+    for (Subscription subscription : subscriptions) {
+      subscription.collector.requestCollection();
+    }
+  }
+
+  public synchronized void shutdown() {
+    if (messageCollector != null) {
+      messageCollector.stop();
+    }
+    for (Subscription subscription : subscriptions) {
+      subscription.collector.stop();
+    }
+    subscriptions.clear();
+    synchronized (drainLock) {
+      if (broadcast != null) {
+        releaseBroadcast();
+      }
+    }
+    if (ownsScheduler) {
+      messageCollectorScheduler.shutdown();
+    }
+    if (overflowLog != null) {
+      try {
+        overflowLog.close();
+      } catch (IOException ignored) {
+        // spilled messages are lost on shutdown anyway
+      }
+    }
+  }
+
+  private synchronized void unsubscribe(Subscription subscription) {
+    subscriptions.remove(subscription);
+    if (!subscriptions.isEmpty() || broadcast == null) {
+      return;
+    }
+    synchronized (drainLock) {
+      if (messageCollector == null) {
+        releaseBroadcast();
+      } else {
+        // stop copying messages, the broadcast buffer is dropped once the callback caught up
+        broadcastRetiring = true;
+      }
+    }
+    requestCollection();
+  }
+
+  /**
+   * Drop the broadcast buffer, with the drain lock held.
+   */
+  private void releaseBroadcast() {
+    broadcast = null;
+    publishingSink = null;
+    broadcastRetiring = false;
+    budgetAccount.release(BROADCAST_BUFFER_SIZE);
+  }
+
+  /**
+   * Where a collector takes its messages from.
+   */
+  private interface MessageSource<M> {
+    int drainTo(Consumer<? super M> sink, int maxItems);
+
+    boolean hasOverSpillThresholdReached();
+
+    int size();
+
+    /**
+     * @return number of messages lost before they could be drained, since the source was created
+     */
+    long getLost();
   }
 
   /**
-   * The periodic message collector task..
+   * Takes messages from the message cache, as long as there is a single consumer.
+   */
+  private final class DirectSource implements MessageSource<M> {
+    // messages lost by the sources this one replaces
+    private final long lostOffset;
+
+    private DirectSource(long lostOffset) {
+      this.lostOffset = lostOffset;
+    }
+
+    @Override
+    public int drainTo(Consumer<? super M> sink, int maxItems) {
+      synchronized (drainLock) {
+        // once there are subscriptions, messages are only taken from the message cache for broadcasting
+        return (broadcast == null) ? messageCache.drainTo(sink, maxItems) : 0;
+      }
+    }
+
+    @Override
+    public boolean hasOverSpillThresholdReached() {
+      return messageCache.hasOverSpillThresholdReached();
+    }
+
+    @Override
+    public int size() {
+      return messageCache.size(-1);
+    }
+
+    @Override
+    public long getLost() {
+      return messageCache.getLostItems() + lostOffset;
+    }
+  }
+
+  /**
+   * Reads messages from the broadcast buffer, after moving the messages from the message cache to it.
+   */
+  private final class CursorSource implements MessageSource<M> {
+    private final BroadcastRingBuffer<M>.Cursor cursor;
+    private final int overSpillThreshold;
+    // messages lost by the message cache before this source was created
+    private final long lostBaseline;
+
+    private CursorSource(BroadcastRingBuffer<M>.Cursor cursor, long lostBaseline) {
+      this.cursor = cursor;
+      this.overSpillThreshold = Math.round(0.95f * (float)BROADCAST_BUFFER_SIZE);
+      this.lostBaseline = lostBaseline;
+    }
+
+    @Override
+    public int drainTo(Consumer<? super M> sink, int maxItems) {
+      synchronized (drainLock) {
+        if (broadcast != null && !broadcastRetiring) {
+          messageCache.drainTo(publishingSink, MAX_COLLECTION_BATCH_SIZE);
+        }
+      }
+      int drained = cursor.drainTo(sink, maxItems);
+      if (drained < maxItems && broadcastRetiring) {
+        MessageCollector<M> collector = messageCollector;
+        if (collector != null && collector.source == this && retire()) {
+          drained += collector.source.drainTo(sink, maxItems - drained);
+        }
+      }
+      return drained;
+    }
+
+    /**
+     * Switch the callback back to the message cache, once it read all messages left in the broadcast buffer.
+     *
+     * @return true if switched
+     */
+    private boolean retire() {
+      synchronized (drainLock) {
+        if (!broadcastRetiring || cursor.size() > 0) {
+          return false;
+        }
+        releaseBroadcast();
+        messageCollector.source = new DirectSource(getLost() - messageCache.getLostItems());
+        return true;
+      }
+    }
+
+    @Override
+    public boolean hasOverSpillThresholdReached() {
+      return cursor.size() >= overSpillThreshold || messageCache.hasOverSpillThresholdReached();
+    }
+
+    @Override
+    public int size() {
+      return cursor.size() + messageCache.size(-1);
+    }
+
+    @Override
+    public long getLost() {
+      // lost either in the message cache before being broadcast, or in the broadcast buffer
+      return cursor.getLost() + messageCache.getLostItems() - lostBaseline;
+    }
+  }
+
+  /**
+   * A consumer subscribed in addition to the callback of this consumer.
+   */
+  private final class Subscription implements MessageSubscription<M> {
+    private final MessageCollector<M> collector;
+    private final CursorSource source;
+    private final AtomicLong credits;
+
+    private Subscription(MessageCollector<M> collector, CursorSource source, AtomicLong credits) {
+      this.collector = collector;
+      this.source = source;
+      this.credits = credits;
+    }
+
+    @Override
+    public void grantCredits(int newCredits) {
+      DefaultMessageConsumer.grantCredits(credits, newCredits);
+      collector.requestCollection();
+    }
+
+    @Override
+    public int getAvailableCredits() {
+      return availableCredits(credits);
+    }
+
+    @Override
+    public int getBacklog() {
+      return source.size();
+    }
+
+    @Override
+    public long getLostMessages() {
+      return source.getLost();
+    }
+
+    @Override
+    public void close() {
+      collector.stop();
+      unsubscribe(this);
+    }
+  }
+
+  /**
+   * The adaptive message collector task..
+   * <p>
+   * Messages are drained from the ring buffer straight into a staging list that is reused across
+   * runs, so that no intermediate collections are created on every collection cycle.
+   * <p>
+   * Each run reschedules the next one, with an interval that doubles (up to a maximum) every time
+   * nothing was collected and that goes back to the default interval once messages flow again.
+   * <p>
+   * The gap ahead of a batch of messages is fixed on its first post attempt, so that retries post the
+   * staged (or spilled) messages with the same sequence numbers.
    */
   private static final class MessageCollector<M> implements Runnable {
     private final MessageListener<M> messageCallback;
-    private final PartitionedRingBuffer<M> messageCache;
+    private final MessageAggregator<M> aggregator;
+    private final Consumer<M> aggregatingSink;
+    // switched over to the broadcast buffer on the first subscription
+    private volatile MessageSource<M> source;
+    private final ScheduledExecutorService scheduler;
+    private final SegmentedOverflowLog overflowLog;
+    private final AtomicLong credits;
+    private final AtomicBoolean collectionRequested;
+    // guards against concurrent runs of this collector, when the scheduler has more than one thread
+    private final AtomicBoolean collecting;
+
+    // staging area for messages drained from the buffer. Messages that could not be posted to
+    // the consumer (due to failures in posting) remain here and are retried in the next run.
+    // Only accessed by the collecting thread.
+    private final List<M> stagedMessages;
+    private final Consumer<M> stagingSink;
+    private final long collectionInterval;
+    private final long maxCollectionInterval;
+    private final int overspillSize;
+    private long currentInterval;
+    private long windowEnd;
+    // sequence number of the next message to post
+    private long nextSequence;
+    // messages lost by the source, as of the last time the gap was fixed
+    private long reportedLost;
+    // records discarded by the overflow log, as of the last time the gap was fixed
+    private long reportedDropped;
+    // messages lost since the last post, i.e. the gap ahead of the next post
+    private long pendingLost;
+    // whether the gap ahead of the staged messages is fixed, as they were already posted once
+    private boolean gapFixed;
+    // spilled records that could not be read back in the current replay
+    private int unreadableRecords;
+    // reused to serialize the messages spilled, only accessed by the collecting thread
+    private ByteArrayOutputStream recordBytes;
+    private ObjectOutputStream recordOut;
+    // loader of the messages spilled, to resolve their classes when replayed
+    private ClassLoader spilledClassLoader;
 
-    // thread local area where pending messages are temporarily stored in case
-    // of failures in posting messages to the consumer.
-    // This has to be instance specific thread local as different collectors may have different
-    // pending stores...
-    private final ThreadLocal<Collection<M>> pendingCollectionStore;
+    // guarded by this
+    private ScheduledFuture<?> nextCollection;
+    private boolean stopped;
 
-    private MessageCollector(MessageListener<M> messageCallback, PartitionedRingBuffer<M> messageCache) {
+    private MessageCollector(MessageListener<M> messageCallback,
+                             MessageAggregator<M> aggregator,
+                             MessageSource<M> source,
+                             ScheduledExecutorService scheduler,
+                             SegmentedOverflowLog overflowLog,
+                             AtomicLong credits,
+                             long collectionInterval,
+                             int overspillSize) {
       this.messageCallback = messageCallback;
-      this.messageCache = messageCache;
-      this.pendingCollectionStore = new ThreadLocal<>();
+      this.aggregator = aggregator;
+      this.aggregatingSink = (aggregator == null) ? null : aggregator::accept;
+      this.source = source;
+      this.scheduler = scheduler;
+      this.overflowLog = overflowLog;
+      this.credits = credits;
+      this.collectionRequested = new AtomicBoolean(false);
+      this.collecting = new AtomicBoolean(false);
+      this.stagedMessages = new ArrayList<>();
+      this.stagingSink = stagedMessages::add;
+      this.collectionInterval = collectionInterval;
+      this.maxCollectionInterval = collectionInterval * (MAX_COLLECTION_INTERVAL / COLLECTION_INTERVAL);
+      this.overspillSize = overspillSize;
+      this.currentInterval = collectionInterval;
+      this.windowEnd = (aggregator == null) ? Long.MAX_VALUE : System.currentTimeMillis() + aggregator.getWindowMillis();
+    }
+
+    private void requestCollection() {
+      if (collectionRequested.compareAndSet(false, true)) {
+        reschedule(0);
+      }
+    }
+
+    private synchronized void reschedule(long delay) {
+      if (stopped || scheduler.isShutdown()) {
+        return;
+      }
+      if (nextCollection != null) {
+        nextCollection.cancel(false);
+      }
+      nextCollection = scheduler.schedule(this, delay, DEFAULT_TIME_UNIT);
+    }
+
+    private synchronized void stop() {
+      stopped = true;
+      if (nextCollection != null) {
+        nextCollection.cancel(false);
+      }
     }
 
     @Override
     public void run() {
-      boolean success = false;
-      boolean lastChance = false;
+      if (!collecting.compareAndSet(false, true)) {
+        // another thread is collecting, it will reschedule
+        return;
+      }
+      long nextInterval = collectionInterval;
+      try {
+        collectionRequested.set(false);
+        nextInterval = collect();
+        long untilWindowEnd = windowEnd - System.currentTimeMillis();
+        if (untilWindowEnd > 0) {
+          // do not miss the end of the current aggregation window
+          nextInterval = Math.min(nextInterval, untilWindowEnd);
+        }
+      } finally {
+        collecting.set(false);
+        reschedule(collectionRequested.get() ? 0 : nextInterval);
+      }
+    }
 
-      Collection<M> messageCollection;
-      Collection<M> pendingCollection = pendingCollectionStore.get();
-      if (pendingCollection != null) {
-        messageCollection = pendingCollection;
-        if (messageCache.hasOverSpillThresholdReached()) {
+    /**
+     * Collect and post one batch of buffered messages.
+     * <p>
+     * Only a single batch is posted per run, so that a busy message type does not hold on to a
+     * collector thread that is shared with other message types. If more messages are pending, the
+     * collection is rescheduled immediately, which queues it behind the collections of other message
+     * types that are already due.
+     *
+     * @return the interval after which the next collection must run
+     */
+    private long collect() {
+      int batchSize = creditedBatchSize();
+      if (batchSize == 0 || batchSize < stagedMessages.size()) {
+        return awaitCredits();
+      }
+      if (overflowLog != null && !overflowLog.isEmpty()) {
+        return replay(batchSize);
+      }
+      boolean lastChance = false;
+      int drained = 0;
+      if (!stagedMessages.isEmpty()) {
+        if (source.hasOverSpillThresholdReached()) {
           lastChance = true;
-        } else if (messageCollection.size() < OVERSPILL_SIZE) {
-          messageCollection.addAll(messageCache.removeAll());
+        } else if (stagedMessages.size() < overspillSize) {
+          drained = stage(batchSize - stagedMessages.size());
         }
-        pendingCollectionStore.set(null);
       } else {
-        messageCollection = messageCache.removeAll();
+        drained = stage(batchSize);
+      }
+      if (stagedMessages.isEmpty()) {
+        // back off while idle
+        currentInterval = (drained == 0) ? Math.min(currentInterval * 2, maxCollectionInterval) : collectionInterval;
+        return (drained >= MAX_COLLECTION_BATCH_SIZE) ? 0 : currentInterval;
       }
+      currentInterval = collectionInterval;
       try {
-        if (messageCollection.size() > 0) {
-          try {
-            messageCallback.postMessages(messageCollection);
-            success = true;
-          } catch (PreviousMessageAckPendingException ignored) {
-            // previous ack not arrived yet..Suppress this exception
-            // so that the task is scheduled again
-            // TODO: we may have to suppress other exceptions as well.
-          }
+        post();
+      } catch (PreviousMessageAckPendingException ignored) {
+        // previous ack not arrived yet..Suppress this exception
+        // so that the task is scheduled again
+        // TODO: we may have to suppress other exceptions as well.
+        if (overflowLog != null) {
+          spill();
+          // spilled messages are numbered again when they are replayed
+          gapFixed = false;
+        } else if (lastChance) {
+          // reported as a gap ahead of the next post
+          pendingLost += stagedMessages.size();
+          stagedMessages.clear();
+        }
+        return currentInterval;
+      }
+      consumeCredits(stagedMessages.size());
+      stagedMessages.clear();
+      // a full batch indicates that there may be more messages pending
+      return (drained >= MAX_COLLECTION_BATCH_SIZE) ? 0 : currentInterval;
+    }
+
+    /**
+     * Post the staged messages, numbering them after the gap of messages lost since the last post.
+     *
+     * @throws PreviousMessageAckPendingException if the listener did not accept the messages, in which case
+     *         the gap remains fixed for the retry
+     */
+    private void post() throws PreviousMessageAckPendingException {
+      if (!gapFixed) {
+        long lost = source.getLost();
+        pendingLost += lost - reportedLost;
+        reportedLost = lost;
+        if (overflowLog != null) {
+          // spilled messages evicted due to the size or retention limits of the overflow log
+          long dropped = overflowLog.droppedRecords();
+          pendingLost += dropped - reportedDropped;
+          reportedDropped = dropped;
+        }
+        gapFixed = true;
+      }
+      messageCallback.postMessages(stagedMessages, nextSequence + pendingLost, pendingLost);
+      nextSequence += pendingLost + stagedMessages.size();
+      pendingLost = 0;
+      gapFixed = false;
+    }
+
+    /**
+     * Move buffered messages to the staging area.
+     * <p>
+     * With an aggregator, the buffered messages are passed to the aggregator instead and the aggregated
+     * messages are staged at the end of each window. As only a few aggregated messages are staged per
+     * window, they are staged irrespective of {@code maxItems}.
+     *
+     * @param maxItems maximum number of messages to stage
+     * @return number of messages taken from the buffer
+     */
+    private int stage(int maxItems) {
+      if (aggregator == null) {
+        return source.drainTo(stagingSink, maxItems);
+      }
+      int drained = source.drainTo(aggregatingSink, MAX_COLLECTION_BATCH_SIZE);
+      long now = System.currentTimeMillis();
+      if (now >= windowEnd) {
+        aggregator.flush(stagingSink);
+        windowEnd = now + aggregator.getWindowMillis();
+      }
+      return drained;
+    }
+
+    /**
+     * @return the maximum number of messages that can be posted in this run
+     */
+    private int creditedBatchSize() {
+      long available = credits.get();
+      return (available == NO_FLOW_CONTROL) ? MAX_COLLECTION_BATCH_SIZE : (int)Math.min(available, MAX_COLLECTION_BATCH_SIZE);
+    }
+
+    private void consumeCredits(int posted) {
+      if (credits.get() != NO_FLOW_CONTROL) {
+        // only the collector consumes credits, so this never goes below zero
+        credits.addAndGet(-posted);
+      }
+    }
+
+    /**
+     * Hold on to the buffered messages until the consumer grants sufficient credits, which
+     * triggers a collection right away.
+     *
+     * @return the interval after which the next collection must run
+     */
+    private long awaitCredits() {
+      if (overflowLog != null) {
+        // move messages out of the way, before they get overwritten by producers
+        stage(MAX_COLLECTION_BATCH_SIZE);
+        spill();
+      }
+      currentInterval = collectionInterval;
+      return currentInterval;
+    }
+
+    /**
+     * Post the oldest spilled messages, after spilling any newly buffered messages behind them
+     * so that the delivery order is retained.
+     *
+     * @return the interval after which the next collection must run
+     */
+    private long replay(int batchSize) {
+      currentInterval = collectionInterval;
+      stage(MAX_COLLECTION_BATCH_SIZE);
+      spill();
+      int replayed;
+      unreadableRecords = 0;
+      try {
+        replayed = overflowLog.read(this::unspill, batchSize);
+      } catch (IOException e) {
+        // the overflow log drops the records it cannot read, they are reported with the next post
+        LOGGER.warn("Unable to replay spilled messages, the unreadable messages are reported as lost", e);
+        stagedMessages.clear();
+        return currentInterval;
+      }
+      if (stagedMessages.isEmpty()) {
+        return currentInterval;
+      }
+      // unreadable records are read again on a retry, only count them once the replayed messages are posted
+      pendingLost += unreadableRecords;
+      try {
+        post();
+      } catch (PreviousMessageAckPendingException ignored) {
+        // still not delivered, the messages remain in the overflow log
+        pendingLost -= unreadableRecords;
+        stagedMessages.clear();
+        return currentInterval;
+      }
+      consumeCredits(stagedMessages.size());
+      stagedMessages.clear();
+      try {
+        overflowLog.commit();
+      } catch (IOException e) {
+        // the replayed messages are removed from the log nevertheless, so they are not delivered twice
+        LOGGER.warn("Unable to remove replayed overflow segment", e);
+      }
+      // replay as fast as the listener allows, until the overflow log is empty
+      return (replayed > 0) ? 0 : currentInterval;
+    }
+
+    private void spill() {
+      if (stagedMessages.isEmpty()) {
+        return;
+      }
+      List<byte[]> records = new ArrayList<>(stagedMessages.size());
+      for (M message : stagedMessages) {
+        byte[] record = encode(message);
+        if (record != null) {
+          records.add(record);
         } else {
-          success = true;
+          pendingLost++;
+        }
+      }
+      stagedMessages.clear();
+      try {
+        overflowLog.append(records);
+      } catch (IOException e) {
+        // the overflow log drops the records it could not append, they are reported with the next post
+        LOGGER.warn("Unable to spill undelivered messages, the messages are reported as lost", e);
+      }
+    }
+
+    private byte[] encode(M message) {
+      ClassLoader loader = message.getClass().getClassLoader();
+      if (loader != null) {
+        // messages are read back with the loader of the producer, the service may not see their classes
+        spilledClassLoader = loader;
+      }
+      try {
+        if (recordOut == null) {
+          recordBytes = new ByteArrayOutputStream();
+          recordOut = new RecordOutputStream(recordBytes);
         }
+        // each record must be readable on its own
+        recordOut.reset();
+        recordOut.writeObject(message);
+        recordOut.flush();
+        return recordBytes.toByteArray();
+      } catch (IOException e) {
+        LOGGER.warn("Unable to spill message of " + message.getClass().getName() + ", the message is reported as lost", e);
+        // may hold a partially written message
+        recordOut = null;
+        return null;
       } finally {
-        if (!success) {
-          if (!lastChance) {
-            pendingCollectionStore.set(messageCollection);
-          }
+        if (recordBytes != null) {
+          recordBytes.reset();
+        }
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void unspill(byte[] record) {
+      try (ObjectInputStream in = new RecordInputStream(new ByteArrayInputStream(record), spilledClassLoader)) {
+        stagedMessages.add((M)in.readObject());
+      } catch (IOException | ClassNotFoundException | RuntimeException ignored) {
+        // corrupt record, or failing readObject() of the message, skip it
+        unreadableRecords++;
+      }
+    }
+  }
+
+  /**
+   * Serializes spilled messages without a stream header, so that the stream is reused for all records.
+   */
+  private static final class RecordOutputStream extends ObjectOutputStream {
+    private RecordOutputStream(OutputStream out) throws IOException {
+      super(out);
+    }
+
+    @Override
+    protected void writeStreamHeader() {
+      // records are read by a RecordInputStream
+    }
+  }
+
+  /**
+   * Deserializes a single record written by a {@link RecordOutputStream}, resolving classes with the class loader
+   * of the spilled messages first.
+   */
+  private static final class RecordInputStream extends ObjectInputStream {
+    private final ClassLoader classLoader;
+
+    private RecordInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+      super(in);
+      this.classLoader = classLoader;
+    }
+
+    @Override
+    protected void readStreamHeader() {
+      // see RecordOutputStream
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+      if (classLoader != null) {
+        try {
+          return Class.forName(desc.getName(), false, classLoader);
+        } catch (ClassNotFoundException e) {
+          // primitive types, or classes only known to the default loader
         }
       }
+      return super.resolveClass(desc);
     }
   }
 }
@@ -18,40 +18,149 @@
  */
 package org.terracotta.management.service.impl;
 
+import org.terracotta.management.service.BufferConfiguration;
+import org.terracotta.management.service.OverflowConfiguration;
+import org.terracotta.management.service.buffer.BufferBudget;
 import org.terracotta.management.service.buffer.PartitionedRingBuffer;
-import org.terracotta.management.service.buffer.impl.MultiPartitionLockFreeRingBuffer;
+import org.terracotta.management.service.buffer.PartitionedRingBufferType;
+import org.terracotta.management.service.buffer.impl.ConflatingRingBuffer;
+import org.terracotta.management.service.buffer.impl.PriorityLaneRingBuffer;
+import org.terracotta.management.service.buffer.impl.SegmentedOverflowLog;
 import org.terracotta.voltron.management.MessageDeliveryInfrastructureService;
 import org.terracotta.voltron.management.consumer.MessageConsumer;
 import org.terracotta.voltron.management.consumer.MessageConsumerListener;
 import org.terracotta.voltron.management.producer.MessageProducer;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
-import static org.terracotta.management.service.impl.Constants.BUFFER_CACHE_SIZE;
-import static org.terracotta.management.service.impl.Constants.MAX_PARALLEL_PRODUCERS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.terracotta.management.service.impl.Constants.BUFFER_BUDGET;
+import static org.terracotta.management.service.impl.Constants.CONFLATING_BUFFER_MAX_KEYS;
+import static org.terracotta.management.service.impl.Constants.HIGH_PRIORITY_BUFFER_CACHE_SIZE;
+import static org.terracotta.management.service.impl.Constants.HIGH_PRIORITY_OVERWRITE_POLICY;
+import static org.terracotta.management.service.impl.Constants.INITIAL_BUFFER_CACHE_SIZE;
+import static org.terracotta.management.service.impl.Constants.COLLECTION_TRIGGER_THRESHOLD;
+import static org.terracotta.management.service.impl.Constants.NORMAL_PRIORITY_OVERWRITE_POLICY;
 
 /**
  * Default implementation of the {@link MessageDeliveryInfrastructureService}.
+ * <p>
+ * The buffers of all message types are charged to a single {@link BufferBudget}, one account per message
+ * type, which bounds the memory taken by buffered management messages irrespective of the number of message
+ * types and producers.
+ * <p>
+ * Messages of types created through {@link #createConflatingMessageProducer(Class, Function)} are buffered
+ * in a {@link ConflatingRingBuffer} instead of ring buffers with priority lanes.
+ * <p>
+ * The buffering of each message type (i.e. its {@link BufferConfiguration}) is configured by the class name of
+ * the message type, falling back to the buffering of all message types.
  *
  * @author RKAV
  */
 public class DefaultMessageDeliveryInfrastructure implements MessageDeliveryInfrastructureService {
   private final Map<Class<?>, PerMessageTypeInfrastructure<?>> messageTypeInfraRegistry;
   private final Map<Class<?>, Collection<MessageConsumerListener<?>>> pendingListeners;
+  private final BufferConfiguration bufferConfiguration;
+  private final Map<String, BufferConfiguration> messageTypeBufferConfigurations;
+  // scheduler shared by the message collectors of all message types
+  private final ScheduledExecutorService collectorScheduler;
+  private final OverflowConfiguration overflowConfiguration;
+  private final BufferBudget bufferBudget;
 
-  public DefaultMessageDeliveryInfrastructure() {
+  /**
+   * Create the delivery infrastructure.
+   *
+   * @param ringBufferType the ring buffer implementation used to buffer messages of each type
+   * @param collectorScheduler the scheduler collecting messages of all types, owned by the caller
+   * @param overflowConfiguration spill to disk configuration for undelivered messages, null if disabled
+   */
+  public DefaultMessageDeliveryInfrastructure(PartitionedRingBufferType ringBufferType,
+                                              ScheduledExecutorService collectorScheduler,
+                                              OverflowConfiguration overflowConfiguration) {
+    this(ringBufferType, collectorScheduler, overflowConfiguration, new BufferBudget(BUFFER_BUDGET));
+  }
+
+  /**
+   * Create the delivery infrastructure.
+   *
+   * @param ringBufferType the ring buffer implementation used to buffer messages of each type
+   * @param collectorScheduler the scheduler collecting messages of all types, owned by the caller
+   * @param overflowConfiguration spill to disk configuration for undelivered messages, null if disabled
+   * @param bufferBudget the budget the buffers of all message types are charged to
+   */
+  public DefaultMessageDeliveryInfrastructure(PartitionedRingBufferType ringBufferType,
+                                              ScheduledExecutorService collectorScheduler,
+                                              OverflowConfiguration overflowConfiguration,
+                                              BufferBudget bufferBudget) {
+    this(new BufferConfiguration(ringBufferType), Collections.<String, BufferConfiguration>emptyMap(),
+        collectorScheduler, overflowConfiguration, bufferBudget);
+  }
+
+  /**
+   * Create the delivery infrastructure.
+   *
+   * @param bufferConfiguration buffering of the message types that are not configured on their own
+   * @param messageTypeBufferConfigurations buffering of individual message types, keyed by message class name
+   * @param collectorScheduler the scheduler collecting messages of all types, owned by the caller
+   * @param overflowConfiguration spill to disk configuration for undelivered messages, null if disabled
+   * @param bufferBudget the budget the buffers of all message types are charged to
+   */
+  public DefaultMessageDeliveryInfrastructure(BufferConfiguration bufferConfiguration,
+                                              Map<String, BufferConfiguration> messageTypeBufferConfigurations,
+                                              ScheduledExecutorService collectorScheduler,
+                                              OverflowConfiguration overflowConfiguration,
+                                              BufferBudget bufferBudget) {
     messageTypeInfraRegistry = new HashMap<>();
     pendingListeners = new HashMap<>();
+    this.bufferConfiguration = bufferConfiguration;
+    this.messageTypeBufferConfigurations = new HashMap<>(messageTypeBufferConfigurations);
+    this.collectorScheduler = collectorScheduler;
+    this.overflowConfiguration = overflowConfiguration;
+    this.bufferBudget = bufferBudget;
+  }
+
+  public BufferBudget getBufferBudget() {
+    return bufferBudget;
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public <M> MessageProducer<M> createMessageProducer(Class<M> messageType) {
+    return createMessageProducer(messageType, null);
+  }
+
+  @Override
+  public <M> MessageProducer<M> createConflatingMessageProducer(Class<M> messageType,
+                                                                Function<? super M, ?> keyFunction) {
+    if (keyFunction == null) {
+      throw new IllegalArgumentException("Key function required for conflating messages of " + messageType.getName());
+    }
+    return createMessageProducer(messageType, keyFunction);
+  }
+
+  /**
+   * Create a producer, along with the delivery infrastructure of the message type if it does not exist yet.
+   *
+   * @param messageType the type of messages that will be produced
+   * @param keyFunction extracts the key of conflated messages, null if messages are not conflated
+   * @return a message producer
+   * @throws IllegalArgumentException if messages are spilled to an overflow log, but are not serializable
+   */
+  @SuppressWarnings("unchecked")
+  private <M> MessageProducer<M> createMessageProducer(Class<M> messageType, Function<? super M, ?> keyFunction) {
+    if (overflowConfiguration != null && !Serializable.class.isAssignableFrom(messageType)) {
+      throw new IllegalArgumentException("Messages of " + messageType.getName() + " must be serializable to be spilled to the overflow log");
+    }
     PerMessageTypeInfrastructure<M> currentEntry;
     Collection<MessageConsumerListener<?>> listenersForType = Collections.emptyList();
 
@@ -62,10 +171,22 @@ public class DefaultMessageDeliveryInfrastructure implements MessageDeliveryInfr
     synchronized (this) {
       PerMessageTypeInfrastructure<?> registeredInfraForType = messageTypeInfraRegistry.get(messageType);
       if (registeredInfraForType == null) {
-        currentEntry = new PerMessageTypeInfrastructure<>();
+        BufferBudget.Account budgetAccount = bufferBudget.newAccount(messageType.getName());
+        BufferConfiguration config = getBufferConfiguration(messageType);
+        PartitionedRingBuffer<M> messageCache = (keyFunction == null) ? createLaneBuffer(config, budgetAccount)
+            : new ConflatingRingBuffer<>(config.getPartitions(), CONFLATING_BUFFER_MAX_KEYS, keyFunction, budgetAccount);
+        currentEntry = new PerMessageTypeInfrastructure<>(messageCache, keyFunction, config, collectorScheduler,
+            createOverflowLog(messageType), budgetAccount);
         messageTypeInfraRegistry.put(messageType, currentEntry);
       } else {
         currentEntry = (PerMessageTypeInfrastructure<M>)registeredInfraForType;
+        if (keyFunction != null && currentEntry.keyFunction == null) {
+          throw new IllegalStateException("Messages of " + messageType.getName() + " are already produced without conflation");
+        }
+        if (keyFunction == null && currentEntry.keyFunction != null) {
+          throw new IllegalStateException("Messages of " + messageType.getName() + " are already produced with conflation");
+        }
+        // messages of a type are conflated by the key function of the first producer
       }
       Collection<MessageConsumerListener<?>> tmpListeners = this.pendingListeners.remove(messageType);
       if (tmpListeners != null) {
@@ -75,7 +196,8 @@ public class DefaultMessageDeliveryInfrastructure implements MessageDeliveryInfr
 
     // now invoke the listeners and return the producer
     listenersForType.forEach((lsnr) -> ((MessageConsumerListener<M>)lsnr).onCreate(currentEntry.messageConsumer));
-    return new DefaultMessageProducer(currentEntry.messageCache, currentEntry.allocateProducer());
+    return new DefaultMessageProducer<>(currentEntry.messageCache, currentEntry.allocateProducer(),
+        currentEntry.messageConsumer, currentEntry.collectionTriggerThreshold);
   }
 
   @Override
@@ -106,6 +228,51 @@ public class DefaultMessageDeliveryInfrastructure implements MessageDeliveryInfr
     }
   }
 
+  private BufferConfiguration getBufferConfiguration(Class<?> messageType) {
+    BufferConfiguration config = messageTypeBufferConfigurations.get(messageType.getName());
+    return (config == null) ? bufferConfiguration : config;
+  }
+
+  private <M> PartitionedRingBuffer<M> createLaneBuffer(BufferConfiguration config,
+                                                        BufferBudget.Account budgetAccount) {
+    // one lane per message priority, in the order of priority. Partitions are only allocated once
+    // used by a producer, as many message types are seldom used. Partitions of the normal lane also
+    // grow with the load, while partitions of the high priority lane are small enough to be allocated
+    // at their full size. Both lanes are charged to the budget account of the message type
+    PartitionedRingBufferType ringBufferType = config.getRingBufferType();
+    int highPrioritySize = Math.min(HIGH_PRIORITY_BUFFER_CACHE_SIZE, config.getBufferSize());
+    return new PriorityLaneRingBuffer<>(
+        new PriorityLaneRingBuffer.Lane<>(ringBufferType.createBuffer(config.getPartitions(),
+            highPrioritySize, highPrioritySize, budgetAccount), HIGH_PRIORITY_OVERWRITE_POLICY),
+        new PriorityLaneRingBuffer.Lane<>(ringBufferType.createBuffer(config.getPartitions(),
+            Math.min(INITIAL_BUFFER_CACHE_SIZE, config.getBufferSize()), config.getBufferSize(), budgetAccount),
+            NORMAL_PRIORITY_OVERWRITE_POLICY));
+  }
+
+  private SegmentedOverflowLog createOverflowLog(Class<?> messageType) {
+    if (overflowConfiguration == null) {
+      return null;
+    }
+    String directoryName = messageType.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+    try {
+      return new SegmentedOverflowLog(new File(overflowConfiguration.getDirectory(), directoryName).toPath(),
+          overflowConfiguration.getSegmentSize(),
+          overflowConfiguration.getMaxSize(),
+          SECONDS.toMillis(overflowConfiguration.getRetentionSeconds()));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to create overflow log for " + messageType.getName(), e);
+    }
+  }
+
+  /**
+   * Stop collecting messages of all message types.
+   * <p>
+   * The shared scheduler itself is shutdown by its owner.
+   */
+  public synchronized void shutdown() {
+    messageTypeInfraRegistry.values().forEach((infra) -> infra.messageConsumer.shutdown());
+  }
+
   /**
    * Message delivery infrastructure for each message type
    *
@@ -113,21 +280,30 @@ public class DefaultMessageDeliveryInfrastructure implements MessageDeliveryInfr
    */
   private static final class PerMessageTypeInfrastructure<T> {
     private final PartitionedRingBuffer<T> messageCache;
-    private final MessageConsumer<T> messageConsumer;
+    // extracts the key of conflated messages, null if messages are not conflated
+    private final Function<? super T, ?> keyFunction;
+    private final DefaultMessageConsumer<T> messageConsumer;
     private final AtomicInteger producerAllocationCount;
+    private final int maxProducers;
+    // smaller buffers are collected earlier, well before producers overwrite their messages
+    private final int collectionTriggerThreshold;
 
-    private PerMessageTypeInfrastructure() {
-      PartitionedRingBuffer<T> rb = new MultiPartitionLockFreeRingBuffer<>(
-          MAX_PARALLEL_PRODUCERS,
-          BUFFER_CACHE_SIZE);
-      this.messageConsumer = new DefaultMessageConsumer<>(rb);
+    private PerMessageTypeInfrastructure(PartitionedRingBuffer<T> rb, Function<? super T, ?> keyFunction,
+                                         BufferConfiguration config,
+                                         ScheduledExecutorService collectorScheduler,
+                                         SegmentedOverflowLog overflowLog, BufferBudget.Account budgetAccount) {
+      this.messageConsumer = new DefaultMessageConsumer<>(rb, collectorScheduler, overflowLog, budgetAccount,
+          config.getCollectionIntervalMillis(), config.getOverspillSize());
       this.messageCache = rb;
+      this.keyFunction = keyFunction;
       this.producerAllocationCount = new AtomicInteger(0);
+      this.maxProducers = config.getPartitions();
+      this.collectionTriggerThreshold = Math.min(COLLECTION_TRIGGER_THRESHOLD, Math.max(1, config.getBufferSize() / 4));
     }
 
     private int allocateProducer() {
       int partitionNo = producerAllocationCount.getAndIncrement();
-      if (partitionNo >= MAX_PARALLEL_PRODUCERS) {
+      if (partitionNo >= maxProducers) {
         throw new IllegalStateException("Too many producers");
       }
       return partitionNo;
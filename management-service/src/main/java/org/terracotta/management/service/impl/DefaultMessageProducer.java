@@ -19,11 +19,23 @@
 package org.terracotta.management.service.impl;
 
 import org.terracotta.management.service.buffer.PartitionedRingBuffer;
+import org.terracotta.management.service.buffer.impl.PriorityLaneRingBuffer;
+import org.terracotta.voltron.management.producer.MessagePriority;
 import org.terracotta.voltron.management.producer.MessageProducer;
 
+import static org.terracotta.management.service.impl.Constants.COLLECTION_TRIGGER_THRESHOLD;
+
 /**
  * The management service producer.
  * <p>
+ * When created along with its consumer, the producer requests an early collection whenever its partition
+ * fills up to the collection trigger threshold and its remaining capacity accounts for the credits granted
+ * by the consumer. The size of the partition is only checked once enough messages were pushed to possibly
+ * reach the threshold, keeping the reads of the consumer's position out of most pushes.
+ * <p>
+ * If the buffer is a {@link PriorityLaneRingBuffer}, messages are pushed into the lane of their
+ * {@link MessagePriority}, otherwise the priority is ignored.
+ * <p>
  * TODO: as of now only the management message producer is implemented mainly for the PoC.
  * Other interfaces will be implemented later.
  *
@@ -32,15 +44,107 @@ import org.terracotta.voltron.management.producer.MessageProducer;
  */
 public class DefaultMessageProducer<M> implements MessageProducer<M> {
   private final PartitionedRingBuffer<M> messageCache;
+  // same as the message cache, if it has priority lanes. Otherwise null
+  private final PriorityLaneRingBuffer<M> laneCache;
   private final int myPartitionNumber;
+  private final DefaultMessageConsumer<M> messageConsumer;
+  // number of messages buffered in the partition at which an early collection is requested
+  private final int collectionTriggerThreshold;
+  // set once the partition reached the threshold, cleared once it is drained below it again.
+  // only accessed by the (single) producer thread of this partition
+  private boolean aboveTriggerThreshold;
+  // pushes before the size of the partition is checked again, only accessed by the producer thread
+  private int pushesUntilCheck;
 
   public DefaultMessageProducer(PartitionedRingBuffer<M> messageCache, int partitionNo) {
+    this(messageCache, partitionNo, null);
+  }
+
+  /**
+   * Create a producer for messages collected by the given consumer.
+   *
+   * @param messageCache the buffer to push messages into
+   * @param partitionNo the partition of this producer
+   * @param messageConsumer the consumer of the buffer, may be null
+   */
+  public DefaultMessageProducer(PartitionedRingBuffer<M> messageCache, int partitionNo,
+                                DefaultMessageConsumer<M> messageConsumer) {
+    this(messageCache, partitionNo, messageConsumer, COLLECTION_TRIGGER_THRESHOLD);
+  }
+
+  /**
+   * Create a producer for messages collected by the given consumer, which requests an early collection
+   * whenever its partition fills up to {@code collectionTriggerThreshold} messages.
+   *
+   * @param messageCache the buffer to push messages into
+   * @param partitionNo the partition of this producer
+   * @param messageConsumer the consumer of the buffer, may be null
+   * @param collectionTriggerThreshold number of messages buffered in the partition at which an early collection is requested
+   */
+  @SuppressWarnings("unchecked")
+  public DefaultMessageProducer(PartitionedRingBuffer<M> messageCache, int partitionNo,
+                                DefaultMessageConsumer<M> messageConsumer, int collectionTriggerThreshold) {
+    if (collectionTriggerThreshold <= 0) {
+      throw new IllegalArgumentException("Invalid collection trigger threshold " + collectionTriggerThreshold + " specified.");
+    }
     this.messageCache = messageCache;
+    this.laneCache = (messageCache instanceof PriorityLaneRingBuffer) ? (PriorityLaneRingBuffer<M>)messageCache : null;
     this.myPartitionNumber = partitionNo;
+    this.messageConsumer = messageConsumer;
+    this.collectionTriggerThreshold = collectionTriggerThreshold;
+    this.aboveTriggerThreshold = false;
+    this.pushesUntilCheck = collectionTriggerThreshold;
   }
 
   @Override
   public void pushManagementMessage(M message) {
     messageCache.insert(myPartitionNumber, message);
+    messagePushed();
+  }
+
+  @Override
+  public void pushManagementMessage(M message, MessagePriority priority) {
+    if (laneCache == null) {
+      messageCache.insert(myPartitionNumber, message);
+    } else {
+      // lanes are in the order of priority
+      laneCache.insert(Math.min(priority.ordinal(), laneCache.lanes() - 1), myPartitionNumber, message);
+    }
+    messagePushed();
+  }
+
+  private void messagePushed() {
+    if (messageConsumer == null) {
+      return;
+    }
+    if (--pushesUntilCheck > 0) {
+      return;
+    }
+    // only this producer fills the partition, so it cannot reach the threshold in fewer pushes than it lacks.
+    // Once above, the drain that brings it back below is checked for every quarter of the threshold
+    int size = messageCache.size(myPartitionNumber);
+    boolean above = size >= collectionTriggerThreshold;
+    if (above && !aboveTriggerThreshold) {
+      // request once per crossing of the threshold, the collector drains the partition in response
+      messageConsumer.requestCollection();
+    }
+    aboveTriggerThreshold = above;
+    pushesUntilCheck = above ? Math.max(1, collectionTriggerThreshold / 4) : collectionTriggerThreshold - size;
+  }
+
+  @Override
+  public int getRemainingCapacity() {
+    int remaining = messageCache.capacity(myPartitionNumber) - messageCache.size(myPartitionNumber);
+    if (messageConsumer != null) {
+      // credits are shared by the producers of all partitions
+      long unusedCredits = (long)messageConsumer.getAvailableCredits() - messageConsumer.getBacklog();
+      remaining = (int)Math.max(0, Math.min(remaining, unusedCredits));
+    }
+    return remaining;
+  }
+
+  @Override
+  public int getBacklog() {
+    return messageCache.size(myPartitionNumber);
   }
 }
@@ -0,0 +1,112 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.registry;
+
+import org.terracotta.entity.ActiveServerEntity;
+import org.terracotta.management.context.ContextContainer;
+import org.terracotta.voltron.management.producer.registry.ManagedEntityRegistry;
+import org.terracotta.voltron.management.producer.registry.ManagedObjectRegistry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Default registry of all managed objects of a managed entity.
+ *
+ * @param <E> The managed entity type.
+ *
+ * @author RKAV
+ */
+class DefaultManagedEntityRegistry<E extends ActiveServerEntity<?, ?>> implements ManagedEntityRegistry<E> {
+  static final String ENTITY_CONTEXT_NAME = "entityName";
+
+  private final DefaultRegistryService registryService;
+  private final Class<E> entityType;
+  private final String entityName;
+  private final int registryIndex;
+  private final ConcurrentMap<Class<?>, DefaultManagedObjectRegistry<?>> objectRegistries;
+
+  DefaultManagedEntityRegistry(DefaultRegistryService registryService, Class<E> entityType, String entityName,
+                               int registryIndex) {
+    this.registryService = registryService;
+    this.entityType = entityType;
+    this.entityName = entityName;
+    this.registryIndex = registryIndex;
+    this.objectRegistries = new ConcurrentHashMap<>();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <O> ManagedObjectRegistry<O> createOrLookupManagedObjectRegistry(Class<O> managedType) {
+    ManagedObjectRegistry<O> registry = (ManagedObjectRegistry<O>)objectRegistries.get(managedType);
+    if (registry != null) {
+      return registry;
+    }
+    return (ManagedObjectRegistry<O>)registryService.update(() -> objectRegistries.computeIfAbsent(managedType,
+        (k) -> new DefaultManagedObjectRegistry<>(registryService, managedType)));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <O> ManagedObjectRegistry<O> removeManagedObjectRegistry(Class<O> managedType) {
+    return (ManagedObjectRegistry<O>)registryService.update(() -> objectRegistries.remove(managedType));
+  }
+
+  @Override
+  public int getRegistryIndex() {
+    return registryIndex;
+  }
+
+  Class<E> getEntityType() {
+    return entityType;
+  }
+
+  String getEntityName() {
+    return entityName;
+  }
+
+  @SuppressWarnings("unchecked")
+  <O> DefaultManagedObjectRegistry<O> getManagedObjectRegistry(Class<O> managedType) {
+    return (DefaultManagedObjectRegistry<O>)objectRegistries.get(managedType);
+  }
+
+  Collection<DefaultManagedObjectRegistry<?>> getManagedObjectRegistries() {
+    return objectRegistries.values();
+  }
+
+  Set<Class<?>> getManagedTypes() {
+    return new HashSet<>(objectRegistries.keySet());
+  }
+
+  /**
+   * @return the context of this entity, with the contexts of its managed object types as sub contexts
+   */
+  ContextContainer getContext() {
+    List<ContextContainer> subContexts = new ArrayList<>();
+    for (DefaultManagedObjectRegistry<?> objectRegistry : objectRegistries.values()) {
+      subContexts.add(objectRegistry.getContext());
+    }
+    return new ContextContainer(ENTITY_CONTEXT_NAME, entityName, subContexts);
+  }
+}
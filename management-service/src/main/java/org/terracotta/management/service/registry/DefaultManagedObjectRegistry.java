@@ -0,0 +1,197 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.registry;
+
+import org.terracotta.management.capabilities.Capability;
+import org.terracotta.management.context.Context;
+import org.terracotta.management.context.ContextContainer;
+import org.terracotta.voltron.management.common.providers.ManagementProvider;
+import org.terracotta.voltron.management.producer.registry.ManagedObjectRegistry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Default registry of the managed objects of one type within a managed entity.
+ * <p>
+ * Changes to the providers are published to the {@link DefaultRegistryService} that owns the entity,
+ * so that they are visible through its lookup indices.
+ * <p>
+ * Managed objects are indexed by each of their context attributes, so that finding the managed objects
+ * matching a context only looks at the objects having the rarest attribute of the context, rather than
+ * at all managed objects. Attributes naming the entity or the managed object type are matched by the
+ * {@link DefaultRegistryService} and are ignored here.
+ *
+ * @param <O> The managed object type.
+ *
+ * @author RKAV
+ */
+class DefaultManagedObjectRegistry<O> implements ManagedObjectRegistry<O> {
+  static final String MANAGED_TYPE_CONTEXT_NAME = "managedObjectType";
+
+  private final DefaultRegistryService registryService;
+  private final Class<O> managedType;
+  private final CopyOnWriteArrayList<ManagementProvider<O>> providers;
+  // context of each managed object
+  private final ConcurrentMap<O, Context> managedObjects;
+  // inverted index from context attribute name and value to the managed objects having that attribute
+  private final ConcurrentMap<String, ConcurrentMap<String, Set<O>>> attributeIndex;
+  private final ContextContainer context;
+
+  DefaultManagedObjectRegistry(DefaultRegistryService registryService, Class<O> managedType) {
+    this.registryService = registryService;
+    this.managedType = managedType;
+    this.providers = new CopyOnWriteArrayList<>();
+    this.managedObjects = new ConcurrentHashMap<>();
+    this.attributeIndex = new ConcurrentHashMap<>();
+    this.context = new ContextContainer(MANAGED_TYPE_CONTEXT_NAME, managedType.getName());
+  }
+
+  @Override
+  public Class<O> managedType() {
+    return managedType;
+  }
+
+  @Override
+  public void addManagementProvider(ManagementProvider<O> provider) {
+    registryService.update(() -> providers.addIfAbsent(provider));
+  }
+
+  @Override
+  public void removeManagementProvider(ManagementProvider<O> provider) {
+    registryService.update(() -> providers.remove(provider));
+  }
+
+  @Override
+  public void register(O managedObject) {
+    register(managedObject, Context.empty());
+  }
+
+  @Override
+  public void register(O managedObject, Context context) {
+    Context previous = managedObjects.put(managedObject, context);
+    if (previous != null) {
+      removeFromIndex(managedObject, previous);
+    }
+    for (Map.Entry<String, String> attribute : context.entrySet()) {
+      attributeIndex.computeIfAbsent(attribute.getKey(), (k) -> new ConcurrentHashMap<>())
+          .compute(attribute.getValue(), (v, objects) -> {
+            Set<O> updated = (objects == null) ? ConcurrentHashMap.newKeySet() : objects;
+            updated.add(managedObject);
+            return updated;
+          });
+    }
+  }
+
+  @Override
+  public void unregister(O managedObject) {
+    Context context = managedObjects.remove(managedObject);
+    if (context != null) {
+      removeFromIndex(managedObject, context);
+    }
+  }
+
+  @Override
+  public Collection<O> findManagedObjects(Context context) {
+    Collection<O> candidates = null;
+    for (Map.Entry<String, String> attribute : context.entrySet()) {
+      if (isRegistryAttribute(attribute.getKey())) {
+        continue;
+      }
+      Map<String, Set<O>> values = attributeIndex.get(attribute.getKey());
+      Set<O> objects = (values == null) ? null : values.get(attribute.getValue());
+      if (objects == null || objects.isEmpty()) {
+        return Collections.emptyList();
+      }
+      if (candidates == null || objects.size() < candidates.size()) {
+        candidates = objects;
+      }
+    }
+    if (candidates == null) {
+      return getManagedObjects();
+    }
+    List<O> matches = new ArrayList<>();
+    for (O candidate : candidates) {
+      Context candidateContext = managedObjects.get(candidate);
+      if (candidateContext != null && matches(candidateContext, context)) {
+        matches.add(candidate);
+      }
+    }
+    return matches;
+  }
+
+  @Override
+  public Collection<Capability> getCapabilities() {
+    List<Capability> capabilities = new ArrayList<>();
+    for (ManagementProvider<O> provider : providers) {
+      capabilities.add(provider.getCapability());
+    }
+    return capabilities;
+  }
+
+  @Override
+  public ContextContainer getContext() {
+    return context;
+  }
+
+  /**
+   * @return the managed objects currently registered
+   */
+  Collection<O> getManagedObjects() {
+    return Collections.unmodifiableSet(managedObjects.keySet());
+  }
+
+  Collection<ManagementProvider<O>> getManagementProviders() {
+    return providers;
+  }
+
+  private void removeFromIndex(O managedObject, Context context) {
+    for (Map.Entry<String, String> attribute : context.entrySet()) {
+      ConcurrentMap<String, Set<O>> values = attributeIndex.get(attribute.getKey());
+      if (values != null) {
+        // drop the entry of the value along with its last managed object
+        values.computeIfPresent(attribute.getValue(), (v, objects) -> {
+          objects.remove(managedObject);
+          return objects.isEmpty() ? null : objects;
+        });
+      }
+    }
+  }
+
+  private static boolean matches(Context candidateContext, Context context) {
+    for (Map.Entry<String, String> attribute : context.entrySet()) {
+      String name = attribute.getKey();
+      if (!isRegistryAttribute(name) && !attribute.getValue().equals(candidateContext.get(name))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isRegistryAttribute(String name) {
+    return name.equals(DefaultManagedEntityRegistry.ENTITY_CONTEXT_NAME) || name.equals(MANAGED_TYPE_CONTEXT_NAME);
+  }
+}
@@ -0,0 +1,279 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.registry;
+
+import org.terracotta.entity.ActiveServerEntity;
+import org.terracotta.management.capabilities.Capability;
+import org.terracotta.management.context.Context;
+import org.terracotta.management.context.ContextContainer;
+import org.terracotta.voltron.management.RegistryService;
+import org.terracotta.voltron.management.common.providers.ManagementProvider;
+import org.terracotta.voltron.management.consumer.CapabilityConsumer;
+import org.terracotta.voltron.management.consumer.ProviderConsumer;
+import org.terracotta.voltron.management.consumer.RegistryDelta;
+import org.terracotta.voltron.management.producer.RegistryProducer;
+import org.terracotta.voltron.management.producer.registry.ManagedEntityRegistry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Default registry service, acting as the registry producer for managed entities and as the
+ * provider and capability consumer for management entities.
+ * <p>
+ * All lookups are served from an immutable {@link RegistrySnapshot} that indexes the management
+ * providers by capability name, by entity, by entity and capability, by entity, capability and managed
+ * object type and by managed object type. Lookups are hash lookups into the current snapshot and never
+ * block, while registrants serialize among themselves to rebuild and publish a new snapshot on each
+ * change. Registrations are rare compared to lookups, so the snapshot is simply rebuilt from the
+ * entity registries.
+ * <p>
+ * Every snapshot gets the next version of the registry. The most recent snapshots are kept in a small
+ * ring, indexed by version, so that consumers polling the registry get only the changes since the
+ * version they last saw. Consumers that fall further behind get a full snapshot instead.
+ *
+ * @author RKAV
+ */
+public class DefaultRegistryService implements RegistryService, RegistryProducer, ProviderConsumer, CapabilityConsumer {
+  // context key of the name of a managed entity
+  public static final String ENTITY_NAME_CONTEXT_KEY = DefaultManagedEntityRegistry.ENTITY_CONTEXT_NAME;
+  // context key of the class name of a managed object type
+  public static final String MANAGED_TYPE_CONTEXT_KEY = DefaultManagedObjectRegistry.MANAGED_TYPE_CONTEXT_NAME;
+  // number of recent snapshots kept to compute changes, must be a power of 2
+  private static final int SNAPSHOT_HISTORY_SIZE = 1 << 6;
+
+  private final ConcurrentMap<EntityKey, DefaultManagedEntityRegistry<?>> entityRegistries;
+  private final AtomicInteger nextRegistryIndex;
+  private final Object updateLock;
+  private final AtomicReferenceArray<RegistrySnapshot> snapshotHistory;
+  private volatile RegistrySnapshot snapshot;
+
+  public DefaultRegistryService() {
+    this.entityRegistries = new ConcurrentHashMap<>();
+    this.nextRegistryIndex = new AtomicInteger();
+    this.updateLock = new Object();
+    this.snapshotHistory = new AtomicReferenceArray<>(SNAPSHOT_HISTORY_SIZE);
+    this.snapshot = RegistrySnapshot.EMPTY;
+    this.snapshotHistory.set(0, snapshot);
+  }
+
+  @Override
+  public RegistryProducer getRegistryProducer() {
+    return this;
+  }
+
+  @Override
+  public CapabilityConsumer getCapabilityConsumer() {
+    return this;
+  }
+
+  @Override
+  public ProviderConsumer getProviderConsumer() {
+    return this;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <E extends ActiveServerEntity<?, ?>> ManagedEntityRegistry<E> createOrLookupManagedEntityRegistry(Class<E> entityType,
+                                                                                                          String entityName) {
+    EntityKey key = new EntityKey(entityType, entityName);
+    ManagedEntityRegistry<E> registry = (ManagedEntityRegistry<E>)entityRegistries.get(key);
+    if (registry != null) {
+      return registry;
+    }
+    return (ManagedEntityRegistry<E>)update(() -> entityRegistries.computeIfAbsent(key,
+        (k) -> new DefaultManagedEntityRegistry<>(this, entityType, entityName, nextRegistryIndex.getAndIncrement())));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <E extends ActiveServerEntity<?, ?>> ManagedEntityRegistry<E> removeFromEntityRegistry(Class<E> entityType,
+                                                                                               String entityName) {
+    return (ManagedEntityRegistry<E>)update(() -> entityRegistries.remove(new EntityKey(entityType, entityName)));
+  }
+
+  @Override
+  public Collection<ManagementProvider<?>> getManagementProvidersByCapability(String capabilityName) {
+    return snapshot.getProvidersByCapability(capabilityName);
+  }
+
+  @Override
+  public <E extends ActiveServerEntity<?, ?>> Collection<ManagementProvider<?>> getManagementProvidersByEntity(Class<E> entityType,
+                                                                                                             String entityName) {
+    return snapshot.getProvidersByEntity(entityType, entityName);
+  }
+
+  @Override
+  public <E extends ActiveServerEntity<?, ?>> Collection<ManagementProvider<?>> getManagementProvidersByEntityAndCapability(Class<E> entityType,
+                                                                                                                          String entityName,
+                                                                                                                          String capabilityName) {
+    return snapshot.getProvidersByEntityAndCapability(entityType, entityName, capabilityName);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <E extends ActiveServerEntity<?, ?>, O> ManagementProvider<O> getManagementProvidersByEntityAndCapabilityAndManagedObjectType(Class<E> entityType,
+                                                                                                                                     String entityName,
+                                                                                                                                     Class<O> objectType,
+                                                                                                                                     String capabilityName) {
+    return (ManagementProvider<O>)snapshot.getProviderByEntityAndCapabilityAndManagedType(entityType, entityName,
+        objectType, capabilityName);
+  }
+
+  /**
+   * List all management providers installed for a specific managed object type across all entities.
+   *
+   * @param objectType Type of managed object
+   * @return The list of management providers installed
+   */
+  public Collection<ManagementProvider<?>> getManagementProvidersByManagedObjectType(Class<?> objectType) {
+    return snapshot.getProvidersByManagedType(objectType);
+  }
+
+  /**
+   * Get the registered managed objects of a type, across all entities matching the context.
+   * <p>
+   * If the context has an {@link #ENTITY_NAME_CONTEXT_KEY entity name}, only the managed objects of
+   * entities of that name are considered. The other attributes of the context are matched against the
+   * context each managed object was registered with, using the index of its managed object registry.
+   *
+   * @param managedType Type of managed object
+   * @param context the context the managed objects must match
+   * @param <O> managed object type
+   * @return the matching managed objects
+   */
+  public <O> Collection<O> getManagedObjects(Class<O> managedType, Context context) {
+    String entityName = context.get(ENTITY_NAME_CONTEXT_KEY);
+    String managedTypeName = context.get(MANAGED_TYPE_CONTEXT_KEY);
+    if (managedTypeName != null && !managedTypeName.equals(managedType.getName())) {
+      return Collections.emptyList();
+    }
+    List<O> managedObjects = new ArrayList<>();
+    for (DefaultManagedEntityRegistry<?> entityRegistry : entityRegistries.values()) {
+      if (entityName == null || entityName.equals(entityRegistry.getEntityName())) {
+        DefaultManagedObjectRegistry<O> objectRegistry = entityRegistry.getManagedObjectRegistry(managedType);
+        if (objectRegistry != null) {
+          managedObjects.addAll(objectRegistry.findManagedObjects(context));
+        }
+      }
+    }
+    return managedObjects;
+  }
+
+  @Override
+  public Collection<ContextContainer> getContexts() {
+    return snapshot.getContexts();
+  }
+
+  @Override
+  public Map<String, Collection<Capability>> getCapabilities() {
+    return snapshot.getCapabilities();
+  }
+
+  @Override
+  public long getVersion() {
+    return snapshot.getVersion();
+  }
+
+  @Override
+  public RegistryDelta getChangesSince(long version) {
+    RegistrySnapshot current = snapshot;
+    RegistrySnapshot from = null;
+    if (version >= 0 && version <= current.getVersion()) {
+      from = snapshotHistory.get((int)(version & (SNAPSHOT_HISTORY_SIZE - 1)));
+      if (from != null && from.getVersion() != version) {
+        // overwritten by a more recent snapshot
+        from = null;
+      }
+    }
+    return current.changesSince(from);
+  }
+
+  /**
+   * @return the current snapshot of the registry
+   */
+  RegistrySnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  /**
+   * Apply a change to the entity registries and publish a new snapshot reflecting it.
+   *
+   * @param change the change to apply
+   * @param <T> result type of the change
+   * @return the result of the change
+   */
+  <T> T update(Supplier<T> change) {
+    synchronized (updateLock) {
+      T result = change.get();
+      RegistrySnapshot next = buildSnapshot(snapshot.getVersion() + 1);
+      snapshotHistory.set((int)(next.getVersion() & (SNAPSHOT_HISTORY_SIZE - 1)), next);
+      snapshot = next;
+      return result;
+    }
+  }
+
+  private RegistrySnapshot buildSnapshot(long version) {
+    RegistrySnapshot.Builder builder = new RegistrySnapshot.Builder(version);
+    for (DefaultManagedEntityRegistry<?> entityRegistry : entityRegistries.values()) {
+      Class<?> entityType = entityRegistry.getEntityType();
+      String entityName = entityRegistry.getEntityName();
+      builder.addEntity(entityType, entityName, entityRegistry.getContext(), entityRegistry.getManagedTypes());
+      for (DefaultManagedObjectRegistry<?> objectRegistry : entityRegistry.getManagedObjectRegistries()) {
+        for (ManagementProvider<?> provider : objectRegistry.getManagementProviders()) {
+          builder.addProvider(entityType, entityName, provider);
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  private static final class EntityKey {
+    private final Class<?> entityType;
+    private final String entityName;
+
+    private EntityKey(Class<?> entityType, String entityName) {
+      this.entityType = entityType;
+      this.entityName = entityName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof EntityKey)) {
+        return false;
+      }
+      EntityKey other = (EntityKey)o;
+      return entityType.equals(other.entityType) && entityName.equals(other.entityName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(entityType, entityName);
+    }
+  }
+}
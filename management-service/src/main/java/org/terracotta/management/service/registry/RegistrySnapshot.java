@@ -0,0 +1,254 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.registry;
+
+import org.terracotta.management.capabilities.Capability;
+import org.terracotta.management.context.ContextContainer;
+import org.terracotta.voltron.management.common.providers.ManagementProvider;
+import org.terracotta.voltron.management.consumer.RegistryDelta;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, point in time view of the management registry, with all its provider lookup indices.
+ * <p>
+ * A snapshot is built by the registrant that changes the registry and then published as a whole, so
+ * that readers always see all indices in the same state and never wait for registrants.
+ * <p>
+ * Each snapshot carries the version of the registry it was built for, so that the changes between two
+ * snapshots can be handed to consumers that poll the registry.
+ *
+ * @author RKAV
+ */
+final class RegistrySnapshot {
+  static final RegistrySnapshot EMPTY = new Builder(0).build();
+
+  private final long version;
+  private final Map<IndexKey, EntityView> entities;
+  private final Map<String, Collection<ManagementProvider<?>>> byCapability;
+  private final Map<Class<?>, Collection<ManagementProvider<?>>> byManagedType;
+  private final Map<IndexKey, Collection<ManagementProvider<?>>> byEntity;
+  private final Map<IndexKey, Collection<ManagementProvider<?>>> byEntityAndCapability;
+  private final Map<IndexKey, ManagementProvider<?>> byEntityAndCapabilityAndManagedType;
+  private final Map<String, Collection<Capability>> capabilities;
+  private final Collection<ContextContainer> contexts;
+
+  private RegistrySnapshot(Builder builder) {
+    this.version = builder.version;
+    this.entities = Collections.unmodifiableMap(builder.entities);
+    this.byCapability = freeze(builder.byCapability);
+    this.byManagedType = freeze(builder.byManagedType);
+    this.byEntity = freeze(builder.byEntity);
+    this.byEntityAndCapability = freeze(builder.byEntityAndCapability);
+    this.byEntityAndCapabilityAndManagedType = Collections.unmodifiableMap(builder.byEntityAndCapabilityAndManagedType);
+    this.capabilities = freeze(builder.capabilities);
+    this.contexts = Collections.unmodifiableList(builder.contexts);
+  }
+
+  Collection<ManagementProvider<?>> getProvidersByCapability(String capabilityName) {
+    return orEmpty(byCapability.get(capabilityName));
+  }
+
+  Collection<ManagementProvider<?>> getProvidersByManagedType(Class<?> managedType) {
+    return orEmpty(byManagedType.get(managedType));
+  }
+
+  Collection<ManagementProvider<?>> getProvidersByEntity(Class<?> entityType, String entityName) {
+    return orEmpty(byEntity.get(new IndexKey(entityType, entityName)));
+  }
+
+  Collection<ManagementProvider<?>> getProvidersByEntityAndCapability(Class<?> entityType, String entityName,
+                                                                      String capabilityName) {
+    return orEmpty(byEntityAndCapability.get(new IndexKey(entityType, entityName, capabilityName)));
+  }
+
+  ManagementProvider<?> getProviderByEntityAndCapabilityAndManagedType(Class<?> entityType, String entityName,
+                                                                       Class<?> managedType, String capabilityName) {
+    return byEntityAndCapabilityAndManagedType.get(new IndexKey(entityType, entityName, capabilityName, managedType));
+  }
+
+  Map<String, Collection<Capability>> getCapabilities() {
+    return capabilities;
+  }
+
+  Collection<ContextContainer> getContexts() {
+    return contexts;
+  }
+
+  long getVersion() {
+    return version;
+  }
+
+  /**
+   * Get the changes from an older snapshot to this snapshot.
+   * <p>
+   * Entities are compared by their managed object types and by the identity of their providers. The
+   * context of an entity is reported as removed and added again whenever its managed object types change.
+   *
+   * @param from the older snapshot, null if not known
+   * @return the changes, a full snapshot if {@code from} is null
+   */
+  RegistryDelta changesSince(RegistrySnapshot from) {
+    if (from == null) {
+      return new RegistryDelta(version, true, contexts, Collections.emptyList(), capabilities,
+          Collections.emptyMap());
+    }
+    List<ContextContainer> addedContexts = new ArrayList<>();
+    List<ContextContainer> removedContexts = new ArrayList<>();
+    Map<String, List<Capability>> addedCapabilities = new HashMap<>();
+    Map<String, List<Capability>> removedCapabilities = new HashMap<>();
+    for (Map.Entry<IndexKey, EntityView> entry : entities.entrySet()) {
+      EntityView current = entry.getValue();
+      EntityView previous = from.entities.get(entry.getKey());
+      if (previous == null || !previous.managedTypes.equals(current.managedTypes)) {
+        if (previous != null) {
+          removedContexts.add(previous.context);
+        }
+        addedContexts.add(current.context);
+      }
+      current.addProvidersMissingFrom(previous, addedCapabilities);
+    }
+    for (Map.Entry<IndexKey, EntityView> entry : from.entities.entrySet()) {
+      EntityView previous = entry.getValue();
+      EntityView current = entities.get(entry.getKey());
+      if (current == null) {
+        removedContexts.add(previous.context);
+      }
+      previous.addProvidersMissingFrom(current, removedCapabilities);
+    }
+    return new RegistryDelta(version, false, addedContexts, removedContexts, freeze(addedCapabilities),
+        freeze(removedCapabilities));
+  }
+
+  private static <T> Collection<T> orEmpty(Collection<T> values) {
+    return (values == null) ? Collections.<T>emptyList() : values;
+  }
+
+  private static <K, T> Map<K, Collection<T>> freeze(Map<K, List<T>> index) {
+    Map<K, Collection<T>> frozen = new HashMap<>(index.size() * 2);
+    for (Map.Entry<K, List<T>> entry : index.entrySet()) {
+      frozen.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+    }
+    return Collections.unmodifiableMap(frozen);
+  }
+
+  /**
+   * Collects the providers and contexts of all entities of the registry into a new snapshot.
+   */
+  static final class Builder {
+    private final long version;
+    private final Map<IndexKey, EntityView> entities = new HashMap<>();
+    private final Map<String, List<ManagementProvider<?>>> byCapability = new HashMap<>();
+    private final Map<Class<?>, List<ManagementProvider<?>>> byManagedType = new HashMap<>();
+    private final Map<IndexKey, List<ManagementProvider<?>>> byEntity = new HashMap<>();
+    private final Map<IndexKey, List<ManagementProvider<?>>> byEntityAndCapability = new HashMap<>();
+    private final Map<IndexKey, ManagementProvider<?>> byEntityAndCapabilityAndManagedType = new HashMap<>();
+    private final Map<String, List<Capability>> capabilities = new HashMap<>();
+    private final List<ContextContainer> contexts = new ArrayList<>();
+
+    Builder(long version) {
+      this.version = version;
+    }
+
+    Builder addEntity(Class<?> entityType, String entityName, ContextContainer context, Set<Class<?>> managedTypes) {
+      IndexKey key = new IndexKey(entityType, entityName);
+      entities.put(key, new EntityView(entityName, context, managedTypes));
+      byEntity.computeIfAbsent(key, (k) -> new ArrayList<>());
+      capabilities.computeIfAbsent(entityName, (k) -> new ArrayList<>());
+      contexts.add(context);
+      return this;
+    }
+
+    Builder addProvider(Class<?> entityType, String entityName, ManagementProvider<?> provider) {
+      String capabilityName = provider.getCapabilityName();
+      byCapability.computeIfAbsent(capabilityName, (k) -> new ArrayList<>()).add(provider);
+      byManagedType.computeIfAbsent(provider.managedType(), (k) -> new ArrayList<>()).add(provider);
+      IndexKey entityKey = new IndexKey(entityType, entityName);
+      entities.get(entityKey).providers.put(provider, Boolean.TRUE);
+      byEntity.computeIfAbsent(entityKey, (k) -> new ArrayList<>()).add(provider);
+      byEntityAndCapability.computeIfAbsent(new IndexKey(entityType, entityName, capabilityName),
+          (k) -> new ArrayList<>()).add(provider);
+      byEntityAndCapabilityAndManagedType.put(new IndexKey(entityType, entityName, capabilityName,
+          provider.managedType()), provider);
+      capabilities.computeIfAbsent(entityName, (k) -> new ArrayList<>()).add(provider.getCapability());
+      return this;
+    }
+
+    RegistrySnapshot build() {
+      return new RegistrySnapshot(this);
+    }
+  }
+
+  /**
+   * What consumers see of an entity: its context and the capabilities of its providers.
+   */
+  private static final class EntityView {
+    private final String entityName;
+    private final ContextContainer context;
+    private final Set<Class<?>> managedTypes;
+    // providers are compared by identity, the values are not used
+    private final Map<ManagementProvider<?>, Boolean> providers;
+
+    private EntityView(String entityName, ContextContainer context, Set<Class<?>> managedTypes) {
+      this.entityName = entityName;
+      this.context = context;
+      this.managedTypes = managedTypes;
+      this.providers = new IdentityHashMap<>();
+    }
+
+    private void addProvidersMissingFrom(EntityView other, Map<String, List<Capability>> target) {
+      for (ManagementProvider<?> provider : providers.keySet()) {
+        if (other == null || !other.providers.containsKey(provider)) {
+          target.computeIfAbsent(entityName, (k) -> new ArrayList<>()).add(provider.getCapability());
+        }
+      }
+    }
+  }
+
+  /**
+   * Composite key of the entity indices.
+   */
+  private static final class IndexKey {
+    private final Object[] parts;
+    private final int hash;
+
+    private IndexKey(Object... parts) {
+      this.parts = parts;
+      this.hash = Arrays.hashCode(parts);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return (o instanceof IndexKey) && Arrays.equals(parts, ((IndexKey)o).parts);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.statistics;
+
+import org.terracotta.management.context.Context;
+import org.terracotta.voltron.management.common.providers.StatisticsProvider;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Base class of statistics providers that let the management service sample their statistics.
+ * <p>
+ * On {@link #startCollection(Map, Collection)}, the provider is asked to add the requested statistics of
+ * the managed objects described by the context to a new {@link StatisticsCollection}, which is then sampled
+ * by the {@link StatisticsSampler} until the collection is stopped or replaced by another call for the
+ * same context.
+ *
+ * @param <T> the managed object
+ *
+ * @author RKAV
+ */
+public abstract class AbstractStatisticsProvider<T> implements StatisticsProvider<T> {
+  private final Class<T> managedType;
+  private final StatisticsSampler sampler;
+  private final long sampleIntervalMillis;
+  private final int batchSize;
+  private final ConcurrentMap<Map<String, String>, StatisticsCollection> collections;
+
+  /**
+   * Create the provider.
+   *
+   * @param managedType the managed object type
+   * @param sampler the sampler of the statistics
+   * @param sampleIntervalMillis interval between two samples, in milliseconds
+   * @param batchSize number of samples published together
+   */
+  protected AbstractStatisticsProvider(Class<T> managedType, StatisticsSampler sampler, long sampleIntervalMillis,
+                                       int batchSize) {
+    this.managedType = managedType;
+    this.sampler = sampler;
+    this.sampleIntervalMillis = sampleIntervalMillis;
+    this.batchSize = batchSize;
+    this.collections = new ConcurrentHashMap<>();
+  }
+
+  @Override
+  public Class<T> managedType() {
+    return managedType;
+  }
+
+  @Override
+  public void startCollection(Map<String, String> context, Collection<String> statisticNames) {
+    Map<String, String> key = new HashMap<>(context);
+    StatisticsCollection collection = new StatisticsCollection(Context.create(context), sampleIntervalMillis, batchSize);
+    for (String statisticName : statisticNames) {
+      addStatistic(collection, context, statisticName);
+    }
+    StatisticsCollection previous = collections.put(key, collection);
+    if (previous != null) {
+      sampler.stop(previous);
+    }
+    sampler.start(collection);
+  }
+
+  /**
+   * Stop collecting the statistics of the given context.
+   *
+   * @param context the {@code context} passed to {@link #startCollection(Map, Collection)}
+   */
+  public void stopCollection(Map<String, String> context) {
+    StatisticsCollection collection = collections.remove(new HashMap<>(context));
+    if (collection != null) {
+      sampler.stop(collection);
+    }
+  }
+
+  /**
+   * Add a statistic of the managed objects described by the context to the collection, using either
+   * {@link StatisticsCollection#addLongStatistic} or {@link StatisticsCollection#addDoubleStatistic}.
+   * Unknown statistics should be ignored.
+   *
+   * @param collection the collection to add the statistic to
+   * @param context the {@code context} passed to {@link #startCollection(Map, Collection)}
+   * @param statisticName name of the statistic
+   */
+  protected abstract void addStatistic(StatisticsCollection collection, Map<String, String> context,
+                                       String statisticName);
+}
@@ -0,0 +1,101 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.statistics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Statistics derived from cumulative sources over the interval between two samples, such as the rate
+ * of a counter or the mean of the values recorded by a histogram since the previous sample.
+ * <p>
+ * The derived statistics keep the state of the previous sample, hence each must be added to a single
+ * {@link StatisticsCollection}. They are used by the bridges feeding the metrics of entities into collections.
+ *
+ * @author RKAV
+ */
+public final class IntervalStatistics {
+  private IntervalStatistics() {
+  }
+
+  /**
+   * @param counter supplies the current value of a cumulative counter
+   * @return the increase of the counter per second since the previous sample, 0 on the first sample
+   */
+  public static DoubleSupplier rate(LongSupplier counter) {
+    return new Rate(counter);
+  }
+
+  /**
+   * @param total supplies the current sum of the recorded values
+   * @param count supplies the current number of recorded values
+   * @return the mean of the values recorded since the previous sample (or ever, on the first sample),
+   * 0 if none was recorded
+   */
+  public static DoubleSupplier intervalMean(LongSupplier total, LongSupplier count) {
+    return new IntervalMean(total, count);
+  }
+
+  private static final class Rate implements DoubleSupplier {
+    private final LongSupplier counter;
+    private long lastValue;
+    private long lastNanos = -1;
+
+    private Rate(LongSupplier counter) {
+      this.counter = counter;
+    }
+
+    @Override
+    public double getAsDouble() {
+      long value = counter.getAsLong();
+      long now = System.nanoTime();
+      double rate = 0;
+      if (lastNanos >= 0 && now > lastNanos) {
+        rate = (value - lastValue) * (double)TimeUnit.SECONDS.toNanos(1) / (now - lastNanos);
+      }
+      lastValue = value;
+      lastNanos = now;
+      return rate;
+    }
+  }
+
+  private static final class IntervalMean implements DoubleSupplier {
+    private final LongSupplier total;
+    private final LongSupplier count;
+    private long lastTotal;
+    private long lastCount;
+
+    private IntervalMean(LongSupplier total, LongSupplier count) {
+      this.total = total;
+      this.count = count;
+    }
+
+    @Override
+    public double getAsDouble() {
+      long currentCount = count.getAsLong();
+      long currentTotal = total.getAsLong();
+      long samples = currentCount - lastCount;
+      double mean = samples > 0 ? (double)(currentTotal - lastTotal) / samples : 0;
+      lastCount = currentCount;
+      lastTotal = currentTotal;
+      return mean;
+    }
+  }
+}
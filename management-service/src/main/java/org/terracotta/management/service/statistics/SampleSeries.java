@@ -0,0 +1,110 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.statistics;
+
+import java.io.Serializable;
+
+/**
+ * A batch of consecutive samples of a statistic, as primitive arrays of timestamps and values.
+ * <p>
+ * Integral statistics (e.g. counters) keep their values as {@code long}s and floating point statistics
+ * (e.g. ratios) as {@code double}s.
+ *
+ * @author RKAV
+ */
+public final class SampleSeries implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final long[] timestamps;
+  // exactly one of the value arrays is set
+  private final long[] longValues;
+  private final double[] doubleValues;
+
+  private SampleSeries(long[] timestamps, long[] longValues, double[] doubleValues) {
+    this.timestamps = timestamps;
+    this.longValues = longValues;
+    this.doubleValues = doubleValues;
+  }
+
+  /**
+   * Create a series of integral samples. The arrays are not copied.
+   *
+   * @param timestamps sample times in milliseconds
+   * @param values sample values, of the same length as {@code timestamps}
+   * @return the series
+   */
+  public static SampleSeries ofLongs(long[] timestamps, long[] values) {
+    if (timestamps.length != values.length) {
+      throw new IllegalArgumentException("Mismatched sample series " + timestamps.length + "/" + values.length);
+    }
+    return new SampleSeries(timestamps, values, null);
+  }
+
+  /**
+   * Create a series of floating point samples. The arrays are not copied.
+   *
+   * @param timestamps sample times in milliseconds
+   * @param values sample values, of the same length as {@code timestamps}
+   * @return the series
+   */
+  public static SampleSeries ofDoubles(long[] timestamps, double[] values) {
+    if (timestamps.length != values.length) {
+      throw new IllegalArgumentException("Mismatched sample series " + timestamps.length + "/" + values.length);
+    }
+    return new SampleSeries(timestamps, null, values);
+  }
+
+  public int size() {
+    return timestamps.length;
+  }
+
+  public boolean isFloatingPoint() {
+    return doubleValues != null;
+  }
+
+  public long getTimestamp(int index) {
+    return timestamps[index];
+  }
+
+  /**
+   * @param index index of the sample
+   * @return the value of the sample, truncated if this is a floating point series
+   */
+  public long getLongValue(int index) {
+    return (longValues != null) ? longValues[index] : (long)doubleValues[index];
+  }
+
+  public double getDoubleValue(int index) {
+    return (doubleValues != null) ? doubleValues[index] : longValues[index];
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < timestamps.length; i++) {
+      sb.append(i > 0 ? ", " : "").append(timestamps[i]).append('=');
+      if (longValues != null) {
+        sb.append(longValues[i]);
+      } else {
+        sb.append(doubleValues[i]);
+      }
+    }
+    return sb.append(']').toString();
+  }
+}
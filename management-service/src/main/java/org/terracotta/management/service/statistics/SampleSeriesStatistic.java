@@ -0,0 +1,67 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.statistics;
+
+import org.terracotta.management.stats.Statistic;
+
+/**
+ * A statistic whose value is a batch of samples of a statistic.
+ *
+ * @author RKAV
+ */
+public final class SampleSeriesStatistic implements Statistic<SampleSeries, String> {
+  private static final long serialVersionUID = 1L;
+
+  private final String name;
+  private final SampleSeries value;
+  private final String unit;
+
+  /**
+   * Create a sample series statistic.
+   *
+   * @param name name of the sampled statistic
+   * @param value the samples
+   * @param unit the unit of the sampled statistic, as a string
+   */
+  public SampleSeriesStatistic(String name, SampleSeries value, String unit) {
+    this.name = name;
+    this.value = value;
+    this.unit = unit;
+  }
+
+  @Override
+  public SampleSeries getValue() {
+    return value;
+  }
+
+  @Override
+  public String getUnit() {
+    return unit;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String toString() {
+    return name + "=" + value + " " + unit;
+  }
+}
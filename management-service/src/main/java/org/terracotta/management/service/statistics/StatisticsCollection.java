@@ -0,0 +1,239 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.statistics;
+
+import org.terracotta.management.context.Context;
+import org.terracotta.management.stats.ContextualStatistics;
+import org.terracotta.management.stats.Statistic;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * A group of statistics of a single context, sampled together at a fixed interval by a
+ * {@link StatisticsSampler} and published in batches.
+ * <p>
+ * The samples of each statistic are kept in a primitive ring, sharing a single ring of timestamps
+ * with all statistics of the collection. Taking a sample therefore neither boxes nor allocates. Once a
+ * batch of samples is taken, the samples are copied into a single {@link ContextualStatistics} message
+ * holding a {@link SampleSeriesStatistic} per statistic. If a batch is not drained in time, the oldest
+ * samples are overwritten.
+ * <p>
+ * Statistics must be added before the collection is started. Once started, the collection is only
+ * accessed by the sampling thread.
+ *
+ * @author RKAV
+ */
+public final class StatisticsCollection {
+  private final Context context;
+  private final long sampleIntervalMillis;
+  private final long[] timestamps;
+  private final List<SampledStatistic> statistics;
+  // next slot of the rings to write and number of samples not drained yet
+  private int next;
+  private int count;
+  private volatile boolean started;
+
+  /**
+   * Create a collection of statistics.
+   *
+   * @param context the context of the statistics
+   * @param sampleIntervalMillis interval between two samples, in milliseconds
+   * @param batchSize number of samples published together
+   */
+  public StatisticsCollection(Context context, long sampleIntervalMillis, int batchSize) {
+    if (sampleIntervalMillis <= 0) {
+      throw new IllegalArgumentException("Invalid sample interval " + sampleIntervalMillis + " specified.");
+    }
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Invalid batch size " + batchSize + " specified.");
+    }
+    this.context = context;
+    this.sampleIntervalMillis = sampleIntervalMillis;
+    this.timestamps = new long[batchSize];
+    this.statistics = new ArrayList<>();
+    this.next = 0;
+    this.count = 0;
+    this.started = false;
+  }
+
+  /**
+   * Add an integral statistic, such as a counter or a size.
+   *
+   * @param name name of the statistic
+   * @param unit unit of the statistic
+   * @param source supplies the current value of the statistic
+   * @return this collection
+   */
+  public StatisticsCollection addLongStatistic(String name, String unit, LongSupplier source) {
+    ensureNotStarted();
+    statistics.add(new LongStatistic(name, unit, source, timestamps.length));
+    return this;
+  }
+
+  /**
+   * Add a floating point statistic, such as a ratio or an average.
+   *
+   * @param name name of the statistic
+   * @param unit unit of the statistic
+   * @param source supplies the current value of the statistic
+   * @return this collection
+   */
+  public StatisticsCollection addDoubleStatistic(String name, String unit, DoubleSupplier source) {
+    ensureNotStarted();
+    statistics.add(new DoubleStatistic(name, unit, source, timestamps.length));
+    return this;
+  }
+
+  public Context getContext() {
+    return context;
+  }
+
+  public long getSampleIntervalMillis() {
+    return sampleIntervalMillis;
+  }
+
+  public int getBatchSize() {
+    return timestamps.length;
+  }
+
+  void markStarted() {
+    ensureNotStarted();
+    started = true;
+  }
+
+  /**
+   * Take a sample of all statistics.
+   *
+   * @param now the time of the sample
+   * @return true if the batch is full and must be published
+   */
+  boolean sample(long now) {
+    int slot = next;
+    timestamps[slot] = now;
+    for (SampledStatistic statistic : statistics) {
+      statistic.sample(slot);
+    }
+    next = (slot + 1 == timestamps.length) ? 0 : slot + 1;
+    if (count < timestamps.length) {
+      count++;
+    }
+    return count == timestamps.length;
+  }
+
+  /**
+   * Remove the samples taken since the last call.
+   *
+   * @return the samples of all statistics as a single message, null if there are no samples
+   */
+  ContextualStatistics drain() {
+    if (count == 0 || statistics.isEmpty()) {
+      return null;
+    }
+    int first = (next - count + timestamps.length) % timestamps.length;
+    long[] batchTimestamps = new long[count];
+    copyRing(timestamps, timestamps.length, first, batchTimestamps, count);
+    Map<String, Statistic<?, ?>> batch = new LinkedHashMap<>();
+    for (SampledStatistic statistic : statistics) {
+      batch.put(statistic.name, new SampleSeriesStatistic(statistic.name, statistic.series(batchTimestamps, first),
+          statistic.unit));
+    }
+    count = 0;
+    return new ContextualStatistics(context, batch);
+  }
+
+  /**
+   * Copy {@code count} items of a primitive ring array, starting at {@code first}, in order.
+   */
+  private static void copyRing(Object ring, int ringLength, int first, Object target, int count) {
+    int tail = Math.min(count, ringLength - first);
+    System.arraycopy(ring, first, target, 0, tail);
+    System.arraycopy(ring, 0, target, tail, count - tail);
+  }
+
+  private void ensureNotStarted() {
+    if (started) {
+      throw new IllegalStateException("Statistics collection for " + context + " is already started");
+    }
+  }
+
+  private static abstract class SampledStatistic {
+    private final String name;
+    private final String unit;
+
+    private SampledStatistic(String name, String unit) {
+      this.name = name;
+      this.unit = unit;
+    }
+
+    abstract void sample(int slot);
+
+    abstract SampleSeries series(long[] timestamps, int first);
+  }
+
+  private static final class LongStatistic extends SampledStatistic {
+    private final LongSupplier source;
+    private final long[] values;
+
+    private LongStatistic(String name, String unit, LongSupplier source, int batchSize) {
+      super(name, unit);
+      this.source = source;
+      this.values = new long[batchSize];
+    }
+
+    @Override
+    void sample(int slot) {
+      values[slot] = source.getAsLong();
+    }
+
+    @Override
+    SampleSeries series(long[] timestamps, int first) {
+      long[] series = new long[timestamps.length];
+      copyRing(values, values.length, first, series, series.length);
+      return SampleSeries.ofLongs(timestamps, series);
+    }
+  }
+
+  private static final class DoubleStatistic extends SampledStatistic {
+    private final DoubleSupplier source;
+    private final double[] values;
+
+    private DoubleStatistic(String name, String unit, DoubleSupplier source, int batchSize) {
+      super(name, unit);
+      this.source = source;
+      this.values = new double[batchSize];
+    }
+
+    @Override
+    void sample(int slot) {
+      values[slot] = source.getAsDouble();
+    }
+
+    @Override
+    SampleSeries series(long[] timestamps, int first) {
+      double[] series = new double[timestamps.length];
+      copyRing(values, values.length, first, series, series.length);
+      return SampleSeries.ofDoubles(timestamps, series);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.statistics;
+
+import org.terracotta.management.stats.ContextualStatistics;
+import org.terracotta.voltron.management.producer.MessageProducer;
+
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples {@link StatisticsCollection}s of all managed entities on a single shared thread and
+ * pushes the batches of samples into the management message pipeline.
+ * <p>
+ * Each started collection is sampled at its own interval. Sampling a collection does not allocate;
+ * only publishing a full batch does.
+ *
+ * @author RKAV
+ */
+public class StatisticsSampler implements Closeable {
+  private final MessageProducer<ContextualStatistics> producer;
+  private final ScheduledExecutorService samplerThread;
+  private final ConcurrentMap<StatisticsCollection, ScheduledFuture<?>> collections;
+
+  /**
+   * Create a sampler.
+   *
+   * @param producer the producer of the statistics messages
+   */
+  public StatisticsSampler(MessageProducer<ContextualStatistics> producer) {
+    this.producer = producer;
+    this.samplerThread = Executors.newSingleThreadScheduledExecutor((r) -> {
+      Thread t = new Thread(r, "management-statistics-sampler");
+      t.setDaemon(true);
+      return t;
+    });
+    this.collections = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Start sampling a collection at its sample interval.
+   *
+   * @param collection the collection to sample
+   */
+  public void start(StatisticsCollection collection) {
+    collection.markStarted();
+    long interval = collection.getSampleIntervalMillis();
+    collections.put(collection, samplerThread.scheduleAtFixedRate(() -> {
+      if (collection.sample(System.currentTimeMillis())) {
+        publish(collection);
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * Stop sampling a collection. Samples that are not published yet are published.
+   *
+   * @param collection the collection to stop
+   */
+  public void stop(StatisticsCollection collection) {
+    ScheduledFuture<?> future = collections.remove(collection);
+    if (future != null) {
+      future.cancel(false);
+      // publish from the sampler thread, which owns the samples
+      samplerThread.execute(() -> publish(collection));
+    }
+  }
+
+  /**
+   * Stop sampling all collections and release the sampler thread.
+   */
+  @Override
+  public void close() {
+    for (StatisticsCollection collection : collections.keySet()) {
+      stop(collection);
+    }
+    samplerThread.shutdown();
+  }
+
+  private void publish(StatisticsCollection collection) {
+    ContextualStatistics batch = collection.drain();
+    if (batch != null) {
+      producer.pushManagementMessage(batch);
+    }
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size block of compressed samples of a single statistic, in increasing time order.
+ * <p>
+ * Timestamps are stored as the difference between consecutive deltas (delta of delta), which is 0 for samples
+ * taken at a fixed interval and then takes a single bit. Values are stored as the XOR of their bits with the
+ * bits of the previous value, which only has a few meaningful bits for slowly changing values. Only the
+ * meaningful bits are stored, with their position unless it is the same as for the previous value. Floating
+ * point values are stored as their {@code double} bits and integral values as they are.
+ * <p>
+ * Samples are appended until the block is full, after which the block is sealed and trimmed to the bits used.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author RKAV
+ */
+final class CompressedBlock {
+  // worst case: 4 bits of header and a raw delta of delta, 14 bits of header and 64 meaningful bits of value
+  private static final int MAX_SAMPLE_BITS = 4 + 64 + 14 + 64;
+
+  /**
+   * Receives the samples read from a block.
+   */
+  interface SampleVisitor {
+    void visit(long timestamp, long valueBits);
+  }
+
+  private long[] words;
+  private final int capacityBits;
+  private int bitPosition;
+  private int count;
+  private boolean sealed;
+  private long firstTimestamp;
+  private long lastTimestamp;
+  private long lastDelta;
+  private long lastValueBits;
+  private int lastLeadingZeros;
+  private int lastTrailingZeros;
+
+  /**
+   * Create an empty block.
+   *
+   * @param sizeInBytes size of the block, a multiple of 8 large enough to hold at least two samples
+   */
+  CompressedBlock(int sizeInBytes) {
+    if (sizeInBytes < 2 * MAX_SAMPLE_BITS / 8 || sizeInBytes % 8 != 0) {
+      throw new IllegalArgumentException("Invalid block size " + sizeInBytes + " specified.");
+    }
+    this.words = new long[sizeInBytes / 8];
+    this.capacityBits = sizeInBytes * 8;
+  }
+
+  /**
+   * Append a sample.
+   *
+   * @param timestamp time of the sample, not before the time of the last sample
+   * @param valueBits value of the sample
+   * @return false if the block is full, in which case it is sealed
+   */
+  boolean append(long timestamp, long valueBits) {
+    if (sealed) {
+      return false;
+    }
+    if (capacityBits - bitPosition < MAX_SAMPLE_BITS) {
+      seal();
+      return false;
+    }
+    if (count == 0) {
+      writeBits(timestamp, 64);
+      writeBits(valueBits, 64);
+      firstTimestamp = timestamp;
+      lastLeadingZeros = Integer.MAX_VALUE;
+    } else {
+      long delta = timestamp - lastTimestamp;
+      writeDeltaOfDelta(delta - lastDelta);
+      lastDelta = delta;
+      writeValue(valueBits ^ lastValueBits);
+    }
+    lastTimestamp = timestamp;
+    lastValueBits = valueBits;
+    count++;
+    return true;
+  }
+
+  private void writeDeltaOfDelta(long deltaOfDelta) {
+    if (deltaOfDelta == 0) {
+      writeBits(0, 1);
+    } else if (deltaOfDelta >= -64 && deltaOfDelta < 64) {
+      writeBits(0b10, 2);
+      writeBits(deltaOfDelta, 7);
+    } else if (deltaOfDelta >= -256 && deltaOfDelta < 256) {
+      writeBits(0b110, 3);
+      writeBits(deltaOfDelta, 9);
+    } else if (deltaOfDelta >= -2048 && deltaOfDelta < 2048) {
+      writeBits(0b1110, 4);
+      writeBits(deltaOfDelta, 12);
+    } else {
+      writeBits(0b1111, 4);
+      writeBits(deltaOfDelta, 64);
+    }
+  }
+
+  private void writeValue(long xor) {
+    if (xor == 0) {
+      writeBits(0, 1);
+      return;
+    }
+    int leadingZeros = Long.numberOfLeadingZeros(xor);
+    int trailingZeros = Long.numberOfTrailingZeros(xor);
+    if (leadingZeros >= lastLeadingZeros && trailingZeros >= lastTrailingZeros) {
+      // the meaningful bits fit into the position of the previous value
+      writeBits(0b10, 2);
+      writeBits(xor >>> lastTrailingZeros, 64 - lastLeadingZeros - lastTrailingZeros);
+    } else {
+      int meaningfulBits = 64 - leadingZeros - trailingZeros;
+      writeBits(0b11, 2);
+      writeBits(leadingZeros, 6);
+      writeBits(meaningfulBits - 1, 6);
+      writeBits(xor >>> trailingZeros, meaningfulBits);
+      lastLeadingZeros = leadingZeros;
+      lastTrailingZeros = trailingZeros;
+    }
+  }
+
+  private void writeBits(long value, int bits) {
+    int word = bitPosition >>> 6;
+    int free = 64 - (bitPosition & 63);
+    long masked = (bits == 64) ? value : value & ((1L << bits) - 1);
+    if (bits <= free) {
+      words[word] |= masked << (free - bits);
+    } else {
+      words[word] |= masked >>> (bits - free);
+      words[word + 1] |= masked << (64 - bits + free);
+    }
+    bitPosition += bits;
+  }
+
+  /**
+   * Stop appending to this block and release the unused part of the block.
+   */
+  void seal() {
+    if (!sealed) {
+      sealed = true;
+      words = Arrays.copyOf(words, (bitPosition + 63) >>> 6);
+    }
+  }
+
+  boolean isSealed() {
+    return sealed;
+  }
+
+  int size() {
+    return count;
+  }
+
+  /**
+   * @return number of bytes held by this block
+   */
+  int sizeInBytes() {
+    return words.length * 8;
+  }
+
+  long getFirstTimestamp() {
+    return firstTimestamp;
+  }
+
+  long getLastTimestamp() {
+    return lastTimestamp;
+  }
+
+  /**
+   * Read the samples of the given time range, in time order.
+   *
+   * @param from start of the time range, inclusive
+   * @param to end of the time range, inclusive
+   * @param visitor receives the samples
+   */
+  void read(long from, long to, SampleVisitor visitor) {
+    if (count == 0 || from > lastTimestamp || to < firstTimestamp) {
+      return;
+    }
+    new Reader().read(from, to, visitor);
+  }
+
+  /**
+   * Decodes the samples, reversing the encoding done by {@link #append(long, long)}.
+   */
+  private final class Reader {
+    private int position;
+    private long timestamp;
+    private long delta;
+    private long valueBits;
+    private int leadingZeros;
+    private int trailingZeros;
+
+    private void read(long from, long to, SampleVisitor visitor) {
+      timestamp = readBits(64);
+      valueBits = readBits(64);
+      for (int i = 0; i < count && timestamp <= to; i++) {
+        if (i > 0) {
+          delta += readDeltaOfDelta();
+          timestamp += delta;
+          valueBits ^= readXor();
+          if (timestamp > to) {
+            break;
+          }
+        }
+        if (timestamp >= from) {
+          visitor.visit(timestamp, valueBits);
+        }
+      }
+    }
+
+    private long readDeltaOfDelta() {
+      if (readBits(1) == 0) {
+        return 0;
+      } else if (readBits(1) == 0) {
+        return readSigned(7);
+      } else if (readBits(1) == 0) {
+        return readSigned(9);
+      } else if (readBits(1) == 0) {
+        return readSigned(12);
+      }
+      return readBits(64);
+    }
+
+    private long readXor() {
+      if (readBits(1) == 0) {
+        return 0;
+      }
+      if (readBits(1) == 1) {
+        leadingZeros = (int)readBits(6);
+        int meaningfulBits = (int)readBits(6) + 1;
+        trailingZeros = 64 - leadingZeros - meaningfulBits;
+      }
+      return readBits(64 - leadingZeros - trailingZeros) << trailingZeros;
+    }
+
+    private long readSigned(int bits) {
+      return (readBits(bits) << (64 - bits)) >> (64 - bits);
+    }
+
+    private long readBits(int bits) {
+      int word = position >>> 6;
+      int free = 64 - (position & 63);
+      long value;
+      if (bits <= free) {
+        value = words[word] >>> (free - bits);
+      } else {
+        int rest = bits - free;
+        value = (words[word] << rest) | (words[word + 1] >>> (64 - rest));
+      }
+      position += bits;
+      return (bits == 64) ? value : value & ((1L << bits) - 1);
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.timeseries;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long the samples of a statistic are retained by a {@link TimeSeriesStore}, at which resolution.
+ * <p>
+ * A tier with a resolution of 0 retains the samples as they were taken. Other tiers retain a single sample per
+ * interval of their resolution, downsampled from the samples taken within the interval: the mean of floating
+ * point samples and the last of integral samples (e.g. counters).
+ *
+ * @author RKAV
+ */
+public final class RetentionTier {
+  private final long resolutionMillis;
+  private final long retentionMillis;
+
+  /**
+   * Create a retention tier.
+   *
+   * @param resolution interval of the retained samples, 0 to retain samples as taken
+   * @param retention how long samples are retained
+   * @param unit unit of {@code resolution} and {@code retention}
+   */
+  public RetentionTier(long resolution, long retention, TimeUnit unit) {
+    if (resolution < 0 || retention <= resolution) {
+      throw new IllegalArgumentException("Invalid retention tier " + resolution + "/" + retention + " specified.");
+    }
+    this.resolutionMillis = unit.toMillis(resolution);
+    this.retentionMillis = unit.toMillis(retention);
+  }
+
+  public long getResolutionMillis() {
+    return resolutionMillis;
+  }
+
+  public long getRetentionMillis() {
+    return retentionMillis;
+  }
+
+  @Override
+  public String toString() {
+    return "RetentionTier{resolution=" + resolutionMillis + "ms, retention=" + retentionMillis + "ms}";
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.timeseries;
+
+import org.terracotta.management.service.statistics.SampleSeries;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The retained samples of a single statistic of a single context, in one sequence of {@link CompressedBlock}s
+ * per {@link RetentionTier}.
+ * <p>
+ * Samples are either floating point or integral, as decided by the first sample. Samples older than the last
+ * sample of a tier are ignored by that tier.
+ * <p>
+ * Blocks are allocated through a {@link BlockAllocator} shared by all series, which may drop the blocks of
+ * any series (including this one) to make room. Blocks past their retention are dropped by
+ * {@link #expire(long)}, as well as whenever a tier allocates a new block.
+ *
+ * @author RKAV
+ */
+final class TimeSeries {
+  /**
+   * Accounts for the blocks of all series.
+   */
+  interface BlockAllocator {
+    /**
+     * Reserve the bytes of a new block, dropping blocks of any series if needed.
+     *
+     * @param tier the tier the block is allocated for
+     * @param bytes size of the block
+     * @return false if no block can be allocated
+     */
+    boolean allocate(int tier, int bytes);
+
+    /**
+     * @param bytes bytes no longer held by a block
+     */
+    void free(int bytes);
+  }
+
+  private final boolean floatingPoint;
+  private final Tier[] tiers;
+  private final int blockSize;
+  private final BlockAllocator allocator;
+  // timestamp of the latest sample added
+  private long lastTimestamp;
+
+  /**
+   * Create a time series.
+   *
+   * @param floatingPoint true for floating point samples, false for integral samples
+   * @param retentionTiers the retention tiers, in the order of resolution
+   * @param blockSize size of each block in bytes
+   * @param allocator the allocator of the blocks of all series
+   */
+  TimeSeries(boolean floatingPoint, List<RetentionTier> retentionTiers, int blockSize, BlockAllocator allocator) {
+    this.floatingPoint = floatingPoint;
+    this.tiers = new Tier[retentionTiers.size()];
+    for (int i = 0; i < tiers.length; i++) {
+      tiers[i] = new Tier(i, retentionTiers.get(i));
+    }
+    this.blockSize = blockSize;
+    this.allocator = allocator;
+    this.lastTimestamp = Long.MIN_VALUE;
+  }
+
+  boolean isFloatingPoint() {
+    return floatingPoint;
+  }
+
+  synchronized void add(long timestamp, double value) {
+    append(timestamp, floatingPoint ? Double.doubleToRawLongBits(value) : (long)value);
+  }
+
+  synchronized void add(long timestamp, long value) {
+    append(timestamp, floatingPoint ? Double.doubleToRawLongBits(value) : value);
+  }
+
+  private void append(long timestamp, long valueBits) {
+    lastTimestamp = Math.max(lastTimestamp, timestamp);
+    for (Tier tier : tiers) {
+      tier.add(timestamp, valueBits);
+    }
+  }
+
+  /**
+   * Drop the blocks of all tiers that are past their retention.
+   *
+   * @param now the current time
+   * @return true if nothing is retained and no sample was added within the retention of the finest tier, so
+   *         that the series can be removed
+   */
+  synchronized boolean expire(long now) {
+    boolean empty = true;
+    for (Tier tier : tiers) {
+      tier.expire(now);
+      empty &= tier.blocks.isEmpty();
+    }
+    return empty && now - lastTimestamp > tiers[0].retentionMillis;
+  }
+
+  /**
+   * @param tier the tier
+   * @return the last timestamp of the oldest block of the tier, {@code Long.MAX_VALUE} if none
+   */
+  synchronized long oldestBlockEnd(int tier) {
+    CompressedBlock oldest = tiers[tier].blocks.peekFirst();
+    return (oldest == null) ? Long.MAX_VALUE : oldest.getLastTimestamp();
+  }
+
+  /**
+   * Drop the oldest block of the tier.
+   *
+   * @param tier the tier
+   * @return false if the tier holds no block
+   */
+  synchronized boolean dropOldest(int tier) {
+    if (tiers[tier].blocks.isEmpty()) {
+      return false;
+    }
+    tiers[tier].drop();
+    return true;
+  }
+
+  /**
+   * Read the samples of the given time range. Each part of the range is read from the tier of the finest
+   * resolution still retaining it.
+   *
+   * @param from start of the time range, inclusive
+   * @param to end of the time range, inclusive
+   * @return the samples, in time order
+   */
+  synchronized SampleSeries read(long from, long to) {
+    Samples samples = new Samples();
+    for (int i = tiers.length - 1; i >= 0; i--) {
+      long coveredFrom = Long.MAX_VALUE;
+      for (int j = 0; j < i; j++) {
+        coveredFrom = Math.min(coveredFrom, tiers[j].oldestTimestamp());
+      }
+      // a downsampled sample is timestamped at the start of its interval, skip it unless the whole interval is
+      // before the range covered by finer tiers
+      long upTo = (coveredFrom == Long.MAX_VALUE) ? to
+          : Math.min(to, coveredFrom - Math.max(1, tiers[i].resolutionMillis));
+      for (CompressedBlock block : tiers[i].blocks) {
+        block.read(from, upTo, samples::add);
+      }
+    }
+    return samples.toSeries();
+  }
+
+  /**
+   * The samples retained at the resolution of a single {@link RetentionTier}.
+   */
+  private final class Tier {
+    private final int index;
+    private final long resolutionMillis;
+    private final long retentionMillis;
+    // oldest first, samples are appended to the last block
+    private final ArrayDeque<CompressedBlock> blocks;
+    // samples of the interval being downsampled
+    private long intervalStart;
+    private int intervalSamples;
+    private double intervalSum;
+    private long intervalLast;
+
+    private Tier(int index, RetentionTier retentionTier) {
+      this.index = index;
+      this.resolutionMillis = retentionTier.getResolutionMillis();
+      this.retentionMillis = retentionTier.getRetentionMillis();
+      this.blocks = new ArrayDeque<>();
+    }
+
+    private long oldestTimestamp() {
+      CompressedBlock oldest = blocks.peekFirst();
+      return (oldest == null) ? Long.MAX_VALUE : oldest.getFirstTimestamp();
+    }
+
+    private void add(long timestamp, long valueBits) {
+      if (resolutionMillis == 0) {
+        store(timestamp, valueBits);
+        return;
+      }
+      long start = timestamp - Math.floorMod(timestamp, resolutionMillis);
+      if (start != intervalStart && intervalSamples > 0) {
+        if (start < intervalStart) {
+          // older than the interval being downsampled
+          return;
+        }
+        store(intervalStart, floatingPoint ? Double.doubleToRawLongBits(intervalSum / intervalSamples) : intervalLast);
+        intervalSamples = 0;
+        intervalSum = 0;
+      }
+      intervalStart = start;
+      intervalSamples++;
+      intervalSum += floatingPoint ? Double.longBitsToDouble(valueBits) : 0;
+      intervalLast = valueBits;
+    }
+
+    private void store(long timestamp, long valueBits) {
+      CompressedBlock block = blocks.peekLast();
+      if (block != null) {
+        if (timestamp < block.getLastTimestamp()) {
+          return;
+        }
+        int size = block.sizeInBytes();
+        if (block.append(timestamp, valueBits)) {
+          return;
+        }
+        // trimmed once sealed
+        allocator.free(size - block.sizeInBytes());
+      }
+      expire(timestamp);
+      if (!allocator.allocate(index, blockSize)) {
+        // no room, even after dropping the oldest blocks
+        return;
+      }
+      block = new CompressedBlock(blockSize);
+      block.append(timestamp, valueBits);
+      blocks.addLast(block);
+    }
+
+    /**
+     * Drop the blocks that are past their retention.
+     */
+    private void expire(long now) {
+      CompressedBlock oldest = blocks.peekFirst();
+      while (oldest != null && now - oldest.getLastTimestamp() > retentionMillis) {
+        drop();
+        oldest = blocks.peekFirst();
+      }
+    }
+
+    private void drop() {
+      allocator.free(blocks.removeFirst().sizeInBytes());
+    }
+  }
+
+  /**
+   * The samples read from the tiers, as primitive arrays.
+   */
+  private final class Samples {
+    private long[] timestamps = new long[16];
+    private long[] values = new long[16];
+    private int size;
+
+    private void add(long timestamp, long valueBits) {
+      if (size == timestamps.length) {
+        timestamps = Arrays.copyOf(timestamps, size << 1);
+        values = Arrays.copyOf(values, size << 1);
+      }
+      timestamps[size] = timestamp;
+      values[size++] = valueBits;
+    }
+
+    private SampleSeries toSeries() {
+      long[] seriesTimestamps = Arrays.copyOf(timestamps, size);
+      if (!floatingPoint) {
+        return SampleSeries.ofLongs(seriesTimestamps, Arrays.copyOf(values, size));
+      }
+      double[] doubles = new double[size];
+      for (int i = 0; i < size; i++) {
+        doubles[i] = Double.longBitsToDouble(values[i]);
+      }
+      return SampleSeries.ofDoubles(seriesTimestamps, doubles);
+    }
+  }
+}
@@ -0,0 +1,304 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.timeseries;
+
+import org.terracotta.management.context.Context;
+import org.terracotta.management.service.statistics.SampleSeries;
+import org.terracotta.management.stats.ContextualStatistics;
+import org.terracotta.management.stats.Statistic;
+import org.terracotta.voltron.management.consumer.MessageConsumer;
+import org.terracotta.voltron.management.consumer.MessageConsumerListener;
+import org.terracotta.voltron.management.consumer.MessageListener;
+import org.terracotta.voltron.management.consumer.MessageSubscription;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Retains the history of the statistics of all contexts in memory, so that management clients can query it
+ * instead of keeping the samples themselves.
+ * <p>
+ * The store subscribes to the {@link ContextualStatistics} messages once registered as a
+ * {@link MessageConsumerListener} for them. Each statistic of each context is kept as a series of compressed
+ * blocks per {@link RetentionTier}, finest resolution first. At the default settings, a statistic sampled every
+ * second takes about 10KB for its whole history.
+ * <p>
+ * Numeric statistics are retained, along with the samples of {@link SampleSeries} statistics. Numeric statistics
+ * are timestamped when received.
+ * <p>
+ * The blocks of all series are bounded by a maximum memory. Once reached, the oldest block of the same tier across
+ * all series is dropped before a new block is allocated, so that the series of contexts that stopped reporting go
+ * first. Retention is relative to the latest sample received. Blocks past their retention are dropped, and series
+ * without anything retained removed, at most every minute as statistics are received or queried. The blocks of a
+ * queried series are expired before it is read.
+ *
+ * @author RKAV
+ */
+public class TimeSeriesStore implements MessageListener<ContextualStatistics>,
+    MessageConsumerListener<ContextualStatistics>, Closeable {
+  public static final int DEFAULT_BLOCK_SIZE = 1 << 10;
+  public static final long DEFAULT_MAX_MEMORY = 64L << 20;
+  public static final List<RetentionTier> DEFAULT_RETENTION_TIERS = Collections.unmodifiableList(Arrays.asList(
+      new RetentionTier(0, 1, HOURS),
+      new RetentionTier(1, DAYS.toMinutes(1), MINUTES),
+      new RetentionTier(15, DAYS.toMinutes(7), MINUTES)));
+
+  // interval between the expiries of all series
+  private static final long EXPIRY_INTERVAL_MILLIS = MINUTES.toMillis(1);
+
+  private final List<RetentionTier> retentionTiers;
+  private final int blockSize;
+  private final long maxMemory;
+  private final AtomicLong usedMemory;
+  private final ConcurrentMap<SeriesKey, TimeSeries> series;
+  private final TimeSeries.BlockAllocator allocator;
+  // timestamp of the latest sample received, only written with the lock of the store held
+  private volatile long latestTimestamp;
+  private volatile long nextExpiry;
+  private volatile MessageSubscription<ContextualStatistics> subscription;
+
+  public TimeSeriesStore() {
+    this(DEFAULT_RETENTION_TIERS, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_MEMORY);
+  }
+
+  /**
+   * Create a store.
+   *
+   * @param retentionTiers the retention tiers, in increasing order of resolution interval
+   * @param blockSize size of each block of compressed samples, in bytes
+   * @param maxMemory bytes held by all blocks, before the oldest blocks are dropped
+   */
+  public TimeSeriesStore(List<RetentionTier> retentionTiers, int blockSize, long maxMemory) {
+    if (retentionTiers.isEmpty()) {
+      throw new IllegalArgumentException("At least one retention tier must be specified.");
+    }
+    for (int i = 1; i < retentionTiers.size(); i++) {
+      if (retentionTiers.get(i).getResolutionMillis() <= retentionTiers.get(i - 1).getResolutionMillis()) {
+        throw new IllegalArgumentException("Retention tiers must be in increasing order of resolution interval.");
+      }
+    }
+    // fail early on an invalid block size
+    new CompressedBlock(blockSize);
+    this.retentionTiers = new ArrayList<>(retentionTiers);
+    this.blockSize = blockSize;
+    this.maxMemory = maxMemory;
+    this.usedMemory = new AtomicLong();
+    this.series = new ConcurrentHashMap<>();
+    this.allocator = new TimeSeries.BlockAllocator() {
+      @Override
+      public boolean allocate(int tier, int bytes) {
+        return allocateBlock(tier, bytes);
+      }
+
+      @Override
+      public void free(int bytes) {
+        usedMemory.addAndGet(-bytes);
+      }
+    };
+    this.latestTimestamp = Long.MIN_VALUE;
+    this.nextExpiry = 0L;
+  }
+
+  @Override
+  public void onCreate(MessageConsumer<ContextualStatistics> messageConsumer) {
+    subscription = messageConsumer.subscribe(this);
+  }
+
+  /**
+   * Add the statistics of the given messages. Blocks are only allocated by the thread holding the lock of the
+   * store, which locks other series than the one added to only to make room for a new block.
+   */
+  @Override
+  public synchronized void postMessages(Collection<ContextualStatistics> bufferedMessages) {
+    long now = System.currentTimeMillis();
+    for (ContextualStatistics message : bufferedMessages) {
+      for (Map.Entry<String, Statistic<?, ?>> entry : message.getStatistics().entrySet()) {
+        add(message.getContext(), entry.getKey(), entry.getValue().getValue(), now);
+      }
+    }
+    expireIfDue(now);
+  }
+
+  private void add(Context context, String name, Object value, long now) {
+    if (value instanceof SampleSeries) {
+      SampleSeries samples = (SampleSeries)value;
+      if (samples.size() == 0) {
+        return;
+      }
+      TimeSeries timeSeries = getOrCreate(context, name, samples.isFloatingPoint());
+      latestTimestamp = Math.max(latestTimestamp, samples.getTimestamp(samples.size() - 1));
+      for (int i = 0; i < samples.size(); i++) {
+        if (samples.isFloatingPoint()) {
+          timeSeries.add(samples.getTimestamp(i), samples.getDoubleValue(i));
+        } else {
+          timeSeries.add(samples.getTimestamp(i), samples.getLongValue(i));
+        }
+      }
+    } else if (value instanceof Double || value instanceof Float) {
+      latestTimestamp = Math.max(latestTimestamp, now);
+      getOrCreate(context, name, true).add(now, ((Number)value).doubleValue());
+    } else if (value instanceof Number) {
+      latestTimestamp = Math.max(latestTimestamp, now);
+      getOrCreate(context, name, false).add(now, ((Number)value).longValue());
+    }
+  }
+
+  private TimeSeries getOrCreate(Context context, String name, boolean floatingPoint) {
+    return series.computeIfAbsent(new SeriesKey(context, name),
+        (k) -> new TimeSeries(floatingPoint, retentionTiers, blockSize, allocator));
+  }
+
+  /**
+   * Reserve the bytes of a new block, dropping the oldest blocks of the tier across all series as long as
+   * needed, or the oldest blocks of any tier if the tier holds none. Called with the lock of the store held.
+   */
+  private boolean allocateBlock(int tier, int bytes) {
+    while (usedMemory.get() + bytes > maxMemory) {
+      if (!dropOldestBlock(tier)) {
+        boolean dropped = false;
+        for (int i = 0; i < retentionTiers.size() && !dropped; i++) {
+          dropped = (i != tier) && dropOldestBlock(i);
+        }
+        if (!dropped) {
+          return false;
+        }
+      }
+    }
+    usedMemory.addAndGet(bytes);
+    return true;
+  }
+
+  private boolean dropOldestBlock(int tier) {
+    TimeSeries oldest = null;
+    long oldestEnd = Long.MAX_VALUE;
+    for (TimeSeries timeSeries : series.values()) {
+      long end = timeSeries.oldestBlockEnd(tier);
+      if (end < oldestEnd) {
+        oldest = timeSeries;
+        oldestEnd = end;
+      }
+    }
+    return oldest != null && oldest.dropOldest(tier);
+  }
+
+  private void expireIfDue(long now) {
+    if (now < nextExpiry) {
+      return;
+    }
+    synchronized (this) {
+      nextExpiry = now + EXPIRY_INTERVAL_MILLIS;
+      series.values().removeIf((timeSeries) -> timeSeries.expire(latestTimestamp));
+    }
+  }
+
+  /**
+   * Get the retained samples of a statistic of a context.
+   *
+   * @param context the context of the statistic
+   * @param statisticName the name of the statistic
+   * @param from start of the time range, in milliseconds, inclusive
+   * @param to end of the time range, in milliseconds, inclusive
+   * @return the samples in time order, at the finest resolution retained. Empty if none
+   */
+  public SampleSeries query(Context context, String statisticName, long from, long to) {
+    expireIfDue(System.currentTimeMillis());
+    TimeSeries timeSeries = series.get(new SeriesKey(context, statisticName));
+    if (timeSeries == null) {
+      return SampleSeries.ofLongs(new long[0], new long[0]);
+    }
+    // do not return samples past their retention, even if not expired yet
+    timeSeries.expire(latestTimestamp);
+    return timeSeries.read(from, to);
+  }
+
+  /**
+   * Get the retained samples of a statistic of all contexts.
+   *
+   * @param statisticName the name of the statistic
+   * @param from start of the time range, in milliseconds, inclusive
+   * @param to end of the time range, in milliseconds, inclusive
+   * @return the samples of each context having the statistic, in time order
+   */
+  public Map<Context, SampleSeries> query(String statisticName, long from, long to) {
+    expireIfDue(System.currentTimeMillis());
+    Map<Context, SampleSeries> result = new HashMap<>();
+    for (Map.Entry<SeriesKey, TimeSeries> entry : series.entrySet()) {
+      if (entry.getKey().name.equals(statisticName)) {
+        result.put(entry.getKey().context, entry.getValue().read(from, to));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return bytes held by the blocks of all series
+   */
+  public long getMemoryUsage() {
+    return usedMemory.get();
+  }
+
+  /**
+   * Stop receiving statistics. The retained samples can still be queried.
+   */
+  @Override
+  public void close() {
+    MessageSubscription<ContextualStatistics> current = subscription;
+    if (current != null) {
+      current.close();
+    }
+  }
+
+  private static final class SeriesKey {
+    private final Context context;
+    private final String name;
+
+    private SeriesKey(Context context, String name) {
+      this.context = context;
+      this.name = name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof SeriesKey)) {
+        return false;
+      }
+      SeriesKey other = (SeriesKey)o;
+      return context.equals(other.context) && name.equals(other.name);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(context, name);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terracotta.management.service.buffer.PartitionedRingBufferType;
+import org.w3c.dom.Element;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static org.terracotta.management.service.impl.Constants.BUFFER_CACHE_SIZE;
+import static org.terracotta.management.service.impl.Constants.COLLECTION_INTERVAL;
+import static org.terracotta.management.service.impl.Constants.DEFAULT_RING_BUFFER_TYPE;
+
+/**
+ * Test the parsing of the management service configuration.
+ *
+ * @author RKAV
+ */
+public class ManagementServiceProviderConfigParserTest {
+  private static final String NAMESPACE = "http://www.terracotta.org/config/active-management-service";
+
+  @Test
+  public void testDefaultBuffers() throws Exception {
+    ManagementServiceProviderConfiguration config = parse("<management-service xmlns='" + NAMESPACE + "'/>");
+    BufferConfiguration buffer = config.getBufferConfiguration("any.MessageType");
+    Assert.assertSame(config.getBufferConfiguration(), buffer);
+    Assert.assertEquals(DEFAULT_RING_BUFFER_TYPE, buffer.getRingBufferType());
+    Assert.assertEquals(BUFFER_CACHE_SIZE, buffer.getBufferSize());
+    Assert.assertEquals(COLLECTION_INTERVAL, buffer.getCollectionIntervalMillis());
+    Assert.assertNull(config.getOverflowConfiguration());
+  }
+
+  @Test
+  public void testMessageTypeBuffersInheritGlobalBuffer() throws Exception {
+    ManagementServiceProviderConfiguration config = parse("<management-service xmlns='" + NAMESPACE + "'>" +
+        "<buffer message-type='org.example.Alert' size='64' type='off-heap'/>" +
+        "<buffer type='safe' partitions='4' collection-interval='250'/>" +
+        "</management-service>");
+
+    BufferConfiguration global = config.getBufferConfiguration();
+    Assert.assertEquals(PartitionedRingBufferType.SAFE, global.getRingBufferType());
+    Assert.assertEquals(BUFFER_CACHE_SIZE, global.getBufferSize());
+    Assert.assertEquals(4, global.getPartitions());
+    Assert.assertEquals(250L, global.getCollectionIntervalMillis());
+
+    BufferConfiguration alert = config.getBufferConfiguration("org.example.Alert");
+    Assert.assertEquals(PartitionedRingBufferType.OFF_HEAP, alert.getRingBufferType());
+    Assert.assertEquals(64, alert.getBufferSize());
+    Assert.assertEquals(4, alert.getPartitions());
+    Assert.assertEquals(250L, alert.getCollectionIntervalMillis());
+    Assert.assertSame(global, config.getBufferConfiguration("org.example.Other"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBufferSizeMustBePowerOfTwo() throws Exception {
+    parse("<management-service xmlns='" + NAMESPACE + "'><buffer size='100'/></management-service>");
+  }
+
+  private static ManagementServiceProviderConfiguration parse(String xml) throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    Element fragment = factory.newDocumentBuilder()
+        .parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))
+        .getDocumentElement();
+    return new ManagementServiceProviderConfigParser().parse(fragment, "test");
+  }
+}
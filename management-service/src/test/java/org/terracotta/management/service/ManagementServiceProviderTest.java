@@ -0,0 +1,57 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terracotta.entity.ServiceConfiguration;
+import org.terracotta.voltron.management.ManagementService;
+
+/**
+ * Test the life cycle of the management service provider.
+ *
+ * @author RKAV
+ */
+public class ManagementServiceProviderTest {
+  private static final ServiceConfiguration<ManagementService> SERVICE_CONFIGURATION = new ServiceConfiguration<ManagementService>() {
+    @Override
+    public Class<ManagementService> getServiceType() {
+      return ManagementService.class;
+    }
+  };
+
+  @Test(expected = IllegalStateException.class)
+  public void testGetServiceBeforeInitialize() {
+    new ManagementServiceProvider().getService(1L, SERVICE_CONFIGURATION);
+  }
+
+  @Test
+  public void testGetServiceAfterClose() throws Exception {
+    ManagementServiceProvider provider = new ManagementServiceProvider();
+    Assert.assertTrue(provider.initialize(new ManagementServiceProviderConfiguration()));
+    Assert.assertNotNull(provider.getService(1L, SERVICE_CONFIGURATION));
+    provider.close();
+    try {
+      provider.getService(1L, SERVICE_CONFIGURATION);
+      Assert.fail("Service available after close");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.action;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.terracotta.entity.ActiveServerEntity;
+import org.terracotta.entity.EntityMessage;
+import org.terracotta.entity.EntityResponse;
+import org.terracotta.management.call.Parameter;
+import org.terracotta.management.context.Context;
+import org.terracotta.management.service.registry.DefaultRegistryService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test asynchronous execution of management actions.
+ *
+ * @author RKAV
+ */
+public class ActionExecutorTest {
+  private ActionExecutor executor;
+
+  @Before
+  public void setup() {
+    executor = new ActionExecutor(2, 16);
+  }
+
+  @After
+  public void tearDown() {
+    executor.close();
+  }
+
+  @Test
+  public void testInvokeWithParameters() throws Exception {
+    TestCache cache = new TestCache();
+    executor.invoke(cache, TestCache.class, "put", Void.class, new Parameter("key"), new Parameter(42, "int"))
+        .get(10, TimeUnit.SECONDS);
+
+    Assert.assertEquals(Integer.valueOf(42), cache.get("key"));
+    Assert.assertEquals(Integer.valueOf(42),
+        executor.invoke(cache, TestCache.class, "get", Integer.class, new Parameter("key")).get(10, TimeUnit.SECONDS));
+    Assert.assertEquals(Integer.valueOf(1),
+        executor.invoke(cache, TestCache.class, "size", int.class).get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testInvokeAllOnMatchingManagedObjects() throws Exception {
+    DefaultRegistryService registryService = new DefaultRegistryService();
+    List<TestCache> caches = new ArrayList<>();
+    for (String entityName : Arrays.asList("cm1", "cm2")) {
+      for (int i = 0; i < 3; i++) {
+        TestCache cache = new TestCache();
+        cache.put("key", i);
+        caches.add(cache);
+        registryService.createOrLookupManagedEntityRegistry(CacheEntity.class, entityName)
+            .createOrLookupManagedObjectRegistry(TestCache.class).register(cache);
+      }
+    }
+
+    Collection<TestCache> cm1Caches = registryService.getManagedObjects(TestCache.class,
+        Context.create(DefaultRegistryService.ENTITY_NAME_CONTEXT_KEY, "cm1"));
+    Assert.assertEquals(3, cm1Caches.size());
+    for (CompletableFuture<Void> result : executor.invokeAll(cm1Caches, TestCache.class, "clear", Void.class)) {
+      result.get(10, TimeUnit.SECONDS);
+    }
+    int cleared = 0;
+    for (TestCache cache : caches) {
+      cleared += (cache.size() == 0) ? 1 : 0;
+    }
+    Assert.assertEquals(3, cleared);
+
+    // clear all caches of the server
+    Collection<TestCache> allCaches = registryService.getManagedObjects(TestCache.class, Context.empty());
+    Assert.assertEquals(6, allCaches.size());
+    for (CompletableFuture<Void> result : executor.invokeAll(allCaches, TestCache.class, "clear", Void.class)) {
+      result.get(10, TimeUnit.SECONDS);
+    }
+    for (TestCache cache : caches) {
+      Assert.assertEquals(0, cache.size());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownAction() {
+    executor.invoke(new TestCache(), TestCache.class, "unknown", Void.class);
+  }
+
+  @Test
+  public void testFailedAction() throws Exception {
+    CompletableFuture<Void> result = executor.invoke(new TestCache(), TestCache.class, "fail", Void.class);
+    try {
+      result.get(10, TimeUnit.SECONDS);
+      Assert.fail("Action did not fail");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void testActionsBeyondQueueAreRejected() throws Exception {
+    executor.close();
+    executor = new ActionExecutor(1, 1);
+    TestCache cache = new TestCache();
+    List<CompletableFuture<Void>> results = executor.invokeAll(Arrays.asList(cache, cache, cache), TestCache.class,
+        "await", Void.class);
+    try {
+      results.get(2).get(10, TimeUnit.SECONDS);
+      Assert.fail("Action was not rejected");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+    } finally {
+      cache.latch.countDown();
+    }
+    results.get(0).get(10, TimeUnit.SECONDS);
+    results.get(1).get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testQueuedActionsCancelledOnClose() throws Exception {
+    executor.close();
+    executor = new ActionExecutor(1, 4);
+    TestCache cache = new TestCache();
+    List<CompletableFuture<Void>> results = executor.invokeAll(Arrays.asList(cache, cache, cache), TestCache.class,
+        "await", Void.class);
+    Assert.assertTrue(cache.started.await(10, TimeUnit.SECONDS));
+    executor.close();
+    // the running action is interrupted
+    try {
+      results.get(0).get(10, TimeUnit.SECONDS);
+      Assert.fail("Action was not interrupted");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof InterruptedException);
+    }
+    Assert.assertTrue(results.get(1).isCancelled());
+    Assert.assertTrue(results.get(2).isCancelled());
+  }
+
+  private interface CacheEntity extends ActiveServerEntity<EntityMessage, EntityResponse> {
+  }
+
+  public static final class TestCache {
+    private final Map<String, Integer> entries = new ConcurrentHashMap<>();
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    public void put(String key, int value) {
+      entries.put(key, value);
+    }
+
+    public Integer get(String key) {
+      return entries.get(key);
+    }
+
+    public int size() {
+      return entries.size();
+    }
+
+    public void clear() {
+      entries.clear();
+    }
+
+    public void fail() {
+      throw new IllegalStateException("failed");
+    }
+
+    public void await() throws InterruptedException {
+      started.countDown();
+      latch.await(10, TimeUnit.SECONDS);
+    }
+  }
+}
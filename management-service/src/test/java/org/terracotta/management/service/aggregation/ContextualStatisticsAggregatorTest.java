@@ -0,0 +1,132 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.aggregation;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terracotta.management.context.Context;
+import org.terracotta.management.stats.ContextualStatistics;
+import org.terracotta.management.stats.MemoryUnit;
+import org.terracotta.management.stats.Statistic;
+import org.terracotta.management.stats.primitive.Size;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test the roll up of contextual statistics.
+ *
+ * @author RKAV
+ */
+public class ContextualStatisticsAggregatorTest {
+  private static final Context CONTEXT1 = Context.create("cacheManagerName", "cm1");
+  private static final Context CONTEXT2 = Context.create("cacheManagerName", "cm2");
+
+  @Test
+  public void testSummaryPerContextAndName() {
+    ContextualStatisticsAggregator aggregatorUnderTest = new ContextualStatisticsAggregator(1000L);
+    for (long i = 1; i <= 100; i++) {
+      aggregatorUnderTest.accept(createStatistics(CONTEXT1, i));
+      aggregatorUnderTest.accept(createStatistics(CONTEXT2, 1000 + i));
+    }
+    List<ContextualStatistics> summaries = new ArrayList<>();
+    aggregatorUnderTest.flush(summaries::add);
+
+    Assert.assertEquals(2, summaries.size());
+    Assert.assertEquals(CONTEXT1, summaries.get(0).getContext());
+    SampleSummary summary = getSummary(summaries.get(0));
+    Assert.assertEquals(100L, summary.getCount());
+    Assert.assertEquals(1.0, summary.getMin(), 0.0);
+    Assert.assertEquals(100.0, summary.getMax(), 0.0);
+    Assert.assertEquals(50.5, summary.getMean(), 0.0);
+    Assert.assertEquals(50.0, summary.getMedian(), 0.0);
+    Assert.assertEquals(90.0, summary.getPercentile90(), 0.0);
+    Assert.assertEquals(99.0, summary.getPercentile99(), 0.0);
+
+    Assert.assertEquals(CONTEXT2, summaries.get(1).getContext());
+    Assert.assertEquals(1001.0, getSummary(summaries.get(1)).getMin(), 0.0);
+
+    // next window starts afresh
+    summaries.clear();
+    aggregatorUnderTest.flush(summaries::add);
+    Assert.assertTrue(summaries.isEmpty());
+  }
+
+  @Test
+  public void testWindowsRestartFromScratch() {
+    ContextualStatisticsAggregator aggregatorUnderTest = new ContextualStatisticsAggregator(1000L, 16);
+    for (long i = 1; i <= 100; i++) {
+      aggregatorUnderTest.accept(createStatistics(CONTEXT1, i));
+      aggregatorUnderTest.accept(createStatistics(CONTEXT2, i));
+    }
+    List<ContextualStatistics> summaries = new ArrayList<>();
+    aggregatorUnderTest.flush(summaries::add);
+    Assert.assertEquals(2, summaries.size());
+
+    // the second context stops reporting
+    for (long i = 1000; i < 1010; i++) {
+      aggregatorUnderTest.accept(createStatistics(CONTEXT1, i));
+    }
+    summaries.clear();
+    aggregatorUnderTest.flush(summaries::add);
+    Assert.assertEquals(1, summaries.size());
+    SampleSummary summary = getSummary(summaries.get(0));
+    Assert.assertEquals(10L, summary.getCount());
+    Assert.assertEquals(1000.0, summary.getMin(), 0.0);
+    Assert.assertEquals(1009.0, summary.getMax(), 0.0);
+    Assert.assertEquals(1004.0, summary.getMedian(), 0.0);
+
+    // and reports again
+    aggregatorUnderTest.accept(createStatistics(CONTEXT2, 42));
+    summaries.clear();
+    aggregatorUnderTest.flush(summaries::add);
+    Assert.assertEquals(1, summaries.size());
+    Assert.assertEquals(CONTEXT2, summaries.get(0).getContext());
+    Assert.assertEquals(1L, getSummary(summaries.get(0)).getCount());
+  }
+
+  @Test
+  public void testBoundedReservoir() {
+    ContextualStatisticsAggregator aggregatorUnderTest = new ContextualStatisticsAggregator(1000L, 16);
+    for (long i = 1; i <= 10000; i++) {
+      aggregatorUnderTest.accept(createStatistics(CONTEXT1, i));
+    }
+    List<ContextualStatistics> summaries = new ArrayList<>();
+    aggregatorUnderTest.flush(summaries::add);
+    SampleSummary summary = getSummary(summaries.get(0));
+    Assert.assertEquals(10000L, summary.getCount());
+    Assert.assertEquals(1.0, summary.getMin(), 0.0);
+    Assert.assertEquals(10000.0, summary.getMax(), 0.0);
+    Assert.assertEquals(5000.5, summary.getMean(), 0.0);
+    Assert.assertTrue(summary.getMedian() >= 1.0 && summary.getMedian() <= 10000.0);
+  }
+
+  private static SampleSummary getSummary(ContextualStatistics statistics) {
+    Statistic<?, ?> statistic = statistics.getStatistics().get("size");
+    Assert.assertTrue(statistic instanceof SummaryStatistic);
+    Assert.assertEquals(String.valueOf(MemoryUnit.KB), statistic.getUnit());
+    return ((SummaryStatistic)statistic).getValue();
+  }
+
+  private static ContextualStatistics createStatistics(Context context, long value) {
+    return new ContextualStatistics(context,
+        Collections.<String, Statistic<?, ?>>singletonMap("size", new Size("size", value, MemoryUnit.KB)));
+  }
+}
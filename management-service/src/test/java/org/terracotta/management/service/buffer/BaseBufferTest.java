@@ -22,7 +22,10 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
@@ -129,6 +132,24 @@ public abstract class BaseBufferTest<E> {
     testMultiInsertMultiRemove();
   }
 
+  @Test
+  public void testLostItemsWithOverflow() {
+    Assert.assertEquals(0L, bufferUnderTest.getLostItems());
+    int inserted = 0;
+    int drained = 0;
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 2 * BUFFER_SIZE + 3; j++) {
+        bufferUnderTest.insert(0, getOneItem());
+        inserted++;
+      }
+      drained += bufferUnderTest.drainTo((item) -> { }, BUFFER_SIZE / 2);
+      Assert.assertEquals(inserted, drained + bufferUnderTest.size(-1) + bufferUnderTest.getLostItems());
+    }
+    drained += bufferUnderTest.removeAll().size();
+    assertThat(bufferUnderTest.getLostItems(), greaterThan(0L));
+    Assert.assertEquals(inserted, drained + bufferUnderTest.getLostItems());
+  }
+
   @Test
   public void testSingleProducerSingleConsumerRemoveAll() {
     assertNProducerSingleConsumer((ai) -> {
@@ -169,6 +190,68 @@ public abstract class BaseBufferTest<E> {
         1);
   }
 
+  @Test
+  public void testDrainToWithBatchLimit() {
+    List<E> inserted = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      E item = getOneItem();
+      inserted.add(item);
+      bufferUnderTest.insert(0, item);
+    }
+    List<E> drained = new ArrayList<>();
+    Assert.assertEquals(10, bufferUnderTest.drainTo(drained::add, 10));
+    Assert.assertEquals(15, bufferUnderTest.size(-1));
+    Assert.assertEquals(10, bufferUnderTest.drainTo(drained::add, 10));
+    Assert.assertEquals(5, bufferUnderTest.drainTo(drained::add, 10));
+    Assert.assertEquals(0, bufferUnderTest.drainTo(drained::add, 10));
+    Assert.assertEquals(0, bufferUnderTest.size(-1));
+    Assert.assertEquals(inserted.size(), drained.size());
+    for (int i = 0; i < inserted.size(); i++) {
+      Assert.assertTrue(Objects.deepEquals(inserted.get(i), drained.get(i)));
+    }
+  }
+
+  @Test
+  public void testDrainToReusableArray() {
+    E[] reusable = Arrays.copyOf(bufferUnderTest.toArray(getArrayType()), 8);
+    for (int i = 0; i < 12; i++) {
+      bufferUnderTest.insert(0, getOneItem());
+    }
+    Assert.assertEquals(8, bufferUnderTest.drainTo(reusable, 100));
+    Assert.assertEquals(4, bufferUnderTest.drainTo(reusable, 100));
+    Assert.assertEquals(0, bufferUnderTest.drainTo(reusable, 100));
+    Assert.assertEquals(0, bufferUnderTest.size(-1));
+  }
+
+  @Test
+  public void testDrainToArrayAtOffset() {
+    E[] reusable = Arrays.copyOf(bufferUnderTest.toArray(getArrayType()), 8);
+    List<E> inserted = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      E item = getOneItem();
+      inserted.add(item);
+      bufferUnderTest.insert(0, item);
+    }
+    Assert.assertEquals(2, bufferUnderTest.drainTo(reusable, 0, 2));
+    Assert.assertEquals(3, bufferUnderTest.drainTo(reusable, 5, 100));
+    Assert.assertEquals(1, bufferUnderTest.drainTo(reusable, 2, 100));
+    Assert.assertEquals(0, bufferUnderTest.size(-1));
+    Assert.assertTrue(Objects.deepEquals(inserted.get(0), reusable[0]));
+    Assert.assertTrue(Objects.deepEquals(inserted.get(1), reusable[1]));
+    Assert.assertTrue(Objects.deepEquals(inserted.get(2), reusable[5]));
+    Assert.assertTrue(Objects.deepEquals(inserted.get(4), reusable[7]));
+    Assert.assertTrue(Objects.deepEquals(inserted.get(5), reusable[2]));
+    Assert.assertNull(reusable[3]);
+  }
+
+  @Test
+  public void testSingleProducerSingleConsumerDrainTo() {
+    assertNProducerSingleConsumer((ai) -> {
+      int drained = bufferUnderTest.drainTo((item) -> ai.incrementAndGet(), BUFFER_SIZE / 4);
+      return drained > 0;
+    }, false, Objects::equals, 1);
+  }
+
   protected abstract PartitionedRingBuffer<E> getBufferUnderTest(int size);
   protected abstract E getOneItem();
   protected abstract Class<E[]> getArrayType();
@@ -0,0 +1,131 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terracotta.management.service.buffer.impl.GrowableRingBuffer;
+import org.terracotta.management.service.buffer.impl.MultiPartitionPooledRingBuffer;
+import org.terracotta.management.service.buffer.impl.SinglePartitionPooledRingBuffer;
+
+import java.util.Collections;
+
+/**
+ * Test the sharing of a {@link BufferBudget} across buffers.
+ *
+ * @author RKAV
+ */
+public class BufferBudgetTest {
+  @Test
+  public void testReservationsNeverExceedLimit() {
+    BufferBudget budget = new BufferBudget(64);
+    BufferBudget.Account account = budget.newAccount("a");
+    Assert.assertTrue(account.tryReserve(48));
+    Assert.assertFalse(account.tryReserve(32));
+    Assert.assertTrue(account.tryReserve(16));
+    Assert.assertEquals(64, budget.getReserved());
+    account.release(48);
+    Assert.assertEquals(16, budget.getReserved());
+    Assert.assertEquals(16, account.getReserved());
+  }
+
+  @Test
+  public void testBufferGrowsWithinBudget() {
+    BufferBudget budget = new BufferBudget(48);
+    GrowableRingBuffer<Integer> buffer = new GrowableRingBuffer<>(SinglePartitionPooledRingBuffer::new, 16, 64,
+        budget.newAccount("a"));
+    for (int i = 0; i < 100; i++) {
+      buffer.insert(0, i);
+    }
+    // the segment of 64 does not fit along the segments of 16 and 32
+    Assert.assertEquals(32, buffer.allocatedCapacity());
+    Assert.assertEquals(48, budget.getReserved());
+    // growing when three quarters full, the segment of 16 holds 12 items and the full segment of 32 overflows
+    Assert.assertEquals(44, buffer.size(0));
+
+    // the drained segment of 16 is dropped
+    Assert.assertEquals(44, buffer.removeAll().size());
+    Assert.assertEquals(32, budget.getReserved());
+  }
+
+  @Test
+  public void testPartitionsDiscardWhenOutOfBudget() {
+    BufferBudget budget = new BufferBudget(32);
+    PartitionedRingBuffer<Integer> buffer = new MultiPartitionPooledRingBuffer<>(4, 16, 64, budget.newAccount("a"));
+    buffer.insert(0, 0);
+    buffer.insert(1, 1);
+    buffer.insert(2, 2);
+    Assert.assertEquals(32, budget.getReserved());
+    Assert.assertEquals(1, buffer.size(0));
+    Assert.assertEquals(1, buffer.size(1));
+    Assert.assertEquals(0, buffer.size(2));
+  }
+
+  @Test
+  public void testFairShareIsReclaimed() {
+    BufferBudget budget = new BufferBudget(64);
+    BufferBudget.Account greedy = budget.newAccount("greedy");
+    BufferBudget.Account starving = budget.newAccount("starving");
+    GrowableRingBuffer<Integer> greedyBuffer = new GrowableRingBuffer<>(SinglePartitionPooledRingBuffer::new, 64,
+        64, greedy);
+    GrowableRingBuffer<Integer> starvingBuffer = new GrowableRingBuffer<>(SinglePartitionPooledRingBuffer::new, 16,
+        64, starving);
+    for (int i = 0; i < 200; i++) {
+      greedyBuffer.insert(0, i);
+    }
+    Assert.assertEquals(64, budget.getReserved());
+    Assert.assertFalse(greedy.isReclaimRequested());
+
+    // out of budget, the starving account is below its fair share
+    starvingBuffer.insert(0, 0);
+    Assert.assertEquals(0, starvingBuffer.size(0));
+    Assert.assertTrue(greedy.isReclaimRequested());
+
+    // the greedy buffer retires its segment and releases its slots once drained
+    Assert.assertFalse(greedyBuffer.removeAll().isEmpty());
+    Assert.assertEquals(0, greedyBuffer.allocatedCapacity());
+    Assert.assertEquals(0, greedy.getReserved());
+    Assert.assertFalse(greedy.isReclaimRequested());
+
+    starvingBuffer.insert(0, 0);
+    Assert.assertEquals(1, starvingBuffer.size(0));
+    Assert.assertEquals(16, starving.getReserved());
+  }
+
+  @Test
+  public void testRetiredSegmentDroppedOnceAcknowledged() {
+    BufferBudget budget = new BufferBudget(64);
+    BufferBudget.Account greedy = budget.newAccount("greedy");
+    BufferBudget.Account starving = budget.newAccount("starving");
+    GrowableRingBuffer<Integer> greedyBuffer = new GrowableRingBuffer<>(SinglePartitionPooledRingBuffer::new, 64,
+        64, greedy);
+    greedyBuffer.insert(0, 0);
+    Assert.assertFalse(starving.tryReserve(16));
+    Assert.assertTrue(greedy.isReclaimRequested());
+    Assert.assertEquals(1, greedyBuffer.removeAll().size());
+    Assert.assertEquals(0, greedy.getReserved());
+
+    // the producer acknowledges the retired segment on its next insert, which goes to a new segment
+    greedyBuffer.insert(0, 1);
+    Assert.assertEquals(64, greedy.getReserved());
+    Assert.assertEquals(Collections.singletonList(1), greedyBuffer.removeAll());
+    Assert.assertEquals(0, greedyBuffer.size(0));
+    Assert.assertEquals(64, greedy.getReserved());
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test reading a broadcast buffer through independent cursors.
+ *
+ * @author RKAV
+ */
+public class BroadcastRingBufferTest {
+  @Test
+  public void testCursorsReadIndependently() {
+    BroadcastRingBuffer<Integer> buffer = new BroadcastRingBuffer<>(16);
+    BroadcastRingBuffer<Integer>.Cursor first = buffer.newCursor();
+    for (int i = 0; i < 4; i++) {
+      buffer.publish(i);
+    }
+    BroadcastRingBuffer<Integer>.Cursor second = buffer.newCursor();
+    for (int i = 4; i < 8; i++) {
+      buffer.publish(i);
+    }
+    Assert.assertEquals(8, first.size());
+    Assert.assertEquals(4, second.size());
+
+    List<Integer> items = new ArrayList<>();
+    Assert.assertEquals(3, first.drainTo(items::add, 3));
+    Assert.assertEquals(5, first.drainTo(items::add, 100));
+    Assert.assertEquals(0, first.drainTo(items::add, 100));
+    for (int i = 0; i < 8; i++) {
+      Assert.assertEquals(i, (int)items.get(i));
+    }
+
+    items.clear();
+    Assert.assertEquals(4, second.drainTo(items::add, 100));
+    Assert.assertEquals(4, (int)items.get(0));
+    Assert.assertEquals(0, first.getLost());
+    Assert.assertEquals(0, second.getLost());
+  }
+
+  @Test
+  public void testLaggingCursorSkipsOverwrittenItems() {
+    BroadcastRingBuffer<Integer> buffer = new BroadcastRingBuffer<>(16);
+    BroadcastRingBuffer<Integer>.Cursor lagging = buffer.newCursor();
+    BroadcastRingBuffer<Integer>.Cursor following = buffer.newCursor();
+    for (int i = 0; i < 40; i++) {
+      buffer.publish(i);
+      following.drainTo((item) -> {}, 1);
+    }
+    Assert.assertEquals(0, following.getLost());
+
+    List<Integer> items = new ArrayList<>();
+    Assert.assertEquals(buffer.capacity(), lagging.drainTo(items::add, 100));
+    Assert.assertEquals(40 - buffer.capacity(), lagging.getLost());
+    Assert.assertEquals(40 - buffer.capacity(), (int)items.get(0));
+    Assert.assertEquals(39, (int)items.get(items.size() - 1));
+  }
+
+  @Test
+  public void testConcurrentReadersSeeOrderedItems() throws InterruptedException {
+    final int count = 200000;
+    BroadcastRingBuffer<Integer> buffer = new BroadcastRingBuffer<>(64);
+    BroadcastRingBuffer<Integer>.Cursor cursor = buffer.newCursor();
+    Thread producer = new Thread(() -> {
+      for (int i = 0; i < count; i++) {
+        buffer.publish(i);
+      }
+    });
+    producer.start();
+    int[] last = {-1};
+    long read = 0;
+    while (producer.isAlive() || cursor.size() > 0) {
+      read += cursor.drainTo((item) -> {
+        Assert.assertTrue(item > last[0]);
+        last[0] = item;
+      }, 16);
+    }
+    producer.join();
+    Assert.assertEquals(count - 1, last[0]);
+    Assert.assertEquals(count, read + cursor.getLost());
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terracotta.management.service.buffer.BaseByteArrayBufferTest;
+import org.terracotta.management.service.buffer.PartitionedRingBuffer;
+
+import java.util.Collection;
+import java.util.Objects;
+
+import static org.terracotta.management.service.TestConstants.BUFFER_SIZE;
+import static org.terracotta.management.service.TestConstants.NUM_PARTITIONS_FOR_POOLED;
+
+/**
+ * Test the pooled buffer implementation with lazily allocated, growable partitions.
+ *
+ * @author RKAV
+ */
+public final class ByteArrayGrowableBufferTest extends BaseByteArrayBufferTest {
+  private static final int INITIAL_SIZE = 16;
+
+  @Override
+  protected PartitionedRingBuffer<byte[]> getBufferUnderTest(int size) {
+    return new MultiPartitionPooledRingBuffer<>(NUM_PARTITIONS_FOR_POOLED, INITIAL_SIZE, size);
+  }
+
+  @Override
+  protected int getNumPartitions() {
+    return NUM_PARTITIONS_FOR_POOLED;
+  }
+
+  @Test
+  public void testGrowsWithoutLosingItems() {
+    GrowableRingBuffer<byte[]> partition = new GrowableRingBuffer<>(SinglePartitionPooledRingBuffer::new,
+        INITIAL_SIZE, 128);
+    Assert.assertEquals(0, partition.allocatedCapacity());
+    Assert.assertEquals(128, partition.capacity(0));
+    for (int i = 0; i < 100; i++) {
+      partition.insert(0, new byte[] {(byte)i});
+    }
+    Assert.assertTrue(partition.allocatedCapacity() > INITIAL_SIZE);
+    Assert.assertEquals(100, partition.size(0));
+    int[] expected = {0};
+    Assert.assertEquals(100, partition.drainTo((item) -> Assert.assertEquals(expected[0]++, item[0]), 1000));
+    Assert.assertEquals(0, partition.size(0));
+  }
+
+  @Test
+  public void testKeepsOrderWhileGrowingAndDraining() {
+    GrowableRingBuffer<byte[]> partition = new GrowableRingBuffer<>(SinglePartitionPooledRingBuffer::new,
+        INITIAL_SIZE, 256);
+    int[] expected = {0};
+    int next = 0;
+    for (int round = 0; round < 8; round++) {
+      for (int i = 0; i < 30; i++) {
+        partition.insert(0, new byte[] {(byte)next++});
+      }
+      // drain a part only, so that items are left in older segments
+      partition.drainTo((item) -> Assert.assertEquals((byte)expected[0]++, item[0]), 20);
+    }
+    partition.drainTo((item) -> Assert.assertEquals((byte)expected[0]++, item[0]), 1000);
+    Assert.assertEquals(next, expected[0]);
+    Assert.assertTrue(partition.allocatedCapacity() > INITIAL_SIZE);
+  }
+
+  @Test
+  public void testOverflowsOnceAtMaximumSize() {
+    GrowableRingBuffer<byte[]> partition = new GrowableRingBuffer<>(SinglePartitionPooledRingBuffer::new,
+        INITIAL_SIZE, 32);
+    for (int i = 0; i < 100; i++) {
+      partition.insert(0, new byte[] {(byte)i});
+    }
+    Assert.assertTrue(partition.size(0) <= 2 * 32);
+    int[] last = {-1};
+    partition.drainTo((item) -> {
+      Assert.assertTrue(item[0] > last[0]);
+      last[0] = item[0];
+    }, 1000);
+    Assert.assertEquals(99, last[0]);
+  }
+
+  @Test
+  public void testPartitionsAreAllocatedOnFirstInsert() {
+    MultiPartitionPooledRingBuffer<byte[]> buffer = new MultiPartitionPooledRingBuffer<>(NUM_PARTITIONS_FOR_POOLED,
+        INITIAL_SIZE, BUFFER_SIZE);
+    for (int i = 0; i < NUM_PARTITIONS_FOR_POOLED; i++) {
+      Assert.assertEquals(0, buffer.size(i));
+      Assert.assertEquals(BUFFER_SIZE, buffer.capacity(i));
+    }
+    Assert.assertEquals(0, buffer.drainTo((item) -> Assert.fail(), 100));
+    Assert.assertFalse(buffer.hasOverSpillThresholdReached());
+    buffer.insert(1, new byte[] {1});
+    Assert.assertEquals(1, buffer.size(1));
+    Assert.assertEquals(0, buffer.size(0));
+    Collection<byte[]> items = buffer.removeAll();
+    Assert.assertEquals(1, items.size());
+  }
+
+  @Test
+  public void testMultiProducerSingleConsumerDrainTo() {
+    assertNProducerSingleConsumer((ai) -> {
+      int drained = bufferUnderTest.drainTo((item) -> ai.incrementAndGet(), BUFFER_SIZE / 4);
+      return drained > 0;
+    }, false, Objects::equals, NUM_PARTITIONS_FOR_POOLED);
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terracotta.management.service.buffer.BaseByteArrayBufferTest;
+import org.terracotta.management.service.buffer.PartitionedRingBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test the multi partition off heap ring buffer with byte arrays as content.
+ *
+ * @author RKAV
+ */
+public final class ByteArrayMultiPartitionOffHeapBufferTest extends BaseByteArrayBufferTest {
+  // header and serialized form of the largest random byte array used by the base tests
+  private static final int MAX_RECORD_SIZE = 4 + 2048 + 64;
+  // each partition takes its full size in direct memory, keep the memory taken by the tests reasonable
+  private static final int NUM_PARTITIONS = 2;
+
+  @Override
+  protected PartitionedRingBuffer<byte[]> getBufferUnderTest(int size) {
+    return new MultiPartitionOffHeapRingBuffer<>(NUM_PARTITIONS, size, MAX_RECORD_SIZE);
+  }
+
+  @Override
+  protected int getNumPartitions() {
+    return NUM_PARTITIONS;
+  }
+
+  @Test
+  public void testUnreadableMessageCountedAsLost() {
+    PartitionedRingBuffer<Object> buffer = new MultiPartitionOffHeapRingBuffer<>(NUM_PARTITIONS, 8, MAX_RECORD_SIZE);
+    buffer.insert(0, "first");
+    buffer.insert(0, new Unreadable());
+    buffer.insert(0, "last");
+
+    List<Object> drained = new ArrayList<>();
+    Assert.assertEquals(2, buffer.drainTo(drained::add, 8));
+    Assert.assertEquals(Arrays.<Object>asList("first", "last"), drained);
+    Assert.assertEquals(1, buffer.getLostItems());
+  }
+
+  @Test
+  public void testMessagesDrainedIntoArrayPastUnreadableOnes() {
+    PartitionedRingBuffer<Object> buffer = new MultiPartitionOffHeapRingBuffer<>(NUM_PARTITIONS, 8, MAX_RECORD_SIZE);
+    buffer.insert(0, "first");
+    buffer.insert(0, new Object());
+    buffer.insert(0, new Unreadable());
+    buffer.insert(0, "first");
+    buffer.insert(0, "last");
+
+    // the serializing stream is reused, records must not refer back to earlier ones
+    Object[] drained = new Object[4];
+    Assert.assertEquals(3, buffer.drainTo(drained, 1, 8));
+    Assert.assertArrayEquals(new Object[] {null, "first", "first", "last"}, drained);
+    Assert.assertEquals(2, buffer.getLostItems());
+  }
+
+  @Test
+  public void testMessageClassesResolvedWithProducerClassLoader() throws Exception {
+    ClassLoader producerLoader = new PayloadClassLoader(getClass().getClassLoader());
+    Object payload = producerLoader.loadClass(Payload.class.getName()).newInstance();
+    Assert.assertNotSame(Payload.class, payload.getClass());
+
+    PartitionedRingBuffer<Object> buffer = new MultiPartitionOffHeapRingBuffer<>(NUM_PARTITIONS, 8, MAX_RECORD_SIZE);
+    buffer.insert(0, payload);
+    List<Object> drained = new ArrayList<>();
+    Assert.assertEquals(1, buffer.drainTo(drained::add, 8));
+    Assert.assertSame(payload.getClass(), drained.get(0).getClass());
+    Assert.assertEquals(0, buffer.getLostItems());
+  }
+
+  private static final class Unreadable implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private void readObject(ObjectInputStream in) throws IOException {
+      throw new InvalidObjectException("unreadable");
+    }
+  }
+
+  public static final class Payload implements Serializable {
+    private static final long serialVersionUID = 1L;
+  }
+
+  /**
+   * Defines its own copy of {@link Payload}, as the class loader of a producer unknown to the consumer would.
+   */
+  private static final class PayloadClassLoader extends ClassLoader {
+    private PayloadClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (!name.equals(Payload.class.getName())) {
+        return super.loadClass(name, resolve);
+      }
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> loaded = findLoadedClass(name);
+        if (loaded == null) {
+          byte[] bytes = readClass(name);
+          loaded = defineClass(name, bytes, 0, bytes.length);
+        }
+        return loaded;
+      }
+    }
+
+    private byte[] readClass(String name) throws ClassNotFoundException {
+      try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int read;
+        while ((read = in.read(chunk)) >= 0) {
+          out.write(chunk, 0, read);
+        }
+        return out.toByteArray();
+      } catch (IOException e) {
+        throw new ClassNotFoundException(name, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terracotta.management.service.buffer.BaseByteArrayBufferTest;
+import org.terracotta.management.service.buffer.PartitionedRingBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Test the off heap ring buffer with byte arrays as content.
+ *
+ * @author RKAV
+ */
+public final class ByteArrayOffHeapBufferTest extends BaseByteArrayBufferTest {
+  // header and aligned contents of the largest random byte array used by the base tests
+  private static final int MAX_RECORD_SIZE = 4 + 2048;
+
+  @Override
+  protected PartitionedRingBuffer<byte[]> getBufferUnderTest(int size) {
+    return new SinglePartitionOffHeapRingBuffer(size, size * MAX_RECORD_SIZE);
+  }
+
+  @Test
+  public void testOverwriteOldestWhenBytesExhausted() {
+    SinglePartitionOffHeapRingBuffer buffer = new SinglePartitionOffHeapRingBuffer(100, 64);
+    for (int i = 0; i < 10; i++) {
+      buffer.insert(0, new byte[] {(byte)i, (byte)i, (byte)i, (byte)i, (byte)i, (byte)i, (byte)i, (byte)i});
+    }
+    // each record takes 12 bytes, only 5 fit into 64 bytes
+    Assert.assertEquals(5, buffer.size(0));
+    byte[][] items = buffer.toArray(byte[][].class);
+    Assert.assertEquals(5, items.length);
+    for (int i = 0; i < items.length; i++) {
+      Assert.assertEquals(5 + i, items[i][0]);
+    }
+    Assert.assertEquals(0, buffer.usedBytes());
+  }
+
+  @Test
+  public void testWrapWithVariableSizedRecords() {
+    SinglePartitionOffHeapRingBuffer buffer = new SinglePartitionOffHeapRingBuffer(1000, 100);
+    List<byte[]> inserted = new ArrayList<>();
+    List<byte[]> drained = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      byte[] item = new byte[1 + (i % 23)];
+      item[0] = (byte)i;
+      inserted.add(item);
+      buffer.insert(0, item);
+      if (i % 3 == 0) {
+        buffer.drainTo(drained::add, 2);
+      }
+    }
+    drained.addAll(buffer.removeAll());
+    // every drained item must be in insertion order, some of them may have been overwritten
+    int j = 0;
+    for (byte[] item : drained) {
+      while (inserted.get(j).length != item.length || inserted.get(j)[0] != item[0]) {
+        j++;
+      }
+      Assert.assertArrayEquals(inserted.get(j++), item);
+    }
+    Assert.assertEquals(0, buffer.size(0));
+  }
+
+  @Test
+  public void testZeroCopyDrainOfByteBuffers() {
+    SinglePartitionOffHeapRingBuffer buffer = new SinglePartitionOffHeapRingBuffer(16, 1024);
+    ByteBuffer message = ByteBuffer.allocate(16);
+    for (int i = 0; i < 4; i++) {
+      message.clear();
+      message.putLong(i).putLong(i * 2L).flip();
+      buffer.insert(0, message);
+      Assert.assertEquals(16, message.remaining());
+    }
+    Collection<Long> sums = new ArrayList<>();
+    Assert.assertEquals(4, buffer.drainRecordsTo((record) -> {
+      Assert.assertTrue(record.isReadOnly());
+      Assert.assertEquals(16, record.remaining());
+      sums.add(record.getLong() + record.getLong());
+    }, 10));
+    Assert.assertEquals(0, buffer.size(0));
+    Assert.assertEquals(Arrays.asList(0L, 3L, 6L, 9L), sums);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRecordTooLarge() {
+    new SinglePartitionOffHeapRingBuffer(16, 32).insert(0, new byte[32]);
+  }
+}
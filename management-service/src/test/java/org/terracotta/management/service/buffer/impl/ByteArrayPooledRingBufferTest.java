@@ -18,6 +18,7 @@
  */
 package org.terracotta.management.service.buffer.impl;
 
+import org.junit.Assert;
 import org.junit.Test;
 import org.terracotta.management.service.buffer.BaseByteArrayBufferTest;
 import org.terracotta.management.service.buffer.PartitionedRingBuffer;
@@ -25,6 +26,7 @@ import org.terracotta.management.service.buffer.PartitionedRingBuffer;
 import java.util.Collection;
 import java.util.Objects;
 
+import static org.terracotta.management.service.TestConstants.BUFFER_SIZE;
 import static org.terracotta.management.service.TestConstants.NUM_PARTITIONS_FOR_POOLED;
 
 /**
@@ -35,7 +37,7 @@ import static org.terracotta.management.service.TestConstants.NUM_PARTITIONS_FOR
 public final class ByteArrayPooledRingBufferTest extends BaseByteArrayBufferTest {
   @Override
   protected PartitionedRingBuffer<byte[]> getBufferUnderTest(int size) {
-    return new MultiPartitionLockFreeRingBuffer<>(NUM_PARTITIONS_FOR_POOLED, size);
+    return new MultiPartitionPooledRingBuffer<>(NUM_PARTITIONS_FOR_POOLED, size);
   }
 
   @Override
@@ -43,6 +45,19 @@ public final class ByteArrayPooledRingBufferTest extends BaseByteArrayBufferTest
     return NUM_PARTITIONS_FOR_POOLED;
   }
 
+  @Test
+  public void testOverwrittenItemsAreSkipped() {
+    PartitionedRingBuffer<byte[]> partition = new SinglePartitionPooledRingBuffer<>(16);
+    for (int i = 0; i < 40; i++) {
+      partition.insert(0, new byte[] {(byte)i});
+    }
+    Assert.assertEquals(16, partition.size(0));
+    int[] expected = {24};
+    Assert.assertEquals(16, partition.drainTo((item) -> Assert.assertEquals(expected[0]++, item[0]), 100));
+    Assert.assertEquals(0, partition.size(0));
+    Assert.assertEquals(0, partition.drainTo((item) -> Assert.fail(), 100));
+  }
+
   @Test
   public void testMultiProducerSingleConsumerRemoveAll() {
     assertNProducerSingleConsumer((ai) -> {
@@ -67,6 +82,14 @@ public final class ByteArrayPooledRingBufferTest extends BaseByteArrayBufferTest
     }, false, Objects::equals, NUM_PARTITIONS_FOR_POOLED);
   }
 
+  @Test
+  public void testMultiProducerSingleConsumerDrainTo() {
+    assertNProducerSingleConsumer((ai) -> {
+      int drained = bufferUnderTest.drainTo((item) -> ai.incrementAndGet(), BUFFER_SIZE / 4);
+      return drained > 0;
+    }, false, Objects::equals, NUM_PARTITIONS_FOR_POOLED);
+  }
+
   @Test
   public void testSingleProducerSingleConsumerWithOverflow() {
     assertNProducerSingleConsumer(
@@ -0,0 +1,116 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terracotta.management.service.buffer.BaseByteArrayBufferTest;
+import org.terracotta.management.service.buffer.OverwritePolicy;
+import org.terracotta.management.service.buffer.PartitionedRingBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.terracotta.management.service.TestConstants.NUM_PARTITIONS_FOR_POOLED;
+
+/**
+ * Test the priority lane buffer implementation with byte arrays as content.
+ * <p>
+ * The generic buffer tests run against a single lane buffer, as capacities add up across lanes.
+ *
+ * @author RKAV
+ */
+public final class ByteArrayPriorityLaneBufferTest extends BaseByteArrayBufferTest {
+  @Override
+  protected PartitionedRingBuffer<byte[]> getBufferUnderTest(int size) {
+    return new PriorityLaneRingBuffer<>(
+        new PriorityLaneRingBuffer.Lane<>(new MultiPartitionPooledRingBuffer<>(NUM_PARTITIONS_FOR_POOLED, size),
+            OverwritePolicy.OVERWRITE_OLDEST));
+  }
+
+  @Override
+  protected int getNumPartitions() {
+    return NUM_PARTITIONS_FOR_POOLED;
+  }
+
+  @Test
+  public void testHighPriorityLaneDrainedFirst() {
+    PriorityLaneRingBuffer<byte[]> buffer = createTwoLaneBuffer();
+    for (int i = 0; i < 10; i++) {
+      buffer.insert(1, 0, new byte[] {1});
+      if (i % 5 == 0) {
+        buffer.insert(0, 1, new byte[] {0});
+      }
+    }
+    List<byte[]> drained = new ArrayList<>();
+    Assert.assertEquals(3, buffer.drainTo(drained::add, 3));
+    Assert.assertEquals(0, drained.get(0)[0]);
+    Assert.assertEquals(0, drained.get(1)[0]);
+    Assert.assertEquals(1, drained.get(2)[0]);
+    Assert.assertEquals(9, buffer.size(-1));
+  }
+
+  @Test
+  public void testLowPriorityFloodDoesNotOverwriteHighPriority() {
+    PriorityLaneRingBuffer<byte[]> buffer = createTwoLaneBuffer();
+    buffer.insert(0, 0, new byte[] {0});
+    for (int i = 0; i < 1000; i++) {
+      buffer.insert(0, new byte[] {1});
+    }
+    byte[][] target = new byte[1][];
+    Assert.assertEquals(1, buffer.drainTo(target, 1));
+    Assert.assertEquals(0, target[0][0]);
+  }
+
+  @Test
+  public void testDiscardNewestWhenLaneIsFull() {
+    PriorityLaneRingBuffer<byte[]> buffer = createTwoLaneBuffer();
+    for (int i = 0; i < 20; i++) {
+      Assert.assertEquals(i < 16, buffer.insert(0, 0, new byte[] {(byte)i}));
+    }
+    Assert.assertEquals(4L, buffer.discarded(0));
+    int[] expected = {0};
+    Assert.assertEquals(16, buffer.drainTo((item) -> Assert.assertEquals(expected[0]++, item[0]), 100));
+  }
+
+  @Test
+  public void testOverSpillThresholdOfDrainedLanesOnly() {
+    PriorityLaneRingBuffer<byte[]> buffer = createTwoLaneBuffer();
+    buffer.insert(1, 0, new byte[] {1});
+    Assert.assertEquals(1, buffer.drainTo((item) -> { }, 1));
+    for (int i = 0; i < 16; i++) {
+      buffer.insert(0, 0, new byte[] {0});
+    }
+    // the items drained are of the low priority lane, which is not about to overspill
+    Assert.assertTrue(buffer.hasOverSpillThresholdReached(0));
+    Assert.assertFalse(buffer.hasOverSpillThresholdReached(1));
+    Assert.assertFalse(buffer.hasOverSpillThresholdReached());
+
+    Assert.assertEquals(1, buffer.drainTo((item) -> { }, 1));
+    Assert.assertTrue(buffer.hasOverSpillThresholdReached());
+  }
+
+  private static PriorityLaneRingBuffer<byte[]> createTwoLaneBuffer() {
+    return new PriorityLaneRingBuffer<>(
+        new PriorityLaneRingBuffer.Lane<>(new MultiPartitionPooledRingBuffer<>(NUM_PARTITIONS_FOR_POOLED, 16),
+            OverwritePolicy.DISCARD_NEWEST),
+        new PriorityLaneRingBuffer.Lane<>(new MultiPartitionPooledRingBuffer<>(NUM_PARTITIONS_FOR_POOLED, 64),
+            OverwritePolicy.OVERWRITE_OLDEST));
+  }
+}
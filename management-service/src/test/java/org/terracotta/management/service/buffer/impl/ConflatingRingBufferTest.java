@@ -0,0 +1,135 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terracotta.management.service.buffer.BufferBudget;
+import org.terracotta.management.service.buffer.PartitionedRingBuffer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test the conflating buffer, keyed by the first byte of each message.
+ *
+ * @author RKAV
+ */
+public class ConflatingRingBufferTest {
+  @Test
+  public void testOnlyLatestItemPerKeyIsDrained() {
+    PartitionedRingBuffer<byte[]> buffer = new ConflatingRingBuffer<>(2, 16, (item) -> item[0]);
+    buffer.insert(0, new byte[] {1, 0});
+    buffer.insert(0, new byte[] {2, 0});
+    buffer.insert(1, new byte[] {1, 1});
+    buffer.insert(0, new byte[] {3, 0});
+    buffer.insert(1, new byte[] {2, 1});
+    Assert.assertEquals(3, buffer.size(0));
+
+    // in the order in which the keys were first updated
+    List<byte[]> items = new ArrayList<>();
+    Assert.assertEquals(3, buffer.drainTo(items::add, 100));
+    Assert.assertArrayEquals(new byte[] {1, 1}, items.get(0));
+    Assert.assertArrayEquals(new byte[] {2, 1}, items.get(1));
+    Assert.assertArrayEquals(new byte[] {3, 0}, items.get(2));
+    Assert.assertEquals(0, buffer.size(0));
+
+    // keys are updated again after a drain
+    buffer.insert(0, new byte[] {2, 2});
+    Assert.assertEquals(1, buffer.removeAll().size());
+    Assert.assertTrue(buffer.removeAll().isEmpty());
+  }
+
+  @Test
+  public void testDrainToWithBatchLimit() {
+    PartitionedRingBuffer<byte[]> buffer = new ConflatingRingBuffer<>(1, 16, (item) -> item[0]);
+    for (int i = 0; i < 10; i++) {
+      buffer.insert(0, new byte[] {(byte)i});
+    }
+    Assert.assertEquals(4, buffer.drainTo((item) -> {}, 4));
+    buffer.insert(0, new byte[] {0});
+    Assert.assertEquals(7, buffer.removeAll().size());
+  }
+
+  @Test
+  public void testItemsOfTooManyKeysAreDiscarded() {
+    BufferBudget budget = new BufferBudget(3);
+    BufferBudget.Account account = budget.newAccount("a");
+    ConflatingRingBuffer<Byte, byte[]> buffer = new ConflatingRingBuffer<>(1, 4, (item) -> item[0], account);
+    for (int i = 0; i < 10; i++) {
+      buffer.insert(0, new byte[] {(byte)i});
+    }
+    // limited by the budget
+    Assert.assertEquals(3, buffer.keys());
+    Assert.assertEquals(3, account.getReserved());
+    Assert.assertEquals(3, buffer.removeAll().size());
+
+    buffer = new ConflatingRingBuffer<>(1, 4, (item) -> item[0]);
+    for (int i = 0; i < 10; i++) {
+      buffer.insert(0, new byte[] {(byte)i});
+    }
+    // limited by the maximum number of keys
+    Assert.assertEquals(4, buffer.keys());
+    Assert.assertEquals(4, buffer.removeAll().size());
+  }
+
+  @Test
+  public void testConcurrentProducersDeliverLatestValues() throws InterruptedException {
+    final int producers = 4;
+    final int updates = 100000;
+    ConflatingRingBuffer<Byte, int[]> buffer = new ConflatingRingBuffer<>(producers, 64, (item) -> (byte)item[0]);
+    Thread[] threads = new Thread[producers];
+    for (int p = 0; p < producers; p++) {
+      final int partition = p;
+      threads[p] = new Thread(() -> {
+        // each producer updates its own keys, with increasing values
+        for (int i = 1; i <= updates; i++) {
+          buffer.insert(partition, new int[] {partition * 8 + (i % 8), i});
+        }
+      });
+      threads[p].start();
+    }
+    Map<Integer, Integer> latest = new HashMap<>();
+    int drained = 0;
+    boolean running = true;
+    while (running) {
+      running = false;
+      for (Thread thread : threads) {
+        running |= thread.isAlive();
+      }
+      Collection<int[]> items = buffer.removeAll();
+      drained += items.size();
+      for (int[] item : items) {
+        Integer previous = latest.put(item[0], item[1]);
+        Assert.assertTrue(previous == null || previous < item[1]);
+      }
+    }
+    Assert.assertTrue(drained < producers * updates);
+    Assert.assertEquals(producers * 8, latest.size());
+    for (int p = 0; p < producers; p++) {
+      for (int k = 0; k < 8; k++) {
+        // last value pushed for the key
+        Assert.assertEquals(updates - ((updates - k) % 8), (int)latest.get(p * 8 + k));
+      }
+    }
+  }
+}
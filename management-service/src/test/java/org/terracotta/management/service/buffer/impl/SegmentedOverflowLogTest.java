@@ -0,0 +1,179 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.buffer.impl;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Test the spill to disk overflow log.
+ *
+ * @author RKAV
+ */
+public class SegmentedOverflowLogTest {
+  private static final long SEGMENT_SIZE = 64;
+  private static final long MAX_SIZE = 4 * SEGMENT_SIZE;
+  private static final long RETENTION = 60_000L;
+
+  private Path directory;
+  private SegmentedOverflowLog logUnderTest;
+
+  @Before
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("overflow");
+    logUnderTest = new SegmentedOverflowLog(directory, SEGMENT_SIZE, MAX_SIZE, RETENTION);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    logUnderTest.close();
+    Files.deleteIfExists(directory);
+  }
+
+  @Test
+  public void testReplayInOrder() throws IOException {
+    Assert.assertTrue(logUnderTest.isEmpty());
+    // each record is 4 + 16 bytes, stay within the maximum size
+    logUnderTest.append(createRecords(0, 6));
+    logUnderTest.append(createRecords(6, 6));
+    Assert.assertFalse(logUnderTest.isEmpty());
+
+    List<byte[]> replayed = new ArrayList<>();
+    while (!logUnderTest.isEmpty()) {
+      logUnderTest.read(replayed::add, 3);
+      logUnderTest.commit();
+    }
+    assertRecords(0, 12, replayed);
+    Assert.assertEquals(0L, logUnderTest.size());
+    Assert.assertEquals(0L, logUnderTest.droppedRecords());
+    try (Stream<Path> files = Files.list(directory)) {
+      Assert.assertEquals(0L, files.count());
+    }
+  }
+
+  @Test
+  public void testReadWithoutCommitIsRepeated() throws IOException {
+    logUnderTest.append(createRecords(0, 5));
+    List<byte[]> replayed = new ArrayList<>();
+    Assert.assertEquals(5, logUnderTest.read(replayed::add, 10));
+    replayed.clear();
+    Assert.assertEquals(5, logUnderTest.read(replayed::add, 10));
+    assertRecords(0, 5, replayed);
+    logUnderTest.commit();
+    Assert.assertTrue(logUnderTest.isEmpty());
+  }
+
+  @Test
+  public void testOldestSegmentsDroppedBeyondMaxSize() throws IOException {
+    logUnderTest.append(createRecords(0, 100));
+    Assert.assertTrue(logUnderTest.size() <= MAX_SIZE);
+    Assert.assertTrue(logUnderTest.droppedRecords() > 0);
+
+    List<byte[]> replayed = new ArrayList<>();
+    while (!logUnderTest.isEmpty()) {
+      logUnderTest.read(replayed::add, 100);
+      logUnderTest.commit();
+    }
+    int first = (int)logUnderTest.droppedRecords();
+    Assert.assertEquals(100, first + replayed.size());
+    assertRecords(first, replayed.size(), replayed);
+  }
+
+  @Test
+  public void testStaleSegmentsRemovedOnCreate() throws IOException {
+    logUnderTest.append(createRecords(0, 10));
+    logUnderTest = new SegmentedOverflowLog(directory, SEGMENT_SIZE, MAX_SIZE, RETENTION);
+    Assert.assertTrue(logUnderTest.isEmpty());
+    Assert.assertEquals(0, logUnderTest.read((r) -> Assert.fail(), 10));
+  }
+
+  @Test
+  public void testExpiredSegmentsRemoved() throws IOException, InterruptedException {
+    logUnderTest.close();
+    logUnderTest = new SegmentedOverflowLog(directory, SEGMENT_SIZE, MAX_SIZE, 1);
+    logUnderTest.append(Collections.singleton(createRecord(0)));
+    Thread.sleep(10);
+    Assert.assertEquals(0, logUnderTest.read((r) -> Assert.fail(), 10));
+    Assert.assertEquals(1L, logUnderTest.droppedRecords());
+  }
+
+  @Test
+  public void testCorruptSegmentSealed() throws IOException {
+    logUnderTest.append(createRecords(0, 3));
+    // corrupt the length of the second record
+    try (FileChannel channel = FileChannel.open(directory.resolve("overflow-0.log"), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE), 20);
+    }
+    List<byte[]> replayed = new ArrayList<>();
+    try {
+      logUnderTest.read(replayed::add, 10);
+      Assert.fail("Corrupt record read");
+    } catch (IOException e) {
+      // expected
+    }
+    Assert.assertEquals(2L, logUnderTest.droppedRecords());
+
+    // further records go to a new segment, behind the intact records
+    logUnderTest.append(Collections.singleton(createRecord(3)));
+    replayed.clear();
+    while (!logUnderTest.isEmpty()) {
+      logUnderTest.read(replayed::add, 10);
+      logUnderTest.commit();
+    }
+    Assert.assertEquals(2, replayed.size());
+    Assert.assertArrayEquals(createRecord(0), replayed.get(0));
+    Assert.assertArrayEquals(createRecord(3), replayed.get(1));
+    Assert.assertEquals(2L, logUnderTest.droppedRecords());
+  }
+
+  private static List<byte[]> createRecords(int start, int numRecords) {
+    List<byte[]> records = new ArrayList<>(numRecords);
+    for (int i = 0; i < numRecords; i++) {
+      records.add(createRecord(start + i));
+    }
+    return records;
+  }
+
+  private static byte[] createRecord(int seed) {
+    byte[] record = new byte[16];
+    Arrays.fill(record, (byte)seed);
+    return record;
+  }
+
+  private static void assertRecords(int start, int numRecords, List<byte[]> actual) {
+    Assert.assertEquals(numRecords, actual.size());
+    for (int i = 0; i < numRecords; i++) {
+      Assert.assertArrayEquals(createRecord(start + i), actual.get(i));
+    }
+  }
+}
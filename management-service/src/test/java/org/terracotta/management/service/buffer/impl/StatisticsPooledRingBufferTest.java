@@ -32,7 +32,7 @@ import static org.terracotta.management.service.TestConstants.NUM_PARTITIONS_FOR
 public class StatisticsPooledRingBufferTest extends BaseStatisticsBufferTest {
   @Override
   protected PartitionedRingBuffer<ContextualStatistics> getBufferUnderTest(int size) {
-    return new MultiPartitionLockFreeRingBuffer<>(NUM_PARTITIONS_FOR_POOLED, size);
+    return new MultiPartitionPooledRingBuffer<>(NUM_PARTITIONS_FOR_POOLED, size);
   }
 
   @Override
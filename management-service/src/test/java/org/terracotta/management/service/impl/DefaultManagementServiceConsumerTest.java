@@ -18,15 +18,39 @@
  */
 package org.terracotta.management.service.impl;
 
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.terracotta.management.service.TestMessageCallback;
+import org.terracotta.management.service.buffer.BufferBudget;
 import org.terracotta.management.service.buffer.PartitionedRingBuffer;
+import org.terracotta.management.service.buffer.impl.SegmentedOverflowLog;
 import org.terracotta.management.service.buffer.impl.SinglePartitionLockFreeRingBuffer;
+import org.terracotta.voltron.management.consumer.MessageAggregator;
+import org.terracotta.voltron.management.consumer.MessageListener;
+import org.terracotta.voltron.management.consumer.MessageSubscription;
+import org.terracotta.voltron.management.consumer.PreviousMessageAckPendingException;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.terracotta.management.service.TestConstants.BUFFER_SIZE;
+import static org.terracotta.management.service.TestConstants.PAUSE;
 
 /**
  * Test the default implementation of the service consumer interface of management service.
@@ -87,4 +111,361 @@ public class DefaultManagementServiceConsumerTest {
     messageCallback.verifyMessages();
     consumerUnderTest.shutdown();
   }
+
+  @Test
+  public void testSubscriptionsReceiveAllMessages() {
+    TestMessageCallback messageCallback = new TestMessageCallback(4);
+    TestMessageCallback subscriberCallback = new TestMessageCallback(4);
+    consumerUnderTest.setupPeriodicManagementMessageCollector(messageCallback);
+    MessageSubscription<byte[]> subscription = consumerUnderTest.subscribe(subscriberCallback);
+
+    messageCallback.createMessagesToInsert(0, 4).forEach((msg) -> messageCache.insert(0, msg));
+    consumerUnderTest.requestCollection();
+    messageCallback.waitToConsume(10, TimeUnit.SECONDS, 4);
+    subscriberCallback.waitToConsume(10, TimeUnit.SECONDS, 4);
+
+    messageCallback.verifyMessages();
+    subscriberCallback.verifyMessages();
+    Assert.assertEquals(0, subscription.getLostMessages());
+    subscription.close();
+    consumerUnderTest.shutdown();
+  }
+
+  @Test
+  public void testBroadcastReleasedOnceLastSubscriptionClosed() {
+    BufferBudget.Account account = new BufferBudget(2 * Constants.BROADCAST_BUFFER_SIZE).newAccount("test");
+    ScheduledExecutorService scheduler = DefaultMessageConsumer.createCollectorScheduler(1);
+    DefaultMessageConsumer<byte[]> consumer = new DefaultMessageConsumer<>(messageCache, scheduler, null, account);
+    TestMessageCallback messageCallback = new TestMessageCallback(8);
+    TestMessageCallback subscriberCallback = new TestMessageCallback(4);
+    consumer.setupPeriodicManagementMessageCollector(messageCallback);
+    MessageSubscription<byte[]> subscription = consumer.subscribe(subscriberCallback);
+    Assert.assertEquals(Constants.BROADCAST_BUFFER_SIZE, account.getReserved());
+
+    messageCallback.createMessagesToInsert(0, 4).forEach((msg) -> messageCache.insert(0, msg));
+    consumer.requestCollection();
+    messageCallback.waitToConsume(10, TimeUnit.SECONDS, 4);
+    subscriberCallback.waitToConsume(10, TimeUnit.SECONDS, 4);
+    subscription.close();
+
+    // the callback takes the messages from the message cache again
+    messageCallback.createMessagesToInsert(4, 4).forEach((msg) -> messageCache.insert(0, msg));
+    consumer.requestCollection();
+    messageCallback.waitToConsume(10, TimeUnit.SECONDS, 4);
+    messageCallback.verifyMessages();
+    Assert.assertEquals(0, account.getReserved());
+
+    // released right away without a callback
+    DefaultMessageConsumer<byte[]> subscribedOnly = new DefaultMessageConsumer<>(messageCache, scheduler, null, account);
+    subscribedOnly.subscribe(subscriberCallback).close();
+    Assert.assertEquals(0, account.getReserved());
+    subscribedOnly.shutdown();
+    consumer.shutdown();
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void testSubscriptionsAreFlowControlledIndependently() {
+    TestMessageCallback messageCallback = new TestMessageCallback(4);
+    TestMessageCallback subscriberCallback = new TestMessageCallback(2);
+    MessageSubscription<byte[]> subscription = consumerUnderTest.subscribe(subscriberCallback);
+    subscription.grantCredits(2);
+    consumerUnderTest.setupPeriodicManagementMessageCollector(messageCallback);
+
+    messageCallback.createMessagesToInsert(0, 4).forEach((msg) -> messageCache.insert(0, msg));
+    consumerUnderTest.requestCollection();
+    messageCallback.waitToConsume(10, TimeUnit.SECONDS, 4);
+    subscriberCallback.waitToConsume(10, TimeUnit.SECONDS, 2);
+    // credits are only consumed once the messages are posted
+    PAUSE(Constants.COLLECTION_INTERVAL / 4);
+
+    messageCallback.verifyMessages();
+    subscriberCallback.verifyMessages();
+    Assert.assertEquals(0, subscription.getAvailableCredits());
+    Assert.assertEquals(2, subscription.getBacklog());
+    Assert.assertEquals(0, consumerUnderTest.getBacklog());
+    consumerUnderTest.shutdown();
+  }
+
+  @Test
+  public void testRequestedConsumption() {
+    TestMessageCallback messageCallback = new TestMessageCallback(2);
+    consumerUnderTest.setupPeriodicManagementMessageCollector(messageCallback);
+
+    messageCallback.createMessagesToInsert(0, 2).forEach((msg) -> messageCache.insert(0, msg));
+    consumerUnderTest.requestCollection();
+    // must be well before the periodic collection kicks in
+    messageCallback.waitToConsume(Constants.COLLECTION_INTERVAL / 2, TimeUnit.MILLISECONDS, 2);
+
+    messageCallback.verifyMessages();
+    consumerUnderTest.shutdown();
+  }
+
+  @Test
+  public void testScheduledConsumptionWithFailureAndOverflow() throws IOException {
+    Path overflowDirectory = Files.createTempDirectory("overflow");
+    ScheduledExecutorService scheduler = DefaultMessageConsumer.createCollectorScheduler(1);
+    consumerUnderTest = new DefaultMessageConsumer<>(messageCache, scheduler,
+        new SegmentedOverflowLog(overflowDirectory, 1 << 12, 1 << 16, 60_000L));
+    TestMessageCallback messageCallback = new TestMessageCallback(8);
+
+    messageCallback.createMessagesToInsert(0, 4).forEach((msg) -> messageCache.insert(0, msg));
+    messageCallback.failCallback(2);
+    consumerUnderTest.setupPeriodicManagementMessageCollector(messageCallback);
+    // first messages are spilled after the first failure, the rest must be delivered after them
+    PAUSE(Constants.COLLECTION_INTERVAL + 500);
+    messageCallback.createMessagesToInsert(4, 4).forEach((msg) -> messageCache.insert(0, msg));
+    messageCallback.waitToConsume(10, TimeUnit.SECONDS, 8);
+
+    messageCallback.verifyMessages();
+    consumerUnderTest.shutdown();
+    scheduler.shutdown();
+    Files.deleteIfExists(overflowDirectory);
+  }
+
+  @Test
+  public void testCreditedConsumption() {
+    TestMessageCallback messageCallback = new TestMessageCallback(4);
+    messageCallback.createMessagesToInsert(0, 4).forEach((msg) -> messageCache.insert(0, msg));
+    consumerUnderTest.grantCredits(2);
+    consumerUnderTest.setupPeriodicManagementMessageCollector(messageCallback);
+    messageCallback.waitToConsume(10, TimeUnit.SECONDS, 2);
+
+    // no more messages are posted until credits are granted
+    PAUSE(2 * Constants.COLLECTION_INTERVAL);
+    Assert.assertEquals(0, consumerUnderTest.getAvailableCredits());
+    Assert.assertEquals(2, consumerUnderTest.getBacklog());
+
+    consumerUnderTest.grantCredits(2);
+    messageCallback.waitToConsume(Constants.COLLECTION_INTERVAL / 2, TimeUnit.MILLISECONDS, 2);
+    messageCallback.verifyMessages();
+    Assert.assertEquals(0, consumerUnderTest.getBacklog());
+    consumerUnderTest.shutdown();
+  }
+
+  @Test
+  public void testAggregatedConsumption() {
+    // emits the first message of each window only
+    MessageAggregator<byte[]> firstOfWindow = new MessageAggregator<byte[]>() {
+      private byte[] first;
+
+      @Override
+      public long getWindowMillis() {
+        return Constants.COLLECTION_INTERVAL / 2;
+      }
+
+      @Override
+      public void accept(byte[] message) {
+        if (first == null) {
+          first = message;
+        }
+      }
+
+      @Override
+      public void flush(Consumer<? super byte[]> sink) {
+        if (first != null) {
+          sink.accept(first);
+          first = null;
+        }
+      }
+    };
+    TestMessageCallback messageCallback = new TestMessageCallback(1);
+    messageCallback.createMessagesToInsert(0, 4).forEach((msg) -> messageCache.insert(0, msg));
+    consumerUnderTest.setupPeriodicManagementMessageCollector(messageCallback, firstOfWindow);
+    messageCallback.waitToConsume(10, TimeUnit.SECONDS, 1);
+    PAUSE(Constants.COLLECTION_INTERVAL);
+
+    messageCallback.verifyMessages();
+    consumerUnderTest.shutdown();
+  }
+
+  @Test
+  public void testSequencedConsumptionReportsGaps() throws InterruptedException {
+    messageCache = new SinglePartitionLockFreeRingBuffer<>(8);
+    consumerUnderTest = new DefaultMessageConsumer<>(messageCache);
+    // first sequence, lost messages and number of messages of each post attempt
+    BlockingQueue<long[]> posts = new LinkedBlockingQueue<>();
+    AtomicInteger failures = new AtomicInteger(1);
+    MessageListener<byte[]> sequencedCallback = new MessageListener<byte[]>() {
+      @Override
+      public void postMessages(Collection<byte[]> bufferedMessages) {
+        Assert.fail("Sequenced messages expected");
+      }
+
+      @Override
+      public void postMessages(Collection<byte[]> bufferedMessages, long firstSequence, long lostMessages)
+          throws PreviousMessageAckPendingException {
+        posts.add(new long[] {firstSequence, lostMessages, bufferedMessages.size()});
+        if (failures.getAndDecrement() > 0) {
+          throw new PreviousMessageAckPendingException("Simulating a failure");
+        }
+      }
+    };
+    TestMessageCallback messageCallback = new TestMessageCallback(22);
+    // the first 12 messages are overwritten before the collector starts
+    messageCallback.createMessagesToInsert(0, 20).forEach((msg) -> messageCache.insert(0, msg));
+    consumerUnderTest.setupPeriodicManagementMessageCollector(sequencedCallback);
+
+    // the failed post is retried with the same sequence numbers
+    Assert.assertArrayEquals(new long[] {12, 12, 8}, posts.poll(10, TimeUnit.SECONDS));
+    Assert.assertArrayEquals(new long[] {12, 12, 8}, posts.poll(10, TimeUnit.SECONDS));
+
+    messageCallback.createMessagesToInsert(20, 2).forEach((msg) -> messageCache.insert(0, msg));
+    consumerUnderTest.requestCollection();
+    Assert.assertArrayEquals(new long[] {20, 0, 2}, posts.poll(10, TimeUnit.SECONDS));
+    consumerUnderTest.shutdown();
+  }
+
+  @Test
+  public void testExpiredOverflowReportedAsGap() throws Exception {
+    Path overflowDirectory = Files.createTempDirectory("overflow");
+    ScheduledExecutorService scheduler = DefaultMessageConsumer.createCollectorScheduler(1);
+    // spilled messages expire before they are replayed
+    consumerUnderTest = new DefaultMessageConsumer<>(messageCache, scheduler,
+        new SegmentedOverflowLog(overflowDirectory, 1 << 12, 1 << 16, 1L));
+    BlockingQueue<long[]> posts = new LinkedBlockingQueue<>();
+    AtomicInteger failures = new AtomicInteger(1);
+    MessageListener<byte[]> sequencedCallback = new MessageListener<byte[]>() {
+      @Override
+      public void postMessages(Collection<byte[]> bufferedMessages) {
+        Assert.fail("Sequenced messages expected");
+      }
+
+      @Override
+      public void postMessages(Collection<byte[]> bufferedMessages, long firstSequence, long lostMessages)
+          throws PreviousMessageAckPendingException {
+        posts.add(new long[] {firstSequence, lostMessages, bufferedMessages.size()});
+        if (failures.getAndDecrement() > 0) {
+          throw new PreviousMessageAckPendingException("Simulating a failure");
+        }
+      }
+    };
+    TestMessageCallback messageCallback = new TestMessageCallback(6);
+    messageCallback.createMessagesToInsert(0, 4).forEach((msg) -> messageCache.insert(0, msg));
+    consumerUnderTest.setupPeriodicManagementMessageCollector(sequencedCallback);
+    Assert.assertArrayEquals(new long[] {0, 0, 4}, posts.poll(10, TimeUnit.SECONDS));
+
+    // the next collection finds the spilled messages expired
+    PAUSE(Constants.COLLECTION_INTERVAL + 500);
+    messageCallback.createMessagesToInsert(4, 2).forEach((msg) -> messageCache.insert(0, msg));
+    consumerUnderTest.requestCollection();
+    Assert.assertArrayEquals(new long[] {4, 4, 2}, posts.poll(10, TimeUnit.SECONDS));
+    consumerUnderTest.shutdown();
+    scheduler.shutdown();
+    Files.deleteIfExists(overflowDirectory);
+  }
+
+  @Test
+  public void testSpilledMessagesReplayedWithTheirClassLoader() throws Exception {
+    // only known to the loader of the producer
+    Class<?> messageClass = new ChildFirstClassLoader(SpilledMessage.class).loadClass(SpilledMessage.class.getName());
+    Assert.assertNotSame(SpilledMessage.class, messageClass);
+
+    List<Object> replayed = spillAndReplay(messageClass.newInstance());
+    Assert.assertEquals(1, replayed.size());
+    Assert.assertSame(messageClass, replayed.get(0).getClass());
+  }
+
+  @Test
+  public void testSpilledMessageFailingToReadReportedAsLost() throws Exception {
+    List<Object> replayed = spillAndReplay(new FailingMessage(), new SpilledMessage());
+    Assert.assertEquals(1, replayed.size());
+    Assert.assertTrue(replayed.get(0) instanceof SpilledMessage);
+  }
+
+  /**
+   * Fail the first post of the messages, so that they are spilled, and collect them as replayed.
+   *
+   * @return the messages replayed, after asserting the unreadable ones are reported as lost
+   */
+  private List<Object> spillAndReplay(Object... messages) throws Exception {
+    Path overflowDirectory = Files.createTempDirectory("overflow");
+    ScheduledExecutorService scheduler = DefaultMessageConsumer.createCollectorScheduler(1);
+    PartitionedRingBuffer<Object> cache = new SinglePartitionLockFreeRingBuffer<>(BUFFER_SIZE);
+    DefaultMessageConsumer<Object> consumer = new DefaultMessageConsumer<>(cache, scheduler,
+        new SegmentedOverflowLog(overflowDirectory, 1 << 12, 1 << 16, 60_000L));
+    BlockingQueue<List<Object>> posts = new LinkedBlockingQueue<>();
+    AtomicInteger failures = new AtomicInteger(1);
+    AtomicLong lost = new AtomicLong();
+    consumer.setupPeriodicManagementMessageCollector(new MessageListener<Object>() {
+      @Override
+      public void postMessages(Collection<Object> bufferedMessages) {
+        Assert.fail("Sequenced messages expected");
+      }
+
+      @Override
+      public void postMessages(Collection<Object> bufferedMessages, long firstSequence, long lostMessages)
+          throws PreviousMessageAckPendingException {
+        if (failures.getAndDecrement() > 0) {
+          throw new PreviousMessageAckPendingException("Simulating a failure");
+        }
+        lost.set(lostMessages);
+        posts.add(new ArrayList<>(bufferedMessages));
+      }
+    });
+    for (Object message : messages) {
+      cache.insert(0, message);
+    }
+    consumer.requestCollection();
+
+    List<Object> replayed = posts.poll(10, TimeUnit.SECONDS);
+    Assert.assertNotNull(replayed);
+    Assert.assertEquals(messages.length - replayed.size(), lost.get());
+    consumer.shutdown();
+    scheduler.shutdown();
+    Files.deleteIfExists(overflowDirectory);
+    return replayed;
+  }
+
+  public static final class SpilledMessage implements Serializable {
+    private static final long serialVersionUID = 1L;
+  }
+
+  private static final class FailingMessage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private void readObject(ObjectInputStream in) {
+      throw new IllegalStateException("unreadable");
+    }
+  }
+
+  /**
+   * Defines its own copy of a class, which its parent cannot see.
+   */
+  private static final class ChildFirstClassLoader extends ClassLoader {
+    private final String className;
+
+    private ChildFirstClassLoader(Class<?> type) {
+      super(type.getClassLoader());
+      this.className = type.getName();
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (!name.equals(className)) {
+        return super.loadClass(name, resolve);
+      }
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> loaded = findLoadedClass(name);
+        if (loaded == null) {
+          byte[] bytes = classBytes(name);
+          loaded = defineClass(name, bytes, 0, bytes.length);
+        }
+        return loaded;
+      }
+    }
+
+    private byte[] classBytes(String name) throws ClassNotFoundException {
+      try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        for (int read; (read = in.read(chunk)) >= 0; ) {
+          bytes.write(chunk, 0, read);
+        }
+        return bytes.toByteArray();
+      } catch (IOException e) {
+        throw new ClassNotFoundException(name, e);
+      }
+    }
+  }
 }
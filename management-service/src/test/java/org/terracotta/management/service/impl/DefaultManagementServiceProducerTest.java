@@ -24,6 +24,8 @@ import org.junit.Test;
 import org.terracotta.management.service.buffer.PartitionedRingBuffer;
 import org.terracotta.management.service.buffer.impl.SinglePartitionLockFreeRingBuffer;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.terracotta.management.service.TestConstants.BUFFER_SIZE;
 import static org.terracotta.management.service.TestConstants.DEFAULT_MESSAGE_SIZE;
 
@@ -50,4 +52,53 @@ public class DefaultManagementServiceProducerTest {
     bufferedMessageArray = messageCache.toArray(byte[][].class);
     Assert.assertEquals(0, bufferedMessageArray.length);
   }
+
+  @Test
+  public void testRemainingCapacityWithCredits() {
+    DefaultMessageConsumer<byte[]> consumer = new DefaultMessageConsumer<>(messageCache);
+    producerUnderTest = new DefaultMessageProducer<>(messageCache, 0, consumer);
+    Assert.assertEquals(BUFFER_SIZE, producerUnderTest.getRemainingCapacity());
+
+    producerUnderTest.pushManagementMessage(new byte[DEFAULT_MESSAGE_SIZE]);
+    Assert.assertEquals(1, producerUnderTest.getBacklog());
+    Assert.assertEquals(BUFFER_SIZE - 1, producerUnderTest.getRemainingCapacity());
+
+    consumer.grantCredits(3);
+    Assert.assertEquals(2, producerUnderTest.getRemainingCapacity());
+    producerUnderTest.pushManagementMessage(new byte[DEFAULT_MESSAGE_SIZE]);
+    producerUnderTest.pushManagementMessage(new byte[DEFAULT_MESSAGE_SIZE]);
+    producerUnderTest.pushManagementMessage(new byte[DEFAULT_MESSAGE_SIZE]);
+    Assert.assertEquals(4, producerUnderTest.getBacklog());
+    Assert.assertEquals(0, producerUnderTest.getRemainingCapacity());
+    consumer.shutdown();
+  }
+
+  @Test
+  public void testCollectionRequestedOnceThresholdReached() {
+    final AtomicInteger requests = new AtomicInteger();
+    DefaultMessageConsumer<byte[]> consumer = new DefaultMessageConsumer<byte[]>(messageCache) {
+      @Override
+      public void requestCollection() {
+        requests.incrementAndGet();
+      }
+    };
+    producerUnderTest = new DefaultMessageProducer<>(messageCache, 0, consumer, 3);
+    producerUnderTest.pushManagementMessage(new byte[DEFAULT_MESSAGE_SIZE]);
+    producerUnderTest.pushManagementMessage(new byte[DEFAULT_MESSAGE_SIZE]);
+    Assert.assertEquals(0, requests.get());
+    producerUnderTest.pushManagementMessage(new byte[DEFAULT_MESSAGE_SIZE]);
+    Assert.assertEquals(1, requests.get());
+    // still above the threshold, no further request
+    producerUnderTest.pushManagementMessage(new byte[DEFAULT_MESSAGE_SIZE]);
+    Assert.assertEquals(1, requests.get());
+
+    // drained below the threshold, the next crossing requests again
+    messageCache.toArray(byte[][].class);
+    producerUnderTest.pushManagementMessage(new byte[DEFAULT_MESSAGE_SIZE]);
+    producerUnderTest.pushManagementMessage(new byte[DEFAULT_MESSAGE_SIZE]);
+    Assert.assertEquals(1, requests.get());
+    producerUnderTest.pushManagementMessage(new byte[DEFAULT_MESSAGE_SIZE]);
+    Assert.assertEquals(2, requests.get());
+    consumer.shutdown();
+  }
 }
@@ -18,16 +18,23 @@
  */
 package org.terracotta.management.service.impl;
 
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.terracotta.management.service.OverflowConfiguration;
 import org.terracotta.management.service.TestMessageCallback;
+import org.terracotta.management.service.buffer.PartitionedRingBufferType;
 import org.terracotta.voltron.management.MessageDeliveryInfrastructureService;
 import org.terracotta.voltron.management.consumer.MessageConsumer;
 import org.terracotta.voltron.management.producer.MessageProducer;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 import static org.terracotta.management.service.TestConstants.PAUSE;
 
@@ -49,6 +56,11 @@ public class DefaultManagementServiceTest {
     mnmServiceUnderTest = new DefaultManagementService();
   }
 
+  @After
+  public void tearDown() {
+    mnmServiceUnderTest.close();
+  }
+
   @Test
   public void testEndToEndMessageProductionAndConsumption() {
     TestMessageCallback messageCallback = new TestMessageCallback(1024);
@@ -86,6 +98,94 @@ public class DefaultManagementServiceTest {
     assertEndToEndFunctioning(producer, consumer, messageCallback);
   }
 
+  @Test
+  public void testEndToEndMessageProductionWithLockFreeBuffer() {
+    mnmServiceUnderTest.close();
+    mnmServiceUnderTest = new DefaultManagementService(PartitionedRingBufferType.LOCK_FREE);
+    testEndToEndMessageProductionAndConsumption();
+  }
+
+  @Test
+  public void testEndToEndMessageProductionWithCollectorPool() {
+    mnmServiceUnderTest.close();
+    mnmServiceUnderTest = new DefaultManagementService(PartitionedRingBufferType.POOLED, 4);
+    testEndToEndMessageProductionAndConsumption();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNoCollectionAfterClose() {
+    MessageDeliveryInfrastructureService mdis = mnmServiceUnderTest.getMessageDeliveryInfrastructure();
+    AtomicReference<MessageConsumer<byte[]>> consumerReference = new AtomicReference<>();
+    mdis.registerMessageConsumerListener(byte[].class, consumerReference::set);
+    mdis.createMessageProducer(byte[].class);
+
+    mnmServiceUnderTest.close();
+    consumerReference.get().setupPeriodicManagementMessageCollector(new TestMessageCallback(0));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNoConflationOfTypeProducedWithoutConflation() {
+    MessageDeliveryInfrastructureService mdis = mnmServiceUnderTest.getMessageDeliveryInfrastructure();
+    mdis.createMessageProducer(byte[].class);
+    mdis.createConflatingMessageProducer(byte[].class, (message) -> message[0]);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNoPlainProducerOfConflatedType() {
+    MessageDeliveryInfrastructureService mdis = mnmServiceUnderTest.getMessageDeliveryInfrastructure();
+    mdis.createConflatingMessageProducer(byte[].class, (message) -> message[0]);
+    mdis.createMessageProducer(byte[].class);
+  }
+
+  @Test
+  public void testConflationByFirstKeyFunction() {
+    MessageDeliveryInfrastructureService mdis = mnmServiceUnderTest.getMessageDeliveryInfrastructure();
+    mdis.createConflatingMessageProducer(byte[].class, (message) -> message[0]);
+    MessageProducer<byte[]> producer = mdis.createConflatingMessageProducer(byte[].class, (message) -> message.length);
+    for (int i = 0; i < 1024; i++) {
+      producer.pushManagementMessage(new byte[] {(byte)(i % 4), (byte)(i / 4)});
+    }
+    Assert.assertEquals(4, producer.getBacklog());
+  }
+
+  @Test
+  public void testConflationBySameKeyFunction() {
+    MessageDeliveryInfrastructureService mdis = mnmServiceUnderTest.getMessageDeliveryInfrastructure();
+    Function<byte[], Object> keyFunction = (message) -> message[0];
+    Assert.assertNotNull(mdis.createConflatingMessageProducer(byte[].class, keyFunction));
+    Assert.assertNotNull(mdis.createConflatingMessageProducer(byte[].class, keyFunction));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoOverflowOfNonSerializableMessages() throws IOException {
+    mnmServiceUnderTest.close();
+    Path overflowDirectory = Files.createTempDirectory("overflow");
+    mnmServiceUnderTest = new DefaultManagementService(PartitionedRingBufferType.POOLED, 1,
+        new OverflowConfiguration(overflowDirectory.toFile()));
+    try {
+      mnmServiceUnderTest.getMessageDeliveryInfrastructure().createMessageProducer(Object.class);
+    } finally {
+      Files.deleteIfExists(overflowDirectory);
+    }
+  }
+
+  @Test
+  public void testConflatedMessagesAreNotAllDelivered() {
+    MessageDeliveryInfrastructureService mdis = mnmServiceUnderTest.getMessageDeliveryInfrastructure();
+    AtomicReference<MessageConsumer<byte[]>> consumerReference = new AtomicReference<>();
+    mdis.registerMessageConsumerListener(byte[].class, consumerReference::set);
+    MessageProducer<byte[]> producer = mdis.createConflatingMessageProducer(byte[].class, (message) -> message[0]);
+    for (int i = 0; i < 1024; i++) {
+      producer.pushManagementMessage(new byte[] {(byte)(i % 4), (byte)(i / 4)});
+    }
+    Assert.assertEquals(4, producer.getBacklog());
+
+    TestMessageCallback messageCallback = new TestMessageCallback(4);
+    consumerReference.get().setupPeriodicManagementMessageCollector(messageCallback);
+    messageCallback.waitToConsume(5, TimeUnit.SECONDS, 4);
+    Assert.assertEquals(0, producer.getBacklog());
+  }
+
   private void assertEndToEndFunctioning(MessageProducer<byte[]> producer,
                                          MessageConsumer<byte[]> consumer,
                                          TestMessageCallback messageCallback) {
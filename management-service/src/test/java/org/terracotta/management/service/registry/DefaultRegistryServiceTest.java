@@ -0,0 +1,329 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.registry;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.terracotta.entity.ActiveServerEntity;
+import org.terracotta.entity.EntityMessage;
+import org.terracotta.entity.EntityResponse;
+import org.terracotta.management.capabilities.Capability;
+import org.terracotta.management.capabilities.context.CapabilityContext;
+import org.terracotta.management.capabilities.descriptors.Descriptor;
+import org.terracotta.management.context.Context;
+import org.terracotta.management.context.ContextContainer;
+import org.terracotta.voltron.management.common.providers.ManagementProvider;
+import org.terracotta.voltron.management.consumer.CapabilityConsumer;
+import org.terracotta.voltron.management.consumer.ProviderConsumer;
+import org.terracotta.voltron.management.consumer.RegistryDelta;
+import org.terracotta.voltron.management.producer.RegistryProducer;
+import org.terracotta.voltron.management.producer.registry.ManagedEntityRegistry;
+import org.terracotta.voltron.management.producer.registry.ManagedObjectRegistry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Test the indexed lookups of the default registry service.
+ *
+ * @author RKAV
+ */
+public class DefaultRegistryServiceTest {
+  private DefaultRegistryService registryService;
+  private RegistryProducer producer;
+  private ProviderConsumer providerConsumer;
+  private CapabilityConsumer capabilityConsumer;
+
+  @Before
+  public void setup() {
+    registryService = new DefaultRegistryService();
+    producer = registryService.getRegistryProducer();
+    providerConsumer = registryService.getProviderConsumer();
+    capabilityConsumer = registryService.getCapabilityConsumer();
+  }
+
+  @Test
+  public void testCreateOrLookupEntityRegistry() {
+    ManagedEntityRegistry<CacheEntity> first = producer.createOrLookupManagedEntityRegistry(CacheEntity.class, "cache1");
+    ManagedEntityRegistry<CacheEntity> second = producer.createOrLookupManagedEntityRegistry(CacheEntity.class, "cache2");
+    ManagedEntityRegistry<StoreEntity> third = producer.createOrLookupManagedEntityRegistry(StoreEntity.class, "cache1");
+
+    Assert.assertSame(first, producer.createOrLookupManagedEntityRegistry(CacheEntity.class, "cache1"));
+    Assert.assertTrue(first.getRegistryIndex() != second.getRegistryIndex());
+    Assert.assertTrue(first.getRegistryIndex() != third.getRegistryIndex());
+    Assert.assertEquals(3, capabilityConsumer.getContexts().size());
+
+    ManagedObjectRegistry<String> objectRegistry = first.createOrLookupManagedObjectRegistry(String.class);
+    Assert.assertSame(objectRegistry, first.createOrLookupManagedObjectRegistry(String.class));
+    Assert.assertSame(String.class, objectRegistry.managedType());
+  }
+
+  @Test
+  public void testProviderLookups() {
+    ManagementProvider<String> stringStats = new TestManagementProvider<>(String.class, "Statistics");
+    ManagementProvider<String> stringActions = new TestManagementProvider<>(String.class, "Actions");
+    ManagementProvider<Long> longStats = new TestManagementProvider<>(Long.class, "Statistics");
+    ManagementProvider<String> otherStringStats = new TestManagementProvider<>(String.class, "Statistics");
+
+    ManagedEntityRegistry<CacheEntity> cache = producer.createOrLookupManagedEntityRegistry(CacheEntity.class, "cache");
+    cache.createOrLookupManagedObjectRegistry(String.class).addManagementProvider(stringStats);
+    cache.createOrLookupManagedObjectRegistry(String.class).addManagementProvider(stringActions);
+    cache.createOrLookupManagedObjectRegistry(Long.class).addManagementProvider(longStats);
+    producer.createOrLookupManagedEntityRegistry(StoreEntity.class, "cache")
+        .createOrLookupManagedObjectRegistry(String.class).addManagementProvider(otherStringStats);
+
+    Assert.assertEquals(3, providerConsumer.getManagementProvidersByCapability("Statistics").size());
+    Assert.assertEquals(1, providerConsumer.getManagementProvidersByCapability("Actions").size());
+    Assert.assertTrue(providerConsumer.getManagementProvidersByCapability("Unknown").isEmpty());
+    Assert.assertEquals(3, providerConsumer.getManagementProvidersByEntity(CacheEntity.class, "cache").size());
+    Assert.assertEquals(1, providerConsumer.getManagementProvidersByEntity(StoreEntity.class, "cache").size());
+    Assert.assertEquals(2,
+        providerConsumer.getManagementProvidersByEntityAndCapability(CacheEntity.class, "cache", "Statistics").size());
+    Assert.assertEquals(3, registryService.getManagementProvidersByManagedObjectType(String.class).size());
+
+    Assert.assertSame(stringStats,
+        providerConsumer.getManagementProvidersByEntityAndCapabilityAndManagedObjectType(CacheEntity.class,
+            "cache", String.class, "Statistics"));
+    Assert.assertSame(otherStringStats,
+        providerConsumer.getManagementProvidersByEntityAndCapabilityAndManagedObjectType(StoreEntity.class,
+            "cache", String.class, "Statistics"));
+    Assert.assertNull(providerConsumer.getManagementProvidersByEntityAndCapabilityAndManagedObjectType(CacheEntity.class,
+        "cache", Long.class, "Actions"));
+
+    // both entities are named cache
+    Assert.assertEquals(4, capabilityConsumer.getCapabilities().get("cache").size());
+  }
+
+  @Test
+  public void testRemovalsAreVisibleToLookups() {
+    ManagementProvider<String> stringStats = new TestManagementProvider<>(String.class, "Statistics");
+    ManagementProvider<Long> longStats = new TestManagementProvider<>(Long.class, "Statistics");
+    ManagedEntityRegistry<CacheEntity> cache = producer.createOrLookupManagedEntityRegistry(CacheEntity.class, "cache");
+    ManagedObjectRegistry<String> strings = cache.createOrLookupManagedObjectRegistry(String.class);
+    strings.addManagementProvider(stringStats);
+    cache.createOrLookupManagedObjectRegistry(Long.class).addManagementProvider(longStats);
+
+    strings.removeManagementProvider(stringStats);
+    Assert.assertEquals(1, providerConsumer.getManagementProvidersByEntity(CacheEntity.class, "cache").size());
+
+    Assert.assertSame(strings, cache.removeManagedObjectRegistry(String.class));
+    Assert.assertEquals(1, capabilityConsumer.getContexts().iterator().next().getSubContexts().size());
+
+    Assert.assertSame(cache, producer.removeFromEntityRegistry(CacheEntity.class, "cache"));
+    Assert.assertTrue(providerConsumer.getManagementProvidersByCapability("Statistics").isEmpty());
+    Assert.assertTrue(capabilityConsumer.getContexts().isEmpty());
+    Assert.assertTrue(capabilityConsumer.getCapabilities().isEmpty());
+  }
+
+  @Test
+  public void testContexts() {
+    ManagedEntityRegistry<CacheEntity> cache = producer.createOrLookupManagedEntityRegistry(CacheEntity.class, "cache");
+    cache.createOrLookupManagedObjectRegistry(String.class);
+
+    Collection<ContextContainer> contexts = capabilityConsumer.getContexts();
+    Assert.assertEquals(1, contexts.size());
+    ContextContainer context = contexts.iterator().next();
+    Assert.assertEquals(DefaultManagedEntityRegistry.ENTITY_CONTEXT_NAME, context.getName());
+    Assert.assertEquals("cache", context.getValue());
+    ContextContainer subContext = context.getSubContexts().iterator().next();
+    Assert.assertEquals(DefaultManagedObjectRegistry.MANAGED_TYPE_CONTEXT_NAME, subContext.getName());
+    Assert.assertEquals(String.class.getName(), subContext.getValue());
+  }
+
+  @Test
+  public void testFindManagedObjectsByContext() {
+    ManagedEntityRegistry<CacheEntity> cache = producer.createOrLookupManagedEntityRegistry(CacheEntity.class, "cm");
+    ManagedObjectRegistry<String> strings = cache.createOrLookupManagedObjectRegistry(String.class);
+    for (int i = 0; i < 100; i++) {
+      strings.register("cache" + i, Context.create("cacheName", "cache" + i)
+          .with("tier", (i % 2 == 0) ? "heap" : "disk"));
+    }
+    strings.register("unnamed");
+
+    Assert.assertEquals(Collections.singletonList("cache42"),
+        strings.findManagedObjects(Context.create("cacheName", "cache42")));
+    Assert.assertEquals(50, strings.findManagedObjects(Context.create("tier", "disk")).size());
+    Assert.assertEquals(Collections.singletonList("cache43"),
+        strings.findManagedObjects(Context.create("cacheName", "cache43").with("tier", "disk")));
+    Assert.assertTrue(
+        strings.findManagedObjects(Context.create("cacheName", "cache42").with("tier", "disk")).isEmpty());
+    Assert.assertTrue(strings.findManagedObjects(Context.create("cacheName", "unknown")).isEmpty());
+    Assert.assertEquals(101, strings.findManagedObjects(Context.empty()).size());
+
+    // re-registering replaces the context
+    strings.register("cache42", Context.create("cacheName", "cache42").with("tier", "disk"));
+    Assert.assertEquals(51, strings.findManagedObjects(Context.create("tier", "disk")).size());
+    strings.unregister("cache42");
+    Assert.assertTrue(strings.findManagedObjects(Context.create("cacheName", "cache42")).isEmpty());
+    Assert.assertEquals(50, strings.findManagedObjects(Context.create("tier", "disk")).size());
+
+    // entity and managed object type attributes are matched by the registry service
+    Context entityContext = Context.create(DefaultRegistryService.ENTITY_NAME_CONTEXT_KEY, "cm")
+        .with(DefaultRegistryService.MANAGED_TYPE_CONTEXT_KEY, String.class.getName());
+    Assert.assertEquals(Collections.singletonList("cache7"),
+        registryService.getManagedObjects(String.class, entityContext.with("cacheName", "cache7")));
+    Assert.assertTrue(registryService.getManagedObjects(String.class,
+        Context.create(DefaultRegistryService.ENTITY_NAME_CONTEXT_KEY, "other").with("cacheName", "cache7")).isEmpty());
+    Assert.assertEquals(100, registryService.getManagedObjects(String.class, entityContext).size());
+  }
+
+  @Test
+  public void testChangesSinceVersion() {
+    ManagementProvider<String> stringStats = new TestManagementProvider<>(String.class, "Statistics");
+    ManagementProvider<String> stringActions = new TestManagementProvider<>(String.class, "Actions");
+    ManagedEntityRegistry<CacheEntity> cache = producer.createOrLookupManagedEntityRegistry(CacheEntity.class, "cache");
+    ManagedObjectRegistry<String> strings = cache.createOrLookupManagedObjectRegistry(String.class);
+    strings.addManagementProvider(stringStats);
+    long version = capabilityConsumer.getVersion();
+
+    RegistryDelta noChanges = capabilityConsumer.getChangesSince(version);
+    Assert.assertEquals(version, noChanges.getVersion());
+    Assert.assertFalse(noChanges.isFullSnapshot());
+    Assert.assertTrue(noChanges.isEmpty());
+
+    // providers of known managed types do not change the context
+    strings.addManagementProvider(stringActions);
+    RegistryDelta added = capabilityConsumer.getChangesSince(version);
+    Assert.assertTrue(added.getVersion() > version);
+    Assert.assertTrue(added.getAddedContexts().isEmpty());
+    Assert.assertTrue(added.getRemovedContexts().isEmpty());
+    Assert.assertEquals(1, added.getAddedCapabilities().get("cache").size());
+    Assert.assertTrue(added.getRemovedCapabilities().isEmpty());
+    version = added.getVersion();
+
+    producer.createOrLookupManagedEntityRegistry(StoreEntity.class, "store");
+    strings.removeManagementProvider(stringStats);
+    RegistryDelta changed = capabilityConsumer.getChangesSince(version);
+    Assert.assertEquals(1, changed.getAddedContexts().size());
+    Assert.assertEquals("store", changed.getAddedContexts().iterator().next().getValue());
+    Assert.assertEquals(1, changed.getRemovedCapabilities().get("cache").size());
+    version = changed.getVersion();
+
+    producer.removeFromEntityRegistry(StoreEntity.class, "store");
+    cache.createOrLookupManagedObjectRegistry(Long.class);
+    RegistryDelta contexts = capabilityConsumer.getChangesSince(version);
+    // the context of the cache changed and the store is gone
+    Assert.assertEquals(1, contexts.getAddedContexts().size());
+    Assert.assertEquals(2, contexts.getAddedContexts().iterator().next().getSubContexts().size());
+    Assert.assertEquals(2, contexts.getRemovedContexts().size());
+    Assert.assertTrue(contexts.getAddedCapabilities().isEmpty());
+    Assert.assertTrue(contexts.getRemovedCapabilities().isEmpty());
+  }
+
+  @Test
+  public void testChangesSinceUnknownVersion() {
+    ManagedEntityRegistry<CacheEntity> cache = producer.createOrLookupManagedEntityRegistry(CacheEntity.class, "cache");
+    ManagedObjectRegistry<String> strings = cache.createOrLookupManagedObjectRegistry(String.class);
+    strings.addManagementProvider(new TestManagementProvider<>(String.class, "Statistics"));
+
+    RegistryDelta first = capabilityConsumer.getChangesSince(-1);
+    Assert.assertTrue(first.isFullSnapshot());
+    Assert.assertEquals(capabilityConsumer.getVersion(), first.getVersion());
+    Assert.assertEquals(1, first.getAddedContexts().size());
+    Assert.assertEquals(1, first.getAddedCapabilities().get("cache").size());
+
+    // fall behind the history of the registry
+    long version = first.getVersion();
+    for (int i = 0; i < 100; i++) {
+      strings.addManagementProvider(new TestManagementProvider<>(String.class, "Actions" + i));
+    }
+    RegistryDelta behind = capabilityConsumer.getChangesSince(version);
+    Assert.assertTrue(behind.isFullSnapshot());
+    Assert.assertEquals(101, behind.getAddedCapabilities().get("cache").size());
+    Assert.assertTrue(capabilityConsumer.getChangesSince(capabilityConsumer.getVersion() + 1).isFullSnapshot());
+  }
+
+  @Test
+  public void testReadersSeeConsistentSnapshots() throws Exception {
+    final int numEntities = 200;
+    final CountDownLatch done = new CountDownLatch(1);
+    final AtomicReference<String> failure = new AtomicReference<>();
+    Thread reader = new Thread(() -> {
+      while (done.getCount() > 0) {
+        // every entity registers its provider together with the entity, so the indices must agree
+        RegistrySnapshot snapshot = registryService.getSnapshot();
+        int byCapability = snapshot.getProvidersByCapability("Statistics").size();
+        int byType = snapshot.getProvidersByManagedType(String.class).size();
+        if (byCapability != byType) {
+          failure.set("Inconsistent snapshot " + byCapability + "/" + byType);
+        }
+      }
+    });
+    reader.start();
+    List<ManagementProvider<String>> providers = new ArrayList<>();
+    for (int i = 0; i < numEntities; i++) {
+      ManagementProvider<String> provider = new TestManagementProvider<>(String.class, "Statistics");
+      providers.add(provider);
+      producer.createOrLookupManagedEntityRegistry(CacheEntity.class, "cache" + i)
+          .createOrLookupManagedObjectRegistry(String.class).addManagementProvider(provider);
+    }
+    done.countDown();
+    reader.join();
+
+    Assert.assertNull(failure.get());
+    Assert.assertEquals(numEntities, providerConsumer.getManagementProvidersByCapability("Statistics").size());
+    Assert.assertTrue(providerConsumer.getManagementProvidersByCapability("Statistics").containsAll(providers));
+  }
+
+  private interface CacheEntity extends ActiveServerEntity<EntityMessage, EntityResponse> {
+  }
+
+  private interface StoreEntity extends ActiveServerEntity<EntityMessage, EntityResponse> {
+  }
+
+  private static final class TestManagementProvider<O> implements ManagementProvider<O> {
+    private final Class<O> managedType;
+    private final String capabilityName;
+
+    private TestManagementProvider(Class<O> managedType, String capabilityName) {
+      this.managedType = managedType;
+      this.capabilityName = capabilityName;
+    }
+
+    @Override
+    public Class<O> managedType() {
+      return managedType;
+    }
+
+    @Override
+    public Collection<Descriptor> getDescriptors() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public CapabilityContext getCapabilityContext() {
+      return null;
+    }
+
+    @Override
+    public Capability getCapability() {
+      return null;
+    }
+
+    @Override
+    public String getCapabilityName() {
+      return capabilityName;
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.statistics;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.terracotta.management.capabilities.Capability;
+import org.terracotta.management.capabilities.context.CapabilityContext;
+import org.terracotta.management.capabilities.descriptors.Descriptor;
+import org.terracotta.management.context.Context;
+import org.terracotta.management.stats.ContextualStatistics;
+import org.terracotta.voltron.management.producer.MessagePriority;
+import org.terracotta.voltron.management.producer.MessageProducer;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test sampling statistics into batches of samples.
+ *
+ * @author RKAV
+ */
+public class StatisticsSamplerTest {
+  private static final Context CONTEXT = Context.create("cacheName", "cache1");
+
+  private CapturingProducer producer;
+  private StatisticsSampler sampler;
+
+  @Before
+  public void setup() {
+    producer = new CapturingProducer();
+    sampler = new StatisticsSampler(producer);
+  }
+
+  @After
+  public void tearDown() {
+    sampler.close();
+  }
+
+  @Test
+  public void testSampleAndDrain() {
+    AtomicLong hits = new AtomicLong();
+    StatisticsCollection collection = new StatisticsCollection(CONTEXT, 10, 4)
+        .addLongStatistic("hits", "count", hits::get)
+        .addDoubleStatistic("ratio", "ratio", () -> hits.get() / 2.0);
+    Assert.assertNull(collection.drain());
+
+    for (int i = 0; i < 3; i++) {
+      hits.incrementAndGet();
+      Assert.assertFalse(collection.sample(100 + i));
+    }
+    hits.incrementAndGet();
+    Assert.assertTrue(collection.sample(103));
+
+    ContextualStatistics batch = collection.drain();
+    Assert.assertEquals(CONTEXT, batch.getContext());
+    SampleSeries hitSeries = (SampleSeries)batch.getStatistics().get("hits").getValue();
+    SampleSeries ratioSeries = (SampleSeries)batch.getStatistics().get("ratio").getValue();
+    Assert.assertFalse(hitSeries.isFloatingPoint());
+    Assert.assertTrue(ratioSeries.isFloatingPoint());
+    Assert.assertEquals(4, hitSeries.size());
+    for (int i = 0; i < 4; i++) {
+      Assert.assertEquals(100 + i, hitSeries.getTimestamp(i));
+      Assert.assertEquals(i + 1, hitSeries.getLongValue(i));
+      Assert.assertEquals((i + 1) / 2.0, ratioSeries.getDoubleValue(i), 0.0);
+    }
+    Assert.assertNull(collection.drain());
+  }
+
+  @Test
+  public void testUndrainedSamplesAreOverwritten() {
+    AtomicLong hits = new AtomicLong();
+    StatisticsCollection collection = new StatisticsCollection(CONTEXT, 10, 4)
+        .addLongStatistic("hits", "count", hits::incrementAndGet);
+    for (int i = 0; i < 6; i++) {
+      collection.sample(i);
+    }
+
+    SampleSeries series = (SampleSeries)collection.drain().getStatistics().get("hits").getValue();
+    Assert.assertEquals(4, series.size());
+    for (int i = 0; i < 4; i++) {
+      Assert.assertEquals(i + 2, series.getTimestamp(i));
+      Assert.assertEquals(i + 3, series.getLongValue(i));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCannotAddStatisticsOnceStarted() {
+    StatisticsCollection collection = new StatisticsCollection(CONTEXT, 10, 4);
+    sampler.start(collection);
+    collection.addLongStatistic("hits", "count", () -> 0L);
+  }
+
+  @Test
+  public void testSamplerPublishesBatches() throws Exception {
+    AtomicLong hits = new AtomicLong();
+    StatisticsCollection collection = new StatisticsCollection(CONTEXT, 5, 3)
+        .addLongStatistic("hits", "count", hits::incrementAndGet);
+    sampler.start(collection);
+
+    long lastSample = -1;
+    for (int i = 0; i < 2; i++) {
+      ContextualStatistics batch = producer.messages.poll(10, TimeUnit.SECONDS);
+      Assert.assertNotNull(batch);
+      SampleSeries series = (SampleSeries)batch.getStatistics().get("hits").getValue();
+      Assert.assertEquals(3, series.size());
+      Assert.assertEquals(3 * i + 1, series.getLongValue(0));
+      Assert.assertTrue(series.getTimestamp(0) <= series.getTimestamp(2));
+      lastSample = series.getLongValue(2);
+    }
+
+    // stopping publishes the partial batch, if any
+    sampler.stop(collection);
+    for (ContextualStatistics batch = producer.messages.poll(1, TimeUnit.SECONDS); batch != null;
+         batch = producer.messages.poll(100, TimeUnit.MILLISECONDS)) {
+      SampleSeries series = (SampleSeries)batch.getStatistics().get("hits").getValue();
+      lastSample = series.getLongValue(series.size() - 1);
+    }
+    Assert.assertEquals(hits.get(), lastSample);
+  }
+
+  @Test
+  public void testStatisticsProvider() throws Exception {
+    AtomicLong hits = new AtomicLong();
+    AbstractStatisticsProvider<String> provider = new AbstractStatisticsProvider<String>(String.class, sampler, 5, 2) {
+      @Override
+      protected void addStatistic(StatisticsCollection collection, Map<String, String> context, String statisticName) {
+        if (statisticName.equals("hits")) {
+          collection.addLongStatistic(statisticName, "count", hits::incrementAndGet);
+        }
+      }
+
+      @Override
+      public Collection<Descriptor> getDescriptors() {
+        return Collections.emptyList();
+      }
+
+      @Override
+      public CapabilityContext getCapabilityContext() {
+        return null;
+      }
+
+      @Override
+      public Capability getCapability() {
+        return null;
+      }
+
+      @Override
+      public String getCapabilityName() {
+        return "StatisticsCapability";
+      }
+    };
+    provider.startCollection(Collections.singletonMap("cacheName", "cache1"), Arrays.asList("hits", "unknown"));
+
+    ContextualStatistics batch = producer.messages.poll(10, TimeUnit.SECONDS);
+    Assert.assertNotNull(batch);
+    Assert.assertEquals(CONTEXT, batch.getContext());
+    Assert.assertEquals(Collections.singleton("hits"), batch.getStatistics().keySet());
+
+    provider.stopCollection(Collections.singletonMap("cacheName", "cache1"));
+    Thread.sleep(100);
+    producer.messages.clear();
+    long stoppedAt = hits.get();
+    Thread.sleep(100);
+    Assert.assertEquals(stoppedAt, hits.get());
+    Assert.assertTrue(producer.messages.isEmpty());
+  }
+
+  private static final class CapturingProducer implements MessageProducer<ContextualStatistics> {
+    private final BlockingQueue<ContextualStatistics> messages = new LinkedBlockingQueue<>();
+
+    @Override
+    public void pushManagementMessage(ContextualStatistics message) {
+      messages.add(message);
+    }
+
+    @Override
+    public void pushManagementMessage(ContextualStatistics message, MessagePriority priority) {
+      messages.add(message);
+    }
+
+    @Override
+    public int getRemainingCapacity() {
+      return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int getBacklog() {
+      return 0;
+    }
+  }
+}
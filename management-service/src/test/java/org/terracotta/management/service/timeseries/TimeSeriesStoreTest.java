@@ -0,0 +1,248 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Entity Management Service.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package org.terracotta.management.service.timeseries;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terracotta.management.context.Context;
+import org.terracotta.management.service.impl.DefaultManagementService;
+import org.terracotta.management.service.statistics.SampleSeries;
+import org.terracotta.management.service.statistics.SampleSeriesStatistic;
+import org.terracotta.management.stats.ContextualStatistics;
+import org.terracotta.management.stats.Statistic;
+import org.terracotta.voltron.management.producer.MessageProducer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.terracotta.management.service.TestConstants.PAUSE;
+
+/**
+ * Test retaining and querying the history of statistics.
+ *
+ * @author RKAV
+ */
+public class TimeSeriesStoreTest {
+  private static final Context CONTEXT = Context.create("cacheName", "cache1");
+
+  @Test
+  public void testBlockRoundTrip() {
+    Random random = new Random(42);
+    CompressedBlock block = new CompressedBlock(1 << 10);
+    List<long[]> appended = new ArrayList<>();
+    long timestamp = System.currentTimeMillis();
+    double value = 0.5;
+    while (true) {
+      // jittered intervals and a random walk, with the occasional outlier
+      timestamp += 1000 + random.nextInt(5) - 2 + (random.nextInt(50) == 0 ? 100_000 : 0);
+      value += random.nextInt(3) == 0 ? 0 : random.nextGaussian();
+      long valueBits = Double.doubleToRawLongBits(value);
+      if (!block.append(timestamp, valueBits)) {
+        break;
+      }
+      appended.add(new long[] {timestamp, valueBits});
+    }
+    Assert.assertTrue(block.isSealed());
+    Assert.assertEquals(appended.size(), block.size());
+
+    List<long[]> read = new ArrayList<>();
+    block.read(Long.MIN_VALUE, Long.MAX_VALUE, (t, v) -> read.add(new long[] {t, v}));
+    Assert.assertEquals(appended.size(), read.size());
+    for (int i = 0; i < appended.size(); i++) {
+      Assert.assertArrayEquals(appended.get(i), read.get(i));
+    }
+
+    List<long[]> range = new ArrayList<>();
+    block.read(appended.get(10)[0], appended.get(19)[0], (t, v) -> range.add(new long[] {t, v}));
+    Assert.assertEquals(10, range.size());
+    Assert.assertArrayEquals(appended.get(10), range.get(0));
+  }
+
+  @Test
+  public void testCompressesRegularSamples() {
+    CompressedBlock block = new CompressedBlock(1 << 10);
+    long timestamp = 1_000_000L;
+    long hits = 0;
+    int samples = 0;
+    while (block.append(timestamp, hits)) {
+      timestamp += 1000;
+      hits += samples % 4;
+      samples++;
+    }
+    // less than 2 bytes per sample, against 16 bytes uncompressed
+    Assert.assertTrue("Only " + samples + " samples", samples > 500);
+    block.seal();
+    Assert.assertTrue(block.sizeInBytes() <= 1 << 10);
+  }
+
+  @Test
+  public void testQueryTimeRange() {
+    TimeSeriesStore store = new TimeSeriesStore();
+    long[] timestamps = new long[100];
+    long[] hits = new long[100];
+    double[] ratios = new double[100];
+    for (int i = 0; i < timestamps.length; i++) {
+      timestamps[i] = 1_000_000L + i * 1000L;
+      hits[i] = i * 3;
+      ratios[i] = i / 100.0;
+    }
+    store.postMessages(Collections.singletonList(batch(CONTEXT,
+        new SampleSeriesStatistic("hits", SampleSeries.ofLongs(timestamps, hits), "count"),
+        new SampleSeriesStatistic("ratio", SampleSeries.ofDoubles(timestamps, ratios), "ratio"))));
+
+    SampleSeries hitSeries = store.query(CONTEXT, "hits", timestamps[10], timestamps[19]);
+    Assert.assertFalse(hitSeries.isFloatingPoint());
+    Assert.assertEquals(10, hitSeries.size());
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(timestamps[10 + i], hitSeries.getTimestamp(i));
+      Assert.assertEquals(hits[10 + i], hitSeries.getLongValue(i));
+    }
+    SampleSeries ratioSeries = store.query(CONTEXT, "ratio", 0, Long.MAX_VALUE);
+    Assert.assertTrue(ratioSeries.isFloatingPoint());
+    Assert.assertEquals(100, ratioSeries.size());
+    Assert.assertEquals(0.42, ratioSeries.getDoubleValue(42), 0.0);
+
+    Assert.assertEquals(0, store.query(CONTEXT, "misses", 0, Long.MAX_VALUE).size());
+    Context other = Context.create("cacheName", "cache2");
+    store.postMessages(Collections.singletonList(batch(other,
+        new SampleSeriesStatistic("hits", SampleSeries.ofLongs(new long[] {timestamps[0]}, new long[] {7}), "count"))));
+    Map<Context, SampleSeries> allHits = store.query("hits", timestamps[0], timestamps[0]);
+    Assert.assertEquals(2, allHits.size());
+    Assert.assertEquals(0, allHits.get(CONTEXT).getLongValue(0));
+    Assert.assertEquals(7, allHits.get(other).getLongValue(0));
+  }
+
+  @Test
+  public void testOlderSamplesAreDownsampled() {
+    // small blocks, so that raw samples expire block by block
+    TimeSeriesStore store = new TimeSeriesStore(Arrays.asList(
+        new RetentionTier(0, 10, SECONDS),
+        new RetentionTier(1000, 600_000, MILLISECONDS)), 64, TimeSeriesStore.DEFAULT_MAX_MEMORY);
+    int count = 600;
+    long[] timestamps = new long[count];
+    double[] values = new double[count];
+    for (int i = 0; i < count; i++) {
+      timestamps[i] = 1_000_000L + i * 100L;
+      values[i] = i % 10;
+    }
+    store.postMessages(Collections.singletonList(batch(CONTEXT,
+        new SampleSeriesStatistic("load", SampleSeries.ofDoubles(timestamps, values), "ratio"))));
+
+    SampleSeries history = store.query(CONTEXT, "load", 0, Long.MAX_VALUE);
+    // older samples at a resolution of a second, averaging 10 raw samples each
+    Assert.assertEquals(1_000_000L, history.getTimestamp(0));
+    Assert.assertEquals(1_001_000L, history.getTimestamp(1));
+    Assert.assertEquals(4.5, history.getDoubleValue(0), 0.0);
+    // the last 10 seconds or so as sampled
+    Assert.assertEquals(timestamps[count - 1], history.getTimestamp(history.size() - 1));
+    Assert.assertEquals(timestamps[count - 2], history.getTimestamp(history.size() - 2));
+    Assert.assertTrue(history.size() < count);
+    for (int i = 1; i < history.size(); i++) {
+      Assert.assertTrue(history.getTimestamp(i) > history.getTimestamp(i - 1));
+    }
+  }
+
+  @Test
+  public void testMemoryIsBounded() {
+    int blockSize = 64;
+    long maxMemory = 16 * blockSize;
+    TimeSeriesStore store = new TimeSeriesStore(Collections.singletonList(new RetentionTier(0, 1, HOURS)),
+        blockSize, maxMemory);
+    for (int i = 0; i < 10_000; i++) {
+      store.postMessages(Collections.singletonList(batch(CONTEXT, new SampleSeriesStatistic("hits",
+          SampleSeries.ofLongs(new long[] {i * 1000L}, new long[] {i * (long)i}), "count"))));
+      Assert.assertTrue(store.getMemoryUsage() <= maxMemory);
+    }
+    SampleSeries retained = store.query(CONTEXT, "hits", 0, Long.MAX_VALUE);
+    Assert.assertTrue(retained.size() > 0);
+    Assert.assertEquals(9_999_000L, retained.getTimestamp(retained.size() - 1));
+  }
+
+  @Test
+  public void testIdleSeriesEvictedFirst() {
+    int blockSize = 64;
+    long maxMemory = 8 * blockSize;
+    TimeSeriesStore store = new TimeSeriesStore(Collections.singletonList(new RetentionTier(0, 1, HOURS)),
+        blockSize, maxMemory);
+    Context idle = Context.create("cacheName", "idle");
+    for (int i = 0; i < 100; i++) {
+      store.postMessages(Collections.singletonList(batch(idle, new SampleSeriesStatistic("hits",
+          SampleSeries.ofLongs(new long[] {i * 1000L}, new long[] {i * (long)i}), "count"))));
+    }
+    Assert.assertEquals(100, store.query(idle, "hits", 0, Long.MAX_VALUE).size());
+
+    // the context still reporting keeps its history, at the expense of the one that stopped
+    for (int i = 100; i < 1000; i++) {
+      store.postMessages(Collections.singletonList(batch(CONTEXT, new SampleSeriesStatistic("hits",
+          SampleSeries.ofLongs(new long[] {i * 1000L}, new long[] {i * (long)i}), "count"))));
+      Assert.assertTrue(store.getMemoryUsage() <= maxMemory);
+    }
+    Assert.assertEquals(0, store.query(idle, "hits", 0, Long.MAX_VALUE).size());
+    Assert.assertTrue(store.query(CONTEXT, "hits", 0, Long.MAX_VALUE).size() > 100);
+  }
+
+  @Test
+  public void testIdleSeriesExpired() {
+    TimeSeriesStore store = new TimeSeriesStore(Collections.singletonList(new RetentionTier(0, 1, HOURS)),
+        TimeSeriesStore.DEFAULT_BLOCK_SIZE, TimeSeriesStore.DEFAULT_MAX_MEMORY);
+    Context idle = Context.create("cacheName", "idle");
+    store.postMessages(Collections.singletonList(batch(idle, new SampleSeriesStatistic("hits",
+        SampleSeries.ofLongs(new long[] {1000L, 2000L}, new long[] {1, 2}), "count"))));
+    Assert.assertEquals(2, store.query(idle, "hits", 0, Long.MAX_VALUE).size());
+
+    // an hour later, as reported by other contexts
+    long later = 2000L + HOURS.toMillis(1) + 1;
+    store.postMessages(Collections.singletonList(batch(CONTEXT, new SampleSeriesStatistic("hits",
+        SampleSeries.ofLongs(new long[] {later}, new long[] {3}), "count"))));
+    Assert.assertEquals(0, store.query(idle, "hits", 0, Long.MAX_VALUE).size());
+    Assert.assertEquals(TimeSeriesStore.DEFAULT_BLOCK_SIZE, store.getMemoryUsage());
+  }
+
+  @Test
+  public void testFedFromStatisticsMessages() {
+    DefaultManagementService managementService = new DefaultManagementService();
+    TimeSeriesStore store = managementService.getTimeSeriesStore();
+    MessageProducer<ContextualStatistics> producer = managementService.getMessageDeliveryInfrastructure()
+        .createMessageProducer(ContextualStatistics.class);
+    producer.pushManagementMessage(batch(CONTEXT, new SampleSeriesStatistic("hits",
+        SampleSeries.ofLongs(new long[] {1000L, 2000L}, new long[] {1, 2}), "count")));
+
+    for (int i = 0; i < 100 && store.query(CONTEXT, "hits", 0, Long.MAX_VALUE).size() < 2; i++) {
+      PAUSE(100);
+    }
+    Assert.assertEquals(2, store.query(CONTEXT, "hits", 0, Long.MAX_VALUE).getLongValue(1));
+    managementService.close();
+  }
+
+  private static ContextualStatistics batch(Context context, Statistic<?, ?>... statistics) {
+    Map<String, Statistic<?, ?>> map = new LinkedHashMap<>();
+    for (Statistic<?, ?> statistic : statistics) {
+      map.put(statistic.getName(), statistic);
+    }
+    return new ContextualStatistics(context, map);
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Connection API.
+ *
+ * The Initial Developer of the Covered Software is
+ * Terracotta, Inc., a Software AG company
+ */
+
+package org.terracotta.voltron.proxy;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Future;
+
+/**
+ * @author Alex Snaps
+ */
+final class NoProxyMetrics implements ProxyMetrics {
+
+  public boolean isEnabled() {
+    return false;
+  }
+
+  public void requestEncoded(final Method method, final int size, final long nanos) {
+  }
+
+  public void requestDecoded(final Method method, final int size, final long nanos) {
+  }
+
+  public void responseEncoded(final Method method, final int size, final long nanos) {
+  }
+
+  public void responseDecoded(final Method method, final int size, final long nanos) {
+  }
+
+  public void invoked(final Method method, final long nanos) {
+  }
+
+  public void asyncInvocationStarted(final Method method, final Future<?> call) {
+  }
+
+  public void messageFired(final Class<?> type, final int clients, final long nanos) {
+  }
+}
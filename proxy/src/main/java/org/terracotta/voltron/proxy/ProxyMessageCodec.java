@@ -34,10 +34,18 @@ public class ProxyMessageCodec implements MessageCodec<ProxyEntityMessage, Proxy
 
   private final Codec codec;
   private final Map<Byte, Method> mappings;
+  private final ProxyMetrics metrics;
+  private final boolean timed;
 
   public ProxyMessageCodec(Codec codec, Class<?> proxyType, Class<?> ... messageTypes) {
+    this(codec, ProxyMetrics.NONE, proxyType, messageTypes);
+  }
+
+  public ProxyMessageCodec(Codec codec, ProxyMetrics metrics, Class<?> proxyType, Class<?> ... messageTypes) {
     this.codec = codec;
     this.mappings = createMethodMappings(proxyType);
+    this.metrics = metrics;
+    this.timed = metrics.isEnabled();
   }
 
   static Map<Byte, Method> createMethodMappings(final Class type) {
@@ -52,12 +60,24 @@ public class ProxyMessageCodec implements MessageCodec<ProxyEntityMessage, Proxy
   }
 
   public byte[] serialize(ProxyEntityResponse r) {
-    return codec.encode(r.getResponseType(), r.getResponse());
+    if (!timed || r.getMethod() == null) {
+      return codec.encode(r.getResponseType(), r.getResponse());
+    }
+    final long start = System.nanoTime();
+    final byte[] encoded = codec.encode(r.getResponseType(), r.getResponse());
+    metrics.responseEncoded(r.getMethod(), encoded.length, System.nanoTime() - start);
+    return encoded;
   }
 
   public ProxyEntityMessage deserialize(final byte[] bytes) {
     final Method method = decodeMethod(bytes[0]);
-    return new ProxyEntityMessage(method, decodeArgs(bytes, method.getParameterTypes()));
+    if (!timed) {
+      return new ProxyEntityMessage(method, decodeArgs(bytes, method.getParameterTypes()));
+    }
+    final long start = System.nanoTime();
+    final Object[] args = decodeArgs(bytes, method.getParameterTypes());
+    metrics.requestDecoded(method, bytes.length, System.nanoTime() - start);
+    return new ProxyEntityMessage(method, args);
   }
 
   public ProxyEntityMessage deserializeForSync(final int i, final byte[] bytes) {
@@ -0,0 +1,84 @@
+/*
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Connection API.
+ *
+ * The Initial Developer of the Covered Software is
+ * Terracotta, Inc., a Software AG company
+ */
+
+package org.terracotta.voltron.proxy;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Future;
+
+/**
+ * Instrumentation of the calls made through entity proxies, per proxied method.
+ * <p>
+ * The client side records the encoding of requests, the decoding of responses and the end-to-end latency of
+ * calls, as well as the asynchronous calls in flight. The server side records the decoding of requests, the
+ * encoding of responses and the execution time of calls, as well as the fan-out of messages to the clients. Times are in nanoseconds, sizes in bytes.
+ * <p>
+ * Implementations are called on every invocation and must neither block nor allocate. Nothing is measured unless
+ * {@link #isEnabled()}, which is the case of {@link #NONE}, the default.
+ *
+ * @author Alex Snaps
+ */
+public interface ProxyMetrics {
+
+  /**
+   * Records nothing, at no cost.
+   */
+  ProxyMetrics NONE = new NoProxyMetrics();
+
+  /**
+   * @return whether calls are measured and recorded, only checked once by the proxies
+   */
+  boolean isEnabled();
+
+  void requestEncoded(Method method, int size, long nanos);
+
+  void requestDecoded(Method method, int size, long nanos);
+
+  void responseEncoded(Method method, int size, long nanos);
+
+  void responseDecoded(Method method, int size, long nanos);
+
+  /**
+   * Record a completed call. On the client, the latency spans from the encoding of the request to the decoding of
+   * the response, or to the first retrieval of the result or cancellation for asynchronous calls. On the server, it
+   * is the execution time of the call.
+   *
+   * @param method the proxied method
+   * @param nanos latency of the call
+   */
+  void invoked(Method method, long nanos);
+
+  /**
+   * Record an asynchronous call, in flight until the call {@link Future#isDone() is done}, answered or cancelled.
+   * No completion is reported for the call, whose result may never be retrieved: implementations check on it
+   * themselves.
+   *
+   * @param method the proxied method
+   * @param call the future handed out for the call
+   */
+  void asyncInvocationStarted(Method method, Future<?> call);
+
+  /**
+   * Record a message fired by the server to its clients, with the time taken until every client acknowledged it.
+   * Fire and forget messages are recorded with the time taken to hand them over.
+   *
+   * @param type the type of the message
+   * @param clients number of clients the message was sent to
+   * @param nanos time taken to deliver the message to all clients
+   */
+  void messageFired(Class<?> type, int clients, long nanos);
+}
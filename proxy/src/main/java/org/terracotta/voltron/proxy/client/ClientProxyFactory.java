@@ -21,6 +21,7 @@ import org.terracotta.connection.entity.Entity;
 import org.terracotta.entity.EntityClientEndpoint;
 import org.terracotta.voltron.proxy.Codec;
 import org.terracotta.voltron.proxy.CommonProxyFactory;
+import org.terracotta.voltron.proxy.ProxyMetrics;
 import org.terracotta.voltron.proxy.SerializationCodec;
 import org.terracotta.voltron.proxy.client.messages.ServerMessageAware;
 
@@ -63,8 +64,26 @@ public class ClientProxyFactory {
     return createProxy(clientType, type, entityClientEndpoint, new SerializationCodec());
   }
 
+  public static <T, R extends Entity & ServerMessageAware> R createEntityProxy(Class<T> clientType, Class<? super T> type,
+                                                                               EntityClientEndpoint entityClientEndpoint,
+                                                                               final Codec codec, final ProxyMetrics metrics,
+                                                                               Class<?> messageType, Class<?>... messageTypes) {
+    return (R) createProxy(clientType, type, entityClientEndpoint, codec, metrics, sum(messageType, messageTypes));
+  }
+
+  public static <T, R extends Entity> R createEntityProxy(Class<T> clientType, Class<? super T> type,
+                                                       EntityClientEndpoint entityClientEndpoint, final Codec codec,
+                                                       final ProxyMetrics metrics) {
+    return (R) createProxy(clientType, type, entityClientEndpoint, codec, metrics);
+  }
+
   public static <T> T createProxy(Class<T> clientType, Class<? super T> type, EntityClientEndpoint entityClientEndpoint,
                                   final Codec codec, Class... messageTypes) {
+    return createProxy(clientType, type, entityClientEndpoint, codec, ProxyMetrics.NONE, messageTypes);
+  }
+
+  public static <T> T createProxy(Class<T> clientType, Class<? super T> type, EntityClientEndpoint entityClientEndpoint,
+                                  final Codec codec, final ProxyMetrics metrics, Class... messageTypes) {
 
     if (entityClientEndpoint == null) {
       throw new NullPointerException("EntityClientEndpoint has to be provided!");
@@ -83,7 +102,8 @@ public class ClientProxyFactory {
       interfaces = new Class[] { clientType, Entity.class, ServerMessageAware.class };
     }
     return clientType.cast(Proxy.newProxyInstance(Entity.class.getClassLoader(), interfaces,
-        new VoltronProxyInvocationHandler(mappings, entityClientEndpoint, codec, createEventTypeMappings(messageTypes))));
+        new VoltronProxyInvocationHandler(mappings, entityClientEndpoint, codec, createEventTypeMappings(messageTypes),
+            metrics)));
   }
 
   static Map<Method, Byte> createMethodMappings(final Class type) {
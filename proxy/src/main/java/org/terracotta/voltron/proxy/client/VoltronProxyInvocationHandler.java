@@ -25,6 +25,7 @@ import org.terracotta.exception.EntityException;
 import org.terracotta.voltron.proxy.Async;
 import org.terracotta.voltron.proxy.ClientId;
 import org.terracotta.voltron.proxy.Codec;
+import org.terracotta.voltron.proxy.ProxyMetrics;
 import org.terracotta.voltron.proxy.client.messages.MessageListener;
 import org.terracotta.voltron.proxy.client.messages.ServerMessageAware;
 
@@ -69,13 +70,24 @@ class VoltronProxyInvocationHandler implements InvocationHandler {
   private final EntityClientEndpoint entityClientEndpoint;
   private final Codec codec;
   private final ConcurrentMap<Class, CopyOnWriteArrayList<MessageListener>> listeners;
+  private final ProxyMetrics metrics;
+  private final boolean timed;
 
   public VoltronProxyInvocationHandler(final Map<Method, Byte> mappings,
                                        final EntityClientEndpoint entityClientEndpoint,
                                        final Codec codec, Map<Byte, Class> eventMappings) {
+    this(mappings, entityClientEndpoint, codec, eventMappings, ProxyMetrics.NONE);
+  }
+
+  public VoltronProxyInvocationHandler(final Map<Method, Byte> mappings,
+                                       final EntityClientEndpoint entityClientEndpoint,
+                                       final Codec codec, Map<Byte, Class> eventMappings,
+                                       final ProxyMetrics metrics) {
     this.mappings = mappings;
     this.entityClientEndpoint = entityClientEndpoint;
     this.codec = codec;
+    this.metrics = metrics;
+    this.timed = metrics.isEnabled();
     this.listeners = new ConcurrentHashMap<Class, CopyOnWriteArrayList<MessageListener>>();
     if (eventMappings.size() > 0) {
       for (Class aClass : eventMappings.values()) {
@@ -101,7 +113,11 @@ class VoltronProxyInvocationHandler implements InvocationHandler {
       return null;
     }
 
+    final long start = timed ? System.nanoTime() : 0L;
     final byte[] payload = encode(method, args);
+    if (timed) {
+      metrics.requestEncoded(method, payload.length, System.nanoTime() - start);
+    }
 
     final InvocationBuilder builder = entityClientEndpoint.beginInvoke()
         .payload(payload);
@@ -125,7 +141,20 @@ class VoltronProxyInvocationHandler implements InvocationHandler {
 
       final InvokeFuture<byte[]> future = builder
           .invoke();
+      if (timed) {
+        final ProxiedInvokeFuture proxiedFuture = new ProxiedInvokeFuture(future, decodeTo, codec, method, metrics, start);
+        metrics.asyncInvocationStarted(method, proxiedFuture);
+        return proxiedFuture;
+      }
       return new ProxiedInvokeFuture(future, decodeTo, codec);
+    } else if (timed) {
+      final byte[] response = builder.invoke().get();
+      final long decodeStart = System.nanoTime();
+      final Object result = codec.decode(response, method.getReturnType());
+      final long end = System.nanoTime();
+      metrics.responseDecoded(method, response.length, end - decodeStart);
+      metrics.invoked(method, end - start);
+      return result;
     } else {
       return codec.decode(builder.invoke().get(), method.getReturnType());
     }
@@ -165,18 +194,32 @@ class VoltronProxyInvocationHandler implements InvocationHandler {
     private final InvokeFuture<byte[]> future;
     private final Type decodeTo;
     private final Codec codec;
+    // null unless the call is measured
+    private final Method method;
+    private final ProxyMetrics metrics;
+    private final long start;
 
     private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private final AtomicBoolean completed = new AtomicBoolean(false);
 
     public ProxiedInvokeFuture(final InvokeFuture<byte[]> future, final Type decodeTo, final Codec codec) {
+      this(future, decodeTo, codec, null, null, 0L);
+    }
+
+    public ProxiedInvokeFuture(final InvokeFuture<byte[]> future, final Type decodeTo, final Codec codec,
+                               final Method method, final ProxyMetrics metrics, final long start) {
       this.future = future;
       this.decodeTo = decodeTo;
       this.codec = codec;
+      this.method = method;
+      this.metrics = metrics;
+      this.start = start;
     }
 
     public boolean cancel(final boolean mayInterruptIfRunning) {
       if (cancelled.compareAndSet(false, true)) {
         future.interrupt();
+        completedWithoutResult();
         return true;
       }
       return false;
@@ -187,23 +230,46 @@ class VoltronProxyInvocationHandler implements InvocationHandler {
     }
 
     public boolean isDone() {
-      return future.isDone();
+      return cancelled.get() || future.isDone();
     }
 
     public Object get() throws InterruptedException, ExecutionException {
       try {
-        return codec.decode(future.get(), (Class<?>)decodeTo);
+        return decode(future.get());
       } catch (EntityException e) {
+        completedWithoutResult();
         throw new ExecutionException(e);
       }
     }
 
     public Object get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
       try {
-        return codec.decode(future.getWithTimeout(timeout, unit), (Class<?>)decodeTo);
+        return decode(future.getWithTimeout(timeout, unit));
       } catch (EntityException e) {
+        completedWithoutResult();
         throw new ExecutionException(e);
       }
     }
+
+    private void completedWithoutResult() {
+      if (metrics != null && completed.compareAndSet(false, true)) {
+        metrics.invoked(method, System.nanoTime() - start);
+      }
+    }
+
+    private Object decode(final byte[] response) {
+      if (metrics == null) {
+        return codec.decode(response, (Class<?>)decodeTo);
+      }
+      final long decodeStart = System.nanoTime();
+      final Object result = codec.decode(response, (Class<?>)decodeTo);
+      final long end = System.nanoTime();
+      // the latency extends to the first retrieval of the result
+      if (completed.compareAndSet(false, true)) {
+        metrics.responseDecoded(method, response.length, end - decodeStart);
+        metrics.invoked(method, end - start);
+      }
+      return result;
+    }
   }
 }
@@ -0,0 +1,129 @@
+/*
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Connection API.
+ *
+ * The Initial Developer of the Covered Software is
+ * Terracotta, Inc., a Software AG company
+ */
+
+package org.terracotta.voltron.proxy.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non negative values, with a fixed number of log-linear buckets.
+ * <p>
+ * Each power of 2 is split into 8 linear buckets, so that recorded values are known
+ * within 12.5% whatever their magnitude, from nanoseconds to days. Recording a value increments a single bucket
+ * and never allocates.
+ *
+ * @author Alex Snaps
+ */
+public final class LogLinearHistogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // values below SUB_BUCKETS get a bucket each, then SUB_BUCKETS buckets per power of 2, up to 2^63
+  static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts;
+  private final StripedCounter total;
+
+  public LogLinearHistogram() {
+    this.counts = new AtomicLongArray(BUCKETS);
+    this.total = new StripedCounter();
+  }
+
+  /**
+   * Record a value, negative values are recorded as 0.
+   *
+   * @param value the value
+   */
+  public void record(final long value) {
+    final long recorded = Math.max(0L, value);
+    counts.incrementAndGet(bucketOf(recorded));
+    total.add(recorded);
+  }
+
+  public long getCount() {
+    long count = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  public long getTotal() {
+    return total.sum();
+  }
+
+  public double getMean() {
+    final long count = getCount();
+    return count == 0L ? 0.0 : (double)getTotal() / count;
+  }
+
+  /**
+   * Get the value below which the given percentage of the recorded values fall.
+   *
+   * @param percentile the percentage, between 0 and 100
+   * @return the highest value of the bucket holding the percentile, 0 if nothing was recorded
+   */
+  public long getValueAtPercentile(final double percentile) {
+    final long[] snapshot = new long[BUCKETS];
+    long count = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      count += snapshot[i];
+    }
+    if (count == 0L) {
+      return 0L;
+    }
+    final long rank = Math.max(1L, (long)Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * count));
+    long seen = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return highestValueOf(i);
+      }
+    }
+    return highestValueOf(BUCKETS - 1);
+  }
+
+  public long getMaxValue() {
+    for (int i = BUCKETS - 1; i >= 0; i--) {
+      if (counts.get(i) > 0L) {
+        return highestValueOf(i);
+      }
+    }
+    return 0L;
+  }
+
+  static int bucketOf(final long value) {
+    if (value < SUB_BUCKETS) {
+      return (int)value;
+    }
+    final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return ((shift + 1) << SUB_BUCKET_BITS) + (int)((value >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  static long lowestValueOf(final int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    final int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+    return (long)(SUB_BUCKETS | (bucket & (SUB_BUCKETS - 1))) << shift;
+  }
+
+  static long highestValueOf(final int bucket) {
+    return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowestValueOf(bucket + 1) - 1;
+  }
+}
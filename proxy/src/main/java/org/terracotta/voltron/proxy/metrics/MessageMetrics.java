@@ -0,0 +1,67 @@
+/*
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Connection API.
+ *
+ * The Initial Developer of the Covered Software is
+ * Terracotta, Inc., a Software AG company
+ */
+
+package org.terracotta.voltron.proxy.metrics;
+
+/**
+ * The metrics of the messages of a single type fired by a server to its clients, as recorded by
+ * {@link RecordingProxyMetrics}.
+ *
+ * @author Alex Snaps
+ */
+public final class MessageMetrics {
+
+  private final Class<?> type;
+  private final StripedCounter fired = new StripedCounter();
+  private final StripedCounter sent = new StripedCounter();
+  private final LogLinearHistogram fanOutLatency = new LogLinearHistogram();
+
+  MessageMetrics(final Class<?> type) {
+    this.type = type;
+  }
+
+  public Class<?> getType() {
+    return type;
+  }
+
+  /**
+   * @return number of messages fired
+   */
+  public long getFired() {
+    return fired.sum();
+  }
+
+  /**
+   * @return number of messages sent, one per recipient client of each fired message
+   */
+  public long getSent() {
+    return sent.sum();
+  }
+
+  /**
+   * @return time in nanoseconds taken to deliver each fired message to all its recipients
+   */
+  public LogLinearHistogram getFanOutLatency() {
+    return fanOutLatency;
+  }
+
+  void fired(final int clients, final long nanos) {
+    fired.increment();
+    sent.add(clients);
+    fanOutLatency.record(nanos);
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Connection API.
+ *
+ * The Initial Developer of the Covered Software is
+ * Terracotta, Inc., a Software AG company
+ */
+
+package org.terracotta.voltron.proxy.metrics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Future;
+
+/**
+ * The metrics of a single proxied method, as recorded by {@link RecordingProxyMetrics}.
+ *
+ * @author Alex Snaps
+ */
+public final class MethodMetrics {
+
+  private final Method method;
+  private final StripedCounter calls = new StripedCounter();
+  private final PendingCalls inFlight = new PendingCalls();
+  private final LogLinearHistogram requestSize = new LogLinearHistogram();
+  private final LogLinearHistogram responseSize = new LogLinearHistogram();
+  private final LogLinearHistogram encodeTime = new LogLinearHistogram();
+  private final LogLinearHistogram decodeTime = new LogLinearHistogram();
+  private final LogLinearHistogram latency = new LogLinearHistogram();
+
+  MethodMetrics(final Method method) {
+    this.method = method;
+  }
+
+  public Method getMethod() {
+    return method;
+  }
+
+  /**
+   * @return number of completed calls
+   */
+  public long getCalls() {
+    return calls.sum();
+  }
+
+  /**
+   * Settle the asynchronous calls answered or cancelled since last called, whether their result was retrieved or
+   * not, and count the others.
+   *
+   * @return number of asynchronous calls neither answered nor cancelled yet
+   */
+  public long getInFlight() {
+    return inFlight.sweep();
+  }
+
+  /**
+   * @return sizes in bytes of the encoded requests
+   */
+  public LogLinearHistogram getRequestSize() {
+    return requestSize;
+  }
+
+  /**
+   * @return sizes in bytes of the encoded responses
+   */
+  public LogLinearHistogram getResponseSize() {
+    return responseSize;
+  }
+
+  /**
+   * @return time in nanoseconds spent encoding requests and responses
+   */
+  public LogLinearHistogram getEncodeTime() {
+    return encodeTime;
+  }
+
+  /**
+   * @return time in nanoseconds spent decoding requests and responses
+   */
+  public LogLinearHistogram getDecodeTime() {
+    return decodeTime;
+  }
+
+  /**
+   * @return latency in nanoseconds of the completed calls, see {@link org.terracotta.voltron.proxy.ProxyMetrics#invoked(Method, long)}
+   */
+  public LogLinearHistogram getLatency() {
+    return latency;
+  }
+
+  void requestCoded(final int size, final long nanos, final boolean encoded) {
+    requestSize.record(size);
+    (encoded ? encodeTime : decodeTime).record(nanos);
+  }
+
+  void responseCoded(final int size, final long nanos, final boolean encoded) {
+    responseSize.record(size);
+    (encoded ? encodeTime : decodeTime).record(nanos);
+  }
+
+  void invoked(final long nanos) {
+    calls.increment();
+    latency.record(nanos);
+  }
+
+  void asyncInvocationStarted(final Future<?> call) {
+    inFlight.add(call);
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Connection API.
+ *
+ * The Initial Developer of the Covered Software is
+ * Terracotta, Inc., a Software AG company
+ */
+
+
+package org.terracotta.voltron.proxy.metrics;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The asynchronous calls of a method still in flight, settled lazily as they are found done.
+ * <p>
+ * Calls are held in fixed size segments of slots, chained as needed to hold as many calls as were ever in flight at
+ * once. A call takes the first slot that is free or holds a call done, which it replaces, so that tracking a call
+ * allocates nothing once the segments needed exist. Done calls left in their slots are only released when
+ * {@link #sweep() swept}, or replaced.
+ *
+ * @author Alex Snaps
+ */
+final class PendingCalls {
+
+  // power of two
+  private static final int SEGMENT_SIZE = 64;
+
+  private final Segment head = new Segment();
+
+  void add(final Future<?> call) {
+    // threads start from different slots, so that they do not contend on the same ones
+    final int start = (int)Thread.currentThread().getId() & (SEGMENT_SIZE - 1);
+    Segment segment = head;
+    while (!segment.claim(call, start)) {
+      Segment next = segment.next.get();
+      if (next == null) {
+        segment.next.compareAndSet(null, new Segment());
+        next = segment.next.get();
+      }
+      segment = next;
+    }
+  }
+
+  /**
+   * Release the calls done, whether their result was retrieved or not.
+   *
+   * @return number of calls still in flight
+   */
+  int sweep() {
+    int pending = 0;
+    for (Segment segment = head; segment != null; segment = segment.next.get()) {
+      pending += segment.sweep();
+    }
+    return pending;
+  }
+
+  private static final class Segment {
+
+    private final AtomicReferenceArray<Future<?>> slots = new AtomicReferenceArray<Future<?>>(SEGMENT_SIZE);
+    private final AtomicReference<Segment> next = new AtomicReference<Segment>();
+
+    boolean claim(final Future<?> call, final int start) {
+      for (int i = 0; i < SEGMENT_SIZE; i++) {
+        final int index = (start + i) & (SEGMENT_SIZE - 1);
+        final Future<?> current = slots.get(index);
+        if ((current == null || current.isDone()) && slots.compareAndSet(index, current, call)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    int sweep() {
+      int pending = 0;
+      for (int i = 0; i < SEGMENT_SIZE; i++) {
+        final Future<?> current = slots.get(i);
+        if (current != null) {
+          if (current.isDone()) {
+            slots.compareAndSet(i, current, null);
+          } else {
+            pending++;
+          }
+        }
+      }
+      return pending;
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Connection API.
+ *
+ * The Initial Developer of the Covered Software is
+ * Terracotta, Inc., a Software AG company
+ */
+
+package org.terracotta.voltron.proxy.metrics;
+
+import org.terracotta.voltron.proxy.ProxyMetrics;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Records the {@link ProxyMetrics} of every proxied method in a {@link MethodMetrics}, and of every type of fired
+ * message in a {@link MessageMetrics}.
+ * <p>
+ * The metrics of a method are created on its first call, after which recording only updates striped counters
+ * and histogram buckets. Asynchronous calls are held until found done, which {@link MethodMetrics#getInFlight()}
+ * checks when queried, so that no thread watches them.
+ * <p>
+ * An instance can be shared by several proxies of the same end of the calls. The client and the server each need
+ * their own instance, as their latencies differ and both record the same calls: an instance recording for one end
+ * rejects the other with an {@link IllegalStateException}.
+ *
+ * @author Alex Snaps
+ */
+public class RecordingProxyMetrics implements ProxyMetrics {
+
+  private final ConcurrentMap<Method, MethodMetrics> methods = new ConcurrentHashMap<Method, MethodMetrics>();
+  private final ConcurrentMap<Class<?>, MessageMetrics> messages = new ConcurrentHashMap<Class<?>, MessageMetrics>();
+  // the end recorded, unknown until it records a call
+  private final AtomicReference<End> end = new AtomicReference<End>();
+
+  public boolean isEnabled() {
+    return true;
+  }
+
+  public void requestEncoded(final Method method, final int size, final long nanos) {
+    recordedBy(End.CLIENT);
+    metricsOf(method).requestCoded(size, nanos, true);
+  }
+
+  public void requestDecoded(final Method method, final int size, final long nanos) {
+    recordedBy(End.SERVER);
+    metricsOf(method).requestCoded(size, nanos, false);
+  }
+
+  public void responseEncoded(final Method method, final int size, final long nanos) {
+    recordedBy(End.SERVER);
+    metricsOf(method).responseCoded(size, nanos, true);
+  }
+
+  public void responseDecoded(final Method method, final int size, final long nanos) {
+    recordedBy(End.CLIENT);
+    metricsOf(method).responseCoded(size, nanos, false);
+  }
+
+  public void invoked(final Method method, final long nanos) {
+    metricsOf(method).invoked(nanos);
+  }
+
+  public void asyncInvocationStarted(final Method method, final Future<?> call) {
+    recordedBy(End.CLIENT);
+    metricsOf(method).asyncInvocationStarted(call);
+  }
+
+  public void messageFired(final Class<?> type, final int clients, final long nanos) {
+    recordedBy(End.SERVER);
+    metricsOf(type).fired(clients, nanos);
+  }
+
+  /**
+   * @param method the proxied method
+   * @return the metrics of the method, null if it was never called
+   */
+  public MethodMetrics getMethodMetrics(final Method method) {
+    return methods.get(method);
+  }
+
+  /**
+   * @return the metrics of all methods called so far
+   */
+  public Map<Method, MethodMetrics> getMethodMetrics() {
+    return Collections.unmodifiableMap(methods);
+  }
+
+  /**
+   * @param type the type of fired messages
+   * @return the metrics of the messages of that type, null if none was fired
+   */
+  public MessageMetrics getMessageMetrics(final Class<?> type) {
+    return messages.get(type);
+  }
+
+  /**
+   * @return the metrics of all message types fired so far
+   */
+  public Map<Class<?>, MessageMetrics> getMessageMetrics() {
+    return Collections.unmodifiableMap(messages);
+  }
+
+  private void recordedBy(final End recording) {
+    final End recorded = end.get();
+    if (recorded == recording || (recorded == null && end.compareAndSet(null, recording))) {
+      return;
+    }
+    if (end.get() != recording) {
+      throw new IllegalStateException("Metrics recording the " + end.get() + " side of the calls cannot record the "
+                                      + recording + " side too, use one instance per end");
+    }
+  }
+
+  private MethodMetrics metricsOf(final Method method) {
+    MethodMetrics metrics = methods.get(method);
+    if (metrics == null) {
+      final MethodMetrics created = new MethodMetrics(method);
+      metrics = methods.putIfAbsent(method, created);
+      if (metrics == null) {
+        metrics = created;
+      }
+    }
+    return metrics;
+  }
+
+  private MessageMetrics metricsOf(final Class<?> type) {
+    MessageMetrics metrics = messages.get(type);
+    if (metrics == null) {
+      final MessageMetrics created = new MessageMetrics(type);
+      metrics = messages.putIfAbsent(type, created);
+      if (metrics == null) {
+        metrics = created;
+      }
+    }
+    return metrics;
+  }
+
+  private enum End {
+    CLIENT, SERVER;
+
+    @Override
+    public String toString() {
+      return name().toLowerCase();
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Connection API.
+ *
+ * The Initial Developer of the Covered Software is
+ * Terracotta, Inc., a Software AG company
+ */
+
+package org.terracotta.voltron.proxy.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter updated by many threads, without contending on a single value.
+ * <p>
+ * Threads add to one of several stripes, picked by thread id, each on its own cache line. Reading the counter
+ * sums all stripes, so that it is not a snapshot while threads keep updating it.
+ *
+ * @author Alex Snaps
+ */
+public final class StripedCounter {
+
+  // longs per stripe, so that stripes do not share a cache line
+  private static final int PADDING = 8;
+
+  private final AtomicLongArray cells;
+  private final int mask;
+
+  public StripedCounter() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  public StripedCounter(final int concurrency) {
+    int stripes = 1;
+    while (stripes < concurrency) {
+      stripes <<= 1;
+    }
+    this.cells = new AtomicLongArray(stripes * PADDING);
+    this.mask = stripes - 1;
+  }
+
+  public void increment() {
+    add(1L);
+  }
+
+  public void decrement() {
+    add(-1L);
+  }
+
+  public void add(final long delta) {
+    cells.getAndAdd(stripe() * PADDING, delta);
+  }
+
+  public long sum() {
+    long sum = 0L;
+    for (int i = 0; i < cells.length(); i += PADDING) {
+      sum += cells.get(i);
+    }
+    return sum;
+  }
+
+  private int stripe() {
+    // thread ids are handed out sequentially, which spreads threads evenly over the stripes
+    return (int)Thread.currentThread().getId() & mask;
+  }
+}
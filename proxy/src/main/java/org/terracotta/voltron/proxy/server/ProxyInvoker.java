@@ -21,6 +21,7 @@ import org.terracotta.entity.ClientCommunicator;
 import org.terracotta.entity.ClientDescriptor;
 import org.terracotta.entity.MessageCodec;
 import org.terracotta.voltron.proxy.Codec;
+import org.terracotta.voltron.proxy.ProxyMetrics;
 import org.terracotta.voltron.proxy.client.messages.MessageListener;
 import org.terracotta.voltron.proxy.server.messages.MessageFiring;
 import org.terracotta.voltron.proxy.server.messages.ProxyEntityMessage;
@@ -51,6 +52,8 @@ public class ProxyInvoker<T> {
   private final Map<Class, Byte> eventMappings;
   private final Set<Class> messageTypes;
   private final ClientCommunicator clientCommunicator;
+  private final ProxyMetrics metrics;
+  private final boolean timed;
   private final Set<ClientDescriptor> clients = Collections.synchronizedSet(new HashSet<ClientDescriptor>());
 
   private final ThreadLocal<InvocationContext> invocationContext = new ThreadLocal<InvocationContext>();
@@ -60,9 +63,16 @@ public class ProxyInvoker<T> {
   }
 
   public ProxyInvoker(Class<T> proxyType, T target, Codec codec, ClientCommunicator clientCommunicator, Class... messageTypes) {
+    this(proxyType, target, codec, ProxyMetrics.NONE, clientCommunicator, messageTypes);
+  }
+
+  public ProxyInvoker(Class<T> proxyType, T target, Codec codec, ProxyMetrics metrics,
+                      ClientCommunicator clientCommunicator, Class... messageTypes) {
     this.target = target;
     this.codec = codec;
-    this.messageCodec = new ProxyMessageCodec(codec, proxyType);
+    this.metrics = metrics;
+    this.timed = metrics.isEnabled();
+    this.messageCodec = new ProxyMessageCodec(codec, metrics, proxyType);
     this.messageTypes = new HashSet<Class>();
     for (Class eventType : messageTypes) {
       this.messageTypes.add(eventType);
@@ -91,7 +101,13 @@ public class ProxyInvoker<T> {
     try {
       try {
         invocationContext.set(new InvocationContext(clientDescriptor));
-        return ProxyEntityResponse.response(message.returnType(), message.invoke(target, clientDescriptor));
+        if (!timed) {
+          return ProxyEntityResponse.response(message.returnType(), message.invoke(target, clientDescriptor));
+        }
+        final long start = System.nanoTime();
+        final Object response = message.invoke(target, clientDescriptor);
+        metrics.invoked(message.method(), System.nanoTime() - start);
+        return ProxyEntityResponse.response(message.method(), message.returnType(), response);
       } finally {
         invocationContext.remove();
       }
@@ -107,6 +123,8 @@ public class ProxyInvoker<T> {
     if(!messageTypes.contains(type)) {
       throw new IllegalArgumentException("Event type '" + type + "' isn't supported");
     }
+    final long start = timed ? System.nanoTime() : 0;
+    int recipients = 0;
     Set<Future<Void>> futures = new HashSet<Future<Void>>();
     final InvocationContext invocationContext = this.invocationContext.get();
     final ClientDescriptor caller = invocationContext == null ? null : invocationContext.caller;
@@ -114,6 +132,7 @@ public class ProxyInvoker<T> {
       if (!client.equals(caller)) {
         final Future<Void> send = clientCommunicator.send(client, encode(type, message));
         futures.add(send);
+        recipients++;
       }
     }
     boolean interrupted = false;
@@ -131,6 +150,9 @@ public class ProxyInvoker<T> {
         }
       }
     }
+    if (timed) {
+      metrics.messageFired(type, recipients, System.nanoTime() - start);
+    }
     if(interrupted) {
       Thread.currentThread().interrupt();
     }
@@ -141,9 +163,13 @@ public class ProxyInvoker<T> {
     if(!messageTypes.contains(type)) {
       throw new IllegalArgumentException("Event type '" + type + "' isn't supported");
     }
+    final long start = timed ? System.nanoTime() : 0;
     for (ClientDescriptor client : clients) {
       clientCommunicator.sendNoResponse(client, encode(type, message));
     }
+    if (timed) {
+      metrics.messageFired(type, clients.length, System.nanoTime() - start);
+    }
   }
 
   private byte[] encode(final Class type, final Object message) {
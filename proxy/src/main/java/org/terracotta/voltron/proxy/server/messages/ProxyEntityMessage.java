@@ -66,5 +66,9 @@ public class ProxyEntityMessage implements EntityMessage {
     return method.getReturnType();
   }
 
+  public Method method() {
+    return method;
+  }
+
 
 }
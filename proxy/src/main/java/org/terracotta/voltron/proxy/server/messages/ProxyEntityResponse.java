@@ -19,6 +19,8 @@ package org.terracotta.voltron.proxy.server.messages;
 
 import org.terracotta.entity.EntityResponse;
 
+import java.lang.reflect.Method;
+
 /**
  *
  * @author cdennis
@@ -26,17 +28,30 @@ import org.terracotta.entity.EntityResponse;
 public final class ProxyEntityResponse implements EntityResponse {
 
   public static ProxyEntityResponse response(Class<?> type, Object reponse) {
-    return new ProxyEntityResponse(type, reponse);
+    return new ProxyEntityResponse(null, type, reponse);
+  }
+
+  public static ProxyEntityResponse response(Method method, Class<?> type, Object reponse) {
+    return new ProxyEntityResponse(method, type, reponse);
   }
 
+  private final Method method;
   private final Class<?> type;
   private final Object response;
 
-  private ProxyEntityResponse(Class<?> type, Object response) {
+  private ProxyEntityResponse(Method method, Class<?> type, Object response) {
+    this.method = method;
     this.type = type;
     this.response = response;
   }
 
+  /**
+   * @return the invoked method this is the response of, null if unknown
+   */
+  public Method getMethod() {
+    return method;
+  }
+
   public Class<?> getResponseType() {
     return type;
   }
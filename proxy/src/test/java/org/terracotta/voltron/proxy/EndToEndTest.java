@@ -29,10 +29,14 @@ import org.terracotta.exception.EntityException;
 import org.terracotta.voltron.proxy.client.ClientProxyFactory;
 import org.terracotta.voltron.proxy.client.messages.MessageListener;
 import org.terracotta.voltron.proxy.client.messages.ServerMessageAware;
+import org.terracotta.voltron.proxy.metrics.MessageMetrics;
+import org.terracotta.voltron.proxy.metrics.MethodMetrics;
+import org.terracotta.voltron.proxy.metrics.RecordingProxyMetrics;
 import org.terracotta.voltron.proxy.server.ProxyInvoker;
 import org.terracotta.voltron.proxy.server.messages.MessageFiring;
 
 import java.io.Serializable;
+import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -76,6 +80,109 @@ public class EndToEndTest {
     assertThat(proxy.compareTo("blah!"), is(42));
   }
 
+  @Test
+  public void testMetricsAreRecordedAtBothEnds() throws Exception {
+    final Codec codec = new SerializationCodec();
+    final RecordingProxyMetrics serverMetrics = new RecordingProxyMetrics();
+    final RecordingProxyMetrics clientMetrics = new RecordingProxyMetrics();
+    final ProxyInvoker<Comparable> proxyInvoker = new ProxyInvoker<Comparable>(Comparable.class, new Comparable() {
+      public int compareTo(final Object o) {
+        return 42;
+      }
+    }, codec, serverMetrics, null);
+    final EntityClientEndpoint endpoint = mock(EntityClientEndpoint.class);
+    final RecordingInvocationBuilder builder = new RecordingInvocationBuilder(proxyInvoker);
+    when(endpoint.beginInvoke()).thenReturn(builder);
+
+    final Comparable proxy = ClientProxyFactory.createProxy(Comparable.class, Comparable.class, endpoint, codec, clientMetrics);
+    assertThat(proxy.compareTo("blah!"), is(42));
+    assertThat(proxy.compareTo("blah!"), is(42));
+
+    final MethodMetrics client = clientMetrics.getMethodMetrics(Comparable.class.getMethod("compareTo", Object.class));
+    assertThat(client.getCalls(), is(2L));
+    assertThat(client.getInFlight(), is(0L));
+    assertThat(client.getRequestSize().getCount(), is(2L));
+    assertThat(client.getResponseSize().getCount(), is(2L));
+    assertThat(client.getLatency().getCount(), is(2L));
+
+    final MethodMetrics server = serverMetrics.getMethodMetrics(Comparable.class.getMethod("compareTo", Object.class));
+    assertThat(server.getCalls(), is(2L));
+    assertThat(server.getRequestSize().getTotal(), is(client.getRequestSize().getTotal()));
+    assertThat(server.getResponseSize().getTotal(), is(client.getResponseSize().getTotal()));
+    assertThat(server.getDecodeTime().getCount(), is(2L));
+    assertThat(server.getEncodeTime().getCount(), is(2L));
+  }
+
+  @Test
+  public void testAsyncCallSettlesWithoutRetrieval() throws Exception {
+    final RecordingProxyMetrics clientMetrics = new RecordingProxyMetrics();
+    final FutureTask<byte[]> response = new FutureTask<byte[]>(new Callable<byte[]>() {
+      public byte[] call() throws Exception {
+        return new SerializationCodec().encode(Integer.class, 42);
+      }
+    });
+    final EntityClientEndpoint endpoint = mock(EntityClientEndpoint.class);
+    when(endpoint.beginInvoke()).thenReturn(new PendingInvocationBuilder(response));
+
+    final AsyncComparable proxy = ClientProxyFactory.createProxy(AsyncComparable.class, AsyncComparable.class, endpoint,
+        new SerializationCodec(), clientMetrics);
+    final Future<Integer> call = proxy.compare("blah!");
+    final MethodMetrics client = clientMetrics.getMethodMetrics(AsyncComparable.class.getMethod("compare", Object.class));
+    assertThat(client.getInFlight(), is(1L));
+
+    // answered, but not retrieved yet
+    response.run();
+    assertThat(client.getInFlight(), is(0L));
+    assertThat(client.getCalls(), is(0L));
+
+    assertThat(call.get(), is(42));
+    assertThat(client.getCalls(), is(1L));
+    assertThat(client.getLatency().getCount(), is(1L));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testMetricsAreNotSharedByBothEnds() throws Exception {
+    final RecordingProxyMetrics metrics = new RecordingProxyMetrics();
+    final Method method = Comparable.class.getMethod("compareTo", Object.class);
+    metrics.requestEncoded(method, 16, 100L);
+    metrics.requestDecoded(method, 16, 100L);
+  }
+
+  @Test
+  public void testFanOutIsRecorded() {
+    final RecordingProxyMetrics serverMetrics = new RecordingProxyMetrics();
+    final ProxyInvoker<Comparable> proxyInvoker = new ProxyInvoker<Comparable>(Comparable.class, new Comparable() {
+      public int compareTo(final Object o) {
+        return 42;
+      }
+    }, new SerializationCodec(), serverMetrics, new ClientCommunicator() {
+      public void sendNoResponse(final ClientDescriptor clientDescriptor, final byte[] bytes) {
+      }
+
+      public Future<Void> send(final ClientDescriptor clientDescriptor, final byte[] bytes) {
+        final FutureTask<Void> voidFutureTask = new FutureTask<Void>(new Callable<Void>() {
+          public Void call() throws Exception {
+            return null;
+          }
+        });
+        voidFutureTask.run();
+        return voidFutureTask;
+      }
+    }, String.class);
+    final ClientDescriptor client1 = mock(ClientDescriptor.class);
+    final ClientDescriptor client2 = mock(ClientDescriptor.class);
+    proxyInvoker.addClient(client1);
+    proxyInvoker.addClient(client2);
+
+    proxyInvoker.fireMessage("Hello world!");
+    proxyInvoker.fireAndForgetMessage("Hello client!", client1);
+
+    final MessageMetrics messages = serverMetrics.getMessageMetrics(String.class);
+    assertThat(messages.getFired(), is(2L));
+    assertThat(messages.getSent(), is(3L));
+    assertThat(messages.getFanOutLatency().getCount(), is(2L));
+  }
+
   @Test
   public void testServerInitiatedMessageFiring() throws ExecutionException, InterruptedException {
     final AtomicReference<EndpointDelegate> delegate = new AtomicReference<EndpointDelegate>();
@@ -285,8 +392,71 @@ public class EndToEndTest {
 
   }
 
+  private static class PendingInvocationBuilder implements InvocationBuilder {
+    private final FutureTask<byte[]> response;
+
+    public PendingInvocationBuilder(final FutureTask<byte[]> response) {
+      this.response = response;
+    }
+
+    public InvocationBuilder ackReceived() {
+      return this;
+    }
+
+    public InvocationBuilder ackCompleted() {
+      return this;
+    }
+
+    public InvocationBuilder ackSent() {
+      return this;
+    }
+
+    public InvocationBuilder replicate(final boolean b) {
+      return this;
+    }
+
+    public InvocationBuilder payload(final byte[] bytes) {
+      return this;
+    }
+
+    public InvokeFuture<byte[]> invoke() {
+      return new InvokeFuture<byte[]>() {
+        public boolean isDone() {
+          return response.isDone();
+        }
+
+        public byte[] get() throws InterruptedException, EntityException {
+          try {
+            return response.get();
+          } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+          }
+        }
+
+        public byte[] getWithTimeout(final long l, final TimeUnit timeUnit) throws InterruptedException, EntityException, TimeoutException {
+          try {
+            return response.get(l, timeUnit);
+          } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+          }
+        }
+
+        public void interrupt() {
+          throw new UnsupportedOperationException("Implement me!");
+        }
+      };
+    }
+  }
+
   private static class MyClientDescriptor implements ClientDescriptor {}
 
+  public interface AsyncComparable {
+
+    @Async
+    Future<Integer> compare(Object o);
+
+  }
+
   public interface ClientIdAware extends ServerMessageAware<Integer> {
 
     void nothing();
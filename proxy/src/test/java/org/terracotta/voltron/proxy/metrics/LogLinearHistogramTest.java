@@ -0,0 +1,93 @@
+/*
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Connection API.
+ *
+ * The Initial Developer of the Covered Software is
+ * Terracotta, Inc., a Software AG company
+ */
+
+package org.terracotta.voltron.proxy.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alex Snaps
+ */
+public class LogLinearHistogramTest {
+
+  @Test
+  public void testBucketsAreContiguous() {
+    assertEquals(0L, LogLinearHistogram.lowestValueOf(0));
+    for (int bucket = 1; bucket < LogLinearHistogram.BUCKETS; bucket++) {
+      final long lowest = LogLinearHistogram.lowestValueOf(bucket);
+      assertEquals(LogLinearHistogram.highestValueOf(bucket - 1) + 1, lowest);
+      assertEquals(bucket, LogLinearHistogram.bucketOf(lowest));
+      assertEquals(bucket, LogLinearHistogram.bucketOf(LogLinearHistogram.highestValueOf(bucket)));
+    }
+    assertEquals(LogLinearHistogram.BUCKETS - 1, LogLinearHistogram.bucketOf(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testRelativeErrorIsBounded() {
+    for (long value = 1L; value > 0L && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+      final int bucket = LogLinearHistogram.bucketOf(value);
+      final long width = LogLinearHistogram.highestValueOf(bucket) - LogLinearHistogram.lowestValueOf(bucket);
+      assertTrue(width <= value / 8);
+    }
+  }
+
+  @Test
+  public void testPercentiles() {
+    final LogLinearHistogram histogram = new LogLinearHistogram();
+    assertEquals(0L, histogram.getValueAtPercentile(50.0));
+    for (long i = 1L; i <= 1000L; i++) {
+      histogram.record(i * 1000L);
+    }
+    assertEquals(1000L, histogram.getCount());
+    assertEquals(500500000L, histogram.getTotal());
+    assertEquals(500500.0, histogram.getMean(), 0.0);
+    assertWithin(500000L, histogram.getValueAtPercentile(50.0));
+    assertWithin(990000L, histogram.getValueAtPercentile(99.0));
+    assertWithin(1000000L, histogram.getValueAtPercentile(100.0));
+    assertWithin(1000000L, histogram.getMaxValue());
+    assertWithin(1000L, histogram.getValueAtPercentile(0.0));
+  }
+
+  @Test
+  public void testStripedCounterSumsAllThreads() throws InterruptedException {
+    final StripedCounter counter = new StripedCounter(4);
+    final Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 10000; j++) {
+            counter.increment();
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    counter.decrement();
+    assertEquals(79999L, counter.sum());
+  }
+
+  private static void assertWithin(final long expected, final long actual) {
+    assertTrue(actual + " not within 12.5% of " + expected, actual >= expected && actual <= expected + expected / 8);
+  }
+}
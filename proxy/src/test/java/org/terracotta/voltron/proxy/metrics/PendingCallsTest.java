@@ -0,0 +1,73 @@
+/*
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Connection API.
+ *
+ * The Initial Developer of the Covered Software is
+ * Terracotta, Inc., a Software AG company
+ */
+package org.terracotta.voltron.proxy.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Alex Snaps
+ */
+public class PendingCallsTest {
+
+  @Test
+  public void testCallsInFlightUntilDone() {
+    final PendingCalls pendingCalls = new PendingCalls();
+    final List<FutureTask<Void>> calls = new ArrayList<FutureTask<Void>>();
+    // more than a segment holds
+    for (int i = 0; i < 100; i++) {
+      final FutureTask<Void> call = call();
+      calls.add(call);
+      pendingCalls.add(call);
+    }
+    assertEquals(100, pendingCalls.sweep());
+
+    for (int i = 0; i < 60; i++) {
+      calls.get(i).run();
+    }
+    calls.get(60).cancel(false);
+    assertEquals(39, pendingCalls.sweep());
+    assertEquals(39, pendingCalls.sweep());
+  }
+
+  @Test
+  public void testDoneCallsAreReplaced() {
+    final PendingCalls pendingCalls = new PendingCalls();
+    for (int i = 0; i < 1000; i++) {
+      final FutureTask<Void> call = call();
+      pendingCalls.add(call);
+      call.run();
+    }
+    final FutureTask<Void> last = call();
+    pendingCalls.add(last);
+    assertEquals(1, pendingCalls.sweep());
+  }
+
+  private static FutureTask<Void> call() {
+    return new FutureTask<Void>(new Callable<Void>() {
+      public Void call() throws Exception {
+        return null;
+      }
+    });
+  }
+}